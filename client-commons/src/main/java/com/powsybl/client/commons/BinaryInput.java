@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.client.commons;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Primitive reader shared by the binary formats, counterpart of {@link BinaryOutput}.
+ * <p>
+ * Lengths read from the stream are checked before allocating anything, against a maximum memory per record, so that
+ * a corrupted or malicious stream cannot make the reader allocate more.
+ */
+class BinaryInput {
+
+    private final InputStream is;
+
+    private final byte[] buffer = new byte[8192];
+
+    private int position = 0;
+
+    private int limit = 0;
+
+    // bytes of the stream before the buffer
+    private long bufferStart = 0;
+
+    private final List<String> strings = new ArrayList<>();
+
+    private final long maxRecordSize;
+
+    // estimated memory of the values decoded so far
+    private long decodedSize = 0;
+
+    // decoded size at the start of the current record
+    private long recordStart = 0;
+
+    BinaryInput(InputStream is, long maxRecordSize) {
+        this.is = Objects.requireNonNull(is);
+        this.maxRecordSize = maxRecordSize;
+    }
+
+    /**
+     * Number of bytes read so far.
+     */
+    long getPosition() {
+        return bufferStart + position;
+    }
+
+    /**
+     * Estimated memory of the values decoded so far.
+     */
+    long getDecodedSize() {
+        return decodedSize;
+    }
+
+    /**
+     * Start a record, the memory decoded for a record being limited to the maximum record size.
+     */
+    void startRecord() {
+        recordStart = decodedSize;
+    }
+
+    /**
+     * Check the length of an array read from the stream, before it is allocated.
+     *
+     * @param elementSize estimated memory of an element of the array
+     */
+    int checkLength(int length, int elementSize) throws IOException {
+        if (length < 0) {
+            throw new IOException("Negative length " + length);
+        }
+        long size = (long) length * elementSize;
+        if (decodedSize - recordStart + size > maxRecordSize) {
+            throw new IOException("Record exceeding the maximum size of " + maxRecordSize + " bytes");
+        }
+        decodedSize += size;
+        return length;
+    }
+
+    /**
+     * Read the length of an array, see {@link #checkLength(int, int)}.
+     */
+    int readLength(int elementSize) throws IOException {
+        return checkLength(readVarInt(), elementSize);
+    }
+
+    private void fill() throws IOException {
+        bufferStart += limit;
+        position = 0;
+        limit = 0;
+        int n = is.read(buffer);
+        if (n <= 0) {
+            throw new EOFException();
+        }
+        limit = n;
+    }
+
+    int readUnsignedByte() throws IOException {
+        if (position == limit) {
+            fill();
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    int readInt() throws IOException {
+        return (readUnsignedByte() << 24) | (readUnsignedByte() << 16) | (readUnsignedByte() << 8) | readUnsignedByte();
+    }
+
+    long readLong() throws IOException {
+        return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
+    double readDouble() throws IOException {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    boolean readBoolean() throws IOException {
+        return readUnsignedByte() != 0;
+    }
+
+    void readFully(byte[] bytes) throws IOException {
+        int read = 0;
+        while (read < bytes.length) {
+            if (position == limit) {
+                fill();
+            }
+            int n = Math.min(bytes.length - read, limit - position);
+            System.arraycopy(buffer, position, bytes, read, n);
+            position += n;
+            read += n;
+        }
+    }
+
+    int readVarInt() throws IOException {
+        int v = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (shift > 28) {
+                throw new IOException("Malformed variable length integer");
+            }
+            b = readUnsignedByte();
+            v |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return v - 1;
+    }
+
+    String readString() throws IOException {
+        int index = readVarInt();
+        if (index == BinaryOutput.NULL_STRING_INDEX) {
+            return null;
+        }
+        if (index < strings.size()) {
+            return strings.get(index);
+        }
+        if (index != strings.size()) {
+            throw new IOException("Unexpected string index " + index);
+        }
+        byte[] bytes = new byte[readLength(Character.BYTES)];
+        readFully(bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        strings.add(value);
+        return value;
+    }
+}
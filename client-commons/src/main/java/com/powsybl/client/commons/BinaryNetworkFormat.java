@@ -0,0 +1,38 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.client.commons;
+
+/**
+ * Compact binary format of a reduced view of a network, an alternative to XML for clients that favour loading time
+ * over completeness, such as viewers. Lacking the regulation and limit data, it is not suitable for computations such
+ * as load flows.
+ * <p>
+ * The network is written as a header followed by one section per equipment type. A section is made of the number
+ * of equipments followed by one column per attribute, holding the values of this attribute for all the equipments
+ * of the section. Strings are interned: the first occurrence of a string is written in full and assigned the next
+ * index, later occurrences only write this index. Equipments refer to voltage levels and buses by index in their
+ * section. Both writing and reading are done in a single streaming pass.
+ * <p>
+ * The format carries the bus/breaker view of the topology, the main electrical parameters and the state variables
+ * of substations, voltage levels, buses, switches, lines, two and three windings transformers, generators, loads,
+ * shunt compensators and dangling lines. Tap changers, operational limits, reactive limits, HVDC lines, static var
+ * compensators, properties and extensions are not carried: XML remains the complete format, the media type of this
+ * one naming it as a reduced view so that it cannot be mistaken for the network itself.
+ */
+public final class BinaryNetworkFormat {
+
+    public static final String MEDIA_TYPE_VALUE = "application/vnd.powsybl.reduced-network+binary";
+
+    static final int MAGIC = 0x504E4246; // PNBF
+
+    static final int VERSION = 1;
+
+    static final int NO_INDEX = -1;
+
+    private BinaryNetworkFormat() {
+    }
+}
@@ -0,0 +1,431 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.client.commons;
+
+import com.powsybl.iidm.network.*;
+import org.joda.time.DateTime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+/**
+ * Reads a network written in the {@link BinaryNetworkFormat}. All voltage levels are created with the bus/breaker
+ * topology.
+ */
+public final class BinaryNetworkReader {
+
+    // estimated memory of a reference, of an element of an array of objects
+    private static final int REFERENCE_SIZE = 8;
+
+    private final BinaryInput in;
+
+    private Network network;
+
+    private String[] voltageLevelIds;
+
+    private Substation[] voltageLevelSubstations;
+
+    private String[] busIds;
+
+    private static final class TerminalColumns {
+
+        private int[] voltageLevels;
+        private int[] buses;
+        private int[] connectableBuses;
+        private double[] p;
+        private double[] q;
+    }
+
+    private BinaryNetworkReader(InputStream is, long maxSize) {
+        this.in = new BinaryInput(Objects.requireNonNull(is), maxSize);
+    }
+
+    public static Network read(InputStream is) throws IOException {
+        return read(is, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxSize maximum memory, estimated, of the values read from the stream. Lengths read from the stream are
+     *                checked against it before allocating anything.
+     */
+    public static Network read(InputStream is, long maxSize) throws IOException {
+        return new BinaryNetworkReader(is, maxSize).read();
+    }
+
+    private Network read() throws IOException {
+        if (in.readInt() != BinaryNetworkFormat.MAGIC) {
+            throw new IOException("Not a binary network");
+        }
+        int version = in.readVarInt();
+        if (version != BinaryNetworkFormat.VERSION) {
+            throw new IOException("Unsupported binary network version " + version);
+        }
+        network = NetworkFactory.create(in.readString(), in.readString());
+        network.setCaseDate(new DateTime(in.readLong()));
+        network.setForecastDistance(in.readVarInt());
+
+        Substation[] substations = readSubstations();
+        readVoltageLevels(substations);
+        readBuses();
+        readSwitches();
+        readLines();
+        readTwoWindingsTransformers();
+        readThreeWindingsTransformers();
+        readGenerators();
+        readLoads();
+        readShunts();
+        readDanglingLines();
+        return network;
+    }
+
+    private String[] readStrings(int count) throws IOException {
+        String[] values = new String[in.checkLength(count, REFERENCE_SIZE)];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readString();
+        }
+        return values;
+    }
+
+    private int[] readInts(int count) throws IOException {
+        int[] values = new int[in.checkLength(count, Integer.BYTES)];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readVarInt();
+        }
+        return values;
+    }
+
+    private double[] readDoubles(int count) throws IOException {
+        double[] values = new double[in.checkLength(count, Double.BYTES)];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readDouble();
+        }
+        return values;
+    }
+
+    private boolean[] readBooleans(int count) throws IOException {
+        boolean[] values = new boolean[in.checkLength(count, 1)];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readBoolean();
+        }
+        return values;
+    }
+
+    private TerminalColumns readTerminals(int count) throws IOException {
+        TerminalColumns terminals = new TerminalColumns();
+        terminals.voltageLevels = readInts(count);
+        terminals.buses = readInts(count);
+        terminals.connectableBuses = readInts(count);
+        terminals.p = readDoubles(count);
+        terminals.q = readDoubles(count);
+        return terminals;
+    }
+
+    private String getVoltageLevelId(TerminalColumns terminals, int i) {
+        return voltageLevelIds[terminals.voltageLevels[i]];
+    }
+
+    private String getBusId(TerminalColumns terminals, int i) {
+        int bus = terminals.buses[i];
+        return bus != BinaryNetworkFormat.NO_INDEX ? busIds[bus] : null;
+    }
+
+    private String getConnectableBusId(TerminalColumns terminals, int i) {
+        return busIds[terminals.connectableBuses[i]];
+    }
+
+    private static void setPowers(Terminal terminal, TerminalColumns terminals, int i) {
+        terminal.setP(terminals.p[i]).setQ(terminals.q[i]);
+    }
+
+    private Substation[] readSubstations() throws IOException {
+        int count = in.readLength(0);
+        String[] ids = readStrings(count);
+        String[] names = readStrings(count);
+        int[] countries = readInts(count);
+        String[] tsos = readStrings(count);
+        Substation[] substations = new Substation[in.checkLength(count, REFERENCE_SIZE)];
+        for (int i = 0; i < count; i++) {
+            SubstationAdder adder = network.newSubstation()
+                    .setId(ids[i])
+                    .setName(names[i])
+                    .setTso(tsos[i]);
+            if (countries[i] != BinaryNetworkFormat.NO_INDEX) {
+                adder.setCountry(Country.values()[countries[i]]);
+            }
+            substations[i] = adder.add();
+        }
+        return substations;
+    }
+
+    private void readVoltageLevels(Substation[] substations) throws IOException {
+        int count = in.readLength(0);
+        voltageLevelIds = readStrings(count);
+        String[] names = readStrings(count);
+        int[] substationIndexes = readInts(count);
+        double[] nominalVs = readDoubles(count);
+        double[] lowVoltageLimits = readDoubles(count);
+        double[] highVoltageLimits = readDoubles(count);
+        voltageLevelSubstations = new Substation[in.checkLength(count, REFERENCE_SIZE)];
+        for (int i = 0; i < count; i++) {
+            voltageLevelSubstations[i] = substations[substationIndexes[i]];
+            voltageLevelSubstations[i].newVoltageLevel()
+                    .setId(voltageLevelIds[i])
+                    .setName(names[i])
+                    .setNominalV(nominalVs[i])
+                    .setLowVoltageLimit(lowVoltageLimits[i])
+                    .setHighVoltageLimit(highVoltageLimits[i])
+                    .setTopologyKind(TopologyKind.BUS_BREAKER)
+                    .add();
+        }
+    }
+
+    private void readBuses() throws IOException {
+        int count = in.readLength(0);
+        busIds = readStrings(count);
+        int[] voltageLevels = readInts(count);
+        double[] vs = readDoubles(count);
+        double[] angles = readDoubles(count);
+        for (int i = 0; i < count; i++) {
+            network.getVoltageLevel(voltageLevelIds[voltageLevels[i]]).getBusBreakerView().newBus()
+                    .setId(busIds[i])
+                    .add()
+                    .setV(vs[i])
+                    .setAngle(angles[i]);
+        }
+    }
+
+    private void readSwitches() throws IOException {
+        int count = in.readLength(0);
+        String[] ids = readStrings(count);
+        int[] voltageLevels = readInts(count);
+        int[] buses1 = readInts(count);
+        int[] buses2 = readInts(count);
+        boolean[] open = readBooleans(count);
+        for (int i = 0; i < count; i++) {
+            network.getVoltageLevel(voltageLevelIds[voltageLevels[i]]).getBusBreakerView().newSwitch()
+                    .setId(ids[i])
+                    .setBus1(busIds[buses1[i]])
+                    .setBus2(busIds[buses2[i]])
+                    .setOpen(open[i])
+                    .add();
+        }
+    }
+
+    private void readLines() throws IOException {
+        int count = in.readLength(0);
+        String[] ids = readStrings(count);
+        TerminalColumns terminals1 = readTerminals(count);
+        TerminalColumns terminals2 = readTerminals(count);
+        double[] r = readDoubles(count);
+        double[] x = readDoubles(count);
+        double[] g1 = readDoubles(count);
+        double[] b1 = readDoubles(count);
+        double[] g2 = readDoubles(count);
+        double[] b2 = readDoubles(count);
+        for (int i = 0; i < count; i++) {
+            Line line = network.newLine()
+                    .setId(ids[i])
+                    .setVoltageLevel1(getVoltageLevelId(terminals1, i))
+                    .setBus1(getBusId(terminals1, i))
+                    .setConnectableBus1(getConnectableBusId(terminals1, i))
+                    .setVoltageLevel2(getVoltageLevelId(terminals2, i))
+                    .setBus2(getBusId(terminals2, i))
+                    .setConnectableBus2(getConnectableBusId(terminals2, i))
+                    .setR(r[i])
+                    .setX(x[i])
+                    .setG1(g1[i])
+                    .setB1(b1[i])
+                    .setG2(g2[i])
+                    .setB2(b2[i])
+                    .add();
+            setPowers(line.getTerminal1(), terminals1, i);
+            setPowers(line.getTerminal2(), terminals2, i);
+        }
+    }
+
+    private void readTwoWindingsTransformers() throws IOException {
+        int count = in.readLength(0);
+        String[] ids = readStrings(count);
+        TerminalColumns terminals1 = readTerminals(count);
+        TerminalColumns terminals2 = readTerminals(count);
+        double[] r = readDoubles(count);
+        double[] x = readDoubles(count);
+        double[] g = readDoubles(count);
+        double[] b = readDoubles(count);
+        double[] ratedU1 = readDoubles(count);
+        double[] ratedU2 = readDoubles(count);
+        for (int i = 0; i < count; i++) {
+            TwoWindingsTransformer transformer = voltageLevelSubstations[terminals1.voltageLevels[i]].newTwoWindingsTransformer()
+                    .setId(ids[i])
+                    .setVoltageLevel1(getVoltageLevelId(terminals1, i))
+                    .setBus1(getBusId(terminals1, i))
+                    .setConnectableBus1(getConnectableBusId(terminals1, i))
+                    .setVoltageLevel2(getVoltageLevelId(terminals2, i))
+                    .setBus2(getBusId(terminals2, i))
+                    .setConnectableBus2(getConnectableBusId(terminals2, i))
+                    .setR(r[i])
+                    .setX(x[i])
+                    .setG(g[i])
+                    .setB(b[i])
+                    .setRatedU1(ratedU1[i])
+                    .setRatedU2(ratedU2[i])
+                    .add();
+            setPowers(transformer.getTerminal1(), terminals1, i);
+            setPowers(transformer.getTerminal2(), terminals2, i);
+        }
+    }
+
+    private void readThreeWindingsTransformers() throws IOException {
+        int count = in.readLength(0);
+        String[] ids = readStrings(count);
+        TerminalColumns terminals1 = readTerminals(count);
+        TerminalColumns terminals2 = readTerminals(count);
+        TerminalColumns terminals3 = readTerminals(count);
+        double[] r1 = readDoubles(count);
+        double[] x1 = readDoubles(count);
+        double[] g1 = readDoubles(count);
+        double[] b1 = readDoubles(count);
+        double[] ratedU1 = readDoubles(count);
+        double[] r2 = readDoubles(count);
+        double[] x2 = readDoubles(count);
+        double[] ratedU2 = readDoubles(count);
+        double[] r3 = readDoubles(count);
+        double[] x3 = readDoubles(count);
+        double[] ratedU3 = readDoubles(count);
+        for (int i = 0; i < count; i++) {
+            ThreeWindingsTransformer transformer = voltageLevelSubstations[terminals1.voltageLevels[i]].newThreeWindingsTransformer()
+                    .setId(ids[i])
+                    .newLeg1()
+                        .setVoltageLevel(getVoltageLevelId(terminals1, i))
+                        .setBus(getBusId(terminals1, i))
+                        .setConnectableBus(getConnectableBusId(terminals1, i))
+                        .setR(r1[i])
+                        .setX(x1[i])
+                        .setG(g1[i])
+                        .setB(b1[i])
+                        .setRatedU(ratedU1[i])
+                    .add()
+                    .newLeg2()
+                        .setVoltageLevel(getVoltageLevelId(terminals2, i))
+                        .setBus(getBusId(terminals2, i))
+                        .setConnectableBus(getConnectableBusId(terminals2, i))
+                        .setR(r2[i])
+                        .setX(x2[i])
+                        .setRatedU(ratedU2[i])
+                    .add()
+                    .newLeg3()
+                        .setVoltageLevel(getVoltageLevelId(terminals3, i))
+                        .setBus(getBusId(terminals3, i))
+                        .setConnectableBus(getConnectableBusId(terminals3, i))
+                        .setR(r3[i])
+                        .setX(x3[i])
+                        .setRatedU(ratedU3[i])
+                    .add()
+                    .add();
+            setPowers(transformer.getLeg1().getTerminal(), terminals1, i);
+            setPowers(transformer.getLeg2().getTerminal(), terminals2, i);
+            setPowers(transformer.getLeg3().getTerminal(), terminals3, i);
+        }
+    }
+
+    private void readGenerators() throws IOException {
+        int count = in.readLength(0);
+        String[] ids = readStrings(count);
+        TerminalColumns terminals = readTerminals(count);
+        int[] energySources = readInts(count);
+        double[] minP = readDoubles(count);
+        double[] maxP = readDoubles(count);
+        double[] targetP = readDoubles(count);
+        double[] targetQ = readDoubles(count);
+        double[] targetV = readDoubles(count);
+        boolean[] voltageRegulatorOn = readBooleans(count);
+        for (int i = 0; i < count; i++) {
+            Generator generator = network.getVoltageLevel(getVoltageLevelId(terminals, i)).newGenerator()
+                    .setId(ids[i])
+                    .setBus(getBusId(terminals, i))
+                    .setConnectableBus(getConnectableBusId(terminals, i))
+                    .setEnergySource(EnergySource.values()[energySources[i]])
+                    .setMinP(minP[i])
+                    .setMaxP(maxP[i])
+                    .setTargetP(targetP[i])
+                    .setTargetQ(targetQ[i])
+                    .setTargetV(targetV[i])
+                    .setVoltageRegulatorOn(voltageRegulatorOn[i])
+                    .add();
+            setPowers(generator.getTerminal(), terminals, i);
+        }
+    }
+
+    private void readLoads() throws IOException {
+        int count = in.readLength(0);
+        String[] ids = readStrings(count);
+        TerminalColumns terminals = readTerminals(count);
+        int[] loadTypes = readInts(count);
+        double[] p0 = readDoubles(count);
+        double[] q0 = readDoubles(count);
+        for (int i = 0; i < count; i++) {
+            Load load = network.getVoltageLevel(getVoltageLevelId(terminals, i)).newLoad()
+                    .setId(ids[i])
+                    .setBus(getBusId(terminals, i))
+                    .setConnectableBus(getConnectableBusId(terminals, i))
+                    .setLoadType(LoadType.values()[loadTypes[i]])
+                    .setP0(p0[i])
+                    .setQ0(q0[i])
+                    .add();
+            setPowers(load.getTerminal(), terminals, i);
+        }
+    }
+
+    private void readShunts() throws IOException {
+        int count = in.readLength(0);
+        String[] ids = readStrings(count);
+        TerminalColumns terminals = readTerminals(count);
+        double[] bPerSection = readDoubles(count);
+        int[] maximumSectionCount = readInts(count);
+        int[] currentSectionCount = readInts(count);
+        for (int i = 0; i < count; i++) {
+            ShuntCompensator shunt = network.getVoltageLevel(getVoltageLevelId(terminals, i)).newShuntCompensator()
+                    .setId(ids[i])
+                    .setBus(getBusId(terminals, i))
+                    .setConnectableBus(getConnectableBusId(terminals, i))
+                    .setbPerSection(bPerSection[i])
+                    .setMaximumSectionCount(maximumSectionCount[i])
+                    .setCurrentSectionCount(currentSectionCount[i])
+                    .add();
+            setPowers(shunt.getTerminal(), terminals, i);
+        }
+    }
+
+    private void readDanglingLines() throws IOException {
+        int count = in.readLength(0);
+        String[] ids = readStrings(count);
+        TerminalColumns terminals = readTerminals(count);
+        double[] r = readDoubles(count);
+        double[] x = readDoubles(count);
+        double[] g = readDoubles(count);
+        double[] b = readDoubles(count);
+        double[] p0 = readDoubles(count);
+        double[] q0 = readDoubles(count);
+        String[] ucteXnodeCodes = readStrings(count);
+        for (int i = 0; i < count; i++) {
+            DanglingLine danglingLine = network.getVoltageLevel(getVoltageLevelId(terminals, i)).newDanglingLine()
+                    .setId(ids[i])
+                    .setBus(getBusId(terminals, i))
+                    .setConnectableBus(getConnectableBusId(terminals, i))
+                    .setR(r[i])
+                    .setX(x[i])
+                    .setG(g[i])
+                    .setB(b[i])
+                    .setP0(p0[i])
+                    .setQ0(q0[i])
+                    .setUcteXnodeCode(ucteXnodeCodes[i])
+                    .add();
+            setPowers(danglingLine.getTerminal(), terminals, i);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.client.commons;
+
+import com.google.common.collect.Lists;
+import com.powsybl.iidm.network.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Writes a network in the {@link BinaryNetworkFormat}.
+ */
+public final class BinaryNetworkWriter {
+
+    private final Network network;
+
+    private final BinaryOutput out;
+
+    private final List<Substation> substations;
+
+    private final List<VoltageLevel> voltageLevels;
+
+    private final Map<String, Integer> voltageLevelIndexes = new HashMap<>();
+
+    private final List<String> busIds = new ArrayList<>();
+
+    private final List<Integer> busVoltageLevels = new ArrayList<>();
+
+    private final List<Bus> buses = new ArrayList<>();
+
+    private final Map<String, Integer> busIndexes = new HashMap<>();
+
+    private final Map<Terminal, Integer> connectableBusIndexes = new IdentityHashMap<>();
+
+    private BinaryNetworkWriter(Network network, OutputStream os) {
+        this.network = Objects.requireNonNull(network);
+        this.out = new BinaryOutput(Objects.requireNonNull(os));
+        substations = Lists.newArrayList(network.getSubstations());
+        voltageLevels = Lists.newArrayList(network.getVoltageLevels());
+    }
+
+    public static void write(Network network, OutputStream os) throws IOException {
+        new BinaryNetworkWriter(network, os).write();
+    }
+
+    private int addBus(String id, int voltageLevelIndex, Bus bus) {
+        int index = busIds.size();
+        busIds.add(id);
+        busVoltageLevels.add(voltageLevelIndex);
+        buses.add(bus);
+        busIndexes.put(id, index);
+        return index;
+    }
+
+    private void indexBuses() {
+        for (int i = 0; i < voltageLevels.size(); i++) {
+            VoltageLevel voltageLevel = voltageLevels.get(i);
+            voltageLevelIndexes.put(voltageLevel.getId(), i);
+            for (Bus bus : voltageLevel.getBusBreakerView().getBuses()) {
+                addBus(bus.getId(), i, bus);
+            }
+        }
+    }
+
+    private int getVoltageLevelIndex(Terminal terminal) {
+        return voltageLevelIndexes.get(terminal.getVoltageLevel().getId());
+    }
+
+    private int getBusIndex(Terminal terminal) {
+        Bus bus = terminal.getBusBreakerView().getBus();
+        return bus != null ? busIndexes.get(bus.getId()) : BinaryNetworkFormat.NO_INDEX;
+    }
+
+    /**
+     * Get the index of the bus a terminal can be connected to. Terminals of node/breaker voltage levels not
+     * connectable to any bus of the bus/breaker view are given their own isolated bus.
+     */
+    private int getConnectableBusIndex(Terminal terminal) {
+        return connectableBusIndexes.computeIfAbsent(terminal, t -> {
+            Bus bus = t.getBusBreakerView().getConnectableBus();
+            if (bus != null) {
+                return busIndexes.get(bus.getId());
+            }
+            String voltageLevelId = t.getVoltageLevel().getId();
+            String id;
+            int i = 0;
+            do {
+                id = voltageLevelId + "_ISOLATED_" + i++;
+            } while (busIndexes.containsKey(id) || network.getIdentifiable(id) != null);
+            return addBus(id, getVoltageLevelIndex(t), null);
+        });
+    }
+
+    private void write() throws IOException {
+        indexBuses();
+
+        List<Line> lines = Lists.newArrayList(network.getLines());
+        List<TwoWindingsTransformer> twoWindingsTransformers = Lists.newArrayList(network.getTwoWindingsTransformers());
+        List<ThreeWindingsTransformer> threeWindingsTransformers = Lists.newArrayList(network.getThreeWindingsTransformers());
+        List<Generator> generators = Lists.newArrayList(network.getGenerators());
+        List<Load> loads = Lists.newArrayList(network.getLoads());
+        List<ShuntCompensator> shunts = Lists.newArrayList(network.getShuntCompensators());
+        List<DanglingLine> danglingLines = Lists.newArrayList(network.getDanglingLines());
+
+        // isolated buses have to be known before writing the buses
+        lines.forEach(l -> l.getTerminals().forEach(this::getConnectableBusIndex));
+        twoWindingsTransformers.forEach(t -> t.getTerminals().forEach(this::getConnectableBusIndex));
+        threeWindingsTransformers.forEach(t -> t.getTerminals().forEach(this::getConnectableBusIndex));
+        generators.forEach(g -> getConnectableBusIndex(g.getTerminal()));
+        loads.forEach(l -> getConnectableBusIndex(l.getTerminal()));
+        shunts.forEach(s -> getConnectableBusIndex(s.getTerminal()));
+        danglingLines.forEach(d -> getConnectableBusIndex(d.getTerminal()));
+
+        out.writeInt(BinaryNetworkFormat.MAGIC);
+        out.writeVarInt(BinaryNetworkFormat.VERSION);
+        out.writeString(network.getId());
+        out.writeString(network.getSourceFormat());
+        out.writeLong(network.getCaseDate().getMillis());
+        out.writeVarInt(network.getForecastDistance());
+
+        writeSubstations();
+        writeVoltageLevels();
+        writeBuses();
+        writeSwitches();
+        writeLines(lines);
+        writeTwoWindingsTransformers(twoWindingsTransformers);
+        writeThreeWindingsTransformers(threeWindingsTransformers);
+        writeGenerators(generators);
+        writeLoads(loads);
+        writeShunts(shunts);
+        writeDanglingLines(danglingLines);
+        out.flush();
+    }
+
+    private <T> void writeStrings(List<T> rows, Function<T, String> column) throws IOException {
+        for (T row : rows) {
+            out.writeString(column.apply(row));
+        }
+    }
+
+    private <T> void writeInts(List<T> rows, ToIntFunction<T> column) throws IOException {
+        for (T row : rows) {
+            out.writeVarInt(column.applyAsInt(row));
+        }
+    }
+
+    private <T> void writeDoubles(List<T> rows, ToDoubleFunction<T> column) throws IOException {
+        for (T row : rows) {
+            out.writeDouble(column.applyAsDouble(row));
+        }
+    }
+
+    private <T> void writeBooleans(List<T> rows, Predicate<T> column) throws IOException {
+        for (T row : rows) {
+            out.writeBoolean(column.test(row));
+        }
+    }
+
+    private <T extends Identifiable<?>> void writeHeader(List<T> rows) throws IOException {
+        out.writeVarInt(rows.size());
+        writeStrings(rows, Identifiable::getId);
+    }
+
+    private <T> void writeTerminal(List<T> rows, Function<T, Terminal> terminal) throws IOException {
+        writeInts(rows, row -> getVoltageLevelIndex(terminal.apply(row)));
+        writeInts(rows, row -> getBusIndex(terminal.apply(row)));
+        writeInts(rows, row -> getConnectableBusIndex(terminal.apply(row)));
+        writeDoubles(rows, row -> terminal.apply(row).getP());
+        writeDoubles(rows, row -> terminal.apply(row).getQ());
+    }
+
+    private void writeSubstations() throws IOException {
+        writeHeader(substations);
+        writeStrings(substations, Substation::getName);
+        writeInts(substations, s -> s.getCountry().map(Enum::ordinal).orElse(BinaryNetworkFormat.NO_INDEX));
+        writeStrings(substations, Substation::getTso);
+    }
+
+    private void writeVoltageLevels() throws IOException {
+        writeHeader(voltageLevels);
+        writeStrings(voltageLevels, VoltageLevel::getName);
+        Map<String, Integer> substationIndexes = new HashMap<>();
+        for (int i = 0; i < substations.size(); i++) {
+            substationIndexes.put(substations.get(i).getId(), i);
+        }
+        writeInts(voltageLevels, vl -> substationIndexes.get(vl.getSubstation().getId()));
+        writeDoubles(voltageLevels, VoltageLevel::getNominalV);
+        writeDoubles(voltageLevels, VoltageLevel::getLowVoltageLimit);
+        writeDoubles(voltageLevels, VoltageLevel::getHighVoltageLimit);
+    }
+
+    private void writeBuses() throws IOException {
+        List<Integer> indexes = new ArrayList<>(busIds.size());
+        for (int i = 0; i < busIds.size(); i++) {
+            indexes.add(i);
+        }
+        out.writeVarInt(busIds.size());
+        writeStrings(indexes, busIds::get);
+        writeInts(indexes, busVoltageLevels::get);
+        writeDoubles(indexes, i -> buses.get(i) != null ? buses.get(i).getV() : Double.NaN);
+        writeDoubles(indexes, i -> buses.get(i) != null ? buses.get(i).getAngle() : Double.NaN);
+    }
+
+    private void writeSwitches() throws IOException {
+        List<Switch> switches = new ArrayList<>();
+        List<Integer> switchVoltageLevels = new ArrayList<>();
+        List<Integer> buses1 = new ArrayList<>();
+        List<Integer> buses2 = new ArrayList<>();
+        for (int i = 0; i < voltageLevels.size(); i++) {
+            VoltageLevel.BusBreakerView view = voltageLevels.get(i).getBusBreakerView();
+            for (Switch sw : view.getSwitches()) {
+                switches.add(sw);
+                switchVoltageLevels.add(i);
+                buses1.add(busIndexes.get(view.getBus1(sw.getId()).getId()));
+                buses2.add(busIndexes.get(view.getBus2(sw.getId()).getId()));
+            }
+        }
+        List<Integer> indexes = new ArrayList<>(switches.size());
+        for (int i = 0; i < switches.size(); i++) {
+            indexes.add(i);
+        }
+        out.writeVarInt(switches.size());
+        writeStrings(indexes, i -> switches.get(i).getId());
+        writeInts(indexes, switchVoltageLevels::get);
+        writeInts(indexes, buses1::get);
+        writeInts(indexes, buses2::get);
+        writeBooleans(indexes, i -> switches.get(i).isOpen());
+    }
+
+    private void writeLines(List<Line> lines) throws IOException {
+        writeHeader(lines);
+        writeTerminal(lines, Line::getTerminal1);
+        writeTerminal(lines, Line::getTerminal2);
+        writeDoubles(lines, Line::getR);
+        writeDoubles(lines, Line::getX);
+        writeDoubles(lines, Line::getG1);
+        writeDoubles(lines, Line::getB1);
+        writeDoubles(lines, Line::getG2);
+        writeDoubles(lines, Line::getB2);
+    }
+
+    private void writeTwoWindingsTransformers(List<TwoWindingsTransformer> transformers) throws IOException {
+        writeHeader(transformers);
+        writeTerminal(transformers, TwoWindingsTransformer::getTerminal1);
+        writeTerminal(transformers, TwoWindingsTransformer::getTerminal2);
+        writeDoubles(transformers, TwoWindingsTransformer::getR);
+        writeDoubles(transformers, TwoWindingsTransformer::getX);
+        writeDoubles(transformers, TwoWindingsTransformer::getG);
+        writeDoubles(transformers, TwoWindingsTransformer::getB);
+        writeDoubles(transformers, TwoWindingsTransformer::getRatedU1);
+        writeDoubles(transformers, TwoWindingsTransformer::getRatedU2);
+    }
+
+    private void writeThreeWindingsTransformers(List<ThreeWindingsTransformer> transformers) throws IOException {
+        writeHeader(transformers);
+        writeTerminal(transformers, t -> t.getLeg1().getTerminal());
+        writeTerminal(transformers, t -> t.getLeg2().getTerminal());
+        writeTerminal(transformers, t -> t.getLeg3().getTerminal());
+        writeDoubles(transformers, t -> t.getLeg1().getR());
+        writeDoubles(transformers, t -> t.getLeg1().getX());
+        writeDoubles(transformers, t -> t.getLeg1().getG());
+        writeDoubles(transformers, t -> t.getLeg1().getB());
+        writeDoubles(transformers, t -> t.getLeg1().getRatedU());
+        writeDoubles(transformers, t -> t.getLeg2().getR());
+        writeDoubles(transformers, t -> t.getLeg2().getX());
+        writeDoubles(transformers, t -> t.getLeg2().getRatedU());
+        writeDoubles(transformers, t -> t.getLeg3().getR());
+        writeDoubles(transformers, t -> t.getLeg3().getX());
+        writeDoubles(transformers, t -> t.getLeg3().getRatedU());
+    }
+
+    private void writeGenerators(List<Generator> generators) throws IOException {
+        writeHeader(generators);
+        writeTerminal(generators, Generator::getTerminal);
+        writeInts(generators, g -> g.getEnergySource().ordinal());
+        writeDoubles(generators, Generator::getMinP);
+        writeDoubles(generators, Generator::getMaxP);
+        writeDoubles(generators, Generator::getTargetP);
+        writeDoubles(generators, Generator::getTargetQ);
+        writeDoubles(generators, Generator::getTargetV);
+        writeBooleans(generators, Generator::isVoltageRegulatorOn);
+    }
+
+    private void writeLoads(List<Load> loads) throws IOException {
+        writeHeader(loads);
+        writeTerminal(loads, Load::getTerminal);
+        writeInts(loads, l -> l.getLoadType().ordinal());
+        writeDoubles(loads, Load::getP0);
+        writeDoubles(loads, Load::getQ0);
+    }
+
+    private void writeShunts(List<ShuntCompensator> shunts) throws IOException {
+        writeHeader(shunts);
+        writeTerminal(shunts, ShuntCompensator::getTerminal);
+        writeDoubles(shunts, ShuntCompensator::getbPerSection);
+        writeInts(shunts, ShuntCompensator::getMaximumSectionCount);
+        writeInts(shunts, ShuntCompensator::getCurrentSectionCount);
+    }
+
+    private void writeDanglingLines(List<DanglingLine> danglingLines) throws IOException {
+        writeHeader(danglingLines);
+        writeTerminal(danglingLines, DanglingLine::getTerminal);
+        writeDoubles(danglingLines, DanglingLine::getR);
+        writeDoubles(danglingLines, DanglingLine::getX);
+        writeDoubles(danglingLines, DanglingLine::getG);
+        writeDoubles(danglingLines, DanglingLine::getB);
+        writeDoubles(danglingLines, DanglingLine::getP0);
+        writeDoubles(danglingLines, DanglingLine::getQ0);
+        writeStrings(danglingLines, DanglingLine::getUcteXnodeCode);
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.client.commons;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Primitive writer shared by the binary formats, counterpart of {@link BinaryInput}: big-endian fixed size values,
+ * variable length integers and interned strings. Bytes are written to a reused buffer, so that encoding does not
+ * allocate.
+ */
+class BinaryOutput {
+
+    /**
+     * Index written for a null string.
+     */
+    static final int NULL_STRING_INDEX = -1;
+
+    private final OutputStream os;
+
+    private final byte[] buffer = new byte[8192];
+
+    private int position = 0;
+
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    BinaryOutput(OutputStream os) {
+        this.os = Objects.requireNonNull(os);
+    }
+
+    void writeByte(int value) throws IOException {
+        if (position == buffer.length) {
+            os.write(buffer, 0, position);
+            position = 0;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    void writeInt(int value) throws IOException {
+        writeByte(value >>> 24);
+        writeByte(value >>> 16);
+        writeByte(value >>> 8);
+        writeByte(value);
+    }
+
+    void writeLong(long value) throws IOException {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    void writeDouble(double value) throws IOException {
+        writeLong(Double.doubleToLongBits(value));
+    }
+
+    void writeBoolean(boolean value) throws IOException {
+        writeByte(value ? 1 : 0);
+    }
+
+    void writeBytes(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - position) {
+            os.write(buffer, 0, position);
+            position = 0;
+            os.write(bytes);
+        } else {
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+    }
+
+    /**
+     * Write an integer greater or equal to -1 on 1 to 5 bytes, small values taking less bytes.
+     */
+    void writeVarInt(int value) throws IOException {
+        int v = value + 1;
+        while ((v & ~0x7F) != 0) {
+            writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        writeByte(v);
+    }
+
+    /**
+     * Write a nullable string, only its index if it has already been written.
+     */
+    void writeString(String value) throws IOException {
+        if (value == null) {
+            writeVarInt(NULL_STRING_INDEX);
+            return;
+        }
+        Integer index = strings.get(value);
+        if (index != null) {
+            writeVarInt(index);
+        } else {
+            int newIndex = strings.size();
+            strings.put(value, newIndex);
+            writeVarInt(newIndex);
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            writeBytes(bytes);
+        }
+    }
+
+    void flush() throws IOException {
+        os.write(buffer, 0, position);
+        position = 0;
+        os.flush();
+    }
+}
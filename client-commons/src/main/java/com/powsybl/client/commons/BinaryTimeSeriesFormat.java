@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.client.commons;
+
+/**
+ * Compact binary format of time series data chunks, an alternative to JSON between the storage client and server,
+ * both for reading time series data and for flushing changes.
+ * <p>
+ * A stream starts with a header, followed either by a map of time series and their chunks, or by a sequence of
+ * storage changes or of versioned time series ended by an end record. Chunks are encoded by column:
+ * <ul>
+ *     <li>offsets and step lengths are delta-of-delta encoded as zigzag variable length integers, so that regularly
+ *     spaced chunks and steps take a single byte each,</li>
+ *     <li>double values and step values are XOR encoded with the previous value, as in Gorilla: a repeated value
+ *     takes a single bit, a close value only its meaningful bits,</li>
+ *     <li>string values are run length encoded, and interned: the first occurrence of a string is written in full
+ *     and assigned the next index, later occurrences only write this index.</li>
+ * </ul>
+ * Chunks are decoded to the same chunks, compressed or not, as the ones which have been encoded. Time series
+ * creations are written as Smile encoded changes.
+ */
+public final class BinaryTimeSeriesFormat {
+
+    public static final String MEDIA_TYPE_VALUE = "application/vnd.powsybl.timeseries+binary";
+
+    static final int MAGIC = 0x50544246; // PTBF
+
+    static final int VERSION = 1;
+
+    static final int NO_INDEX = -1;
+
+    static final int UNCOMPRESSED_CHUNK = 0;
+
+    static final int COMPRESSED_CHUNK = 1;
+
+    static final int END_RECORD = 0;
+
+    static final int TIME_SERIES_CREATION_RECORD = 1;
+
+    static final int DOUBLE_CHUNKS_ADDITION_RECORD = 2;
+
+    static final int STRING_CHUNKS_ADDITION_RECORD = 3;
+
+    static final int TIME_SERIES_RECORD = 4;
+
+    private BinaryTimeSeriesFormat() {
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.client.commons;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Primitive reader of the {@link BinaryTimeSeriesFormat}, counterpart of {@link BinaryTimeSeriesOutput}.
+ */
+class BinaryTimeSeriesInput extends BinaryInput {
+
+    private long bits = 0;
+
+    private int bitCount = 0;
+
+    BinaryTimeSeriesInput(InputStream is, long maxRecordSize) {
+        super(is, maxRecordSize);
+    }
+
+    int readSignedVarInt() throws IOException {
+        int v = readVarInt() + 1;
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    long readBits(int count) throws IOException {
+        if (count > 32) {
+            long high = readBits(count - 32);
+            return (high << 32) | readBits(32);
+        }
+        while (bitCount < count) {
+            bits = (bits << 8) | readUnsignedByte();
+            bitCount += 8;
+        }
+        bitCount -= count;
+        long value = (bits >>> bitCount) & ((1L << count) - 1);
+        bits &= (1L << bitCount) - 1;
+        return value;
+    }
+
+    /**
+     * Skip the padding bits of the last byte.
+     */
+    void alignBits() {
+        bits = 0;
+        bitCount = 0;
+    }
+
+    /**
+     * Read XOR encoded values, see {@link BinaryTimeSeriesOutput#writeDoubles(double[])}.
+     */
+    void readDoubles(double[] values) throws IOException {
+        if (values.length == 0) {
+            return;
+        }
+        long previous = readBits(64);
+        values[0] = Double.longBitsToDouble(previous);
+        int previousLeading = 0;
+        int previousTrailing = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (readBits(1) != 0) {
+                if (readBits(1) != 0) {
+                    previousLeading = (int) readBits(5);
+                    int meaningful = (int) readBits(6) + 1;
+                    previousTrailing = 64 - previousLeading - meaningful;
+                }
+                previous ^= readBits(64 - previousLeading - previousTrailing) << previousTrailing;
+            }
+            values[i] = Double.longBitsToDouble(previous);
+        }
+        alignBits();
+    }
+
+    /**
+     * Read delta-of-delta encoded values, see {@link BinaryTimeSeriesOutput#writeDeltaOfDeltas(int[])}.
+     */
+    void readDeltaOfDeltas(int[] values) throws IOException {
+        int previous = 0;
+        int previousDelta = 0;
+        for (int i = 0; i < values.length; i++) {
+            previousDelta += readSignedVarInt();
+            previous += previousDelta;
+            values[i] = previous;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.client.commons;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Primitive writer of the {@link BinaryTimeSeriesFormat}: in addition to the primitives shared by the binary formats,
+ * bits, XOR encoded doubles and delta-of-delta encoded integers.
+ */
+class BinaryTimeSeriesOutput extends BinaryOutput {
+
+    // pending bits, less than 8 between calls
+    private long bits = 0;
+
+    private int bitCount = 0;
+
+    BinaryTimeSeriesOutput(OutputStream os) {
+        super(os);
+    }
+
+    /**
+     * Write an integer on 1 to 5 bytes, values close to 0 taking less bytes.
+     */
+    void writeSignedVarInt(int value) throws IOException {
+        writeVarInt(((value << 1) ^ (value >> 31)) - 1);
+    }
+
+    /**
+     * Write the lowest bits of a value, most significant first.
+     */
+    void writeBits(long value, int count) throws IOException {
+        if (count > 32) {
+            writeBits(value >>> 32, count - 32);
+            writeBits(value, 32);
+            return;
+        }
+        bits = (bits << count) | (value & ((1L << count) - 1));
+        bitCount += count;
+        while (bitCount >= 8) {
+            bitCount -= 8;
+            writeByte((int) (bits >>> bitCount));
+        }
+        bits &= (1L << bitCount) - 1;
+    }
+
+    /**
+     * Pad the pending bits to a byte.
+     */
+    void alignBits() throws IOException {
+        if (bitCount > 0) {
+            writeByte((int) (bits << (8 - bitCount)));
+            bits = 0;
+            bitCount = 0;
+        }
+    }
+
+    /**
+     * Write values XOR encoded with the previous one: 0 for a repeated value, 10 followed by the meaningful bits if
+     * they fit in the meaningful bits of the previous value, 11 followed by the number of leading zeros, the number
+     * of meaningful bits and the meaningful bits otherwise.
+     */
+    void writeDoubles(double[] values) throws IOException {
+        if (values.length == 0) {
+            return;
+        }
+        long previous = Double.doubleToRawLongBits(values[0]);
+        writeBits(previous, 64);
+        int previousLeading = Integer.MAX_VALUE;
+        int previousTrailing = 0;
+        for (int i = 1; i < values.length; i++) {
+            long current = Double.doubleToRawLongBits(values[i]);
+            long xor = current ^ previous;
+            if (xor == 0) {
+                writeBits(0, 1);
+            } else {
+                // leading zeros are written on 5 bits
+                int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (leading >= previousLeading && trailing >= previousTrailing) {
+                    writeBits(0b10, 2);
+                    writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                } else {
+                    int meaningful = 64 - leading - trailing;
+                    writeBits(0b11, 2);
+                    writeBits(leading, 5);
+                    writeBits(meaningful - 1L, 6);
+                    writeBits(xor >>> trailing, meaningful);
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+            }
+            previous = current;
+        }
+        alignBits();
+    }
+
+    /**
+     * Write values as the difference between consecutive deltas.
+     */
+    void writeDeltaOfDeltas(int[] values) throws IOException {
+        int previous = 0;
+        int previousDelta = 0;
+        for (int value : values) {
+            int delta = value - previous;
+            writeSignedVarInt(delta - previousDelta);
+            previous = value;
+            previousDelta = delta;
+        }
+    }
+}
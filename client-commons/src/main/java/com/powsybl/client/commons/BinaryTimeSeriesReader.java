@@ -0,0 +1,266 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.client.commons;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.powsybl.afs.storage.buffer.DoubleTimeSeriesChunksAddition;
+import com.powsybl.afs.storage.buffer.StorageChange;
+import com.powsybl.afs.storage.buffer.StringTimeSeriesChunksAddition;
+import com.powsybl.afs.storage.json.AppStorageJsonModule;
+import com.powsybl.timeseries.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Reader of the {@link BinaryTimeSeriesFormat}, counterpart of {@link BinaryTimeSeriesWriter}.
+ */
+public class BinaryTimeSeriesReader {
+
+    private static final ObjectReader CHANGE_READER = new ObjectMapper(new SmileFactory())
+            .registerModule(new AppStorageJsonModule())
+            .readerFor(StorageChange.class);
+
+    // estimated memory of a reference, of an element of an array of objects
+    private static final int REFERENCE_SIZE = 8;
+
+    private final BinaryTimeSeriesInput input;
+
+    public BinaryTimeSeriesReader(InputStream is) throws IOException {
+        this(is, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxRecordSize maximum memory, estimated, of the values of a single record: a change, a time series of a
+     *                      sequence or a whole map of time series. Lengths read from the stream are checked against it
+     *                      before allocating anything.
+     */
+    public BinaryTimeSeriesReader(InputStream is, long maxRecordSize) throws IOException {
+        input = new BinaryTimeSeriesInput(is, maxRecordSize);
+        if (input.readInt() != BinaryTimeSeriesFormat.MAGIC) {
+            throw new IOException("Not a binary time series stream");
+        }
+        int version = input.readVarInt();
+        if (version != BinaryTimeSeriesFormat.VERSION) {
+            throw new IOException("Unsupported binary time series format version " + version);
+        }
+    }
+
+    public static List<StorageChange> readChanges(InputStream is) throws IOException {
+        BinaryTimeSeriesReader reader = new BinaryTimeSeriesReader(is);
+        List<StorageChange> changes = new ArrayList<>();
+        StorageChange change = reader.readChange();
+        while (change != null) {
+            changes.add(change);
+            change = reader.readChange();
+        }
+        return changes;
+    }
+
+    /**
+     * Receives the time series of a sequence, in the order they have been written.
+     */
+    public interface TimeSeriesHandler<C> {
+
+        void onTimeSeries(int version, String timeSeriesName, List<C> chunks);
+    }
+
+    /**
+     * Number of bytes read so far.
+     */
+    public long getPosition() {
+        return input.getPosition();
+    }
+
+    /**
+     * Estimated memory of the values read so far, usually much larger than the number of bytes read.
+     */
+    public long getDecodedSize() {
+        return input.getDecodedSize();
+    }
+
+    public Map<String, List<DoubleDataChunk>> readDoubleTimeSeriesData() throws IOException {
+        input.startRecord();
+        int timeSeriesCount = input.readLength(REFERENCE_SIZE);
+        Map<String, List<DoubleDataChunk>> timeSeriesData = new HashMap<>(timeSeriesCount);
+        for (int i = 0; i < timeSeriesCount; i++) {
+            String timeSeriesName = input.readString();
+            timeSeriesData.put(timeSeriesName, readDoubleChunks());
+        }
+        return timeSeriesData;
+    }
+
+    public Map<String, List<StringDataChunk>> readStringTimeSeriesData() throws IOException {
+        input.startRecord();
+        int timeSeriesCount = input.readLength(REFERENCE_SIZE);
+        Map<String, List<StringDataChunk>> timeSeriesData = new HashMap<>(timeSeriesCount);
+        for (int i = 0; i < timeSeriesCount; i++) {
+            String timeSeriesName = input.readString();
+            timeSeriesData.put(timeSeriesName, readStringChunks());
+        }
+        return timeSeriesData;
+    }
+
+    private interface ChunksReader<C> {
+
+        List<C> read() throws IOException;
+    }
+
+    private <C> int readTimeSeries(ChunksReader<C> chunksReader, TimeSeriesHandler<C> handler) throws IOException {
+        Objects.requireNonNull(handler);
+        int count = 0;
+        int record = input.readUnsignedByte();
+        while (record == BinaryTimeSeriesFormat.TIME_SERIES_RECORD) {
+            input.startRecord();
+            int version = input.readVarInt();
+            String timeSeriesName = input.readString();
+            handler.onTimeSeries(version, timeSeriesName, chunksReader.read());
+            count++;
+            record = input.readUnsignedByte();
+        }
+        if (record != BinaryTimeSeriesFormat.END_RECORD) {
+            throw new IOException("Unexpected record " + record);
+        }
+        return count;
+    }
+
+    /**
+     * Read a sequence of versions of double time series, up to its end.
+     *
+     * @return the number of read time series
+     */
+    public int readDoubleTimeSeries(TimeSeriesHandler<DoubleDataChunk> handler) throws IOException {
+        return readTimeSeries(this::readDoubleChunks, handler);
+    }
+
+    /**
+     * Read a sequence of versions of string time series, up to its end.
+     *
+     * @return the number of read time series
+     */
+    public int readStringTimeSeries(TimeSeriesHandler<StringDataChunk> handler) throws IOException {
+        return readTimeSeries(this::readStringChunks, handler);
+    }
+
+    /**
+     * Reader of the chunk headers, see {@code BinaryTimeSeriesWriter.ChunkHeaderWriter}.
+     */
+    private static final class ChunkHeaderReader {
+
+        private int kind;
+
+        private int offset = 0;
+
+        private int delta = 0;
+
+        private int length;
+
+        private void read(BinaryTimeSeriesInput input) throws IOException {
+            kind = input.readUnsignedByte();
+            delta += input.readSignedVarInt();
+            offset += delta;
+            length = input.readLength(0);
+        }
+    }
+
+    private List<DoubleDataChunk> readDoubleChunks() throws IOException {
+        int chunkCount = input.readLength(REFERENCE_SIZE);
+        List<DoubleDataChunk> chunks = new ArrayList<>(chunkCount);
+        ChunkHeaderReader header = new ChunkHeaderReader();
+        for (int i = 0; i < chunkCount; i++) {
+            header.read(input);
+            if (header.kind == BinaryTimeSeriesFormat.COMPRESSED_CHUNK) {
+                int[] stepLengths = new int[input.readLength(Integer.BYTES + Double.BYTES)];
+                input.readDeltaOfDeltas(stepLengths);
+                double[] stepValues = new double[stepLengths.length];
+                input.readDoubles(stepValues);
+                chunks.add(new CompressedDoubleDataChunk(header.offset, header.length, stepValues, stepLengths));
+            } else if (header.kind == BinaryTimeSeriesFormat.UNCOMPRESSED_CHUNK) {
+                double[] values = new double[input.checkLength(header.length, Double.BYTES)];
+                input.readDoubles(values);
+                chunks.add(new UncompressedDoubleDataChunk(header.offset, values));
+            } else {
+                throw new IOException("Unknown chunk kind " + header.kind);
+            }
+        }
+        return chunks;
+    }
+
+    private List<StringDataChunk> readStringChunks() throws IOException {
+        int chunkCount = input.readLength(REFERENCE_SIZE);
+        List<StringDataChunk> chunks = new ArrayList<>(chunkCount);
+        ChunkHeaderReader header = new ChunkHeaderReader();
+        for (int i = 0; i < chunkCount; i++) {
+            header.read(input);
+            if (header.kind == BinaryTimeSeriesFormat.COMPRESSED_CHUNK) {
+                int[] stepLengths = new int[input.readLength(Integer.BYTES + REFERENCE_SIZE)];
+                input.readDeltaOfDeltas(stepLengths);
+                String[] stepValues = new String[stepLengths.length];
+                for (int step = 0; step < stepValues.length; step++) {
+                    stepValues[step] = input.readString();
+                }
+                chunks.add(new CompressedStringDataChunk(header.offset, header.length, stepValues, stepLengths));
+            } else if (header.kind == BinaryTimeSeriesFormat.UNCOMPRESSED_CHUNK) {
+                chunks.add(new UncompressedStringDataChunk(header.offset, readRuns(input.checkLength(header.length, REFERENCE_SIZE))));
+            } else {
+                throw new IOException("Unknown chunk kind " + header.kind);
+            }
+        }
+        return chunks;
+    }
+
+    private String[] readRuns(int length) throws IOException {
+        String[] values = new String[length];
+        int runCount = input.readLength(0);
+        int start = 0;
+        for (int run = 0; run < runCount; run++) {
+            int runLength = input.readVarInt();
+            if (runLength < 0 || runLength > length - start) {
+                throw new IOException("Run exceeding the chunk length");
+            }
+            Arrays.fill(values, start, start + runLength, input.readString());
+            start += runLength;
+        }
+        if (start != length) {
+            throw new IOException("Runs not matching the chunk length");
+        }
+        return values;
+    }
+
+    /**
+     * Read the next change of a sequence, {@code null} at the end of the sequence.
+     */
+    public StorageChange readChange() throws IOException {
+        input.startRecord();
+        int record = input.readUnsignedByte();
+        switch (record) {
+            case BinaryTimeSeriesFormat.END_RECORD:
+                return null;
+            case BinaryTimeSeriesFormat.TIME_SERIES_CREATION_RECORD:
+                byte[] bytes = new byte[input.readLength(1)];
+                input.readFully(bytes);
+                return CHANGE_READER.readValue(bytes);
+            case BinaryTimeSeriesFormat.DOUBLE_CHUNKS_ADDITION_RECORD: {
+                String nodeId = input.readString();
+                int version = input.readVarInt();
+                String timeSeriesName = input.readString();
+                return new DoubleTimeSeriesChunksAddition(nodeId, version, timeSeriesName, readDoubleChunks());
+            }
+            case BinaryTimeSeriesFormat.STRING_CHUNKS_ADDITION_RECORD: {
+                String nodeId = input.readString();
+                int version = input.readVarInt();
+                String timeSeriesName = input.readString();
+                return new StringTimeSeriesChunksAddition(nodeId, version, timeSeriesName, readStringChunks());
+            }
+            default:
+                throw new IOException("Unknown record " + record);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.client.commons;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.powsybl.afs.storage.buffer.DoubleTimeSeriesChunksAddition;
+import com.powsybl.afs.storage.buffer.StorageChange;
+import com.powsybl.afs.storage.buffer.StringTimeSeriesChunksAddition;
+import com.powsybl.afs.storage.json.AppStorageJsonModule;
+import com.powsybl.timeseries.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Writer of the {@link BinaryTimeSeriesFormat}, either a map of time series data or a sequence of storage changes.
+ * The written bytes are buffered until {@link #flush()}.
+ */
+public class BinaryTimeSeriesWriter {
+
+    private static final ObjectWriter CHANGE_WRITER = new ObjectMapper(new SmileFactory())
+            .registerModule(new AppStorageJsonModule())
+            .writerFor(StorageChange.class);
+
+    private final BinaryTimeSeriesOutput output;
+
+    public BinaryTimeSeriesWriter(OutputStream os) throws IOException {
+        output = new BinaryTimeSeriesOutput(os);
+        output.writeInt(BinaryTimeSeriesFormat.MAGIC);
+        output.writeVarInt(BinaryTimeSeriesFormat.VERSION);
+    }
+
+    public static void writeChanges(List<StorageChange> changes, OutputStream os) throws IOException {
+        BinaryTimeSeriesWriter writer = new BinaryTimeSeriesWriter(os);
+        for (StorageChange change : changes) {
+            writer.writeChange(change);
+        }
+        writer.writeEnd();
+        writer.flush();
+    }
+
+    public void writeDoubleTimeSeriesData(Map<String, List<DoubleDataChunk>> timeSeriesData) throws IOException {
+        Objects.requireNonNull(timeSeriesData);
+        output.writeVarInt(timeSeriesData.size());
+        for (Map.Entry<String, List<DoubleDataChunk>> e : timeSeriesData.entrySet()) {
+            output.writeString(e.getKey());
+            writeDoubleChunks(e.getValue());
+        }
+    }
+
+    public void writeStringTimeSeriesData(Map<String, List<StringDataChunk>> timeSeriesData) throws IOException {
+        Objects.requireNonNull(timeSeriesData);
+        output.writeVarInt(timeSeriesData.size());
+        for (Map.Entry<String, List<StringDataChunk>> e : timeSeriesData.entrySet()) {
+            output.writeString(e.getKey());
+            writeStringChunks(e.getValue());
+        }
+    }
+
+    /**
+     * Write the chunks of a version of a double time series, as a record of a sequence ended by {@link #writeEnd()}.
+     */
+    public void writeDoubleTimeSeries(int version, String timeSeriesName, List<DoubleDataChunk> chunks) throws IOException {
+        output.writeByte(BinaryTimeSeriesFormat.TIME_SERIES_RECORD);
+        output.writeVarInt(version);
+        output.writeString(Objects.requireNonNull(timeSeriesName));
+        writeDoubleChunks(Objects.requireNonNull(chunks));
+    }
+
+    /**
+     * Write the chunks of a version of a string time series, as a record of a sequence ended by {@link #writeEnd()}.
+     */
+    public void writeStringTimeSeries(int version, String timeSeriesName, List<StringDataChunk> chunks) throws IOException {
+        output.writeByte(BinaryTimeSeriesFormat.TIME_SERIES_RECORD);
+        output.writeVarInt(version);
+        output.writeString(Objects.requireNonNull(timeSeriesName));
+        writeStringChunks(Objects.requireNonNull(chunks));
+    }
+
+    /**
+     * Write the kind, offset and length of each chunk, offsets being delta-of-delta encoded across the chunks.
+     */
+    private static final class ChunkHeaderWriter {
+
+        private int previousOffset = 0;
+
+        private int previousDelta = 0;
+
+        private void write(BinaryTimeSeriesOutput output, DataChunk<?, ?> chunk, int kind) throws IOException {
+            int delta = chunk.getOffset() - previousOffset;
+            output.writeByte(kind);
+            output.writeSignedVarInt(delta - previousDelta);
+            output.writeVarInt(chunk.getLength());
+            previousOffset = chunk.getOffset();
+            previousDelta = delta;
+        }
+    }
+
+    private void writeDoubleChunks(List<DoubleDataChunk> chunks) throws IOException {
+        output.writeVarInt(chunks.size());
+        ChunkHeaderWriter headerWriter = new ChunkHeaderWriter();
+        for (DoubleDataChunk chunk : chunks) {
+            if (chunk instanceof CompressedDoubleDataChunk) {
+                CompressedDoubleDataChunk compressedChunk = (CompressedDoubleDataChunk) chunk;
+                headerWriter.write(output, chunk, BinaryTimeSeriesFormat.COMPRESSED_CHUNK);
+                output.writeVarInt(compressedChunk.getStepLengths().length);
+                output.writeDeltaOfDeltas(compressedChunk.getStepLengths());
+                output.writeDoubles(compressedChunk.getStepValues());
+            } else if (chunk instanceof UncompressedDoubleDataChunk) {
+                headerWriter.write(output, chunk, BinaryTimeSeriesFormat.UNCOMPRESSED_CHUNK);
+                output.writeDoubles(((UncompressedDoubleDataChunk) chunk).getValues());
+            } else {
+                throw new IllegalArgumentException("Unsupported chunk type " + chunk.getClass().getName());
+            }
+        }
+    }
+
+    private void writeStringChunks(List<StringDataChunk> chunks) throws IOException {
+        output.writeVarInt(chunks.size());
+        ChunkHeaderWriter headerWriter = new ChunkHeaderWriter();
+        for (StringDataChunk chunk : chunks) {
+            if (chunk instanceof CompressedStringDataChunk) {
+                CompressedStringDataChunk compressedChunk = (CompressedStringDataChunk) chunk;
+                headerWriter.write(output, chunk, BinaryTimeSeriesFormat.COMPRESSED_CHUNK);
+                output.writeVarInt(compressedChunk.getStepLengths().length);
+                output.writeDeltaOfDeltas(compressedChunk.getStepLengths());
+                for (String stepValue : compressedChunk.getStepValues()) {
+                    output.writeString(stepValue);
+                }
+            } else if (chunk instanceof UncompressedStringDataChunk) {
+                headerWriter.write(output, chunk, BinaryTimeSeriesFormat.UNCOMPRESSED_CHUNK);
+                writeRuns(((UncompressedStringDataChunk) chunk).getValues());
+            } else {
+                throw new IllegalArgumentException("Unsupported chunk type " + chunk.getClass().getName());
+            }
+        }
+    }
+
+    /**
+     * Write string values as runs of equal values: the number of runs, then the length and value of each run.
+     */
+    private void writeRuns(String[] values) throws IOException {
+        int runCount = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0 || !Objects.equals(values[i], values[i - 1])) {
+                runCount++;
+            }
+        }
+        output.writeVarInt(runCount);
+        int runStart = 0;
+        for (int i = 1; i <= values.length; i++) {
+            if (i == values.length || !Objects.equals(values[i], values[runStart])) {
+                output.writeVarInt(i - runStart);
+                output.writeString(values[runStart]);
+                runStart = i;
+            }
+        }
+    }
+
+    public void writeChange(StorageChange change) throws IOException {
+        Objects.requireNonNull(change);
+        switch (change.getType()) {
+            case TIME_SERIES_CREATION:
+                output.writeByte(BinaryTimeSeriesFormat.TIME_SERIES_CREATION_RECORD);
+                byte[] bytes = CHANGE_WRITER.writeValueAsBytes(change);
+                output.writeVarInt(bytes.length);
+                output.writeBytes(bytes);
+                break;
+            case DOUBLE_TIME_SERIES_CHUNKS_ADDITION:
+                DoubleTimeSeriesChunksAddition doubleAddition = (DoubleTimeSeriesChunksAddition) change;
+                output.writeByte(BinaryTimeSeriesFormat.DOUBLE_CHUNKS_ADDITION_RECORD);
+                output.writeString(doubleAddition.getNodeId());
+                output.writeVarInt(doubleAddition.getVersion());
+                output.writeString(doubleAddition.getTimeSeriesName());
+                writeDoubleChunks(doubleAddition.getChunks());
+                break;
+            case STRING_TIME_SERIES_CHUNKS_ADDITION:
+                StringTimeSeriesChunksAddition stringAddition = (StringTimeSeriesChunksAddition) change;
+                output.writeByte(BinaryTimeSeriesFormat.STRING_CHUNKS_ADDITION_RECORD);
+                output.writeString(stringAddition.getNodeId());
+                output.writeVarInt(stringAddition.getVersion());
+                output.writeString(stringAddition.getTimeSeriesName());
+                writeStringChunks(stringAddition.getChunks());
+                break;
+            default:
+                throw new AssertionError("Unknown change type " + change.getType());
+        }
+    }
+
+    /**
+     * End a sequence of changes or of time series.
+     */
+    public void writeEnd() throws IOException {
+        output.writeByte(BinaryTimeSeriesFormat.END_RECORD);
+    }
+
+    public void flush() throws IOException {
+        output.flush();
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.client.commons;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import javax.websocket.DecodeException;
+import javax.websocket.Decoder;
+import javax.websocket.EndpointConfig;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Binary counterpart of {@link JacksonDecoder}: decodes Smile encoded websocket frames directly from the received
+ * buffer, without going through an intermediate string.
+ */
+public class JacksonBinaryDecoder<T> implements Decoder.Binary<T> {
+
+    private final ObjectMapper objectMapper = new ObjectMapper(new SmileFactory());
+
+    private Class<T> type;
+
+    protected JacksonBinaryDecoder(Class<T> type) {
+        this.type = Objects.requireNonNull(type);
+    }
+
+    @Override
+    public T decode(ByteBuffer bytes) throws DecodeException {
+        try {
+            if (bytes.hasArray()) {
+                return objectMapper.readValue(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining(), type);
+            }
+            return objectMapper.readValue(new ByteBufferBackedInputStream(bytes.duplicate()), type);
+        } catch (IOException e) {
+            throw new DecodeException(bytes, "Decoding error", e);
+        }
+    }
+
+    @Override
+    public boolean willDecode(ByteBuffer bytes) {
+        return true;
+    }
+
+    @Override
+    public void init(EndpointConfig endpointConfig) {
+        // nothing to do
+    }
+
+    @Override
+    public void destroy() {
+        // nothing to do
+    }
+}
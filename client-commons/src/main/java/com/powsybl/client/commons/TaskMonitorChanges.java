@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.client.commons;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.powsybl.afs.TaskMonitor;
+
+import java.util.*;
+
+/**
+ * Tasks of a project changed since a given revision: tasks started or updated, with their current state, and ids
+ * of tasks stopped. Sent by the storage server to the clients polling the tasks of a project.
+ */
+public class TaskMonitorChanges {
+
+    private final long revision;
+
+    private final List<TaskMonitor.Task> tasks;
+
+    private final Set<UUID> stoppedTaskIds;
+
+    @JsonCreator
+    public TaskMonitorChanges(@JsonProperty("revision") long revision,
+                              @JsonProperty("tasks") List<TaskMonitor.Task> tasks,
+                              @JsonProperty("stoppedTaskIds") Set<UUID> stoppedTaskIds) {
+        this.revision = revision;
+        this.tasks = tasks != null ? tasks : Collections.emptyList();
+        this.stoppedTaskIds = stoppedTaskIds != null ? stoppedTaskIds : Collections.emptySet();
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public List<TaskMonitor.Task> getTasks() {
+        return tasks;
+    }
+
+    public Set<UUID> getStoppedTaskIds() {
+        return stoppedTaskIds;
+    }
+
+    /**
+     * Apply these changes to a snapshot taken at an older revision.
+     */
+    public TaskMonitor.Snapshot applyTo(TaskMonitor.Snapshot snapshot) {
+        Objects.requireNonNull(snapshot);
+        Map<UUID, TaskMonitor.Task> tasksById = new LinkedHashMap<>();
+        snapshot.getTasks().forEach(task -> tasksById.put(task.getId(), task));
+        tasks.forEach(task -> tasksById.put(task.getId(), task));
+        stoppedTaskIds.forEach(tasksById::remove);
+        return new TaskMonitor.Snapshot(new ArrayList<>(tasksById.values()), revision);
+    }
+}
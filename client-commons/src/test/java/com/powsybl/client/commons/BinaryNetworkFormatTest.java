@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.client.commons;
+
+import com.powsybl.iidm.network.*;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class BinaryNetworkFormatTest {
+
+    private static Network roundTrip(Network network) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BinaryNetworkWriter.write(network, os);
+        return BinaryNetworkReader.read(new ByteArrayInputStream(os.toByteArray()));
+    }
+
+    @Test
+    public void roundTripTest() throws IOException {
+        Network network = SyntheticNetworks.create(20);
+        Network read = roundTrip(network);
+
+        assertEquals(network.getId(), read.getId());
+        assertEquals(network.getCaseDate(), read.getCaseDate());
+        assertEquals(network.getSubstationCount(), read.getSubstationCount());
+        assertEquals(network.getVoltageLevelCount(), read.getVoltageLevelCount());
+        assertEquals(network.getLineCount(), read.getLineCount());
+        assertEquals(network.getTwoWindingsTransformerCount(), read.getTwoWindingsTransformerCount());
+        assertEquals(network.getGeneratorCount(), read.getGeneratorCount());
+        assertEquals(network.getLoadCount(), read.getLoadCount());
+        assertEquals(network.getShuntCompensatorCount(), read.getShuntCompensatorCount());
+
+        assertEquals(Country.BE, read.getSubstation("S1").getCountry().orElse(null));
+        assertEquals("TSO1", read.getSubstation("S1").getTso());
+        assertEquals(380, read.getVoltageLevel("VL400_3").getLowVoltageLimit(), 0);
+        assertEquals(401, read.getVoltageLevel("VL400_1").getBusBreakerView().getBus("B400_1").getV(), 0);
+        assertTrue(read.getSwitch("COUPL_0").isOpen());
+        assertFalse(read.getSwitch("COUPL_1").isOpen());
+
+        Line line = read.getLine("L_2_3a");
+        assertEquals("B400_3", line.getTerminal2().getBusBreakerView().getBus().getId());
+        assertEquals(1e-6, line.getB1(), 0);
+        assertEquals(-49.5, line.getTerminal2().getP(), 0);
+
+        Generator generator = read.getGenerator("GEN_3");
+        assertEquals(405, generator.getTargetV(), 0);
+        assertTrue(generator.isVoltageRegulatorOn());
+        assertEquals(-300, generator.getTerminal().getP(), 0);
+
+        ShuntCompensator shunt = read.getShuntCompensator("SHUNT_5");
+        assertNull(shunt.getTerminal().getBusBreakerView().getBus());
+        assertEquals("B225_5", shunt.getTerminal().getBusBreakerView().getConnectableBus().getId());
+        assertEquals(1, shunt.getCurrentSectionCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidMagicTest() throws IOException {
+        BinaryNetworkReader.read(new ByteArrayInputStream(new byte[] {0, 1, 2, 3, 4}));
+    }
+
+    /**
+     * Create a stream of a network with the given number of substations and no substation data.
+     */
+    private static byte[] createSubstations(int count) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BinaryOutput output = new BinaryOutput(os);
+        output.writeInt(BinaryNetworkFormat.MAGIC);
+        output.writeVarInt(BinaryNetworkFormat.VERSION);
+        output.writeString("network");
+        output.writeString("test");
+        output.writeLong(0);
+        output.writeVarInt(0);
+        output.writeVarInt(count);
+        output.flush();
+        return os.toByteArray();
+    }
+
+    private static void assertInvalid(byte[] bytes, String message) {
+        try {
+            BinaryNetworkReader.read(new ByteArrayInputStream(bytes), 1024 * 1024);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    @Test
+    public void invalidLengthTest() throws IOException {
+        // lengths are checked before allocating anything
+        assertInvalid(createSubstations(Integer.MAX_VALUE - 1), "maximum size");
+        assertInvalid(createSubstations(-1), "Negative length");
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.client.commons;
+
+import com.powsybl.afs.storage.buffer.DoubleTimeSeriesChunksAddition;
+import com.powsybl.afs.storage.buffer.StorageChange;
+import com.powsybl.afs.storage.buffer.StringTimeSeriesChunksAddition;
+import com.powsybl.afs.storage.buffer.TimeSeriesCreation;
+import com.powsybl.timeseries.*;
+import org.junit.Test;
+import org.threeten.extra.Interval;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class BinaryTimeSeriesFormatTest {
+
+    private static byte[] writeDoubleTimeSeriesData(Map<String, List<DoubleDataChunk>> timeSeriesData) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BinaryTimeSeriesWriter writer = new BinaryTimeSeriesWriter(os);
+        writer.writeDoubleTimeSeriesData(timeSeriesData);
+        writer.flush();
+        return os.toByteArray();
+    }
+
+    private static Map<String, List<DoubleDataChunk>> readDoubleTimeSeriesData(byte[] bytes) throws IOException {
+        return new BinaryTimeSeriesReader(new ByteArrayInputStream(bytes)).readDoubleTimeSeriesData();
+    }
+
+    @Test
+    public void doubleTest() throws IOException {
+        Map<String, List<DoubleDataChunk>> timeSeriesData = new HashMap<>();
+        timeSeriesData.put("ts1", Arrays.asList(new UncompressedDoubleDataChunk(0, new double[] {1d, 1d, 1.5d, -2.25d, 1e300, Double.NaN, -0d, 0d, Double.NEGATIVE_INFINITY}),
+                                                new CompressedDoubleDataChunk(9, 6, new double[] {3d, 3.1d}, new int[] {4, 2}),
+                                                new UncompressedDoubleDataChunk(20, new double[] {Math.PI})));
+        timeSeriesData.put("ts2", Collections.emptyList());
+        // offsets out of order
+        timeSeriesData.put("ts3", Arrays.asList(new UncompressedDoubleDataChunk(100, new double[] {1d}),
+                                                new UncompressedDoubleDataChunk(0, new double[] {2d})));
+
+        Map<String, List<DoubleDataChunk>> readData = readDoubleTimeSeriesData(writeDoubleTimeSeriesData(timeSeriesData));
+        assertEquals(timeSeriesData.keySet(), readData.keySet());
+        for (Map.Entry<String, List<DoubleDataChunk>> e : timeSeriesData.entrySet()) {
+            List<DoubleDataChunk> readChunks = readData.get(e.getKey());
+            assertEquals(e.getValue().size(), readChunks.size());
+            for (int i = 0; i < readChunks.size(); i++) {
+                // same classes and values, NaN included
+                DoubleDataChunk chunk = e.getValue().get(i);
+                DoubleDataChunk readChunk = readChunks.get(i);
+                assertSame(chunk.getClass(), readChunk.getClass());
+                assertEquals(chunk.getOffset(), readChunk.getOffset());
+                assertEquals(chunk.getLength(), readChunk.getLength());
+                if (chunk instanceof UncompressedDoubleDataChunk) {
+                    assertArrayEquals(((UncompressedDoubleDataChunk) chunk).getValues(), ((UncompressedDoubleDataChunk) readChunk).getValues(), 0d);
+                } else {
+                    assertArrayEquals(((CompressedDoubleDataChunk) chunk).getStepValues(), ((CompressedDoubleDataChunk) readChunk).getStepValues(), 0d);
+                    assertArrayEquals(((CompressedDoubleDataChunk) chunk).getStepLengths(), ((CompressedDoubleDataChunk) readChunk).getStepLengths());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sizeTest() throws IOException {
+        // a constant series takes about a bit per point, a step-wise series a little more
+        double[] constantValues = new double[8000];
+        Arrays.fill(constantValues, 42.5);
+        double[] stepValues = new double[8000];
+        for (int i = 0; i < stepValues.length; i++) {
+            stepValues[i] = 100d + (i / 100) * 0.5;
+        }
+        Map<String, List<DoubleDataChunk>> timeSeriesData = new HashMap<>();
+        timeSeriesData.put("ts", Collections.singletonList(new UncompressedDoubleDataChunk(0, constantValues)));
+        assertTrue(writeDoubleTimeSeriesData(timeSeriesData).length < 1100);
+        timeSeriesData.put("ts", Collections.singletonList(new UncompressedDoubleDataChunk(0, stepValues)));
+        assertTrue(writeDoubleTimeSeriesData(timeSeriesData).length < 1500);
+
+        // regular chunks take a few bytes of header each
+        List<DoubleDataChunk> chunks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            chunks.add(new CompressedDoubleDataChunk(i * 96, 96, new double[] {i}, new int[] {96}));
+        }
+        timeSeriesData.put("ts", chunks);
+        byte[] bytes = writeDoubleTimeSeriesData(timeSeriesData);
+        assertTrue(bytes.length < 100 * 16);
+        assertEquals(chunks, readDoubleTimeSeriesData(bytes).get("ts"));
+    }
+
+    @Test
+    public void stringTest() throws IOException {
+        Map<String, List<StringDataChunk>> timeSeriesData = new HashMap<>();
+        timeSeriesData.put("ts1", Arrays.asList(new UncompressedStringDataChunk(0, new String[] {"a", "a", "a", null, null, "b", "a", "é"}),
+                                                new CompressedStringDataChunk(8, 5, new String[] {"b", "c"}, new int[] {3, 2})));
+        timeSeriesData.put("ts2", Collections.singletonList(new UncompressedStringDataChunk(3, new String[] {"b"})));
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BinaryTimeSeriesWriter writer = new BinaryTimeSeriesWriter(os);
+        writer.writeStringTimeSeriesData(timeSeriesData);
+        writer.flush();
+        Map<String, List<StringDataChunk>> readData = new BinaryTimeSeriesReader(new ByteArrayInputStream(os.toByteArray())).readStringTimeSeriesData();
+        assertEquals(timeSeriesData, readData);
+    }
+
+    @Test
+    public void changesTest() throws IOException {
+        TimeSeriesIndex index = RegularTimeSeriesIndex.create(Interval.parse("2015-01-01T00:00:00Z/2015-01-01T01:45:00Z"),
+                                                              Duration.ofMinutes(15));
+        TimeSeriesMetadata metadata = new TimeSeriesMetadata("ts1", TimeSeriesDataType.DOUBLE, index);
+        List<DoubleDataChunk> doubleChunks = Collections.singletonList(new UncompressedDoubleDataChunk(0, new double[] {1d, 2d}));
+        List<StringDataChunk> stringChunks = Collections.singletonList(new CompressedStringDataChunk(0, 8, new String[] {"a"}, new int[] {8}));
+        List<StorageChange> changes = Arrays.asList(new TimeSeriesCreation("node1", metadata),
+                                                    new DoubleTimeSeriesChunksAddition("node1", 1, "ts1", doubleChunks),
+                                                    new StringTimeSeriesChunksAddition("node2", 2, "ts2", stringChunks));
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BinaryTimeSeriesWriter.writeChanges(changes, os);
+
+        List<StorageChange> readChanges = BinaryTimeSeriesReader.readChanges(new ByteArrayInputStream(os.toByteArray()));
+        assertEquals(3, readChanges.size());
+        TimeSeriesCreation creation = (TimeSeriesCreation) readChanges.get(0);
+        assertEquals("node1", creation.getNodeId());
+        assertEquals("ts1", creation.getMetadata().getName());
+        assertEquals(index, creation.getMetadata().getIndex());
+        DoubleTimeSeriesChunksAddition doubleAddition = (DoubleTimeSeriesChunksAddition) readChanges.get(1);
+        assertEquals("node1", doubleAddition.getNodeId());
+        assertEquals(1, doubleAddition.getVersion());
+        assertEquals("ts1", doubleAddition.getTimeSeriesName());
+        assertEquals(doubleChunks, doubleAddition.getChunks());
+        StringTimeSeriesChunksAddition stringAddition = (StringTimeSeriesChunksAddition) readChanges.get(2);
+        assertEquals("node2", stringAddition.getNodeId());
+        assertEquals(2, stringAddition.getVersion());
+        assertEquals("ts2", stringAddition.getTimeSeriesName());
+        assertEquals(stringChunks, stringAddition.getChunks());
+    }
+
+    @Test
+    public void versionsTest() throws IOException {
+        List<DoubleDataChunk> chunks1 = Collections.singletonList(new UncompressedDoubleDataChunk(0, new double[] {1d, 2d}));
+        List<DoubleDataChunk> chunks2 = Collections.singletonList(new CompressedDoubleDataChunk(2, 4, new double[] {3d}, new int[] {4}));
+        List<StringDataChunk> stringChunks = Collections.singletonList(new UncompressedStringDataChunk(0, new String[] {"a", "a", "b"}));
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BinaryTimeSeriesWriter writer = new BinaryTimeSeriesWriter(os);
+        writer.writeDoubleTimeSeries(1, "ts1", chunks1);
+        writer.writeDoubleTimeSeries(1, "ts2", Collections.emptyList());
+        writer.writeDoubleTimeSeries(3, "ts1", chunks2);
+        writer.writeEnd();
+        writer.flush();
+
+        List<String> records = new ArrayList<>();
+        Map<String, List<DoubleDataChunk>> readChunks = new HashMap<>();
+        int count = new BinaryTimeSeriesReader(new ByteArrayInputStream(os.toByteArray())).readDoubleTimeSeries((version, timeSeriesName, chunks) -> {
+            records.add(version + "/" + timeSeriesName);
+            readChunks.put(version + "/" + timeSeriesName, chunks);
+        });
+        assertEquals(3, count);
+        assertEquals(Arrays.asList("1/ts1", "1/ts2", "3/ts1"), records);
+        assertEquals(chunks1, readChunks.get("1/ts1"));
+        assertTrue(readChunks.get("1/ts2").isEmpty());
+        assertEquals(chunks2, readChunks.get("3/ts1"));
+
+        os = new ByteArrayOutputStream();
+        writer = new BinaryTimeSeriesWriter(os);
+        writer.writeStringTimeSeries(2, "ts3", stringChunks);
+        writer.writeEnd();
+        writer.flush();
+        List<StringDataChunk> readStringChunks = new ArrayList<>();
+        new BinaryTimeSeriesReader(new ByteArrayInputStream(os.toByteArray())).readStringTimeSeries((version, timeSeriesName, chunks) -> {
+            assertEquals(2, version);
+            assertEquals("ts3", timeSeriesName);
+            readStringChunks.addAll(chunks);
+        });
+        assertEquals(stringChunks, readStringChunks);
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidStreamTest() throws IOException {
+        new BinaryTimeSeriesReader(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5}));
+    }
+
+    /**
+     * A stream of a single double chunks addition, of a chunk of the given kind, length and number of steps, the
+     * steps themselves being missing.
+     */
+    private static byte[] createDoubleChunksAddition(int kind, int length, int stepCount) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BinaryTimeSeriesOutput output = new BinaryTimeSeriesOutput(os);
+        output.writeInt(BinaryTimeSeriesFormat.MAGIC);
+        output.writeVarInt(BinaryTimeSeriesFormat.VERSION);
+        output.writeByte(BinaryTimeSeriesFormat.DOUBLE_CHUNKS_ADDITION_RECORD);
+        output.writeString("node1");
+        output.writeVarInt(1);
+        output.writeString("ts1");
+        output.writeVarInt(1);
+        output.writeByte(kind);
+        output.writeSignedVarInt(0);
+        output.writeVarInt(length);
+        output.writeVarInt(stepCount);
+        output.flush();
+        return os.toByteArray();
+    }
+
+    private static void assertInvalid(byte[] bytes, String message) {
+        try {
+            new BinaryTimeSeriesReader(new ByteArrayInputStream(bytes), 1024 * 1024).readChange();
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    @Test
+    public void invalidLengthTest() throws IOException {
+        // lengths are checked before allocating anything
+        assertInvalid(createDoubleChunksAddition(BinaryTimeSeriesFormat.UNCOMPRESSED_CHUNK, Integer.MAX_VALUE - 1, 0), "maximum size");
+        assertInvalid(createDoubleChunksAddition(BinaryTimeSeriesFormat.COMPRESSED_CHUNK, 10, Integer.MAX_VALUE - 1), "maximum size");
+        assertInvalid(createDoubleChunksAddition(BinaryTimeSeriesFormat.COMPRESSED_CHUNK, 10, -1), "Negative length");
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.client.commons;
+
+import com.powsybl.iidm.network.Network;
+import com.powsybl.iidm.xml.NetworkXml;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the XML and binary network formats on synthetic grids of increasing sizes. As the binary format only
+ * carries a reduced view of the network, both formats encode the same content: the network as read back from the
+ * binary format. Encoding and decoding times are measured by JMH, which also reports the encoded sizes as the
+ * {@code bytes} secondary result of the encoding benchmarks.
+ * <p>
+ * Not run by the build, launch {@link #main(String[])} from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NetworkFormatBenchmark {
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class EncodedSize {
+
+        // size of the last encoded network
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Param({"100", "1000", "10000"})
+    private int substationCount;
+
+    private Network network;
+
+    private byte[] xml;
+
+    private byte[] binary;
+
+    @Setup
+    public void setUp() throws IOException {
+        Network fullNetwork = SyntheticNetworks.create(substationCount);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BinaryNetworkWriter.write(fullNetwork, os);
+        network = BinaryNetworkReader.read(new ByteArrayInputStream(os.toByteArray()));
+        xml = encodeXml(network);
+        binary = encodeBinary(network);
+    }
+
+    private static byte[] encodeXml(Network network) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        NetworkXml.write(network, os);
+        return os.toByteArray();
+    }
+
+    private static byte[] encodeBinary(Network network) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BinaryNetworkWriter.write(network, os);
+        return os.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encodeXml(EncodedSize size) {
+        byte[] bytes = encodeXml(network);
+        size.bytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public byte[] encodeBinary(EncodedSize size) throws IOException {
+        byte[] bytes = encodeBinary(network);
+        size.bytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Network decodeXml() {
+        return NetworkXml.read(new ByteArrayInputStream(xml));
+    }
+
+    @Benchmark
+    public Network decodeBinary() throws IOException {
+        return BinaryNetworkReader.read(new ByteArrayInputStream(binary));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(NetworkFormatBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
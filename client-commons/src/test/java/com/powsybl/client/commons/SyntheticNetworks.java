@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.client.commons;
+
+import com.powsybl.iidm.network.*;
+
+/**
+ * Meshed bus/breaker grids of a given number of substations, used as reference grids by tests and benchmarks.
+ */
+final class SyntheticNetworks {
+
+    private SyntheticNetworks() {
+    }
+
+    static Network create(int substationCount) {
+        Network network = NetworkFactory.create("synthetic-" + substationCount, "test");
+        for (int i = 0; i < substationCount; i++) {
+            Substation substation = network.newSubstation()
+                    .setId("S" + i)
+                    .setCountry(i % 2 == 0 ? Country.FR : Country.BE)
+                    .setTso("TSO" + i % 3)
+                    .add();
+            VoltageLevel vl400 = substation.newVoltageLevel()
+                    .setId("VL400_" + i)
+                    .setNominalV(400)
+                    .setLowVoltageLimit(380)
+                    .setHighVoltageLimit(420)
+                    .setTopologyKind(TopologyKind.BUS_BREAKER)
+                    .add();
+            vl400.getBusBreakerView().newBus().setId("B400_" + i).add().setV(400 + i % 10).setAngle(i * 0.01);
+            vl400.getBusBreakerView().newBus().setId("B400_" + i + "_2").add();
+            vl400.getBusBreakerView().newSwitch()
+                    .setId("COUPL_" + i)
+                    .setBus1("B400_" + i)
+                    .setBus2("B400_" + i + "_2")
+                    .setOpen(i % 4 == 0)
+                    .add();
+            vl400.newLoad()
+                    .setId("LOAD_" + i)
+                    .setBus("B400_" + i)
+                    .setConnectableBus("B400_" + i)
+                    .setP0(100 + i % 50)
+                    .setQ0(10)
+                    .add()
+                    .getTerminal().setP(100 + i % 50).setQ(10);
+            if (i % 3 == 0) {
+                vl400.newGenerator()
+                        .setId("GEN_" + i)
+                        .setBus("B400_" + i + "_2")
+                        .setConnectableBus("B400_" + i + "_2")
+                        .setEnergySource(EnergySource.values()[i % EnergySource.values().length])
+                        .setMinP(0)
+                        .setMaxP(1000)
+                        .setTargetP(300)
+                        .setTargetV(405)
+                        .setVoltageRegulatorOn(true)
+                        .add()
+                        .getTerminal().setP(-300).setQ(-20);
+            }
+            if (i % 5 == 0) {
+                substation.newVoltageLevel()
+                        .setId("VL225_" + i)
+                        .setNominalV(225)
+                        .setTopologyKind(TopologyKind.BUS_BREAKER)
+                        .add()
+                        .getBusBreakerView().newBus().setId("B225_" + i).add();
+                substation.newTwoWindingsTransformer()
+                        .setId("TR_" + i)
+                        .setVoltageLevel1("VL400_" + i)
+                        .setBus1("B400_" + i)
+                        .setConnectableBus1("B400_" + i)
+                        .setVoltageLevel2("VL225_" + i)
+                        .setBus2("B225_" + i)
+                        .setConnectableBus2("B225_" + i)
+                        .setR(0.1)
+                        .setX(10)
+                        .setG(0)
+                        .setB(0)
+                        .setRatedU1(400)
+                        .setRatedU2(225)
+                        .add();
+                network.getVoltageLevel("VL225_" + i).newShuntCompensator()
+                        .setId("SHUNT_" + i)
+                        .setConnectableBus("B225_" + i)
+                        .setbPerSection(1e-5)
+                        .setMaximumSectionCount(3)
+                        .setCurrentSectionCount(1)
+                        .add();
+            }
+        }
+        for (int i = 0; i < substationCount; i++) {
+            addLine(network, i, (i + 1) % substationCount, "a");
+            if (substationCount > 7) {
+                addLine(network, i, (i + 7) % substationCount, "b");
+            }
+        }
+        return network;
+    }
+
+    private static void addLine(Network network, int from, int to, String suffix) {
+        if (from == to) {
+            return;
+        }
+        Line line = network.newLine()
+                .setId("L_" + from + "_" + to + suffix)
+                .setVoltageLevel1("VL400_" + from)
+                .setBus1("B400_" + from)
+                .setConnectableBus1("B400_" + from)
+                .setVoltageLevel2("VL400_" + to)
+                .setBus2("B400_" + to)
+                .setConnectableBus2("B400_" + to)
+                .setR(1)
+                .setX(10)
+                .setG1(0)
+                .setB1(1e-6)
+                .setG2(0)
+                .setB2(1e-6)
+                .add();
+        line.getTerminal1().setP(50).setQ(5);
+        line.getTerminal2().setP(-49.5).setQ(-4);
+    }
+}
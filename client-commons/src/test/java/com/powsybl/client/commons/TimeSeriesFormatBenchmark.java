@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.client.commons;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.powsybl.afs.storage.json.AppStorageJsonModule;
+import com.powsybl.commons.json.JsonUtil;
+import com.powsybl.timeseries.DoubleDataChunk;
+import com.powsybl.timeseries.UncompressedDoubleDataChunk;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares the binary time series format to gzipped JSON on 100 series of a year of hourly points, constant,
+ * step-wise or noisy. Encoding and decoding times are measured by JMH, which also reports the encoded sizes as the
+ * {@code bytes} secondary result of the encoding benchmarks.
+ * <p>
+ * Not run by the build, launch {@link #main(String[])} from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimeSeriesFormatBenchmark {
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class EncodedSize {
+
+        // size of the last encoded time series data
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    private static final int TIME_SERIES_COUNT = 100;
+
+    private static final int POINT_COUNT = 8760;
+
+    private static final TypeReference<Map<String, List<DoubleDataChunk>>> DATA_TYPE
+            = new TypeReference<Map<String, List<DoubleDataChunk>>>() { };
+
+    @Param({"constant", "steps", "noisy"})
+    private String profile;
+
+    private final ObjectMapper mapper = JsonUtil.createObjectMapper()
+            .registerModule(new AppStorageJsonModule());
+
+    private Map<String, List<DoubleDataChunk>> timeSeriesData;
+
+    private byte[] json;
+
+    private byte[] binary;
+
+    private double getValue(Random random, int point) {
+        switch (profile) {
+            case "constant":
+                return 50d;
+            case "steps":
+                // a set point changing every day
+                return 100d + (point / 24 % 7) * 2.5d;
+            case "noisy":
+                return 100d * Math.sin(point * 2 * Math.PI / 24) + random.nextGaussian();
+            default:
+                throw new IllegalStateException("Unknown profile " + profile);
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(0);
+        timeSeriesData = new HashMap<>();
+        for (int i = 0; i < TIME_SERIES_COUNT; i++) {
+            double[] values = new double[POINT_COUNT];
+            for (int point = 0; point < POINT_COUNT; point++) {
+                values[point] = getValue(random, point);
+            }
+            timeSeriesData.put("ts" + i, Collections.singletonList(new UncompressedDoubleDataChunk(0, values)));
+        }
+        json = encodeGzippedJson();
+        binary = encodeBinary();
+    }
+
+    private byte[] encodeGzippedJson() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(new GZIPOutputStream(os))) {
+            generator.writeStartObject();
+            for (Map.Entry<String, List<DoubleDataChunk>> e : timeSeriesData.entrySet()) {
+                generator.writeFieldName(e.getKey());
+                generator.writeStartArray();
+                for (DoubleDataChunk chunk : e.getValue()) {
+                    chunk.writeJson(generator);
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+        }
+        return os.toByteArray();
+    }
+
+    private byte[] encodeBinary() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BinaryTimeSeriesWriter writer = new BinaryTimeSeriesWriter(os);
+        writer.writeDoubleTimeSeriesData(timeSeriesData);
+        writer.flush();
+        return os.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encodeGzippedJson(EncodedSize size) throws IOException {
+        byte[] bytes = encodeGzippedJson();
+        size.bytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public byte[] encodeBinary(EncodedSize size) throws IOException {
+        byte[] bytes = encodeBinary();
+        size.bytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Map<String, List<DoubleDataChunk>> decodeGzippedJson() throws IOException {
+        return mapper.readValue(new GZIPInputStream(new ByteArrayInputStream(json)), DATA_TYPE);
+    }
+
+    @Benchmark
+    public Map<String, List<DoubleDataChunk>> decodeBinary() throws IOException {
+        return new BinaryTimeSeriesReader(new ByteArrayInputStream(binary)).readDoubleTimeSeriesData();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TimeSeriesFormatBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.client.storage;
+
+/**
+ * Websocket sub-protocols offered to the storage server when connecting to event endpoints, in order of
+ * preference. The server picks the first one it supports, so Smile binary frames are used when enabled on the
+ * server side and JSON text frames otherwise.
+ */
+final class EventSubProtocols {
+
+    static final String SMILE = "afs-smile";
+
+    static final String JSON = "afs-json";
+
+    private EventSubProtocols() {
+    }
+}
@@ -18,7 +18,8 @@ import java.util.Objects;
 /**
  * @author Geoffroy Jamgotchian <geoffroy.jamgotchian at rte-france.com>
  */
-@ClientEndpoint(decoders = {NodeEventListDecoder.class})
+@ClientEndpoint(subprotocols = {EventSubProtocols.SMILE, EventSubProtocols.JSON},
+                decoders = {NodeEventListDecoder.class, NodeEventListBinaryDecoder.class})
 public class NodeEventClient {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(NodeEventClient.class);
@@ -0,0 +1,17 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.client.storage;
+
+import com.powsybl.afs.storage.events.NodeEventList;
+import com.powsybl.client.commons.JacksonBinaryDecoder;
+
+public class NodeEventListBinaryDecoder extends JacksonBinaryDecoder<NodeEventList> {
+
+    public NodeEventListBinaryDecoder() {
+        super(NodeEventList.class);
+    }
+}
@@ -9,7 +9,11 @@ package com.powsybl.client.storage;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.powsybl.afs.storage.*;
 import com.powsybl.afs.storage.buffer.StorageChangeBuffer;
+import com.powsybl.afs.storage.buffer.StorageChangeSet;
 import com.powsybl.afs.storage.json.AppStorageJsonModule;
+import com.powsybl.client.commons.BinaryTimeSeriesFormat;
+import com.powsybl.client.commons.BinaryTimeSeriesReader;
+import com.powsybl.client.commons.BinaryTimeSeriesWriter;
 import com.powsybl.commons.exceptions.UncheckedInterruptedException;
 import com.powsybl.commons.io.ForwardingInputStream;
 import com.powsybl.timeseries.DoubleDataChunk;
@@ -38,6 +42,7 @@ import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.net.URI;
 import java.nio.charset.Charset;
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
 
@@ -56,11 +61,24 @@ public class RemoteStorage implements AppStorage {
 
     public static final String API_VERSION = "v1";
 
-    private static final int BUFFER_MAXIMUM_CHANGE = 1000;
-    private static final long BUFFER_MAXIMUM_SIZE = Math.round(Math.pow(2, 20)); // 1Mo
+    // changes are streamed to and applied by windows by the server, so batches can be large
+    private static final int BUFFER_MAXIMUM_CHANGE = 10000;
+    private static final long BUFFER_MAXIMUM_SIZE = Math.round(Math.pow(2, 24)); // 16Mo
+    private static final MediaType BINARY_TIME_SERIES = MediaType.parseMediaType(BinaryTimeSeriesFormat.MEDIA_TYPE_VALUE);
+    // JSON kept as a fallback for servers not supporting the binary format
+    private static final List<MediaType> TIME_SERIES_DATA_ACCEPT
+            = MediaType.parseMediaTypes(BinaryTimeSeriesFormat.MEDIA_TYPE_VALUE + ", application/json;q=0.5");
     private static final String FILE_SYSTEM_NAME = "fileSystemName";
     private static final String NODE_ID = "nodeId";
     private static final String VERSION = "version";
+    private static final String FIRST_INDEX = "firstIndex";
+    private static final String LAST_INDEX = "lastIndex";
+    private static final String START_TIME = "startTime";
+    private static final String END_TIME = "endTime";
+    private static final ParameterizedTypeReference<Map<String, List<DoubleDataChunk>>> DOUBLE_DATA_TYPE
+            = new ParameterizedTypeReference<Map<String, List<DoubleDataChunk>>>() { };
+    private static final ParameterizedTypeReference<Map<String, List<StringDataChunk>>> STRING_DATA_TYPE
+            = new ParameterizedTypeReference<Map<String, List<StringDataChunk>>>() { };
     private static final String NODE_DATA_PATH = "fileSystems/{fileSystemName}/nodes/{nodeId}/data/{name}";
 
     private final RestTemplate client;
@@ -75,6 +93,9 @@ public class RemoteStorage implements AppStorage {
 
     private boolean closed = false;
 
+    // servers not supporting the binary flush stream get the change sets as JSON on the flush endpoint
+    private volatile boolean binaryFlushSupported = true;
+
     public RemoteStorage(String fileSystemName, URI baseUri) {
         this(fileSystemName, baseUri, "");
     }
@@ -88,33 +109,71 @@ public class RemoteStorage implements AppStorage {
 
         this.client = createClient();
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.add(HttpHeaders.AUTHORIZATION, token);
-        headers.add(HttpHeaders.CONTENT_ENCODING, "gzip");
-        //headers.add(HttpHeaders.ACCEPT_ENCODING, "gzip");
-        headers.add(HttpHeaders.AUTHORIZATION, token);
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
-
         Map<String, String> params = new HashMap<>();
         params.put(FILE_SYSTEM_NAME, fileSystemName);
 
-        URI uri = webTargetTemp
+        URI streamUri = webTargetTemp
+                .path("fileSystems/{fileSystemName}/flush/stream")
+                .buildAndExpand(params)
+                .toUri();
+        URI jsonUri = webTarget.cloneBuilder()
                 .path("fileSystems/{fileSystemName}/flush")
                 .buildAndExpand(params)
                 .toUri();
         changeBuffer = new StorageChangeBuffer(changeSet -> {
             LOGGER.debug("flush(fileSystemName={}, size={})", fileSystemName, changeSet.getChanges().size());
-            HttpEntity<com.powsybl.afs.storage.buffer.StorageChangeSet> entity = new HttpEntity<>(changeSet, headers);
-            ResponseEntity<String> response = client.exchange(uri,
-                    HttpMethod.POST,
-                    entity,
-                    String.class);
-
-            checkOk(response);
+            if (binaryFlushSupported) {
+                try {
+                    flushBinary(streamUri, changeSet);
+                    return;
+                } catch (HttpClientErrorException e) {
+                    // rejected before being read, so nothing has been applied
+                    if (!isUnsupported(e.getStatusCode())) {
+                        throw e;
+                    }
+                    LOGGER.info("Binary flush not supported by the server ({}), flushing as JSON", e.getStatusCode());
+                    binaryFlushSupported = false;
+                }
+            }
+            flushJson(jsonUri, changeSet);
         }, BUFFER_MAXIMUM_CHANGE, BUFFER_MAXIMUM_SIZE);
     }
 
+    private static boolean isUnsupported(HttpStatus status) {
+        return status == HttpStatus.NOT_FOUND || status == HttpStatus.METHOD_NOT_ALLOWED || status == HttpStatus.UNSUPPORTED_MEDIA_TYPE;
+    }
+
+    private void flushBinary(URI uri, StorageChangeSet changeSet) {
+        // the change set is written in the binary time series format, which the server applies as it reads it
+        ResponseEntity<String> response = client.execute(uri,
+                HttpMethod.POST,
+                request -> {
+                    request.getHeaders().add(HttpHeaders.AUTHORIZATION, token);
+                    request.getHeaders().setContentType(BINARY_TIME_SERIES);
+                    // not closed, the request body is closed by the client
+                    BinaryTimeSeriesWriter.writeChanges(changeSet.getChanges(), request.getBody());
+                },
+                client.responseEntityExtractor(String.class));
+
+        checkOk(response);
+    }
+
+    /**
+     * Flush a change set to servers not supporting the binary flush stream.
+     */
+    private void flushJson(URI uri, StorageChangeSet changeSet) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.AUTHORIZATION, token);
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+        ResponseEntity<String> response = client.exchange(uri,
+                HttpMethod.POST,
+                new HttpEntity<>(changeSet, headers),
+                String.class);
+
+        checkOk(response);
+    }
+
     static RestTemplate createClient() {
         RestTemplate restTemplate = new RestTemplate() {
             @Override
@@ -1243,31 +1302,52 @@ public class RemoteStorage implements AppStorage {
                     fileSystemName, nodeId, timeSeriesNames, version);
         }
 
-        UriComponentsBuilder webTargetTemp = webTarget.cloneBuilder();
+        return getTimeSeriesData(nodeId, timeSeriesNames, version, "double", Collections.emptyMap(), DOUBLE_DATA_TYPE,
+                                 BinaryTimeSeriesReader::readDoubleTimeSeriesData);
+    }
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
-        headers.add(HttpHeaders.ACCEPT_ENCODING, "gzip");
-        headers.add(HttpHeaders.AUTHORIZATION, token);
+    /**
+     * Get the chunks of double time series overlapping a range of points, trimmed to it.
+     */
+    public Map<String, List<DoubleDataChunk>> getDoubleTimeSeriesData(String nodeId, Set<String> timeSeriesNames, int version,
+                                                                 int firstIndex, int lastIndex) {
+        Objects.requireNonNull(nodeId);
+        Objects.requireNonNull(timeSeriesNames);
+        TimeSeriesVersions.check(version);
 
-        HttpEntity<Set<String>> entity = new HttpEntity<>(timeSeriesNames, headers);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("getDoubleTimeSeriesData(fileSystemName={}, nodeId={}, timeSeriesNames={}, version={}, firstIndex={}, lastIndex={})",
+                    fileSystemName, nodeId, timeSeriesNames, version, firstIndex, lastIndex);
+        }
 
-        Map<String, Object> params = new HashMap<>();
-        params.put(FILE_SYSTEM_NAME, fileSystemName);
-        params.put(NODE_ID, nodeId);
-        params.put(VERSION, version);
-        URI uri = webTargetTemp
-                .path("fileSystems/{fileSystemName}/nodes/{nodeId}/timeSeries/double/{version}")
-                .buildAndExpand(params)
-                .toUri();
-        ResponseEntity<Map<String, List<DoubleDataChunk>>> response = client.exchange(
-                uri,
-                HttpMethod.POST,
-                entity,
-                new ParameterizedTypeReference<Map<String, List<DoubleDataChunk>>>() { }
-                );
-        return readEntityIfOk(response);
+        Map<String, Object> window = new HashMap<>();
+        window.put(FIRST_INDEX, firstIndex);
+        window.put(LAST_INDEX, lastIndex);
+        return getTimeSeriesData(nodeId, timeSeriesNames, version, "double", window, DOUBLE_DATA_TYPE,
+                                 BinaryTimeSeriesReader::readDoubleTimeSeriesData);
+    }
+
+    /**
+     * Get the chunks of double time series overlapping a time range, bounds included, trimmed to it.
+     */
+    public Map<String, List<DoubleDataChunk>> getDoubleTimeSeriesData(String nodeId, Set<String> timeSeriesNames, int version,
+                                                                 Instant startTime, Instant endTime) {
+        Objects.requireNonNull(nodeId);
+        Objects.requireNonNull(timeSeriesNames);
+        TimeSeriesVersions.check(version);
+        Objects.requireNonNull(startTime);
+        Objects.requireNonNull(endTime);
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("getDoubleTimeSeriesData(fileSystemName={}, nodeId={}, timeSeriesNames={}, version={}, startTime={}, endTime={})",
+                    fileSystemName, nodeId, timeSeriesNames, version, startTime, endTime);
+        }
+
+        Map<String, Object> window = new HashMap<>();
+        window.put(START_TIME, startTime.toString());
+        window.put(END_TIME, endTime.toString());
+        return getTimeSeriesData(nodeId, timeSeriesNames, version, "double", window, DOUBLE_DATA_TYPE,
+                                 BinaryTimeSeriesReader::readDoubleTimeSeriesData);
     }
 
     @Override
@@ -1295,11 +1375,143 @@ public class RemoteStorage implements AppStorage {
                     fileSystemName, nodeId, timeSeriesNames, version);
         }
 
+        return getTimeSeriesData(nodeId, timeSeriesNames, version, "string", Collections.emptyMap(), STRING_DATA_TYPE,
+                                 BinaryTimeSeriesReader::readStringTimeSeriesData);
+    }
+
+    /**
+     * Get the chunks of string time series overlapping a range of points, trimmed to it.
+     */
+    public Map<String, List<StringDataChunk>> getStringTimeSeriesData(String nodeId, Set<String> timeSeriesNames, int version,
+                                                                 int firstIndex, int lastIndex) {
+        Objects.requireNonNull(nodeId);
+        Objects.requireNonNull(timeSeriesNames);
+        TimeSeriesVersions.check(version);
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("getStringTimeSeriesData(fileSystemName={}, nodeId={}, timeSeriesNames={}, version={}, firstIndex={}, lastIndex={})",
+                    fileSystemName, nodeId, timeSeriesNames, version, firstIndex, lastIndex);
+        }
+
+        Map<String, Object> window = new HashMap<>();
+        window.put(FIRST_INDEX, firstIndex);
+        window.put(LAST_INDEX, lastIndex);
+        return getTimeSeriesData(nodeId, timeSeriesNames, version, "string", window, STRING_DATA_TYPE,
+                                 BinaryTimeSeriesReader::readStringTimeSeriesData);
+    }
+
+    /**
+     * Get the chunks of string time series overlapping a time range, bounds included, trimmed to it.
+     */
+    public Map<String, List<StringDataChunk>> getStringTimeSeriesData(String nodeId, Set<String> timeSeriesNames, int version,
+                                                                 Instant startTime, Instant endTime) {
+        Objects.requireNonNull(nodeId);
+        Objects.requireNonNull(timeSeriesNames);
+        TimeSeriesVersions.check(version);
+        Objects.requireNonNull(startTime);
+        Objects.requireNonNull(endTime);
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("getStringTimeSeriesData(fileSystemName={}, nodeId={}, timeSeriesNames={}, version={}, startTime={}, endTime={})",
+                    fileSystemName, nodeId, timeSeriesNames, version, startTime, endTime);
+        }
+
+        Map<String, Object> window = new HashMap<>();
+        window.put(START_TIME, startTime.toString());
+        window.put(END_TIME, endTime.toString());
+        return getTimeSeriesData(nodeId, timeSeriesNames, version, "string", window, STRING_DATA_TYPE,
+                                 BinaryTimeSeriesReader::readStringTimeSeriesData);
+    }
+
+    /**
+     * Get the chunks of double time series of several versions in one call, by version then by time series name.
+     */
+    public Map<Integer, Map<String, List<DoubleDataChunk>>> getDoubleTimeSeriesData(String nodeId, Set<String> timeSeriesNames, Set<Integer> versions) {
+        Objects.requireNonNull(nodeId);
+        Objects.requireNonNull(timeSeriesNames);
+        Objects.requireNonNull(versions);
+        versions.forEach(TimeSeriesVersions::check);
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("getDoubleTimeSeriesData(fileSystemName={}, nodeId={}, timeSeriesNames={}, versions={})",
+                    fileSystemName, nodeId, timeSeriesNames, versions);
+        }
+
+        return getTimeSeriesData(nodeId, timeSeriesNames, versions, "double", BinaryTimeSeriesReader::readDoubleTimeSeries);
+    }
+
+    /**
+     * Get the chunks of string time series of several versions in one call, by version then by time series name.
+     */
+    public Map<Integer, Map<String, List<StringDataChunk>>> getStringTimeSeriesData(String nodeId, Set<String> timeSeriesNames, Set<Integer> versions) {
+        Objects.requireNonNull(nodeId);
+        Objects.requireNonNull(timeSeriesNames);
+        Objects.requireNonNull(versions);
+        versions.forEach(TimeSeriesVersions::check);
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("getStringTimeSeriesData(fileSystemName={}, nodeId={}, timeSeriesNames={}, versions={})",
+                    fileSystemName, nodeId, timeSeriesNames, versions);
+        }
+
+        return getTimeSeriesData(nodeId, timeSeriesNames, versions, "string", BinaryTimeSeriesReader::readStringTimeSeries);
+    }
+
+    private interface BinaryVersionsReader<C> {
+
+        int read(BinaryTimeSeriesReader reader, BinaryTimeSeriesReader.TimeSeriesHandler<C> handler) throws IOException;
+    }
+
+    private <C> Map<Integer, Map<String, List<C>>> getTimeSeriesData(String nodeId, Set<String> timeSeriesNames, Set<Integer> versions,
+                                                                     String dataType, BinaryVersionsReader<C> binaryReader) {
+        if (versions.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
         UriComponentsBuilder webTargetTemp = webTarget.cloneBuilder();
 
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+        headers.setAccept(Collections.singletonList(BINARY_TIME_SERIES));
+        headers.add(HttpHeaders.AUTHORIZATION, token);
+
+        HttpEntity<Set<String>> entity = new HttpEntity<>(timeSeriesNames, headers);
+
+        Map<String, Object> params = new HashMap<>();
+        params.put(FILE_SYSTEM_NAME, fileSystemName);
+        params.put(NODE_ID, nodeId);
+        params.put("dataType", dataType);
+        URI uri = webTargetTemp
+                .path("fileSystems/{fileSystemName}/nodes/{nodeId}/timeSeries/{dataType}/versions")
+                .queryParam("versions", versions.toArray())
+                .buildAndExpand(params)
+                .toUri();
+        // decoded while streamed by the server, one version after the other
+        return client.execute(
+                uri,
+                HttpMethod.POST,
+                client.httpEntityCallback(entity),
+                response -> {
+                    Map<Integer, Map<String, List<C>>> timeSeriesData = new TreeMap<>();
+                    binaryReader.read(new BinaryTimeSeriesReader(response.getBody()),
+                        (version, timeSeriesName, chunks) -> timeSeriesData.computeIfAbsent(version, v -> new HashMap<>()).put(timeSeriesName, chunks));
+                    return timeSeriesData;
+                });
+    }
+
+    private interface BinaryDataReader<C> {
+
+        Map<String, List<C>> read(BinaryTimeSeriesReader reader) throws IOException;
+    }
+
+    private <C> Map<String, List<C>> getTimeSeriesData(String nodeId, Set<String> timeSeriesNames, int version, String dataType,
+                                                       Map<String, Object> window, ParameterizedTypeReference<Map<String, List<C>>> type,
+                                                       BinaryDataReader<C> binaryReader) {
+        UriComponentsBuilder webTargetTemp = webTarget.cloneBuilder();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setAccept(TIME_SERIES_DATA_ACCEPT);
         headers.add(HttpHeaders.ACCEPT_ENCODING, "gzip");
         headers.add(HttpHeaders.AUTHORIZATION, token);
 
@@ -1308,18 +1520,27 @@ public class RemoteStorage implements AppStorage {
         Map<String, Object> params = new HashMap<>();
         params.put(FILE_SYSTEM_NAME, fileSystemName);
         params.put(NODE_ID, nodeId);
+        params.put("dataType", dataType);
         params.put(VERSION, version);
+        webTargetTemp.path("fileSystems/{fileSystemName}/nodes/{nodeId}/timeSeries/{dataType}/{version}");
+        window.forEach((name, value) -> webTargetTemp.queryParam(name, value));
         URI uri = webTargetTemp
-                .path("fileSystems/{fileSystemName}/nodes/{nodeId}/timeSeries/string/{version}")
                 .buildAndExpand(params)
                 .toUri();
-        ResponseEntity<Map<String, List<StringDataChunk>>> response = client.exchange(
+        HttpMessageConverterExtractor<Map<String, List<C>>> jsonExtractor
+                = new HttpMessageConverterExtractor<>(type.getType(), client.getMessageConverters());
+        // error statuses are thrown by the client before the body is extracted
+        return client.execute(
                 uri,
                 HttpMethod.POST,
-                entity,
-                new ParameterizedTypeReference<Map<String, List<StringDataChunk>> >() { }
-                );
-        return readEntityIfOk(response);
+                client.httpEntityCallback(entity),
+                response -> {
+                    MediaType contentType = response.getHeaders().getContentType();
+                    if (contentType != null && contentType.isCompatibleWith(BINARY_TIME_SERIES)) {
+                        return binaryReader.read(new BinaryTimeSeriesReader(response.getBody()));
+                    }
+                    return jsonExtractor.extractData(response);
+                });
     }
 
     @Override
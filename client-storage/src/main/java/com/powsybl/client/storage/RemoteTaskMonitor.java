@@ -9,6 +9,7 @@ package com.powsybl.client.storage;
 import com.powsybl.afs.ProjectFile;
 import com.powsybl.afs.TaskListener;
 import com.powsybl.afs.TaskMonitor;
+import com.powsybl.client.commons.TaskMonitorChanges;
 import com.powsybl.client.commons.UncheckedDeploymentException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,7 +25,9 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+import static com.powsybl.client.commons.ClientUtils.readEntityIfOk;
 import static com.powsybl.client.storage.RemoteStorage.createClient;
 import static com.powsybl.client.storage.RemoteStorage.getWebTarget;
 import static com.powsybl.client.storage.RemoteListenableStorage.getWebSocketUri;
@@ -39,6 +42,7 @@ public class RemoteTaskMonitor implements TaskMonitor {
     private final URI restUri;
     private final String token;
     private final Map<TaskListener, Session> sessions = new HashMap<>();
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
     private final RestTemplate client;
     private final UriComponentsBuilder webTarget;
 
@@ -139,8 +143,27 @@ public class RemoteTaskMonitor implements TaskMonitor {
                 );
     }
 
+    /**
+     * Take a snapshot of the tasks of a project. Once a first full snapshot has been received, only the tasks
+     * changed since its revision are requested to the server and applied to it; a full snapshot is requested again
+     * if the server does not know the changes that far back.
+     */
     @Override
     public Snapshot takeSnapshot(String projectId) {
+        Objects.requireNonNull(projectId);
+
+        Snapshot snapshot = snapshots.get(projectId);
+        Optional<TaskMonitorChanges> changes = snapshot != null ? getChanges(projectId, snapshot.getRevision()) : Optional.empty();
+        if (changes.isPresent()) {
+            snapshot = changes.get().applyTo(snapshot);
+        } else {
+            snapshot = takeFullSnapshot(projectId);
+        }
+        snapshots.put(projectId, snapshot);
+        return snapshot;
+    }
+
+    private Snapshot takeFullSnapshot(String projectId) {
         LOGGER.debug("takeSnapshot(fileSystemName={}, projectId={})", fileSystemName, projectId);
 
         UriComponentsBuilder webTargetTemp = webTarget.cloneBuilder();
@@ -156,18 +179,52 @@ public class RemoteTaskMonitor implements TaskMonitor {
         params.put(FILE_SYSTEM_NAME, fileSystemName);
 
         URI uri = webTargetTemp
-                .path("fileSystems/{fileSystemName}/tasks/{taskId}")
+                .path("fileSystems/{fileSystemName}/tasks")
                 .queryParam("projectId", projectId)
                 .buildAndExpand(params)
                 .toUri();
 
         ResponseEntity<Snapshot> response = client.exchange(
                 uri,
-                HttpMethod.POST,
+                HttpMethod.GET,
                 entity,
                 Snapshot.class
                 );
-        return response.getBody();
+        return readEntityIfOk(response);
+    }
+
+    private Optional<TaskMonitorChanges> getChanges(String projectId, long revision) {
+        LOGGER.debug("getChanges(fileSystemName={}, projectId={}, revision={})", fileSystemName, projectId, revision);
+
+        UriComponentsBuilder webTargetTemp = webTarget.cloneBuilder();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+        headers.add(HttpHeaders.AUTHORIZATION, token);
+
+        HttpEntity<String> entity = new HttpEntity<>(headers);
+
+        Map<String, String> params = new HashMap<>();
+        params.put(FILE_SYSTEM_NAME, fileSystemName);
+
+        URI uri = webTargetTemp
+                .path("fileSystems/{fileSystemName}/tasks/changes")
+                .queryParam("projectId", projectId)
+                .queryParam("revision", revision)
+                .buildAndExpand(params)
+                .toUri();
+
+        ResponseEntity<TaskMonitorChanges> response = client.exchange(
+                uri,
+                HttpMethod.GET,
+                entity,
+                TaskMonitorChanges.class
+                );
+        if (response.getStatusCode() == HttpStatus.NO_CONTENT) {
+            return Optional.empty();
+        }
+        return Optional.of(readEntityIfOk(response));
     }
 
     @Override
@@ -17,7 +17,8 @@ import java.util.Objects;
 /**
  * @author Geoffroy Jamgotchian <geoffroy.jamgotchian at rte-france.com>
  */
-@ClientEndpoint(decoders = {TaskEventDecoder.class})
+@ClientEndpoint(subprotocols = {EventSubProtocols.SMILE, EventSubProtocols.JSON},
+                decoders = {TaskEventDecoder.class, TaskEventBinaryDecoder.class})
 public class TaskEventClient {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TaskEventClient.class);
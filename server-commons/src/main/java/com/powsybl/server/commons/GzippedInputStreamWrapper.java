@@ -38,6 +38,11 @@ public class GzippedInputStreamWrapper extends HttpServletRequestWrapper {
                 return in.read();
             }
 
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return in.read(b, off, len);
+            }
+
             @Override
             public void close() throws IOException {
                 super.close();
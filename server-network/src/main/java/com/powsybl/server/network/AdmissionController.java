@@ -0,0 +1,290 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control of the requests needing a network in memory.
+ * <p>
+ * The cost of a request is the estimated size of the network it has to load, known from a previous load of
+ * the case or {@code network.admission.default-case-size-mb}. Requests served from the caches cost nothing and are
+ * always admitted. Requests costing at least {@code network.admission.heavy-threshold-mb} are heavy, at most
+ * {@code network.admission.max-heavy} of them run at a time, and the costs of the running requests may not exceed
+ * {@code network.admission.memory-budget-mb}, unless a single request exceeds it alone.
+ * <p>
+ * Requests which cannot run wait in a FIFO queue of {@code network.admission.queue-capacity} requests for at most
+ * {@code network.admission.queue-timeout-ms}. Requests finding the queue full, or not admitted in time, are rejected
+ * with a {@link NetworkServerBusyException}.
+ * <p>
+ * Batch requests, such as the cases of multi-case queries, share the same memory budget and heavy request limit but
+ * have a lower priority: they are admitted only when no interactive request is waiting, their costs may not exceed
+ * {@code network.admission.batch-memory-budget-mb} in total so that some memory is left to interactive requests, and
+ * they wait as long as needed instead of being rejected.
+ */
+@Component
+public class AdmissionController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdmissionController.class);
+
+    private static final long MB = 1024L * 1024L;
+
+    /**
+     * An admitted request, to be closed when done.
+     */
+    public final class Ticket implements AutoCloseable {
+
+        private final long cost;
+
+        private final boolean heavy;
+
+        private final boolean batch;
+
+        private boolean admitted = false;
+
+        private boolean closed = false;
+
+        private Ticket(long cost, boolean batch) {
+            this.cost = cost;
+            this.heavy = cost >= heavyThresholdMb * MB;
+            this.batch = batch;
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private NetworkCacheService networkCache;
+
+    @Autowired
+    private NetworkExportCache exportCache;
+
+    @Value("${network.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${network.admission.max-heavy:4}")
+    private int maxHeavy;
+
+    @Value("${network.admission.heavy-threshold-mb:64}")
+    private long heavyThresholdMb;
+
+    @Value("${network.admission.memory-budget-mb:4096}")
+    private long memoryBudgetMb;
+
+    @Value("${network.admission.batch-memory-budget-mb:1024}")
+    private long batchMemoryBudgetMb;
+
+    @Value("${network.admission.default-case-size-mb:256}")
+    private long defaultCaseSizeMb;
+
+    @Value("${network.admission.queue-capacity:50}")
+    private int queueCapacity;
+
+    @Value("${network.admission.queue-timeout-ms:10000}")
+    private long queueTimeoutMs;
+
+    @Value("${network.admission.retry-after-seconds:5}")
+    private long retryAfterSeconds;
+
+    // guarded by this
+    private final Deque<Ticket> queue = new ArrayDeque<>();
+
+    private long inFlightBytes = 0;
+
+    private int heavyInFlight = 0;
+
+    private long batchInFlightBytes = 0;
+
+    private Counter queueFullRejections;
+
+    private Counter timeoutRejections;
+
+    private Timer queueTimer;
+
+    @PostConstruct
+    public void init() {
+        queueFullRejections = Counter.builder("network.admission.rejections").tag("reason", "queue-full").register(meterRegistry);
+        timeoutRejections = Counter.builder("network.admission.rejections").tag("reason", "queue-timeout").register(meterRegistry);
+        queueTimer = Timer.builder("network.admission.queue.time")
+                .description("Time spent by admitted requests waiting for admission")
+                .register(meterRegistry);
+        Gauge.builder("network.admission.in-flight.bytes", this, AdmissionController::getInFlightBytes)
+                .description("Estimated memory of the admitted requests")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("network.admission.batch.in-flight.bytes", this, AdmissionController::getBatchInFlightBytes)
+                .description("Estimated memory of the admitted batch requests")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("network.admission.heavy.in-flight", this, AdmissionController::getHeavyInFlight)
+                .register(meterRegistry);
+        Gauge.builder("network.admission.queue.size", this, AdmissionController::getQueueSize)
+                .register(meterRegistry);
+    }
+
+    private long getCaseSize(CaseKey key) {
+        return networkCache.getKnownSize(key).orElse(defaultCaseSizeMb * MB);
+    }
+
+    /**
+     * Admit a request using the network of a case, costing its size if the network is not cached.
+     */
+    public Ticket admitLoad(CaseKey key) {
+        Objects.requireNonNull(key);
+        return admit(networkCache.isCached(key) ? 0 : getCaseSize(key));
+    }
+
+    /**
+     * Admit a batch request using the network of a case, costing its size if the network is not cached. Waits until
+     * the request fits, without timeout.
+     *
+     * @throws InterruptedException if interrupted while waiting, for instance when the batch is cancelled
+     */
+    public Ticket admitBatchLoad(CaseKey key) throws InterruptedException {
+        Objects.requireNonNull(key);
+        Ticket ticket = new Ticket(networkCache.isCached(key) ? 0 : getCaseSize(key), true);
+        if (!enabled || ticket.cost == 0) {
+            return ticket;
+        }
+
+        long start = System.nanoTime();
+        synchronized (this) {
+            while (!queue.isEmpty() || !fits(ticket)
+                    || (batchInFlightBytes != 0 && batchInFlightBytes + ticket.cost > batchMemoryBudgetMb * MB)) {
+                wait();
+            }
+            take(ticket);
+        }
+        queueTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return ticket;
+    }
+
+    /**
+     * Admit a request writing the XML export of a case, costing the size of the network if the export is not cached.
+     */
+    public Ticket admitExport(CaseKey key, String version) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(version);
+        return exportCache.isCached(key, version) ? admit(0) : admitLoad(key);
+    }
+
+    private boolean fits(Ticket ticket) {
+        return (!ticket.heavy || heavyInFlight < maxHeavy)
+                && (inFlightBytes == 0 || inFlightBytes + ticket.cost <= memoryBudgetMb * MB);
+    }
+
+    private void take(Ticket ticket) {
+        ticket.admitted = true;
+        inFlightBytes += ticket.cost;
+        if (ticket.batch) {
+            batchInFlightBytes += ticket.cost;
+        }
+        if (ticket.heavy) {
+            heavyInFlight++;
+        }
+    }
+
+    private NetworkServerBusyException reject(Counter counter, String reason) {
+        counter.increment();
+        LOGGER.warn("Request rejected, {}: {} MB in flight, {} heavy requests, {} waiting", reason,
+                inFlightBytes / MB, heavyInFlight, queue.size());
+        return new NetworkServerBusyException("Server overloaded, " + reason, retryAfterSeconds);
+    }
+
+    private Ticket admit(long cost) {
+        Ticket ticket = new Ticket(cost, false);
+        if (!enabled || cost == 0) {
+            return ticket;
+        }
+
+        long start = System.nanoTime();
+        synchronized (this) {
+            if (queue.isEmpty() && fits(ticket)) {
+                take(ticket);
+                return ticket;
+            }
+            if (queue.size() >= queueCapacity) {
+                throw reject(queueFullRejections, "admission queue full");
+            }
+            queue.addLast(ticket);
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(queueTimeoutMs);
+            try {
+                while (queue.peekFirst() != ticket || !fits(ticket)) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.remove(ticket);
+                        notifyAll();
+                        throw reject(timeoutRejections, "admission queue timeout");
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            } catch (InterruptedException e) {
+                queue.remove(ticket);
+                notifyAll();
+                Thread.currentThread().interrupt();
+                throw new NetworkServerBusyException("Interrupted while waiting for admission", retryAfterSeconds);
+            }
+            queue.removeFirst();
+            take(ticket);
+            // the next request may fit too
+            notifyAll();
+        }
+        queueTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return ticket;
+    }
+
+    private synchronized void release(Ticket ticket) {
+        if (!ticket.admitted || ticket.closed) {
+            return;
+        }
+        ticket.closed = true;
+        inFlightBytes -= ticket.cost;
+        if (ticket.batch) {
+            batchInFlightBytes -= ticket.cost;
+        }
+        if (ticket.heavy) {
+            heavyInFlight--;
+        }
+        notifyAll();
+    }
+
+    public synchronized long getInFlightBytes() {
+        return inFlightBytes;
+    }
+
+    public synchronized long getBatchInFlightBytes() {
+        return batchInFlightBytes;
+    }
+
+    public synchronized int getHeavyInFlight() {
+        return heavyInFlight;
+    }
+
+    public synchronized int getQueueSize() {
+        return queue.size();
+    }
+}
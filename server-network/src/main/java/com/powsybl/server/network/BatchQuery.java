@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.powsybl.afs.ext.base.ScriptType;
+
+import java.util.Objects;
+
+/**
+ * A query script of a batch.
+ */
+public class BatchQuery {
+
+    private final ScriptType scriptType;
+
+    private final String script;
+
+    @JsonCreator
+    public BatchQuery(@JsonProperty("scriptType") ScriptType scriptType, @JsonProperty("script") String script) {
+        this.scriptType = scriptType != null ? scriptType : ScriptType.GROOVY;
+        this.script = Objects.requireNonNull(script, "script is missing");
+    }
+
+    public ScriptType getScriptType() {
+        return scriptType;
+    }
+
+    public String getScript() {
+        return script;
+    }
+}
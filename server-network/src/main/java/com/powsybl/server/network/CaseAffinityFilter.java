@@ -0,0 +1,216 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Forwards requests about a case to the replica owning it according to the {@link CaseAffinityRouter}. Forwarded
+ * requests are marked with a header so that they are always served by the replica receiving them, even if its view
+ * of the replicas differs. Requests are served locally if the owner cannot be reached within
+ * {@code network.affinity.connect-timeout-ms}, or does not start answering within
+ * {@code network.affinity.read-timeout-ms}.
+ */
+@Component
+public class CaseAffinityFilter extends OncePerRequestFilter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CaseAffinityFilter.class);
+
+    static final String FORWARDED_HEADER = "X-Network-Forwarded";
+
+    private static final Pattern CASE_PATH = Pattern.compile("^/rest/network/fileSystems/([^/]+)/nodes/([^/]+)(/.*)?$");
+
+    // hop-by-hop headers, not forwarded
+    private static final Set<String> EXCLUDED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        EXCLUDED_HEADERS.addAll(Arrays.asList(HttpHeaders.CONNECTION, HttpHeaders.TRANSFER_ENCODING, HttpHeaders.HOST,
+                HttpHeaders.CONTENT_LENGTH, "Keep-Alive", HttpHeaders.UPGRADE));
+    }
+
+    /**
+     * Request whose body has been read in memory, so that it can be read again if served locally.
+     */
+    static final class BufferedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        BufferedBodyRequest(HttpServletRequest request) throws IOException {
+            super(request);
+            body = StreamUtils.copyToByteArray(request.getInputStream());
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream is = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return is.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    // the whole body is already in memory: always ready, and read entirely as soon as available
+                    Objects.requireNonNull(readListener);
+                    try {
+                        readListener.onDataAvailable();
+                        readListener.onAllDataRead();
+                    } catch (IOException e) {
+                        readListener.onError(e);
+                    }
+                }
+
+                @Override
+                public int read() {
+                    return is.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return is.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static final ResponseErrorHandler NO_ERROR_HANDLER = new ResponseErrorHandler() {
+        @Override
+        public boolean hasError(ClientHttpResponse response) {
+            return false;
+        }
+
+        @Override
+        public void handleError(ClientHttpResponse response) {
+            // errors are sent back as is to the client
+        }
+    };
+
+    @Autowired
+    private CaseAffinityRouter router;
+
+    @Value("${network.affinity.connect-timeout-ms:1000}")
+    private int connectTimeoutMs;
+
+    @Value("${network.affinity.read-timeout-ms:120000}")
+    private int readTimeoutMs;
+
+    private RestTemplate restTemplate;
+
+    @PostConstruct
+    public void init() {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setBufferRequestBody(false);
+        // an owner which cannot be reached or does not answer in time is given up, and the request served locally
+        requestFactory.setConnectTimeout(connectTimeoutMs);
+        requestFactory.setReadTimeout(readTimeoutMs);
+        restTemplate = new RestTemplate(requestFactory);
+        restTemplate.setErrorHandler(NO_ERROR_HANDLER);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getHeader(FORWARDED_HEADER) != null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        Matcher matcher = CASE_PATH.matcher(request.getRequestURI().substring(request.getContextPath().length()));
+        Optional<ServiceInstance> owner = matcher.matches()
+                ? router.getRemoteOwner(new CaseKey(matcher.group(1), matcher.group(2)))
+                : Optional.empty();
+        if (!owner.isPresent()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        BufferedBodyRequest bufferedRequest = new BufferedBodyRequest(request);
+        try {
+            forward(bufferedRequest, response, owner.get());
+        } catch (ResourceAccessException e) {
+            if (response.isCommitted()) {
+                throw e;
+            }
+            LOGGER.warn("Cannot forward request to {}, serving it locally: {}", owner.get().getUri(), e.toString());
+            response.reset();
+            filterChain.doFilter(bufferedRequest, response);
+        }
+    }
+
+    private void forward(BufferedBodyRequest request, HttpServletResponse response, ServiceInstance owner) {
+        URI uri = UriComponentsBuilder.fromUri(owner.getUri())
+                .path(request.getRequestURI())
+                .query(request.getQueryString())
+                .build(true)
+                .toUri();
+        LOGGER.debug("Forwarding {} {} to {}", request.getMethod(), request.getRequestURI(), owner.getUri());
+
+        restTemplate.execute(uri, HttpMethod.resolve(request.getMethod()), clientRequest -> {
+            for (String name : Collections.list(request.getHeaderNames())) {
+                if (!EXCLUDED_HEADERS.contains(name)) {
+                    clientRequest.getHeaders().put(name, Collections.list(request.getHeaders(name)));
+                }
+            }
+            clientRequest.getHeaders().set(FORWARDED_HEADER, "true");
+            if (request.body.length > 0) {
+                StreamUtils.copy(request.body, clientRequest.getBody());
+            }
+        }, clientResponse -> {
+            response.setStatus(clientResponse.getRawStatusCode());
+            clientResponse.getHeaders().forEach((name, values) -> {
+                if (!EXCLUDED_HEADERS.contains(name)) {
+                    values.forEach(value -> response.addHeader(name, value));
+                }
+            });
+            StreamUtils.copy(clientResponse.getBody(), response.getOutputStream());
+            return null;
+        });
+    }
+}
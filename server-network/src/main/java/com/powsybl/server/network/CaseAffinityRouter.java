@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Assigns each case to one of the network server replicas registered in the discovery service, using a consistent
+ * hash ring of the replica instance ids, so that a case is loaded by only one replica and adding or removing a
+ * replica only moves the cases of its neighbours on the ring.
+ * <p>
+ * This replica is always part of its own ring, using its own instance id: the discovery service only lists the
+ * replicas which are up, which is not the case of this one during its warm-up, while the cases it is going to own
+ * have to be known to warm them up.
+ * <p>
+ * The ring is rebuilt each time the discovery client refreshes its view of the registered replicas, and at least
+ * every {@code network.affinity.refresh-interval-ms} when cases are routed.
+ */
+@Component
+public class CaseAffinityRouter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CaseAffinityRouter.class);
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    @Autowired
+    private DiscoveryClient discoveryClient;
+
+    @Autowired(required = false)
+    private Registration registration;
+
+    @Value("${network.affinity.enabled:true}")
+    private boolean enabled;
+
+    @Value("${network.affinity.virtual-nodes:100}")
+    private int virtualNodes;
+
+    @Value("${network.affinity.refresh-interval-ms:30000}")
+    private long refreshIntervalMs;
+
+    @Value("${spring.application.name:network}")
+    private String serviceId;
+
+    private volatile NavigableMap<Long, ServiceInstance> ring = Collections.emptyNavigableMap();
+
+    private volatile long refreshTime = 0;
+
+    private Set<String> ringInstanceIds = Collections.emptySet();
+
+    private static String getInstanceId(ServiceInstance instance) {
+        return instance.getInstanceId() != null ? instance.getInstanceId() : instance.getHost() + ":" + instance.getPort();
+    }
+
+    private static long hash(String value) {
+        return HASH_FUNCTION.hashString(value, StandardCharsets.UTF_8).asLong();
+    }
+
+    @EventListener(HeartbeatEvent.class)
+    public synchronized void refresh() {
+        if (!enabled || registration == null) {
+            return;
+        }
+        refreshTime = System.currentTimeMillis();
+        Map<String, ServiceInstance> instances = new TreeMap<>();
+        instances.put(getInstanceId(registration), registration);
+        for (ServiceInstance instance : discoveryClient.getInstances(serviceId)) {
+            if (!isLocal(instance)) {
+                instances.put(getInstanceId(instance), instance);
+            }
+        }
+        if (instances.keySet().equals(ringInstanceIds)) {
+            return;
+        }
+        NavigableMap<Long, ServiceInstance> newRing = new TreeMap<>();
+        instances.forEach((instanceId, instance) -> {
+            for (int i = 0; i < virtualNodes; i++) {
+                newRing.put(hash(instanceId + "#" + i), instance);
+            }
+        });
+        LOGGER.info("Case affinity ring rebuilt with replicas {}", instances.keySet());
+        ring = newRing;
+        ringInstanceIds = new HashSet<>(instances.keySet());
+    }
+
+    private Optional<ServiceInstance> getOwner(CaseKey key) {
+        Objects.requireNonNull(key);
+        if (!enabled || registration == null) {
+            return Optional.empty();
+        }
+        if (System.currentTimeMillis() - refreshTime >= refreshIntervalMs) {
+            refresh();
+        }
+        NavigableMap<Long, ServiceInstance> currentRing = ring;
+        Map.Entry<Long, ServiceInstance> entry = currentRing.ceilingEntry(hash(key.toString()));
+        return Optional.of(entry != null ? entry.getValue() : currentRing.firstEntry().getValue());
+    }
+
+    /**
+     * Get the replica owning a case, or an empty optional if the case is owned by this replica or if affinity is
+     * disabled.
+     */
+    public Optional<ServiceInstance> getRemoteOwner(CaseKey key) {
+        return getOwner(key).filter(owner -> !isLocal(owner));
+    }
+
+    /**
+     * Tell if a case is owned by this replica, always the case if affinity is disabled. Also answered before this
+     * replica is listed by the discovery service.
+     */
+    public boolean isLocalOwner(CaseKey key) {
+        return getOwner(key).map(this::isLocal).orElse(true);
+    }
+
+    private boolean isLocal(ServiceInstance instance) {
+        if (registration.getInstanceId() != null && instance.getInstanceId() != null) {
+            return registration.getInstanceId().equals(instance.getInstanceId());
+        }
+        return registration.getHost().equals(instance.getHost()) && registration.getPort() == instance.getPort();
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import com.powsybl.afs.AppFileSystem;
+import com.powsybl.afs.ext.base.ProjectCase;
+import com.powsybl.afs.storage.AppStorage;
+import com.powsybl.afs.storage.NodeInfo;
+import com.powsybl.afs.storage.events.AppStorageListener;
+import com.powsybl.afs.storage.events.NodeEvent;
+import com.powsybl.afs.storage.events.NodeEventList;
+import com.powsybl.afs.storage.events.NodeEventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Invalidates all the data cached for a case: its dependencies, its network, its export and its query results, either
+ * explicitly through the REST API or when storage node events are received.
+ * <p>
+ * A node event changing the data or the dependencies of a node, or removing it, invalidates the case of this node
+ * and all the cases depending on it, directly or transitively, found by following backward dependencies.
+ */
+@Component
+public class CaseInvalidationService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CaseInvalidationService.class);
+
+    /**
+     * Events changing the network of a node or of the nodes depending on it, names and descriptions updates are
+     * ignored.
+     */
+    private static final Set<NodeEventType> CONTENT_EVENT_TYPES = EnumSet.of(
+            NodeEventType.NODE_DATA_UPDATED,
+            NodeEventType.NODE_DATA_REMOVED,
+            NodeEventType.NODE_REMOVED,
+            NodeEventType.DEPENDENCY_ADDED,
+            NodeEventType.DEPENDENCY_REMOVED,
+            NodeEventType.TIME_SERIES_CREATED,
+            NodeEventType.TIME_SERIES_DATA_UPDATED,
+            NodeEventType.TIME_SERIES_CLEARED);
+
+    @Autowired
+    private CaseVersions caseVersions;
+
+    @Autowired
+    private NetworkCacheService networkCache;
+
+    @Autowired
+    private NetworkExportCache exportCache;
+
+    @Autowired
+    private QueryResultCache resultCache;
+
+    /**
+     * Listeners are only weakly referenced by the storage, keep them here.
+     */
+    private final Map<String, AppStorageListener> listeners = new ConcurrentHashMap<>();
+
+    private final Map<String, AppStorage> storages = new ConcurrentHashMap<>();
+
+    /**
+     * Start listening to the node events of a file system, if not already done.
+     */
+    public void watch(AppFileSystem fileSystem) {
+        Objects.requireNonNull(fileSystem);
+        listeners.computeIfAbsent(fileSystem.getName(), fileSystemName -> {
+            AppStorageListener listener = eventList -> onEvents(fileSystemName, eventList);
+            storages.put(fileSystemName, fileSystem.getStorage());
+            fileSystem.getStorage().addListener(listener);
+            LOGGER.info("Listening to node events of file system '{}'", fileSystemName);
+            return listener;
+        });
+    }
+
+    private static boolean changesContent(NodeEvent event) {
+        return CONTENT_EVENT_TYPES.contains(event.getType());
+    }
+
+    private void onEvents(String fileSystemName, NodeEventList eventList) {
+        if (!caseVersions.hasKnownCases(fileSystemName) && !networkCache.hasCachedNetworks(fileSystemName)) {
+            return;
+        }
+        AppStorage storage = storages.get(fileSystemName);
+
+        // ids of changed nodes and of the nodes depending on them, directly or not
+        Set<String> affectedIds = new LinkedHashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>();
+        for (NodeEvent event : eventList.getEvents()) {
+            if (changesContent(event) && affectedIds.add(event.getId())) {
+                LOGGER.debug("{} of node {} received", event.getType(), event.getId());
+                // a removed node has no dependencies anymore
+                if (event.getType() != NodeEventType.NODE_REMOVED) {
+                    toVisit.add(event.getId());
+                }
+            }
+        }
+        while (storage != null && !toVisit.isEmpty()) {
+            String nodeId = toVisit.poll();
+            try {
+                for (NodeInfo dependent : storage.getBackwardDependencies(nodeId)) {
+                    if (affectedIds.add(dependent.getId())) {
+                        toVisit.add(dependent.getId());
+                    }
+                }
+            } catch (Exception e) {
+                LOGGER.warn("Cannot get backward dependencies of node {}: {}", nodeId, e.toString());
+            }
+        }
+
+        for (String nodeId : affectedIds) {
+            CaseKey key = new CaseKey(fileSystemName, nodeId);
+            // the dependencies of a case whose network is still cached may have been forgotten
+            if (caseVersions.isKnown(key) || networkCache.isCached(key)) {
+                LOGGER.debug("Invalidating cached data of {}", key);
+                invalidate(key, null);
+            }
+        }
+    }
+
+    /**
+     * Invalidate the data cached for a case.
+     *
+     * @param projectCase the project case whose network cache has to be invalidated even if its network is not
+     *                    in the network cache, or {@code null}
+     * <p>
+     * Versions being derived from persisted state, a request may read the new version of the case while the old
+     * network is still cached. The network is evicted first, so that the export and the query results computed
+     * meanwhile from the old network are either removed afterwards or, being stored later, not cached at all.
+     */
+    public void invalidate(CaseKey key, ProjectCase projectCase) {
+        Objects.requireNonNull(key);
+        if (projectCase != null) {
+            networkCache.invalidate(key, projectCase);
+        } else {
+            networkCache.invalidate(key);
+        }
+        exportCache.invalidate(key);
+        resultCache.invalidate(key);
+        caseVersions.invalidate(key);
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import java.util.Objects;
+
+/**
+ * Identifies a project case served by the network server.
+ */
+public final class CaseKey {
+
+    private final String fileSystemName;
+
+    private final String nodeId;
+
+    public CaseKey(String fileSystemName, String nodeId) {
+        this.fileSystemName = Objects.requireNonNull(fileSystemName);
+        this.nodeId = Objects.requireNonNull(nodeId);
+    }
+
+    public String getFileSystemName() {
+        return fileSystemName;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fileSystemName, nodeId);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof CaseKey) {
+            CaseKey other = (CaseKey) obj;
+            return fileSystemName.equals(other.fileSystemName) && nodeId.equals(other.nodeId);
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return fileSystemName + "/" + nodeId;
+    }
+}
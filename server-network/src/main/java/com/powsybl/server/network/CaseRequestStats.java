@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Counts the requests per case. Counts are saved on shutdown to {@code network.warm-up.stats-file}, if set, and
+ * loaded back on startup, so that the most requested cases can be preloaded by the next run.
+ */
+@Component
+public class CaseRequestStats {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CaseRequestStats.class);
+
+    private static final String SEPARATOR = "\t";
+
+    @Value("${network.warm-up.stats-file:}")
+    private String statsFile;
+
+    private final Map<CaseKey, LongAdder> counts = new ConcurrentHashMap<>();
+
+    private final Map<CaseKey, Long> previousCounts = new HashMap<>();
+
+    @PostConstruct
+    public void load() {
+        if (statsFile.isEmpty()) {
+            return;
+        }
+        Path file = Paths.get(statsFile);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] tokens = line.split(SEPARATOR);
+                if (tokens.length == 3) {
+                    previousCounts.put(new CaseKey(tokens[0], tokens[1]), Long.parseLong(tokens[2]));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.warn("Cannot read case request statistics from '{}': {}", file, e.toString());
+        }
+    }
+
+    @PreDestroy
+    public void save() {
+        // keep statistics of the previous run if this one did not serve any request
+        if (statsFile.isEmpty() || counts.isEmpty()) {
+            return;
+        }
+        Path file = Paths.get(statsFile);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (Map.Entry<CaseKey, LongAdder> e : counts.entrySet()) {
+                writer.write(e.getKey().getFileSystemName() + SEPARATOR + e.getKey().getNodeId() + SEPARATOR + e.getValue().sum());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cannot write case request statistics to '{}': {}", file, e.toString());
+        }
+    }
+
+    public void record(CaseKey key) {
+        Objects.requireNonNull(key);
+        counts.computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Get the cases most requested by the previous run, most requested first.
+     */
+    public List<CaseKey> getPreviousMostRequested(int count) {
+        return previousCounts.entrySet().stream()
+                .sorted(Map.Entry.<CaseKey, Long>comparingByValue().reversed())
+                .limit(count)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import com.google.common.hash.Hashing;
+import com.powsybl.afs.ProjectDependency;
+import com.powsybl.afs.ProjectFile;
+import com.powsybl.afs.ProjectNode;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Versions of the project cases, identifying the cached data derived from their network.
+ * <p>
+ * The version of a case is derived from persisted state only, so that it does not change when the server restarts
+ * and is the same on all the replicas: it combines the modification time of its node and a hash of the ids and
+ * modification times of the nodes it depends on, directly or transitively. It is also used as entity tag by the
+ * REST API.
+ * <p>
+ * The dependencies of a case are read at its first request and kept until the case is invalidated, for a bounded
+ * number of cases.
+ */
+@Component
+public class CaseVersions {
+
+    private static final int MAX_DEPENDENCY_STAMPS = 10000;
+
+    // hashes of the dependencies of the cases requested so far, guarded by this
+    private final Map<CaseKey, String> dependencyStamps = new LinkedHashMap<CaseKey, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CaseKey, String> eldest) {
+            return size() > MAX_DEPENDENCY_STAMPS;
+        }
+    };
+
+    // guarded by this
+    private long invalidations = 0;
+
+    private static long getModificationTime(ProjectNode node) {
+        return node.getModificationDate().toInstant().toEpochMilli();
+    }
+
+    private static String getDependencyStamp(ProjectFile projectFile) {
+        Set<String> visitedIds = new HashSet<>();
+        SortedSet<String> dependencies = new TreeSet<>();
+        Deque<ProjectFile> toVisit = new ArrayDeque<>();
+        toVisit.add(projectFile);
+        while (!toVisit.isEmpty()) {
+            for (ProjectDependency<ProjectNode> dependency : toVisit.poll().getDependencies()) {
+                ProjectNode node = dependency.getProjectNode();
+                if (visitedIds.add(node.getId())) {
+                    dependencies.add(node.getId() + ":" + getModificationTime(node));
+                    if (node instanceof ProjectFile) {
+                        toVisit.add((ProjectFile) node);
+                    }
+                }
+            }
+        }
+        if (dependencies.isEmpty()) {
+            return "";
+        }
+        return Hashing.murmur3_128().hashString(String.join(",", dependencies), StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * Get the current version of a case.
+     */
+    public String getVersion(CaseKey key, ProjectFile projectFile) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(projectFile);
+        String stamp;
+        long invalidationCount;
+        synchronized (this) {
+            stamp = dependencyStamps.get(key);
+            invalidationCount = invalidations;
+        }
+        if (stamp == null) {
+            stamp = getDependencyStamp(projectFile);
+            synchronized (this) {
+                // the dependencies read may be outdated if a case has been invalidated meanwhile
+                if (invalidationCount == invalidations) {
+                    dependencyStamps.put(key, stamp);
+                }
+            }
+        }
+        String version = Long.toString(getModificationTime(projectFile), Character.MAX_RADIX);
+        return stamp.isEmpty() ? version : version + "-" + stamp;
+    }
+
+    /**
+     * Tell if a version of a case has been requested since its last invalidation, and so if its dependencies are
+     * kept.
+     */
+    public synchronized boolean isKnown(CaseKey key) {
+        return dependencyStamps.containsKey(key);
+    }
+
+    /**
+     * Tell if a version of a case of the given file system has been requested since its last invalidation.
+     */
+    public synchronized boolean hasKnownCases(String fileSystemName) {
+        return dependencyStamps.keySet().stream().anyMatch(key -> key.getFileSystemName().equals(fileSystemName));
+    }
+
+    /**
+     * Forget the dependencies of a case, so that they are read again at its next request.
+     */
+    public synchronized void invalidate(CaseKey key) {
+        Objects.requireNonNull(key);
+        dependencyStamps.remove(key);
+        invalidations++;
+    }
+}
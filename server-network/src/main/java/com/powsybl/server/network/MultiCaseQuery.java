@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.powsybl.afs.ext.base.ScriptType;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A query script to run on several cases, given either by their node IDs or by a project folder containing them.
+ */
+public class MultiCaseQuery {
+
+    private final List<String> nodeIds;
+
+    private final String folderId;
+
+    private final ScriptType scriptType;
+
+    private final String script;
+
+    @JsonCreator
+    public MultiCaseQuery(@JsonProperty("nodeIds") List<String> nodeIds, @JsonProperty("folderId") String folderId,
+                          @JsonProperty("scriptType") ScriptType scriptType, @JsonProperty("script") String script) {
+        if ((nodeIds == null) == (folderId == null)) {
+            throw new IllegalArgumentException("Either nodeIds or folderId is expected");
+        }
+        this.nodeIds = nodeIds != null ? nodeIds : Collections.emptyList();
+        this.folderId = folderId;
+        this.scriptType = scriptType != null ? scriptType : ScriptType.GROOVY;
+        this.script = Objects.requireNonNull(script, "script is missing");
+    }
+
+    public List<String> getNodeIds() {
+        return nodeIds;
+    }
+
+    public String getFolderId() {
+        return folderId;
+    }
+
+    public ScriptType getScriptType() {
+        return scriptType;
+    }
+
+    public String getScript() {
+        return script;
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import com.powsybl.afs.*;
+import com.powsybl.afs.ext.base.ProjectCase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Runs a query script on many cases in parallel, for study jobs.
+ * <p>
+ * At most {@code network.query.multi-case.parallelism} cases are queried at a time. Each case goes through the
+ * {@link AdmissionController} as a batch request, so that the networks loaded by the jobs share the memory budget of
+ * interactive requests and give way to them. Networks which were not cached before are evicted right after their
+ * query, so that a job does not evict the networks of interactive requests.
+ */
+@Component
+public class MultiCaseQueryService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MultiCaseQueryService.class);
+
+    @Autowired
+    private NetworkCacheService networkCache;
+
+    @Autowired
+    private NetworkQueryService queryService;
+
+    @Autowired
+    private QueryResultCache resultCache;
+
+    @Autowired
+    private CaseVersions caseVersions;
+
+    @Autowired
+    private AdmissionController admission;
+
+    @Value("${network.query.multi-case.parallelism:0}")
+    private int parallelism;
+
+    @Value("${network.query.multi-case.timeout-ms:86400000}")
+    private long timeoutMs;
+
+    private ForkJoinPool pool;
+
+    private ExecutorService jobExecutor;
+
+    /**
+     * Receives the results of a multi-case query.
+     */
+    public interface CaseResultHandler {
+
+        /**
+         * Called for each case, with either its JSON result or the error it failed with.
+         */
+        void onResult(String nodeId, String resultJson, Exception error) throws IOException;
+    }
+
+    private static final class CaseResult {
+
+        private final String nodeId;
+
+        private final String resultJson;
+
+        private CaseResult(String nodeId, String resultJson) {
+            this.nodeId = nodeId;
+            this.resultJson = resultJson;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        pool = new ForkJoinPool(parallelism > 0 ? parallelism : Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        jobExecutor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "network-multi-case-job");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        jobExecutor.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    /**
+     * Time budget of a multi-case query, {@code network.query.multi-case.timeout-ms}.
+     */
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    /**
+     * Get the IDs of the cases of a project folder and of its sub folders.
+     */
+    public List<String> getCaseIds(AppFileSystem fileSystem, String folderId) {
+        Objects.requireNonNull(fileSystem);
+        Objects.requireNonNull(folderId);
+        List<String> nodeIds = new ArrayList<>();
+        Deque<ProjectFolder> folders = new ArrayDeque<>();
+        folders.add(fileSystem.findProjectFolder(folderId));
+        while (!folders.isEmpty()) {
+            for (ProjectNode child : folders.poll().getChildren()) {
+                if (child instanceof ProjectFolder) {
+                    folders.add((ProjectFolder) child);
+                } else if (child instanceof ProjectCase) {
+                    nodeIds.add(child.getId());
+                }
+            }
+        }
+        return nodeIds;
+    }
+
+    private String query(AppFileSystem fileSystem, String nodeId, MultiCaseQuery query) throws InterruptedException {
+        CaseKey key = new CaseKey(fileSystem.getName(), nodeId);
+        ProjectFile projectFile = fileSystem.findProjectFile(nodeId, ProjectFile.class);
+        if (!(projectFile instanceof ProjectCase)) {
+            throw new IllegalArgumentException("Node " + nodeId + " is not a case");
+        }
+        String version = caseVersions.getVersion(key, projectFile);
+        QueryResultCache.Key resultKey = new QueryResultCache.Key(key, version, query.getScriptType(), query.getScript());
+        Optional<String> cachedResult = resultCache.get(resultKey);
+        if (cachedResult.isPresent()) {
+            return cachedResult.get();
+        }
+
+        boolean cached = networkCache.isCached(key);
+        try (AdmissionController.Ticket ticket = admission.admitBatchLoad(key)) {
+            long invalidationCount = resultCache.getInvalidationCount();
+            try (NetworkCacheService.Lease lease = networkCache.acquire(key, (ProjectCase) projectFile)) {
+                String resultJson = queryService.query(lease.getNetwork(), query.getScriptType(), query.getScript());
+                resultCache.put(resultKey, resultJson, invalidationCount);
+                return resultJson;
+            } finally {
+                if (!cached) {
+                    networkCache.evictIfUnused(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Run a query on cases of a file system. Results are given to the handler, from the calling thread, in order of
+     * completion. If the handler fails, for instance because the client is gone, the remaining cases are cancelled.
+     */
+    public void queryAll(AppFileSystem fileSystem, List<String> nodeIds, MultiCaseQuery query, CaseResultHandler handler) throws IOException {
+        Objects.requireNonNull(fileSystem);
+        Objects.requireNonNull(nodeIds);
+        Objects.requireNonNull(query);
+        Objects.requireNonNull(handler);
+
+        LOGGER.info("Querying {} cases of {}", nodeIds.size(), fileSystem.getName());
+        // submitted through Executor.execute as plain future tasks, so that cancelled cases waiting for admission or
+        // running their query are interrupted, which tasks created by the fork/join pool itself are not
+        CompletionService<CaseResult> completionService = new ExecutorCompletionService<>(pool::execute);
+        Map<Future<CaseResult>, String> pending = new HashMap<>();
+        for (String nodeId : new LinkedHashSet<>(nodeIds)) {
+            pending.put(completionService.submit(() -> new CaseResult(nodeId, query(fileSystem, nodeId, query))), nodeId);
+        }
+
+        try {
+            while (!pending.isEmpty()) {
+                Future<CaseResult> future = completionService.take();
+                String nodeId = pending.remove(future);
+                try {
+                    CaseResult result = future.get();
+                    handler.onResult(result.nodeId, result.resultJson, null);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    handler.onResult(nodeId, null, cause instanceof Exception ? (Exception) cause : e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pending.keySet().forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * Run {@link #queryAll} in the background. The completion callback is given the error the query failed with, or
+     * {@code null}. Cancelling the returned future cancels the remaining cases.
+     */
+    public Future<?> start(AppFileSystem fileSystem, List<String> nodeIds, MultiCaseQuery query, CaseResultHandler handler,
+                           Consumer<Exception> onCompletion) {
+        Objects.requireNonNull(onCompletion);
+        return jobExecutor.submit(() -> {
+            try {
+                queryAll(fileSystem, nodeIds, query, handler);
+                onCompletion.accept(null);
+            } catch (Exception e) {
+                LOGGER.warn("Query of {} cases of {} failed: {}", nodeIds.size(), fileSystem.getName(), e.toString());
+                onCompletion.accept(e);
+            }
+        });
+    }
+}
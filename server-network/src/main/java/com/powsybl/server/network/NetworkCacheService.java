@@ -0,0 +1,394 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import com.google.common.collect.Iterables;
+import com.powsybl.afs.ext.base.ProjectCase;
+import com.powsybl.iidm.network.Network;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Memory bounded cache of the networks of project cases.
+ * <p>
+ * Each network is weighted by an estimation of its heap footprint based on its number of buses, branches and
+ * injections. When the total weight exceeds {@code network.cache.max-size-mb}, least recently used networks are
+ * evicted, except the ones pinned by a {@link Lease} because a request is using them. The network cache of the
+ * project case is invalidated along with the evicted network, so that the network is really released.
+ */
+@Component
+public class NetworkCacheService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NetworkCacheService.class);
+
+    private static final long MB = 1024L * 1024L;
+
+    // rough heap footprint of each kind of equipment, including its state and its topology
+    private static final long BUS_BYTES = 2048;
+    private static final long BRANCH_BYTES = 3072;
+    private static final long INJECTION_BYTES = 1536;
+    private static final long SWITCH_BYTES = 768;
+    private static final long CONTAINER_BYTES = 4096;
+
+    private static final int MAX_KNOWN_SIZES = 10000;
+
+    private static final class Entry {
+
+        private final ProjectCase projectCase;
+
+        private final Network network;
+
+        private final long weight;
+
+        private int pins = 0;
+
+        private Entry(ProjectCase projectCase, Network network, long weight) {
+            this.projectCase = projectCase;
+            this.network = network;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * A network pinned in the cache until the lease is closed.
+     */
+    public final class Lease implements AutoCloseable {
+
+        private final CaseKey key;
+
+        private final Entry entry;
+
+        private boolean closed = false;
+
+        private Lease(CaseKey key, Entry entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+
+        public Network getNetwork() {
+            return entry.network;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(key, entry);
+            }
+        }
+    }
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${network.cache.max-size-mb:2048}")
+    private long maxSizeMb;
+
+    // guarded by this
+    private final LinkedHashMap<CaseKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // guarded by this
+    private final Map<CaseKey, CompletableFuture<Entry>> loads = new HashMap<>();
+
+    // estimated sizes of the networks loaded so far, cached or not, guarded by this
+    private final Map<CaseKey, Long> knownSizes = new LinkedHashMap<CaseKey, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CaseKey, Long> eldest) {
+            return size() > MAX_KNOWN_SIZES;
+        }
+    };
+
+    private long residentBytes = 0;
+
+    private Counter hits;
+
+    private Counter misses;
+
+    private Counter evictions;
+
+    private Counter coalescedLoads;
+
+    private Timer loadTimer;
+
+    @PostConstruct
+    public void init() {
+        hits = Counter.builder("network.cache.requests").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("network.cache.requests").tag("result", "miss").register(meterRegistry);
+        evictions = Counter.builder("network.cache.evictions").register(meterRegistry);
+        coalescedLoads = Counter.builder("network.cache.loads.coalesced")
+                .description("Requests which waited for a load already in progress")
+                .register(meterRegistry);
+        loadTimer = Timer.builder("network.cache.loads")
+                .description("Network loads")
+                .register(meterRegistry);
+        Gauge.builder("network.cache.resident.bytes", this, NetworkCacheService::getResidentBytes)
+                .description("Estimated heap size of the cached networks")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("network.cache.size", this, NetworkCacheService::getSize)
+                .description("Number of cached networks")
+                .register(meterRegistry);
+        Gauge.builder("network.cache.hit.ratio", this, NetworkCacheService::getHitRatio)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Estimate the heap footprint of a network.
+     */
+    public static long estimateSize(Network network) {
+        Objects.requireNonNull(network);
+        long buses = Iterables.size(network.getBusBreakerView().getBuses());
+        long branches = (long) network.getLineCount() + network.getTwoWindingsTransformerCount()
+                + network.getThreeWindingsTransformerCount() + network.getHvdcLineCount();
+        long injections = (long) network.getGeneratorCount() + network.getLoadCount() + network.getShuntCompensatorCount()
+                + network.getStaticVarCompensatorCount() + network.getDanglingLineCount() + network.getBusbarSectionCount()
+                + network.getHvdcConverterStationCount();
+        long containers = (long) network.getSubstationCount() + network.getVoltageLevelCount();
+        return buses * BUS_BYTES + branches * BRANCH_BYTES + injections * INJECTION_BYTES
+                + network.getSwitchCount() * SWITCH_BYTES + containers * CONTAINER_BYTES;
+    }
+
+    /**
+     * Get the network of a project case, loading it if not cached, and pin it until the returned lease is closed.
+     * <p>
+     * Only one load of a given case is in progress at a time: requests arriving while the network is being loaded
+     * wait for this load instead of starting another one. Networks of different cases are loaded concurrently. If
+     * the case is invalidated during the load, the loaded network is discarded and loaded again.
+     */
+    public Lease acquire(CaseKey key, ProjectCase projectCase) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(projectCase);
+
+        while (true) {
+            CompletableFuture<Entry> load;
+            boolean loader = false;
+            synchronized (this) {
+                Entry entry = entries.get(key);
+                if (entry != null) {
+                    hits.increment();
+                    entry.pins++;
+                    return new Lease(key, entry);
+                }
+                load = loads.get(key);
+                if (load == null) {
+                    load = new CompletableFuture<>();
+                    loads.put(key, load);
+                    loader = true;
+                }
+            }
+
+            Entry entry;
+            if (loader) {
+                misses.increment();
+                entry = load(key, projectCase, load);
+            } else {
+                coalescedLoads.increment();
+                entry = join(load);
+            }
+            if (entry != null) {
+                return new Lease(key, entry);
+            }
+            LOGGER.info("{} invalidated while loading its network, loading it again", key);
+        }
+    }
+
+    /**
+     * Wait for a load in progress and pin its network, or return {@code null} if the loaded network is stale.
+     */
+    private Entry join(CompletableFuture<Entry> load) {
+        Entry entry;
+        try {
+            entry = load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        if (entry != null) {
+            synchronized (this) {
+                entry.pins++;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Load a network and pin it, or return {@code null} if the case has been invalidated during the load.
+     */
+    private Entry load(CaseKey key, ProjectCase projectCase, CompletableFuture<Entry> load) {
+        Entry loaded;
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            Network network = projectCase.getNetwork();
+            loaded = new Entry(projectCase, network, estimateSize(network));
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                loads.remove(key, load);
+            }
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            sample.stop(loadTimer);
+        }
+        LOGGER.info("Network of {} loaded, estimated size {} MB", key, loaded.weight / MB);
+
+        List<Entry> evicted = new ArrayList<>();
+        boolean stale;
+        synchronized (this) {
+            // the load has been removed if the case has been invalidated meanwhile
+            stale = !loads.remove(key, load);
+            knownSizes.put(key, loaded.weight);
+            if (!stale) {
+                entries.put(key, loaded);
+                residentBytes += loaded.weight;
+                loaded.pins++;
+                evict(evicted);
+            }
+        }
+        if (stale) {
+            // the project case keeps the stale network in its own cache, drop it as well
+            invalidateProjectCase(loaded);
+            load.complete(null);
+            return null;
+        }
+        load.complete(loaded);
+        evicted.forEach(NetworkCacheService::invalidateProjectCase);
+        return loaded;
+    }
+
+    /**
+     * Remove the network of a project case from the cache and invalidate the network cache of the project case.
+     * Requests still holding a lease keep using the removed network.
+     */
+    public void invalidate(CaseKey key, ProjectCase projectCase) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(projectCase);
+        synchronized (this) {
+            loads.remove(key);
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                residentBytes -= entry.weight;
+            }
+        }
+        projectCase.invalidateNetworkCache();
+    }
+
+    /**
+     * Remove the network of a project case from the cache and, if it was cached, invalidate the network cache of the
+     * project case. A network being loaded is discarded, along with the network cache of the project case, once
+     * loaded.
+     */
+    public void invalidate(CaseKey key) {
+        Objects.requireNonNull(key);
+        Entry entry;
+        synchronized (this) {
+            loads.remove(key);
+            entry = entries.remove(key);
+            if (entry != null) {
+                residentBytes -= entry.weight;
+            }
+        }
+        if (entry != null) {
+            invalidateProjectCase(entry);
+        }
+    }
+
+    public synchronized boolean isCached(CaseKey key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Tell if a network of a case of the given file system is cached.
+     */
+    public synchronized boolean hasCachedNetworks(String fileSystemName) {
+        return entries.keySet().stream().anyMatch(key -> key.getFileSystemName().equals(fileSystemName));
+    }
+
+    /**
+     * Get the estimated size of the network of a case, if it has already been loaded.
+     */
+    public synchronized OptionalLong getKnownSize(CaseKey key) {
+        Long size = knownSizes.get(key);
+        return size != null ? OptionalLong.of(size) : OptionalLong.empty();
+    }
+
+    /**
+     * Remove the network of a project case from the cache if no request is using it.
+     */
+    public void evictIfUnused(CaseKey key) {
+        Objects.requireNonNull(key);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null || entry.pins > 0) {
+                return;
+            }
+            entries.remove(key);
+            residentBytes -= entry.weight;
+            evictions.increment();
+        }
+        invalidateProjectCase(entry);
+    }
+
+    private void release(CaseKey key, Entry entry) {
+        List<Entry> evicted = new ArrayList<>();
+        synchronized (this) {
+            entry.pins--;
+            if (entries.get(key) == entry) {
+                evict(evicted);
+            }
+        }
+        evicted.forEach(NetworkCacheService::invalidateProjectCase);
+    }
+
+    private void evict(List<Entry> evicted) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (residentBytes > maxSizeMb * MB && it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.pins == 0) {
+                it.remove();
+                residentBytes -= entry.weight;
+                evictions.increment();
+                evicted.add(entry);
+            }
+        }
+    }
+
+    private static void invalidateProjectCase(Entry entry) {
+        try {
+            entry.projectCase.invalidateNetworkCache();
+        } catch (Exception e) {
+            LOGGER.error(e.toString(), e);
+        }
+    }
+
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    private double getHitRatio() {
+        double total = hits.count() + misses.count();
+        return total > 0 ? hits.count() / total : 0;
+    }
+}
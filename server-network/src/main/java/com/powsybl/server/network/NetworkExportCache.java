@@ -0,0 +1,338 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import com.google.common.io.ByteStreams;
+import com.powsybl.afs.ext.base.ProjectCase;
+import com.powsybl.commons.exceptions.UncheckedXmlStreamException;
+import com.powsybl.iidm.network.Network;
+import com.powsybl.iidm.xml.NetworkXml;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache of the gzipped XML export of project case networks.
+ * <p>
+ * Exports are stored on disk, in a directory of this instance created in {@code network.export-cache.directory}, and
+ * the most recently used ones are also kept in memory. Both tiers are bounded ({@code network.export-cache.memory-budget-mb} and
+ * {@code network.export-cache.disk-budget-mb}) and evicted in LRU order. An export is identified by the version of
+ * its case, see {@link CaseVersions}.
+ */
+@Component
+public class NetworkExportCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NetworkExportCache.class);
+
+    private static final long MB = 1024L * 1024L;
+
+    private static final class Entry {
+
+        private final String version;
+
+        private final Path file;
+
+        private final long size;
+
+        private byte[] bytes;
+
+        private Entry(String version, Path file, long size) {
+            this.version = version;
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    @Autowired
+    private NetworkCacheService networkCache;
+
+    @Value("${network.export-cache.memory-budget-mb:256}")
+    private long memoryBudgetMb;
+
+    @Value("${network.export-cache.disk-budget-mb:2048}")
+    private long diskBudgetMb;
+
+    @Value("${network.export-cache.directory:}")
+    private String directory;
+
+    // locks of the exports in progress
+    private final Map<CaseKey, Object> exportLocks = new ConcurrentHashMap<>();
+
+    // guarded by this
+    private final LinkedHashMap<CaseKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long memoryBytes = 0;
+
+    private long diskBytes = 0;
+
+    // number of invalidations so far, guarded by this
+    private long invalidations = 0;
+
+    private Path cacheDir;
+
+    @PostConstruct
+    public void init() throws IOException {
+        Path baseDir = directory.isEmpty() ? Paths.get(System.getProperty("java.io.tmpdir"), "network-export-cache")
+                                           : Paths.get(directory);
+        Files.createDirectories(baseDir);
+        // the base directory may be shared by several replicas, each one only manages its own exports
+        cacheDir = Files.createTempDirectory(baseDir, "instance-");
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        synchronized (this) {
+            entries.clear();
+            memoryBytes = 0;
+            diskBytes = 0;
+        }
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            files.forEach(NetworkExportCache::deleteQuietly);
+        }
+        deleteQuietly(cacheDir);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot delete cached export '{}': {}", file, e.toString());
+        }
+    }
+
+    /**
+     * Forget the export of a case. An export in progress is not cached either, as it may be the export of a network
+     * being invalidated under a version already up to date.
+     */
+    public void invalidate(CaseKey key) {
+        Objects.requireNonNull(key);
+        Entry removed;
+        synchronized (this) {
+            invalidations++;
+            removed = entries.remove(key);
+            if (removed != null) {
+                release(removed);
+            }
+        }
+        if (removed != null) {
+            deleteQuietly(removed.file);
+        }
+    }
+
+    /**
+     * Check if the export of a case in the given version is cached.
+     */
+    public synchronized boolean isCached(CaseKey key, String version) {
+        Entry entry = entries.get(key);
+        return entry != null && entry.version.equals(version);
+    }
+
+    /**
+     * Write the XML export of a case, in the given version, exporting the network, taken from the network cache, only
+     * if it is not already cached.
+     *
+     * @param gzipped write the gzipped export as is, to be sent with a gzip content encoding
+     */
+    public void write(CaseKey key, String version, ProjectCase projectCase, OutputStream os, boolean gzipped) throws IOException {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(version);
+        Objects.requireNonNull(projectCase);
+        Objects.requireNonNull(os);
+
+        try (InputStream is = open(key, version, projectCase)) {
+            if (gzipped) {
+                ByteStreams.copy(is, os);
+            } else {
+                try (InputStream gzis = new GZIPInputStream(is)) {
+                    ByteStreams.copy(gzis, os);
+                }
+            }
+        }
+    }
+
+    /**
+     * Create the export of a case in the given version, if not already cached.
+     */
+    public void prepare(CaseKey key, String version, ProjectCase projectCase) throws IOException {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(version);
+        Objects.requireNonNull(projectCase);
+        open(key, version, projectCase).close();
+    }
+
+    /**
+     * Read a private copy of a part of the network of a case from its cached export, which is created if needed, so
+     * that the copy can be modified. Only the given substations and voltage levels, and the equipments between them,
+     * are read.
+     *
+     * @param voltageLevelIds the voltage levels to read, all belonging to the substations to read
+     */
+    public Network readCopy(CaseKey key, String version, ProjectCase projectCase, Set<String> substationIds, Set<String> voltageLevelIds) throws IOException {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(version);
+        Objects.requireNonNull(projectCase);
+        ByteArrayOutputStream filtered = new ByteArrayOutputStream();
+        try (InputStream is = new GZIPInputStream(open(key, version, projectCase))) {
+            SubNetworkXmlFilter.filter(is, filtered, substationIds, voltageLevelIds);
+        } catch (XMLStreamException e) {
+            throw new UncheckedXmlStreamException(e);
+        }
+        return NetworkXml.read(new ByteArrayInputStream(filtered.toByteArray()));
+    }
+
+    private InputStream open(CaseKey key, String version, ProjectCase projectCase) throws IOException {
+        InputStream is = lookup(key, version);
+        if (is == null) {
+            // only one export at a time of a given case, locks being kept only while in use
+            Object lock = exportLocks.computeIfAbsent(key, k -> new Object());
+            try {
+                synchronized (lock) {
+                    is = lookup(key, version);
+                    if (is == null) {
+                        long invalidationCount;
+                        synchronized (this) {
+                            invalidationCount = invalidations;
+                        }
+                        try (NetworkCacheService.Lease lease = networkCache.acquire(key, projectCase)) {
+                            is = export(key, version, lease.getNetwork(), invalidationCount);
+                        }
+                    }
+                }
+            } finally {
+                exportLocks.remove(key, lock);
+            }
+        }
+        return is;
+    }
+
+    private InputStream lookup(CaseKey key, String version) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null || !entry.version.equals(version)) {
+                return null;
+            }
+            if (entry.bytes != null) {
+                return new ByteArrayInputStream(entry.bytes);
+            }
+        }
+        try {
+            return Files.newInputStream(entry.file);
+        } catch (IOException e) {
+            // evicted meanwhile
+            LOGGER.debug("Cached export of {} is not available anymore: {}", key, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Export a network and cache its export, unless a case has been invalidated since {@code invalidationCount} was
+     * got, before acquiring the network.
+     */
+    private InputStream export(CaseKey key, String version, Network network, long invalidationCount) throws IOException {
+        Path file = cacheDir.resolve(UUID.randomUUID() + ".xml.gz");
+        try (OutputStream os = new GZIPOutputStream(Files.newOutputStream(file))) {
+            NetworkXml.write(network, os);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(file);
+            throw e;
+        }
+        long size = Files.size(file);
+        LOGGER.info("Network of {} exported, {} bytes compressed", key, size);
+
+        Entry entry = new Entry(version, file, size);
+        byte[] bytes = size <= memoryBudgetMb * MB ? Files.readAllBytes(file) : null;
+        entry.bytes = bytes;
+
+        List<Path> evictedFiles = new ArrayList<>();
+        boolean cached;
+        synchronized (this) {
+            cached = invalidationCount == invalidations;
+            if (cached) {
+                Entry previous = entries.put(key, entry);
+                if (previous != null) {
+                    release(previous);
+                    evictedFiles.add(previous.file);
+                }
+                diskBytes += entry.size;
+                if (entry.bytes != null) {
+                    memoryBytes += entry.size;
+                }
+                evict(key, evictedFiles);
+            }
+        }
+        evictedFiles.forEach(NetworkExportCache::deleteQuietly);
+
+        if (!cached) {
+            LOGGER.debug("{} invalidated while exporting its network, export not cached", key);
+            if (bytes != null) {
+                deleteQuietly(file);
+            } else {
+                return Files.newInputStream(file, StandardOpenOption.DELETE_ON_CLOSE);
+            }
+        }
+        return bytes != null ? new ByteArrayInputStream(bytes) : Files.newInputStream(file);
+    }
+
+    private void release(Entry entry) {
+        diskBytes -= entry.size;
+        if (entry.bytes != null) {
+            memoryBytes -= entry.size;
+            entry.bytes = null;
+        }
+    }
+
+    /**
+     * Evict least recently used exports, other than the one just added, until both tiers fit their budget.
+     */
+    private void evict(CaseKey added, List<Path> evictedFiles) {
+        Iterator<Map.Entry<CaseKey, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext() && (memoryBytes > memoryBudgetMb * MB || diskBytes > diskBudgetMb * MB)) {
+            Map.Entry<CaseKey, Entry> e = it.next();
+            if (e.getKey().equals(added)) {
+                continue;
+            }
+            Entry entry = e.getValue();
+            if (diskBytes > diskBudgetMb * MB) {
+                it.remove();
+                release(entry);
+                evictedFiles.add(entry.file);
+            } else if (entry.bytes != null) {
+                memoryBytes -= entry.size;
+                entry.bytes = null;
+            }
+        }
+    }
+
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+}
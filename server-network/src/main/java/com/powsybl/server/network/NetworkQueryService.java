@@ -0,0 +1,272 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import com.google.common.hash.Hashing;
+import com.powsybl.afs.ext.base.ScriptType;
+import com.powsybl.iidm.network.Network;
+import groovy.json.JsonOutput;
+import groovy.lang.Binding;
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+import groovy.transform.ThreadInterrupt;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+import org.codehaus.groovy.control.customizers.ImportCustomizer;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs query scripts against networks taken from the {@link NetworkCacheService}, the network being bound to the
+ * {@code network} variable of the script and the result of the script serialized to JSON.
+ * <p>
+ * Queries used to be run by {@link com.powsybl.afs.ext.base.ProjectCase#queryNetwork}, scripts written for it are
+ * supported as is: the IIDM network API is imported by default and results are serialized by Groovy
+ * {@link JsonOutput}.
+ * <p>
+ * Compiled scripts are kept in a LRU cache of {@code network.query.script-cache-size} entries, keyed by script type
+ * and content hash. Queries are run on a dedicated pool of {@code network.query.threads} threads, with at most
+ * {@code network.query.queue-capacity} waiting queries, and fail if not completed within their time budget.
+ * <p>
+ * Timed out queries are interrupted. Scripts are compiled with {@link ThreadInterrupt}, so that they check for
+ * interruption at each loop iteration and method or closure call, and stop with an {@link InterruptedException}.
+ * A script busy in a single long Java call, for instance loading a network or iterating over a large collection
+ * with a Java method, only stops once this call returns, or earlier if the call itself handles interruption.
+ */
+@Component
+public class NetworkQueryService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NetworkQueryService.class);
+
+    @Value("${network.query.threads:0}")
+    private int threads;
+
+    @Value("${network.query.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${network.query.timeout-ms:60000}")
+    private long maxTimeoutMs;
+
+    @Value("${network.query.retry-after-seconds:5}")
+    private long retryAfterSeconds;
+
+    @Value("${network.query.batch-parallelism:0}")
+    private int batchParallelism;
+
+    @Value("${network.query.script-cache-size:200}")
+    private int scriptCacheSize;
+
+    // guarded by itself
+    private Map<String, Class<? extends Script>> scripts;
+
+    private ThreadPoolExecutor executor;
+
+    private ScheduledExecutorService timeoutScheduler;
+
+    private ForkJoinPool batchPool;
+
+    /**
+     * Receives the results of a batch of queries.
+     */
+    public interface BatchResultHandler {
+
+        /**
+         * Called for each query of the batch, with either its JSON result or the error it failed with.
+         */
+        void onResult(int index, String resultJson, Exception error) throws IOException;
+    }
+
+    private static final class IndexedResult {
+
+        private final int index;
+
+        private final String resultJson;
+
+        private IndexedResult(int index, String resultJson) {
+            this.index = index;
+            this.resultJson = resultJson;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        scripts = new LinkedHashMap<String, Class<? extends Script>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Class<? extends Script>> eldest) {
+                return size() > scriptCacheSize;
+            }
+        };
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+            r -> new Thread(r, "network-query-" + threadCount.incrementAndGet()));
+        timeoutScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "network-query-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        batchPool = new ForkJoinPool(batchParallelism > 0 ? batchParallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+        timeoutScheduler.shutdownNow();
+        batchPool.shutdownNow();
+    }
+
+    private static CompilerConfiguration createCompilerConfiguration() {
+        ImportCustomizer imports = new ImportCustomizer();
+        imports.addStarImports("com.powsybl.iidm.network");
+        CompilerConfiguration configuration = new CompilerConfiguration();
+        configuration.addCompilationCustomizers(imports, new ASTTransformationCustomizer(ThreadInterrupt.class));
+        return configuration;
+    }
+
+    private Class<? extends Script> getScriptClass(ScriptType scriptType, String scriptContent) {
+        if (scriptType != ScriptType.GROOVY) {
+            throw new IllegalArgumentException("Script type not supported: " + scriptType);
+        }
+        String key = scriptType + ":" + Hashing.sha256().hashString(scriptContent, StandardCharsets.UTF_8);
+        Class<? extends Script> scriptClass;
+        synchronized (scripts) {
+            scriptClass = scripts.get(key);
+        }
+        if (scriptClass == null) {
+            // a new shell, so that classes of evicted scripts can be unloaded with their class loader
+            scriptClass = new GroovyShell(createCompilerConfiguration()).parse(scriptContent).getClass();
+            synchronized (scripts) {
+                scripts.put(key, scriptClass);
+            }
+        }
+        return scriptClass;
+    }
+
+    public String query(Network network, ScriptType scriptType, String scriptContent) {
+        Objects.requireNonNull(network);
+        Objects.requireNonNull(scriptType);
+        Objects.requireNonNull(scriptContent);
+
+        Binding binding = new Binding();
+        binding.setVariable("network", network);
+        Object result = InvokerHelper.createScript(getScriptClass(scriptType, scriptContent), binding).run();
+        return JsonOutput.toJson(result);
+    }
+
+    /**
+     * Run a task on the query pool.
+     *
+     * @param timeoutMs time budget of the task, capped to {@code network.query.timeout-ms}, or {@code null} for the
+     *                  maximum budget
+     * @param onEnd called once the task does not run anymore: when it ends, even after its time budget, or when its
+     *              time budget is exceeded before it starts, in which case the task is not run at all. Not called if
+     *              the task is rejected.
+     * @throws NetworkServerBusyException if the queue of the pool is full
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task, Long timeoutMs, Runnable onEnd) {
+        Objects.requireNonNull(task);
+        Objects.requireNonNull(onEnd);
+        long timeout = timeoutMs != null && timeoutMs > 0 ? Math.min(timeoutMs, maxTimeoutMs) : maxTimeoutMs;
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicBoolean started = new AtomicBoolean(false);
+        Future<?> future;
+        try {
+            future = executor.submit(() -> {
+                if (!started.compareAndSet(false, true)) {
+                    // timed out while waiting in the queue
+                    return;
+                }
+                try {
+                    result.complete(task.call());
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                } finally {
+                    onEnd.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Query rejected, {} queries waiting", executor.getQueue().size());
+            throw new NetworkServerBusyException("Too many queries in progress", retryAfterSeconds);
+        }
+        ScheduledFuture<?> timeoutFuture = timeoutScheduler.schedule(() -> {
+            if (result.completeExceptionally(new QueryTimeoutException(timeout))) {
+                if (started.compareAndSet(false, true)) {
+                    future.cancel(false);
+                    onEnd.run();
+                } else {
+                    future.cancel(true);
+                }
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+        result.whenComplete((value, throwable) -> timeoutFuture.cancel(false));
+        return result;
+    }
+
+    /**
+     * Run a batch of independent read-only queries in parallel on the batch pool. Results are given to the handler,
+     * from the calling thread, in order of completion. Queries not completed within the time budget of the batch are
+     * interrupted and reported as failed.
+     *
+     * @param timeoutMs time budget of the whole batch, capped to {@code network.query.timeout-ms}, or {@code null}
+     *                  for the maximum budget
+     */
+    public void queryAll(List<Callable<String>> queries, Long timeoutMs, BatchResultHandler handler) throws IOException {
+        Objects.requireNonNull(queries);
+        Objects.requireNonNull(handler);
+        long timeout = timeoutMs != null && timeoutMs > 0 ? Math.min(timeoutMs, maxTimeoutMs) : maxTimeoutMs;
+        long deadline = System.currentTimeMillis() + timeout;
+
+        // submitted through Executor.execute as plain future tasks: tasks created by the fork/join pool itself are
+        // not interrupted when cancelled
+        CompletionService<IndexedResult> completionService = new ExecutorCompletionService<>(batchPool::execute);
+        Map<Future<IndexedResult>, Integer> pending = new HashMap<>();
+        for (int i = 0; i < queries.size(); i++) {
+            int index = i;
+            Callable<String> query = queries.get(i);
+            pending.put(completionService.submit(() -> new IndexedResult(index, query.call())), index);
+        }
+
+        try {
+            while (!pending.isEmpty()) {
+                Future<IndexedResult> future = completionService.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                if (future == null) {
+                    break;
+                }
+                int index = pending.remove(future);
+                try {
+                    IndexedResult result = future.get();
+                    handler.onResult(result.index, result.resultJson, null);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    handler.onResult(index, null, cause instanceof Exception ? (Exception) cause : e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Map.Entry<Future<IndexedResult>, Integer> e : pending.entrySet()) {
+                e.getKey().cancel(true);
+            }
+        }
+        for (int index : new TreeSet<>(pending.values())) {
+            handler.onResult(index, null, new QueryTimeoutException(timeout));
+        }
+    }
+}
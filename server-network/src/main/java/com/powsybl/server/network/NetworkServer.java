@@ -6,20 +6,40 @@
  */
 package com.powsybl.server.network;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.powsybl.afs.AppFileSystem;
 import com.powsybl.afs.ProjectFile;
 import com.powsybl.afs.ext.base.ProjectCase;
 import com.powsybl.afs.ext.base.ScriptType;
+import com.powsybl.client.commons.BinaryNetworkFormat;
+import com.powsybl.client.commons.BinaryNetworkWriter;
 import com.powsybl.client.storage.StorageService;
+import com.powsybl.iidm.network.Country;
 import com.powsybl.iidm.network.Network;
+import com.powsybl.iidm.reducer.NetworkReducer;
 import com.powsybl.iidm.xml.NetworkXml;
 import io.swagger.annotations.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
 @RestController
 @RequestMapping(value = "/rest/network")
 @Api(value = "/rest/network", tags = "network")
@@ -28,33 +48,282 @@ public class NetworkServer {
 
     public static final String API_VERSION = "v1";
 
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+
+    private static final MediaType REDUCED_NETWORK_MEDIA_TYPE = MediaType.parseMediaType(BinaryNetworkFormat.MEDIA_TYPE_VALUE);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
     @Autowired
     private StorageService service;
 
+    @Autowired
+    private NetworkExportCache exportCache;
+
+    @Autowired
+    private NetworkCacheService networkCache;
+
+    @Autowired
+    private NetworkQueryService queryService;
+
+    @Autowired
+    private QueryResultCache resultCache;
+
+    @Autowired
+    private CaseVersions caseVersions;
+
+    @Autowired
+    private CaseInvalidationService invalidationService;
+
+    @Autowired
+    private CaseRequestStats requestStats;
+
+    @Autowired
+    private MultiCaseQueryService multiCaseQueryService;
+
+    @Autowired
+    private AdmissionController admission;
+
+    private ProjectFile getProjectFile(String fileSystemName, String nodeId) {
+        AppFileSystem fileSystem = service.getFileSystem(fileSystemName);
+        invalidationService.watch(fileSystem);
+        requestStats.record(new CaseKey(fileSystemName, nodeId));
+        return fileSystem.findProjectFile(nodeId, ProjectFile.class);
+    }
+
     private ProjectCase getProjectCase(String fileSystemName, String nodeId) {
-        return (ProjectCase) service.getFileSystem(fileSystemName)
-                                          .findProjectFile(nodeId, ProjectFile.class);
+        return (ProjectCase) getProjectFile(fileSystemName, nodeId);
     }
 
-    @RequestMapping(method = RequestMethod.GET, value = "fileSystems/{fileSystemName}/nodes/{nodeId}", produces = MediaType.APPLICATION_XML_VALUE)
-    @ApiOperation (value = "Get Network", response = StreamingResponseBody.class)
-    @ApiResponses (value = {@ApiResponse(code = 200, message = "The available network"), @ApiResponse(code = 404, message = "No network found.")})
+    private static boolean acceptsGzip(String acceptEncoding) {
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+    }
+
+    /**
+     * The reduced binary view is only sent to clients explicitly preferring it, XML remaining the default.
+     */
+    private static boolean prefersBinary(String accept) {
+        if (accept == null) {
+            return false;
+        }
+        List<MediaType> mediaTypes = MediaType.parseMediaTypes(accept);
+        MediaType.sortBySpecificityAndQuality(mediaTypes);
+        for (MediaType mediaType : mediaTypes) {
+            if (mediaType.isCompatibleWith(REDUCED_NETWORK_MEDIA_TYPE) && !mediaType.isWildcardSubtype()) {
+                return true;
+            }
+            if (mediaType.isCompatibleWith(MediaType.APPLICATION_XML)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "fileSystems/{fileSystemName}/nodes/{nodeId}", produces = {MediaType.APPLICATION_XML_VALUE, BinaryNetworkFormat.MEDIA_TYPE_VALUE})
+    @ApiOperation (value = "Get Network as XML, or a reduced view of it in the compact binary format", response = StreamingResponseBody.class)
+    @ApiResponses (value = {@ApiResponse(code = 200, message = "The available network"), @ApiResponse(code = 304, message = "Network not modified."), @ApiResponse(code = 404, message = "No network found."),
+                            @ApiResponse(code = 503, message = "Server overloaded.")})
     public ResponseEntity<StreamingResponseBody> getNetwork(@ApiParam(value = "File System Name") @PathVariable("fileSystemName") String fileSystemName,
-                        @ApiParam(value = "Node ID") @PathVariable("nodeId") String nodeId) {
-        Network network = getProjectCase(fileSystemName, nodeId).getNetwork();
-        StreamingResponseBody streamingOutput = output -> NetworkXml.write(network, output);
+                        @ApiParam(value = "Node ID") @PathVariable("nodeId") String nodeId,
+                        @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                        WebRequest webRequest) {
+        ProjectFile projectFile = getProjectFile(fileSystemName, nodeId);
+        CaseKey key = new CaseKey(fileSystemName, nodeId);
+        long modificationTime = projectFile.getModificationDate().toInstant().toEpochMilli();
+        String version = caseVersions.getVersion(key, projectFile);
+        boolean binary = prefersBinary(accept);
+
+        // answered with 304 without going through admission control if the client has the current version, the
+        // entity tag and last modification date being set on the response in any case
+        if (webRequest.checkNotModified(binary ? version + "-bin" : version, modificationTime)) {
+            return null;
+        }
+
+        if (binary) {
+            // reduced view, already compact, written from the cached network without going through the export cache
+            AdmissionController.Ticket ticket = admission.admitLoad(key);
+            StreamingResponseBody streamingOutput = output -> {
+                try (AdmissionController.Ticket admitted = ticket;
+                     NetworkCacheService.Lease lease = networkCache.acquire(key, (ProjectCase) projectFile)) {
+                    BinaryNetworkWriter.write(lease.getNetwork(), output);
+                }
+            };
+            return ResponseEntity.ok()
+                    .contentType(REDUCED_NETWORK_MEDIA_TYPE)
+                    .varyBy(HttpHeaders.ACCEPT)
+                    .body(streamingOutput);
+        }
+
+        boolean gzipped = acceptsGzip(acceptEncoding);
+        AdmissionController.Ticket ticket = admission.admitExport(key, version);
+        StreamingResponseBody streamingOutput = output -> {
+            try (AdmissionController.Ticket admitted = ticket) {
+                exportCache.write(key, version, (ProjectCase) projectFile, output, gzipped);
+            }
+        };
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_XML)
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+        if (gzipped) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return builder.body(streamingOutput);
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "fileSystems/{fileSystemName}/nodes/{nodeId}/subnetwork", produces = MediaType.APPLICATION_XML_VALUE)
+    @ApiOperation (value = "Get a sub-network", response = StreamingResponseBody.class)
+    @ApiResponses (value = {@ApiResponse(code = 200, message = "The sub-network"), @ApiResponse(code = 404, message = "No network found."),
+                            @ApiResponse(code = 503, message = "Server overloaded.")})
+    public ResponseEntity<StreamingResponseBody> getSubNetwork(@ApiParam(value = "File System Name") @PathVariable("fileSystemName") String fileSystemName,
+                        @ApiParam(value = "Node ID") @PathVariable("nodeId") String nodeId,
+                        @ApiParam(value = "Substation IDs") @RequestParam(value = "substationIds", required = false) List<String> substationIds,
+                        @ApiParam(value = "Voltage level IDs") @RequestParam(value = "voltageLevelIds", required = false) List<String> voltageLevelIds,
+                        @ApiParam(value = "Countries") @RequestParam(value = "countries", required = false) List<Country> countries,
+                        @ApiParam(value = "Minimal nominal voltage") @RequestParam(value = "minNominalV", required = false) Double minNominalV,
+                        @ApiParam(value = "Maximal nominal voltage") @RequestParam(value = "maxNominalV", required = false) Double maxNominalV,
+                        @ApiParam(value = "Depth around selected voltage levels") @RequestParam(value = "depth", defaultValue = "0") int depth) {
+        SubNetworkFilter filter = new SubNetworkFilter(substationIds, voltageLevelIds, countries, minNominalV, maxNominalV, depth);
+        ProjectFile projectFile = getProjectFile(fileSystemName, nodeId);
+        CaseKey key = new CaseKey(fileSystemName, nodeId);
+        String version = caseVersions.getVersion(key, projectFile);
+        AdmissionController.Ticket ticket = admission.admitLoad(key);
+        StreamingResponseBody streamingOutput = output -> {
+            try (AdmissionController.Ticket admitted = ticket) {
+                // the sub-network is selected in the cached network, then, the reduction modifying the network, a
+                // copy of the selected part, with the neighbours needed by the reduction, is read from the cached export
+                Set<String> selected;
+                Set<String> required;
+                Set<String> substationIds;
+                try (NetworkCacheService.Lease lease = networkCache.acquire(key, (ProjectCase) projectFile)) {
+                    Network network = lease.getNetwork();
+                    selected = filter.selectVoltageLevels(network);
+                    required = SubNetworkFilter.getRequiredVoltageLevels(network, selected);
+                    substationIds = required.stream()
+                            .map(voltageLevelId -> network.getVoltageLevel(voltageLevelId).getSubstation().getId())
+                            .collect(Collectors.toSet());
+                }
+                Network subNetwork = exportCache.readCopy(key, version, (ProjectCase) projectFile, substationIds, required);
+                NetworkReducer.builder()
+                        .withNetworkPredicate(SubNetworkFilter.toPredicate(selected))
+                        .build()
+                        .reduce(subNetwork);
+                NetworkXml.write(subNetwork, output);
+            }
+        };
         return ResponseEntity.ok().body(streamingOutput);
     }
 
     @RequestMapping(method = RequestMethod.POST, value = "fileSystems/{fileSystemName}/nodes/{nodeId}", consumes = MediaType.TEXT_PLAIN_VALUE, produces = MediaType.TEXT_PLAIN_VALUE)
     @ApiOperation (value = "Query Network", response = String.class)
-    @ApiResponses (value = {@ApiResponse(code = 200, message = "Response of query"), @ApiResponse(code = 500, message = "Error.")})
-    public ResponseEntity<String> queryNetwork(@ApiParam(value = "File System Name") @PathVariable("fileSystemName") String fileSystemName,
+    @ApiResponses (value = {@ApiResponse(code = 200, message = "Response of query"), @ApiResponse(code = 500, message = "Error."),
+                            @ApiResponse(code = 503, message = "Too many queries in progress."), @ApiResponse(code = 504, message = "Query time budget exceeded.")})
+    public CompletableFuture<ResponseEntity<String>> queryNetwork(@ApiParam(value = "File System Name") @PathVariable("fileSystemName") String fileSystemName,
                         @ApiParam(value = "Node ID") @PathVariable("nodeId") String nodeId,
-                        @ApiParam(value = "Script Type") @PathVariable("scriptType") ScriptType scriptType,
+                        @ApiParam(value = "Script Type") @RequestParam(value = "scriptType", defaultValue = "GROOVY") ScriptType scriptType,
+                        @ApiParam(value = "Time budget in ms") @RequestParam(value = "timeoutMs", required = false) Long timeoutMs,
                         @ApiParam(value = "Script Content") @RequestBody String scriptContent) {
-        String resultJson = getProjectCase(fileSystemName, nodeId).queryNetwork(scriptType, scriptContent);
-        return ResponseEntity.ok().body(resultJson);
+        ProjectFile projectFile = getProjectFile(fileSystemName, nodeId);
+        CaseKey key = new CaseKey(fileSystemName, nodeId);
+        QueryResultCache.Key resultKey = new QueryResultCache.Key(key, caseVersions.getVersion(key, projectFile), scriptType, scriptContent);
+        Optional<String> cachedResult = resultCache.get(resultKey);
+        if (cachedResult.isPresent()) {
+            return CompletableFuture.completedFuture(ResponseEntity.ok().body(cachedResult.get()));
+        }
+        AdmissionController.Ticket ticket = admission.admitLoad(key);
+        try {
+            // the network stays admitted until the query has actually stopped, even if answered with a timeout
+            return queryService.submit(() -> {
+                long invalidationCount = resultCache.getInvalidationCount();
+                try (NetworkCacheService.Lease lease = networkCache.acquire(key, (ProjectCase) projectFile)) {
+                    String resultJson = queryService.query(lease.getNetwork(), scriptType, scriptContent);
+                    resultCache.put(resultKey, resultJson, invalidationCount);
+                    return ResponseEntity.ok().body(resultJson);
+                }
+            }, timeoutMs, ticket::close);
+        } catch (RuntimeException e) {
+            ticket.close();
+            throw e;
+        }
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "fileSystems/{fileSystemName}/nodes/{nodeId}/batch", consumes = MediaType.APPLICATION_JSON_VALUE, produces = NDJSON_VALUE)
+    @ApiOperation (value = "Query Network with a batch of scripts", response = StreamingResponseBody.class)
+    @ApiResponses (value = {@ApiResponse(code = 200, message = "One JSON line per script, in order of completion"), @ApiResponse(code = 500, message = "Error."),
+                            @ApiResponse(code = 503, message = "Server overloaded.")})
+    public ResponseEntity<StreamingResponseBody> queryNetworkBatch(@ApiParam(value = "File System Name") @PathVariable("fileSystemName") String fileSystemName,
+                        @ApiParam(value = "Node ID") @PathVariable("nodeId") String nodeId,
+                        @ApiParam(value = "Time budget of the batch in ms") @RequestParam(value = "timeoutMs", required = false) Long timeoutMs,
+                        @ApiParam(value = "Scripts") @RequestBody List<BatchQuery> queries) {
+        ProjectFile projectFile = getProjectFile(fileSystemName, nodeId);
+        CaseKey key = new CaseKey(fileSystemName, nodeId);
+        String version = caseVersions.getVersion(key, projectFile);
+        AdmissionController.Ticket ticket = admission.admitLoad(key);
+        StreamingResponseBody streamingOutput = output -> {
+            // all the scripts are run against the same network, pinned until the last result is written
+            long invalidationCount = resultCache.getInvalidationCount();
+            try (AdmissionController.Ticket admitted = ticket;
+                 NetworkCacheService.Lease lease = networkCache.acquire(key, (ProjectCase) projectFile)) {
+                List<Callable<String>> tasks = new ArrayList<>(queries.size());
+                for (BatchQuery query : queries) {
+                    tasks.add(() -> {
+                        QueryResultCache.Key resultKey = new QueryResultCache.Key(key, version, query.getScriptType(), query.getScript());
+                        return resultCache.get(resultKey).orElseGet(() -> {
+                            String resultJson = queryService.query(lease.getNetwork(), query.getScriptType(), query.getScript());
+                            resultCache.put(resultKey, resultJson, invalidationCount);
+                            return resultJson;
+                        });
+                    });
+                }
+                queryService.queryAll(tasks, timeoutMs, (index, resultJson, error) -> {
+                    ObjectNode line = objectMapper.createObjectNode();
+                    line.put("index", index);
+                    if (error == null) {
+                        line.set("result", objectMapper.readTree(resultJson));
+                    } else {
+                        line.put("error", error.toString());
+                    }
+                    output.write(objectMapper.writeValueAsBytes(line));
+                    output.write('\n');
+                    output.flush();
+                });
+            }
+        };
+        return ResponseEntity.ok().body(streamingOutput);
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "fileSystems/{fileSystemName}/queries", consumes = MediaType.APPLICATION_JSON_VALUE, produces = NDJSON_VALUE)
+    @ApiOperation (value = "Query the networks of several cases", response = ResponseBodyEmitter.class)
+    @ApiResponses (value = {@ApiResponse(code = 200, message = "One JSON line per case, in order of completion"), @ApiResponse(code = 500, message = "Error.")})
+    public ResponseEntity<ResponseBodyEmitter> queryNetworks(@ApiParam(value = "File System Name") @PathVariable("fileSystemName") String fileSystemName,
+                        @ApiParam(value = "Cases, as node IDs or a folder ID, and script") @RequestBody MultiCaseQuery query) {
+        AppFileSystem fileSystem = service.getFileSystem(fileSystemName);
+        invalidationService.watch(fileSystem);
+        List<String> nodeIds = query.getFolderId() != null ? multiCaseQueryService.getCaseIds(fileSystem, query.getFolderId())
+                                                           : query.getNodeIds();
+
+        // a job may last much longer than the usual asynchronous request timeout
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(multiCaseQueryService.getTimeoutMs());
+        MediaType ndjson = MediaType.parseMediaType(NDJSON_VALUE);
+        // cases of a study are not recorded in the request statistics, not to push the hot cases out of the warm-up
+        Future<?> job = multiCaseQueryService.start(fileSystem, nodeIds, query, (nodeId, resultJson, error) -> {
+            ObjectNode line = objectMapper.createObjectNode();
+            line.put("nodeId", nodeId);
+            if (error == null) {
+                line.set("result", objectMapper.readTree(resultJson));
+            } else {
+                line.put("error", error.toString());
+            }
+            emitter.send(objectMapper.writeValueAsString(line) + "\n", ndjson);
+        }, error -> {
+            if (error == null) {
+                emitter.complete();
+            } else {
+                emitter.completeWithError(error);
+            }
+        });
+        emitter.onTimeout(() -> job.cancel(true));
+        return ResponseEntity.ok().contentType(ndjson).body(emitter);
     }
 
     @RequestMapping(method = RequestMethod.DELETE, value = "fileSystems/{fileSystemName}/nodes/{nodeId}")
@@ -62,7 +331,19 @@ public class NetworkServer {
     @ApiResponses (value = {@ApiResponse(code = 200, message = "Cache invalidated"), @ApiResponse(code = 500, message = "Error.")})
     public ResponseEntity<String> invalidateCache(@ApiParam(value = "File System Name") @PathVariable("fileSystemName") String fileSystemName,
                         @ApiParam(value = "Node ID") @PathVariable("nodeId") String nodeId) {
-        getProjectCase(fileSystemName, nodeId).invalidateNetworkCache();
+        invalidationService.invalidate(new CaseKey(fileSystemName, nodeId), getProjectCase(fileSystemName, nodeId));
         return ResponseEntity.ok().build();
     }
+
+    @ExceptionHandler(NetworkServerBusyException.class)
+    public ResponseEntity<String> handleBusy(NetworkServerBusyException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+                .body(e.getMessage());
+    }
+
+    @ExceptionHandler(QueryTimeoutException.class)
+    public ResponseEntity<String> handleQueryTimeout(QueryTimeoutException e) {
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(e.getMessage());
+    }
 }
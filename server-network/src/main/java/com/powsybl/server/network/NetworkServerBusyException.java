@@ -0,0 +1,27 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+/**
+ * Thrown when a request is rejected because the server is saturated, answered with a 503 status and a Retry-After
+ * header.
+ */
+public class NetworkServerBusyException extends RuntimeException {
+
+    private static final long serialVersionUID = -4005327455215424396L;
+
+    private final long retryAfterSeconds;
+
+    public NetworkServerBusyException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
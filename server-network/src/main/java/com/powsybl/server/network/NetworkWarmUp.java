@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import com.powsybl.afs.AppFileSystem;
+import com.powsybl.afs.ProjectFile;
+import com.powsybl.afs.ext.base.ProjectCase;
+import com.powsybl.client.storage.StorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Preloads the networks of the configured cases ({@code network.warm-up.cases}, as {@code fileSystem/nodeId}) and
+ * of the {@code network.warm-up.most-requested} cases most requested by the previous run, and prepares their
+ * exports, once the application is started.
+ * <p>
+ * The server is reported out of service by the health endpoint, and so by Eureka, until the warm-up is done.
+ */
+@Component("warmUp")
+public class NetworkWarmUp implements ApplicationRunner, HealthIndicator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NetworkWarmUp.class);
+
+    @Autowired
+    private StorageService storageService;
+
+    @Autowired
+    private CaseVersions caseVersions;
+
+    @Autowired
+    private CaseInvalidationService invalidationService;
+
+    @Autowired
+    private NetworkCacheService networkCache;
+
+    @Autowired
+    private NetworkExportCache exportCache;
+
+    @Autowired
+    private CaseRequestStats requestStats;
+
+    @Autowired
+    private CaseAffinityRouter affinityRouter;
+
+    @Value("${network.warm-up.enabled:true}")
+    private boolean enabled;
+
+    @Value("${network.warm-up.cases:}")
+    private String[] cases;
+
+    @Value("${network.warm-up.most-requested:10}")
+    private int mostRequested;
+
+    @Value("${network.warm-up.parallelism:2}")
+    private int parallelism;
+
+    private volatile boolean done = false;
+
+    private final AtomicInteger warmedUp = new AtomicInteger();
+
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private List<CaseKey> getCases() {
+        Set<CaseKey> keys = new LinkedHashSet<>();
+        for (String c : cases) {
+            int i = c.indexOf('/');
+            if (i > 0 && i < c.length() - 1) {
+                keys.add(new CaseKey(c.substring(0, i).trim(), c.substring(i + 1).trim()));
+            } else if (!c.trim().isEmpty()) {
+                LOGGER.warn("Invalid warm-up case '{}', expected fileSystem/nodeId", c);
+            }
+        }
+        keys.addAll(requestStats.getPreviousMostRequested(mostRequested));
+        // only warm up the cases this replica is going to own once up
+        keys.removeIf(key -> !affinityRouter.isLocalOwner(key));
+        return new ArrayList<>(keys);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        List<CaseKey> keys = enabled ? getCases() : Collections.emptyList();
+        if (keys.isEmpty()) {
+            done = true;
+            return;
+        }
+
+        LOGGER.info("Warming up {} cases", keys.size());
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "network-warm-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletableFuture<?>[] futures = keys.stream()
+                .map(key -> CompletableFuture.runAsync(() -> warmUp(key), executor))
+                .toArray(CompletableFuture[]::new);
+        // the application is started meanwhile, only reported out of service
+        CompletableFuture.allOf(futures).whenComplete((value, throwable) -> {
+            executor.shutdown();
+            done = true;
+            LOGGER.info("Warm-up done, {} cases loaded, {} failed", warmedUp.get(), failed.get());
+        });
+    }
+
+    private void warmUp(CaseKey key) {
+        try {
+            AppFileSystem fileSystem = storageService.getFileSystem(key.getFileSystemName());
+            invalidationService.watch(fileSystem);
+            ProjectFile projectFile = fileSystem.findProjectFile(key.getNodeId(), ProjectFile.class);
+            ProjectCase projectCase = (ProjectCase) projectFile;
+            try (NetworkCacheService.Lease lease = networkCache.acquire(key, projectCase)) {
+                String version = caseVersions.getVersion(key, projectFile);
+                exportCache.prepare(key, version, projectCase);
+            }
+            warmedUp.incrementAndGet();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            LOGGER.warn("Warm-up of {} failed: {}", key, e.toString());
+        }
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = done ? Health.up() : Health.outOfService();
+        return builder.withDetail("warmedUp", warmedUp.get())
+                      .withDetail("failed", failed.get())
+                      .build();
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import com.google.common.hash.Hashing;
+import com.powsybl.afs.ext.base.ScriptType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Memory bounded LRU cache of query results, keyed by case, case version, script type and script content hash.
+ */
+@Component
+public class QueryResultCache {
+
+    private static final long MB = 1024L * 1024L;
+
+    // object headers, key and map entry
+    private static final long ENTRY_OVERHEAD = 256;
+
+    public static final class Key {
+
+        private final CaseKey caseKey;
+
+        private final String version;
+
+        private final ScriptType scriptType;
+
+        private final String scriptHash;
+
+        public Key(CaseKey caseKey, String version, ScriptType scriptType, String scriptContent) {
+            this.caseKey = Objects.requireNonNull(caseKey);
+            this.version = Objects.requireNonNull(version);
+            this.scriptType = Objects.requireNonNull(scriptType);
+            this.scriptHash = Hashing.sha256().hashString(scriptContent, StandardCharsets.UTF_8).toString();
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(caseKey, version, scriptType, scriptHash);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof Key) {
+                Key other = (Key) obj;
+                return caseKey.equals(other.caseKey) && version.equals(other.version)
+                        && scriptType == other.scriptType && scriptHash.equals(other.scriptHash);
+            }
+            return false;
+        }
+    }
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${network.query.result-cache.max-size-mb:64}")
+    private long maxSizeMb;
+
+    // guarded by this
+    private final LinkedHashMap<Key, String> results = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long size = 0;
+
+    // number of invalidations so far, guarded by this
+    private long invalidations = 0;
+
+    private Counter hits;
+
+    private Counter misses;
+
+    @PostConstruct
+    public void init() {
+        hits = Counter.builder("network.query.result.cache.requests").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("network.query.result.cache.requests").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("network.query.result.cache.bytes", this, QueryResultCache::getSize)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    private static long weigh(String result) {
+        return ENTRY_OVERHEAD + 2L * result.length();
+    }
+
+    public synchronized Optional<String> get(Key key) {
+        String result = results.get(key);
+        if (result != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return Optional.ofNullable(result);
+    }
+
+    public synchronized void put(Key key, String result) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(result);
+        long weight = weigh(result);
+        if (weight > maxSizeMb * MB) {
+            return;
+        }
+        String previous = results.put(key, result);
+        if (previous != null) {
+            size -= weigh(previous);
+        }
+        size += weight;
+        Iterator<String> it = results.values().iterator();
+        while (size > maxSizeMb * MB && it.hasNext()) {
+            size -= weigh(it.next());
+            it.remove();
+        }
+    }
+
+    /**
+     * Get the number of invalidations so far, to be passed to {@link #put(Key, String, long)}.
+     */
+    public synchronized long getInvalidationCount() {
+        return invalidations;
+    }
+
+    /**
+     * Cache the result of a query unless a case has been invalidated since {@code invalidationCount} was got, before
+     * acquiring the network the result is computed from: this network may be the one being invalidated, and the
+     * version of the key, derived from persisted state, may already be the new one.
+     */
+    public synchronized void put(Key key, String result, long invalidationCount) {
+        if (invalidationCount == invalidations) {
+            put(key, result);
+        }
+    }
+
+    /**
+     * Remove the results of all the versions of a case.
+     */
+    public synchronized void invalidate(CaseKey caseKey) {
+        Objects.requireNonNull(caseKey);
+        invalidations++;
+        Iterator<Map.Entry<Key, String>> it = results.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, String> e = it.next();
+            if (e.getKey().caseKey.equals(caseKey)) {
+                size -= weigh(e.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+/**
+ * Thrown when a query does not complete within its time budget.
+ */
+public class QueryTimeoutException extends RuntimeException {
+
+    private static final long serialVersionUID = 6209316563817862052L;
+
+    public QueryTimeoutException(long timeoutMs) {
+        super("Query did not complete within " + timeoutMs + " ms");
+    }
+}
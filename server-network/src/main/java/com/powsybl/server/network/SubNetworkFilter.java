@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import com.powsybl.iidm.network.*;
+import com.powsybl.iidm.reducer.NetworkPredicate;
+
+import java.util.*;
+
+/**
+ * Selects the voltage levels of a sub-network: the voltage levels matching the given substations, voltage levels,
+ * countries and nominal voltage range, extended to their neighbours up to a given depth.
+ * <p>
+ * Criteria are combined as follows: a voltage level is selected if it belongs to one of the substations, is one of
+ * the voltage levels or is located in one of the countries, and if its nominal voltage is in the range. When no
+ * substation, voltage level or country is given, all the voltage levels in the range are selected.
+ */
+public class SubNetworkFilter {
+
+    private final Set<String> substationIds;
+
+    private final Set<String> voltageLevelIds;
+
+    private final Set<Country> countries;
+
+    private final double minNominalV;
+
+    private final double maxNominalV;
+
+    private final int depth;
+
+    public SubNetworkFilter(Collection<String> substationIds, Collection<String> voltageLevelIds, Collection<Country> countries,
+                            Double minNominalV, Double maxNominalV, int depth) {
+        this.substationIds = substationIds != null ? new HashSet<>(substationIds) : Collections.emptySet();
+        this.voltageLevelIds = voltageLevelIds != null ? new HashSet<>(voltageLevelIds) : Collections.emptySet();
+        this.countries = countries != null && !countries.isEmpty() ? EnumSet.copyOf(countries) : EnumSet.noneOf(Country.class);
+        this.minNominalV = minNominalV != null ? minNominalV : 0;
+        this.maxNominalV = maxNominalV != null ? maxNominalV : Double.MAX_VALUE;
+        if (depth < 0) {
+            throw new IllegalArgumentException("Invalid depth " + depth);
+        }
+        this.depth = depth;
+    }
+
+    private boolean hasLocationCriteria() {
+        return !substationIds.isEmpty() || !voltageLevelIds.isEmpty() || !countries.isEmpty();
+    }
+
+    private boolean isSeed(VoltageLevel voltageLevel) {
+        double nominalV = voltageLevel.getNominalV();
+        if (nominalV < minNominalV || nominalV > maxNominalV) {
+            return false;
+        }
+        if (!hasLocationCriteria()) {
+            return true;
+        }
+        Substation substation = voltageLevel.getSubstation();
+        return voltageLevelIds.contains(voltageLevel.getId())
+                || substationIds.contains(substation.getId())
+                || substation.getCountry().map(countries::contains).orElse(false);
+    }
+
+    private static void connect(Map<String, Set<String>> neighbours, Terminal terminal1, Terminal terminal2) {
+        String voltageLevelId1 = terminal1.getVoltageLevel().getId();
+        String voltageLevelId2 = terminal2.getVoltageLevel().getId();
+        if (!voltageLevelId1.equals(voltageLevelId2)) {
+            neighbours.computeIfAbsent(voltageLevelId1, k -> new HashSet<>()).add(voltageLevelId2);
+            neighbours.computeIfAbsent(voltageLevelId2, k -> new HashSet<>()).add(voltageLevelId1);
+        }
+    }
+
+    private static Map<String, Set<String>> getNeighbours(Network network) {
+        Map<String, Set<String>> neighbours = new HashMap<>();
+        for (Line line : network.getLines()) {
+            connect(neighbours, line.getTerminal1(), line.getTerminal2());
+        }
+        for (TwoWindingsTransformer transformer : network.getTwoWindingsTransformers()) {
+            connect(neighbours, transformer.getTerminal1(), transformer.getTerminal2());
+        }
+        for (ThreeWindingsTransformer transformer : network.getThreeWindingsTransformers()) {
+            connect(neighbours, transformer.getLeg1().getTerminal(), transformer.getLeg2().getTerminal());
+            connect(neighbours, transformer.getLeg1().getTerminal(), transformer.getLeg3().getTerminal());
+            connect(neighbours, transformer.getLeg2().getTerminal(), transformer.getLeg3().getTerminal());
+        }
+        for (HvdcLine hvdcLine : network.getHvdcLines()) {
+            connect(neighbours, hvdcLine.getConverterStation1().getTerminal(), hvdcLine.getConverterStation2().getTerminal());
+        }
+        return neighbours;
+    }
+
+    /**
+     * Get the ids of the voltage levels of the sub-network.
+     */
+    public Set<String> selectVoltageLevels(Network network) {
+        Objects.requireNonNull(network);
+        Set<String> selected = new HashSet<>();
+        network.getVoltageLevelStream()
+                .filter(this::isSeed)
+                .forEach(voltageLevel -> selected.add(voltageLevel.getId()));
+
+        if (depth > 0 && !selected.isEmpty()) {
+            Map<String, Set<String>> neighbours = getNeighbours(network);
+            Set<String> frontier = new HashSet<>(selected);
+            for (int i = 0; i < depth && !frontier.isEmpty(); i++) {
+                Set<String> next = new HashSet<>();
+                for (String voltageLevelId : frontier) {
+                    for (String neighbour : neighbours.getOrDefault(voltageLevelId, Collections.emptySet())) {
+                        if (selected.add(neighbour)) {
+                            next.add(neighbour);
+                        }
+                    }
+                }
+                frontier = next;
+            }
+        }
+        return selected;
+    }
+
+    private static void addRegulation(Map<String, Set<String>> regulations, Terminal terminal, Terminal regulatingTerminal) {
+        if (regulatingTerminal != null) {
+            Set<String> regulated = regulations.computeIfAbsent(terminal.getVoltageLevel().getId(), k -> new HashSet<>());
+            for (Terminal t : regulatingTerminal.getConnectable().getTerminals()) {
+                regulated.add(t.getVoltageLevel().getId());
+            }
+        }
+    }
+
+    private static void addRegulation(Map<String, Set<String>> regulations, Terminal terminal, TapChanger<?, ?> tapChanger) {
+        if (tapChanger != null) {
+            addRegulation(regulations, terminal, tapChanger.getRegulationTerminal());
+        }
+    }
+
+    /**
+     * Get, for each voltage level, the voltage levels of the equipments whose terminals are regulated from it.
+     */
+    private static Map<String, Set<String>> getRegulations(Network network) {
+        Map<String, Set<String>> regulations = new HashMap<>();
+        for (Generator generator : network.getGenerators()) {
+            addRegulation(regulations, generator.getTerminal(), generator.getRegulatingTerminal());
+        }
+        for (StaticVarCompensator svc : network.getStaticVarCompensators()) {
+            addRegulation(regulations, svc.getTerminal(), svc.getRegulatingTerminal());
+        }
+        for (TwoWindingsTransformer transformer : network.getTwoWindingsTransformers()) {
+            addRegulation(regulations, transformer.getTerminal1(), transformer.getRatioTapChanger());
+            addRegulation(regulations, transformer.getTerminal1(), transformer.getPhaseTapChanger());
+        }
+        for (ThreeWindingsTransformer transformer : network.getThreeWindingsTransformers()) {
+            addRegulation(regulations, transformer.getLeg2().getTerminal(), transformer.getLeg2().getRatioTapChanger());
+            addRegulation(regulations, transformer.getLeg3().getTerminal(), transformer.getLeg3().getRatioTapChanger());
+        }
+        return regulations;
+    }
+
+    /**
+     * Get the ids of the voltage levels a network reducer needs to build a sub-network: the voltage levels of the
+     * sub-network, their neighbours, the branches to which are replaced by the reducer, and the voltage levels of the
+     * equipments regulated from any of them, so that regulations can be read.
+     */
+    public static Set<String> getRequiredVoltageLevels(Network network, Set<String> voltageLevelIds) {
+        Objects.requireNonNull(network);
+        Objects.requireNonNull(voltageLevelIds);
+        Set<String> required = new HashSet<>(voltageLevelIds);
+        Map<String, Set<String>> neighbours = getNeighbours(network);
+        for (String voltageLevelId : voltageLevelIds) {
+            required.addAll(neighbours.getOrDefault(voltageLevelId, Collections.emptySet()));
+        }
+
+        Map<String, Set<String>> regulations = getRegulations(network);
+        Deque<String> toVisit = new ArrayDeque<>(required);
+        while (!toVisit.isEmpty()) {
+            for (String regulated : regulations.getOrDefault(toVisit.pop(), Collections.emptySet())) {
+                if (required.add(regulated)) {
+                    toVisit.push(regulated);
+                }
+            }
+        }
+        return required;
+    }
+
+    /**
+     * Get a predicate, to be used with a network reducer, keeping the sub-network selected in the given network.
+     */
+    public NetworkPredicate toPredicate(Network network) {
+        return toPredicate(selectVoltageLevels(network));
+    }
+
+    /**
+     * Get a predicate, to be used with a network reducer, keeping the given voltage levels.
+     */
+    public static NetworkPredicate toPredicate(Set<String> selected) {
+        Objects.requireNonNull(selected);
+        return new NetworkPredicate() {
+            @Override
+            public boolean test(Substation substation) {
+                return substation.getVoltageLevelStream().anyMatch(this::test);
+            }
+
+            @Override
+            public boolean test(VoltageLevel voltageLevel) {
+                return selected.contains(voltageLevel.getId());
+            }
+        };
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.*;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Copies the IIDM XML export of a network, keeping only the given substations and voltage levels, the branches
+ * between kept voltage levels and the extensions of kept equipments, so that a part of a network can be read without
+ * reading the whole network.
+ * <p>
+ * The export is copied as a stream of events. It relies on the order of the IIDM XML export, which writes the HVDC
+ * lines after the converter stations and the extensions last, so that kept equipments are known when reaching them.
+ */
+final class SubNetworkXmlFilter {
+
+    private static final String[] VOLTAGE_LEVEL_ATTRIBUTES = {"voltageLevelId1", "voltageLevelId2", "voltageLevelId3"};
+
+    private static final String[] CONVERTER_STATION_ATTRIBUTES = {"converterStation1", "converterStation2"};
+
+    private static final QName ID = new QName("id");
+
+    private final Set<String> substationIds;
+
+    private final Set<String> voltageLevelIds;
+
+    private final Set<String> keptIds = new HashSet<>();
+
+    private SubNetworkXmlFilter(Set<String> substationIds, Set<String> voltageLevelIds) {
+        this.substationIds = Objects.requireNonNull(substationIds);
+        this.voltageLevelIds = Objects.requireNonNull(voltageLevelIds);
+    }
+
+    private static String getAttribute(StartElement element, QName name) {
+        Attribute attribute = element.getAttributeByName(name);
+        return attribute != null ? attribute.getValue() : null;
+    }
+
+    private static boolean referencesOnly(StartElement element, String[] attributeNames, Set<String> ids) {
+        for (String attributeName : attributeNames) {
+            String id = getAttribute(element, new QName(attributeName));
+            if (id != null && !ids.contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean keep(StartElement element, String id) {
+        switch (element.getName().getLocalPart()) {
+            case "substation":
+                return substationIds.contains(id);
+            case "voltageLevel":
+                return voltageLevelIds.contains(id);
+            case "hvdcLine":
+                return referencesOnly(element, CONVERTER_STATION_ATTRIBUTES, keptIds);
+            case "extension":
+                return keptIds.contains(id);
+            default:
+                // branches, and any other element connected to voltage levels
+                return referencesOnly(element, VOLTAGE_LEVEL_ATTRIBUTES, voltageLevelIds);
+        }
+    }
+
+    private void copy(XMLEventReader reader, XMLEventWriter writer) throws XMLStreamException {
+        String namespace = null;
+        int depth = 0;
+        int skippedDepth = 0;
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) {
+                depth++;
+                if (skippedDepth > 0) {
+                    continue;
+                }
+                StartElement element = event.asStartElement();
+                String elementNamespace = element.getName().getNamespaceURI();
+                if (namespace == null) {
+                    // the network itself
+                    namespace = elementNamespace;
+                } else if (namespace.equals(elementNamespace)) {
+                    // content of extensions, in their own namespaces, is copied as is
+                    String id = getAttribute(element, ID);
+                    if (!keep(element, id)) {
+                        skippedDepth = depth;
+                        continue;
+                    }
+                    if (id != null) {
+                        keptIds.add(id);
+                    }
+                }
+            } else if (event.isEndElement()) {
+                depth--;
+                if (skippedDepth > 0) {
+                    if (depth < skippedDepth) {
+                        skippedDepth = 0;
+                    }
+                    continue;
+                }
+            } else if (skippedDepth > 0) {
+                continue;
+            }
+            writer.add(event);
+        }
+    }
+
+    /**
+     * Copy the part of a network export made of the given substations and voltage levels.
+     *
+     * @param voltageLevelIds the voltage levels to keep, all belonging to the substations to keep
+     */
+    static void filter(InputStream is, OutputStream os, Set<String> substationIds, Set<String> voltageLevelIds) throws XMLStreamException {
+        Objects.requireNonNull(is);
+        Objects.requireNonNull(os);
+        XMLEventReader reader = XMLInputFactory.newInstance().createXMLEventReader(is);
+        try {
+            XMLEventWriter writer = XMLOutputFactory.newInstance().createXMLEventWriter(os, "UTF-8");
+            try {
+                new SubNetworkXmlFilter(substationIds, voltageLevelIds).copy(reader, writer);
+                writer.flush();
+            } finally {
+                writer.close();
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
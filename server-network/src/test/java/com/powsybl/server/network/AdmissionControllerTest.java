@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.OptionalLong;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class AdmissionControllerTest {
+
+    private static final long MB = 1024L * 1024L;
+
+    private static final CaseKey CASE1 = new CaseKey("fs", "case1");
+
+    private static final CaseKey CASE2 = new CaseKey("fs", "case2");
+
+    private static final CaseKey CASE3 = new CaseKey("fs", "case3");
+
+    private static final CaseKey CASE4 = new CaseKey("fs", "case4");
+
+    private NetworkCacheService networkCache;
+
+    private AdmissionController admission;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        networkCache = Mockito.mock(NetworkCacheService.class);
+        Mockito.when(networkCache.getKnownSize(Mockito.any())).thenReturn(OptionalLong.of(200 * MB));
+
+        admission = new AdmissionController();
+        ReflectionTestUtils.setField(admission, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(admission, "networkCache", networkCache);
+        ReflectionTestUtils.setField(admission, "exportCache", Mockito.mock(NetworkExportCache.class));
+        ReflectionTestUtils.setField(admission, "enabled", true);
+        ReflectionTestUtils.setField(admission, "maxHeavy", 4);
+        ReflectionTestUtils.setField(admission, "heavyThresholdMb", 64L);
+        ReflectionTestUtils.setField(admission, "memoryBudgetMb", 500L);
+        ReflectionTestUtils.setField(admission, "batchMemoryBudgetMb", 300L);
+        ReflectionTestUtils.setField(admission, "defaultCaseSizeMb", 256L);
+        ReflectionTestUtils.setField(admission, "queueCapacity", 1);
+        ReflectionTestUtils.setField(admission, "queueTimeoutMs", 10000L);
+        ReflectionTestUtils.setField(admission, "retryAfterSeconds", 5L);
+        admission.init();
+
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static void assertWaiting(Future<?> future) throws Exception {
+        try {
+            future.get(100, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (TimeoutException ignored) {
+            // still waiting for admission
+        }
+    }
+
+    private static void assertRejected(Callable<?> request) throws Exception {
+        try {
+            request.call();
+            fail();
+        } catch (NetworkServerBusyException e) {
+            assertEquals(5, e.getRetryAfterSeconds());
+        }
+    }
+
+    @Test
+    public void queueTest() throws Exception {
+        AdmissionController.Ticket ticket1 = admission.admitLoad(CASE1);
+        AdmissionController.Ticket ticket2 = admission.admitLoad(CASE2);
+        assertEquals(400 * MB, admission.getInFlightBytes());
+        assertEquals(2, admission.getHeavyInFlight());
+
+        // exceeding the memory budget, waits in the queue
+        Future<AdmissionController.Ticket> ticket3 = executor.submit(() -> admission.admitLoad(CASE3));
+        assertWaiting(ticket3);
+        assertEquals(1, admission.getQueueSize());
+
+        // the queue is full
+        assertRejected(() -> admission.admitLoad(CASE4));
+
+        // cached networks cost nothing and are always admitted
+        Mockito.when(networkCache.isCached(CASE4)).thenReturn(true);
+        admission.admitLoad(CASE4).close();
+        assertEquals(400 * MB, admission.getInFlightBytes());
+
+        ticket1.close();
+        ticket3.get(10, TimeUnit.SECONDS).close();
+        assertEquals(0, admission.getQueueSize());
+        ticket2.close();
+        // closing a ticket twice releases it once
+        ticket2.close();
+        assertEquals(0, admission.getInFlightBytes());
+        assertEquals(0, admission.getHeavyInFlight());
+    }
+
+    @Test
+    public void heavyLimitTest() throws Exception {
+        ReflectionTestUtils.setField(admission, "maxHeavy", 1);
+        Mockito.when(networkCache.getKnownSize(CASE2)).thenReturn(OptionalLong.of(10 * MB));
+
+        AdmissionController.Ticket heavy = admission.admitLoad(CASE1);
+        // light requests are only limited by the memory budget
+        AdmissionController.Ticket light = admission.admitLoad(CASE2);
+        Future<AdmissionController.Ticket> heavy2 = executor.submit(() -> admission.admitLoad(CASE3));
+        assertWaiting(heavy2);
+
+        heavy.close();
+        heavy2.get(10, TimeUnit.SECONDS).close();
+        light.close();
+        assertEquals(0, admission.getInFlightBytes());
+    }
+
+    @Test
+    public void timeoutTest() throws Exception {
+        ReflectionTestUtils.setField(admission, "queueTimeoutMs", 100L);
+        AdmissionController.Ticket ticket1 = admission.admitLoad(CASE1);
+        AdmissionController.Ticket ticket2 = admission.admitLoad(CASE2);
+
+        assertRejected(() -> admission.admitLoad(CASE3));
+        // the rejected request left the queue
+        assertEquals(0, admission.getQueueSize());
+        assertEquals(400 * MB, admission.getInFlightBytes());
+
+        ticket1.close();
+        ticket2.close();
+    }
+
+    @Test
+    public void batchPriorityTest() throws Exception {
+        AdmissionController.Ticket ticket1 = admission.admitLoad(CASE1);
+        AdmissionController.Ticket ticket2 = admission.admitLoad(CASE2);
+        Future<AdmissionController.Ticket> interactive = executor.submit(() -> admission.admitLoad(CASE3));
+        assertWaiting(interactive);
+
+        // batch requests wait for the queued interactive requests
+        Future<AdmissionController.Ticket> batch = executor.submit(() -> admission.admitBatchLoad(CASE4));
+        assertWaiting(batch);
+
+        ticket1.close();
+        AdmissionController.Ticket ticket3 = interactive.get(10, TimeUnit.SECONDS);
+        assertWaiting(batch);
+
+        ticket2.close();
+        batch.get(10, TimeUnit.SECONDS).close();
+        ticket3.close();
+        assertEquals(0, admission.getInFlightBytes());
+    }
+
+    @Test
+    public void batchTest() throws Exception {
+        AdmissionController.Ticket batch1 = admission.admitBatchLoad(CASE1);
+        assertEquals(200 * MB, admission.getBatchInFlightBytes());
+
+        // exceeding the batch budget, waits for the first batch request
+        Future<AdmissionController.Ticket> batch2 = executor.submit(() -> admission.admitBatchLoad(CASE2));
+        assertWaiting(batch2);
+
+        // interactive requests can still use the rest of the memory budget
+        AdmissionController.Ticket interactive = admission.admitLoad(CASE3);
+        assertEquals(400 * MB, admission.getInFlightBytes());
+
+        batch1.close();
+        batch2.get(10, TimeUnit.SECONDS).close();
+        assertEquals(0, admission.getBatchInFlightBytes());
+        interactive.close();
+        assertEquals(0, admission.getInFlightBytes());
+    }
+
+    @Test
+    public void batchInterruptTest() throws Exception {
+        AdmissionController.Ticket batch1 = admission.admitBatchLoad(CASE1);
+        AtomicBoolean interrupted = new AtomicBoolean(false);
+        Thread thread = new Thread(() -> {
+            try {
+                admission.admitBatchLoad(CASE2);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+        });
+        thread.start();
+        while (thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+
+        // a cancelled batch stops waiting and is never admitted
+        thread.interrupt();
+        thread.join();
+        assertTrue(interrupted.get());
+        assertEquals(200 * MB, admission.getInFlightBytes());
+        batch1.close();
+        assertEquals(0, admission.getInFlightBytes());
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.StreamUtils;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class CaseAffinityFilterTest {
+
+    private static CaseAffinityFilter.BufferedBodyRequest createRequest() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/rest/network/fileSystems/fs/nodes/node/queries");
+        request.setContent("body".getBytes(StandardCharsets.UTF_8));
+        return new CaseAffinityFilter.BufferedBodyRequest(request);
+    }
+
+    @Test
+    public void bufferedBodyTest() throws IOException {
+        CaseAffinityFilter.BufferedBodyRequest request = createRequest();
+        // read again if served locally once forwarding failed
+        assertEquals("body", StreamUtils.copyToString(request.getInputStream(), StandardCharsets.UTF_8));
+        assertEquals("body", StreamUtils.copyToString(request.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void readListenerTest() throws IOException {
+        ServletInputStream is = createRequest().getInputStream();
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        AtomicBoolean allDataRead = new AtomicBoolean(false);
+        is.setReadListener(new ReadListener() {
+            @Override
+            public void onDataAvailable() throws IOException {
+                while (is.isReady() && !is.isFinished()) {
+                    read.write(is.read());
+                }
+            }
+
+            @Override
+            public void onAllDataRead() {
+                allDataRead.set(true);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                fail(t.toString());
+            }
+        });
+        assertTrue(allDataRead.get());
+        assertTrue(is.isFinished());
+        assertEquals("body", new String(read.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void silentOwnerTest() throws Exception {
+        // connections are accepted by the backlog of the socket, but never answered
+        try (ServerSocket silentOwner = new ServerSocket(0)) {
+            ServiceInstance owner = Mockito.mock(ServiceInstance.class);
+            Mockito.when(owner.getUri()).thenReturn(URI.create("http://localhost:" + silentOwner.getLocalPort()));
+            CaseAffinityRouter router = Mockito.mock(CaseAffinityRouter.class);
+            Mockito.when(router.getRemoteOwner(new CaseKey("fs", "node"))).thenReturn(Optional.of(owner));
+
+            CaseAffinityFilter filter = new CaseAffinityFilter();
+            ReflectionTestUtils.setField(filter, "router", router);
+            ReflectionTestUtils.setField(filter, "connectTimeoutMs", 1000);
+            ReflectionTestUtils.setField(filter, "readTimeoutMs", 200);
+            filter.init();
+
+            MockHttpServletRequest request = new MockHttpServletRequest("POST", "/rest/network/fileSystems/fs/nodes/node/queries");
+            request.setContent("body".getBytes(StandardCharsets.UTF_8));
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            MockFilterChain filterChain = new MockFilterChain();
+            filter.doFilter(request, response, filterChain);
+
+            // served locally, with the body still readable
+            assertNotNull(filterChain.getRequest());
+            assertEquals("body", StreamUtils.copyToString(filterChain.getRequest().getInputStream(), StandardCharsets.UTF_8));
+        }
+    }
+}
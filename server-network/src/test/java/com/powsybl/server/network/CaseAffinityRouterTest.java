@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CaseAffinityRouterTest {
+
+    private static final int CASE_COUNT = 300;
+
+    private static ServiceInstance createInstance(String instanceId) {
+        return new DefaultServiceInstance(instanceId, "network", instanceId, 8080, false);
+    }
+
+    private static CaseAffinityRouter createRouter(String instanceId, DiscoveryClient discoveryClient, boolean enabled) {
+        Registration registration = Mockito.mock(Registration.class);
+        Mockito.when(registration.getInstanceId()).thenReturn(instanceId);
+        Mockito.when(registration.getHost()).thenReturn(instanceId);
+        Mockito.when(registration.getPort()).thenReturn(8080);
+        CaseAffinityRouter router = new CaseAffinityRouter();
+        ReflectionTestUtils.setField(router, "discoveryClient", discoveryClient);
+        ReflectionTestUtils.setField(router, "registration", registration);
+        ReflectionTestUtils.setField(router, "enabled", enabled);
+        ReflectionTestUtils.setField(router, "virtualNodes", 100);
+        ReflectionTestUtils.setField(router, "refreshIntervalMs", 0L);
+        ReflectionTestUtils.setField(router, "serviceId", "network");
+        return router;
+    }
+
+    private static DiscoveryClient createDiscoveryClient(String... instanceIds) {
+        DiscoveryClient discoveryClient = Mockito.mock(DiscoveryClient.class);
+        List<ServiceInstance> instances = new ArrayList<>();
+        for (String instanceId : instanceIds) {
+            instances.add(createInstance(instanceId));
+        }
+        Mockito.when(discoveryClient.getInstances("network")).thenReturn(instances);
+        return discoveryClient;
+    }
+
+    private static String getOwner(CaseAffinityRouter router, String instanceId, CaseKey key) {
+        return router.getRemoteOwner(key).map(ServiceInstance::getInstanceId).orElse(instanceId);
+    }
+
+    @Test
+    public void notListedYetTest() {
+        // during its warm-up, a replica is out of service and not listed by the discovery service
+        CaseAffinityRouter routerA = createRouter("a", createDiscoveryClient("b", "c"), true);
+        CaseAffinityRouter routerB = createRouter("b", createDiscoveryClient("a", "b", "c"), true);
+        int owned = 0;
+        for (int i = 0; i < CASE_COUNT; i++) {
+            CaseKey key = new CaseKey("fs", "case" + i);
+            assertEquals(routerA.isLocalOwner(key), !routerA.getRemoteOwner(key).isPresent());
+            if (routerA.isLocalOwner(key)) {
+                owned++;
+            }
+            // same owners as seen once listed
+            assertEquals(getOwner(routerB, "b", key), getOwner(routerA, "a", key));
+        }
+        assertTrue(owned > CASE_COUNT / 6 && owned < CASE_COUNT / 2);
+    }
+
+    @Test
+    public void refreshTest() {
+        DiscoveryClient discoveryClient = createDiscoveryClient("a");
+        CaseAffinityRouter router = createRouter("a", discoveryClient, true);
+        for (int i = 0; i < CASE_COUNT; i++) {
+            assertTrue(router.isLocalOwner(new CaseKey("fs", "case" + i)));
+        }
+
+        // a replica joins, taking some of the cases
+        List<ServiceInstance> instances = Arrays.asList(createInstance("a"), createInstance("b"));
+        Mockito.when(discoveryClient.getInstances("network")).thenReturn(instances);
+        int moved = 0;
+        for (int i = 0; i < CASE_COUNT; i++) {
+            if (!router.isLocalOwner(new CaseKey("fs", "case" + i))) {
+                moved++;
+            }
+        }
+        assertTrue(moved > 0 && moved < CASE_COUNT);
+    }
+
+    @Test
+    public void disabledTest() {
+        CaseAffinityRouter router = createRouter("a", createDiscoveryClient("b"), false);
+        CaseKey key = new CaseKey("fs", "case");
+        assertTrue(router.isLocalOwner(key));
+        assertFalse(router.getRemoteOwner(key).isPresent());
+    }
+}
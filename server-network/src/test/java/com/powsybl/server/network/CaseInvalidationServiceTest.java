@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import com.powsybl.afs.AppFileSystem;
+import com.powsybl.afs.ext.base.ImportedCase;
+import com.powsybl.afs.ext.base.ScriptType;
+import com.powsybl.afs.storage.ListenableAppStorage;
+import com.powsybl.afs.storage.NodeInfo;
+import com.powsybl.afs.storage.events.*;
+import com.powsybl.iidm.network.NetworkFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class CaseInvalidationServiceTest {
+
+    private static final CaseKey CASE1 = new CaseKey("fs", "case1");
+
+    private static final CaseKey CASE2 = new CaseKey("fs", "case2");
+
+    private ListenableAppStorage storage;
+
+    private AppFileSystem fileSystem;
+
+    private CaseVersions caseVersions;
+
+    private NetworkCacheService networkCache;
+
+    private QueryResultCache resultCache;
+
+    private CaseInvalidationService invalidationService;
+
+    private ImportedCase case1;
+
+    private ImportedCase case2;
+
+    private static ImportedCase createCase() {
+        ImportedCase projectCase = Mockito.mock(ImportedCase.class);
+        Mockito.when(projectCase.getModificationDate()).thenReturn(ZonedDateTime.of(2019, 3, 1, 0, 0, 0, 0, ZoneOffset.UTC));
+        return projectCase;
+    }
+
+    @Before
+    public void setUp() {
+        storage = Mockito.mock(ListenableAppStorage.class);
+        fileSystem = Mockito.mock(AppFileSystem.class);
+        Mockito.when(fileSystem.getName()).thenReturn("fs");
+        Mockito.when(fileSystem.getStorage()).thenReturn(storage);
+
+        // case2 is derived from case1
+        NodeInfo case2Info = Mockito.mock(NodeInfo.class);
+        Mockito.when(case2Info.getId()).thenReturn("case2");
+        Mockito.when(storage.getBackwardDependencies("case1")).thenReturn(Collections.singleton(case2Info));
+
+        case1 = createCase();
+        case2 = createCase();
+        caseVersions = new CaseVersions();
+        networkCache = Mockito.mock(NetworkCacheService.class);
+        resultCache = Mockito.mock(QueryResultCache.class);
+
+        invalidationService = new CaseInvalidationService();
+        ReflectionTestUtils.setField(invalidationService, "caseVersions", caseVersions);
+        ReflectionTestUtils.setField(invalidationService, "networkCache", networkCache);
+        ReflectionTestUtils.setField(invalidationService, "exportCache", Mockito.mock(NetworkExportCache.class));
+        ReflectionTestUtils.setField(invalidationService, "resultCache", resultCache);
+    }
+
+    private AppStorageListener watch() {
+        invalidationService.watch(fileSystem);
+        // watched only once
+        invalidationService.watch(fileSystem);
+        ArgumentCaptor<AppStorageListener> listener = ArgumentCaptor.forClass(AppStorageListener.class);
+        Mockito.verify(storage, Mockito.times(1)).addListener(listener.capture());
+        return listener.getValue();
+    }
+
+    @Test
+    public void test() {
+        AppStorageListener listener = watch();
+
+        // no case requested yet, events are skipped without reading the dependencies
+        listener.onEvents(new NodeEventList(new NodeDataUpdated("case1", "data")));
+        Mockito.verify(storage, Mockito.never()).getBackwardDependencies(Mockito.anyString());
+
+        caseVersions.getVersion(CASE1, case1);
+        caseVersions.getVersion(CASE2, case2);
+
+        // renaming does not change the network
+        listener.onEvents(new NodeEventList(new NodeNameUpdated("case1", "renamed")));
+        assertTrue(caseVersions.isKnown(CASE1));
+        Mockito.verify(networkCache, Mockito.never()).invalidate(Mockito.any(CaseKey.class));
+        Mockito.verifyZeroInteractions(resultCache);
+
+        // the case and the cases derived from it are invalidated
+        listener.onEvents(new NodeEventList(new NodeDataUpdated("case1", "data")));
+        assertFalse(caseVersions.isKnown(CASE1));
+        assertFalse(caseVersions.isKnown(CASE2));
+        Mockito.verify(networkCache).invalidate(CASE1);
+        Mockito.verify(networkCache).invalidate(CASE2);
+        Mockito.verify(resultCache).invalidate(CASE1);
+        Mockito.verify(resultCache).invalidate(CASE2);
+    }
+
+    @Test
+    public void cachedNetworkTest() {
+        AppStorageListener listener = watch();
+
+        // the dependencies of the case have been forgotten, but its network is still cached
+        Mockito.when(networkCache.hasCachedNetworks("fs")).thenReturn(true);
+        Mockito.when(networkCache.isCached(CASE2)).thenReturn(true);
+        listener.onEvents(new NodeEventList(new NodeDataUpdated("case1", "data")));
+        Mockito.verify(networkCache).invalidate(CASE2);
+        Mockito.verify(networkCache, Mockito.never()).invalidate(CASE1);
+    }
+
+    @Test
+    public void removedTest() {
+        AppStorageListener listener = watch();
+        caseVersions.getVersion(CASE2, case2);
+
+        // a removed node has no dependencies to follow
+        listener.onEvents(new NodeEventList(new NodeRemoved("case2", "folder")));
+        assertFalse(caseVersions.isKnown(CASE2));
+        Mockito.verify(networkCache).invalidate(CASE2);
+        Mockito.verify(storage, Mockito.never()).getBackwardDependencies("case2");
+    }
+
+    @Test
+    public void dependencyFailureTest() {
+        AppStorageListener listener = watch();
+        Mockito.when(storage.getBackwardDependencies("case1")).thenThrow(new IllegalStateException("storage failure"));
+        caseVersions.getVersion(CASE1, case1);
+
+        // the changed case is invalidated anyway
+        listener.onEvents(new NodeEventList(new NodeDataUpdated("case1", "data")));
+        assertFalse(caseVersions.isKnown(CASE1));
+        Mockito.verify(networkCache).invalidate(CASE1);
+    }
+
+    /**
+     * Query the id of the network of a case through the result cache, as the query endpoint does.
+     */
+    private String queryId(CaseKey key, ImportedCase projectCase) {
+        QueryResultCache.Key resultKey = new QueryResultCache.Key(key, caseVersions.getVersion(key, projectCase), ScriptType.GROOVY, "network.id");
+        Optional<String> cachedResult = resultCache.get(resultKey);
+        if (cachedResult.isPresent()) {
+            return cachedResult.get();
+        }
+        long invalidationCount = resultCache.getInvalidationCount();
+        try (NetworkCacheService.Lease lease = networkCache.acquire(key, projectCase)) {
+            String result = lease.getNetwork().getId();
+            resultCache.put(resultKey, result, invalidationCount);
+            return result;
+        }
+    }
+
+    @Test
+    public void concurrentQueryTest() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        networkCache = new NetworkCacheService();
+        ReflectionTestUtils.setField(networkCache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(networkCache, "maxSizeMb", 1024L);
+        networkCache.init();
+        resultCache = new QueryResultCache();
+        ReflectionTestUtils.setField(resultCache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(resultCache, "maxSizeMb", 1L);
+        resultCache.init();
+        ReflectionTestUtils.setField(invalidationService, "networkCache", networkCache);
+        ReflectionTestUtils.setField(invalidationService, "resultCache", resultCache);
+        Mockito.when(case1.getNetwork()).thenReturn(NetworkFactory.create("old", "test"), NetworkFactory.create("new", "test"));
+
+        // a query using the old network, acquired before the invalidation, ends after it
+        QueryResultCache.Key resultKey = new QueryResultCache.Key(CASE1, caseVersions.getVersion(CASE1, case1), ScriptType.GROOVY, "network.id");
+        long invalidationCount = resultCache.getInvalidationCount();
+        try (NetworkCacheService.Lease lease = networkCache.acquire(CASE1, case1)) {
+            invalidationService.invalidate(CASE1, null);
+            resultCache.put(resultKey, lease.getNetwork().getId(), invalidationCount);
+        }
+
+        // no result of the old network under the version, unchanged as persisted state has not been modified
+        assertEquals("new", queryId(CASE1, case1));
+        assertEquals("new", queryId(CASE1, case1));
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import com.powsybl.afs.AppFileSystem;
+import com.powsybl.afs.ProjectFile;
+import com.powsybl.afs.ext.base.ImportedCase;
+import com.powsybl.afs.ext.base.ScriptType;
+import com.powsybl.iidm.network.NetworkFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MultiCaseQueryServiceTest {
+
+    private AppFileSystem fileSystem;
+
+    private NetworkCacheService networkCache;
+
+    private NetworkQueryService queryService;
+
+    private AdmissionController admission;
+
+    private MultiCaseQueryService multiCaseQueryService;
+
+    private void addCase(String nodeId) {
+        ImportedCase projectCase = Mockito.mock(ImportedCase.class);
+        Mockito.when(projectCase.getModificationDate()).thenReturn(ZonedDateTime.of(2019, 3, 1, 0, 0, 0, 0, ZoneOffset.UTC));
+        Mockito.when(projectCase.getNetwork()).thenReturn(NetworkFactory.create(nodeId, "test"));
+        Mockito.when(fileSystem.findProjectFile(nodeId, ProjectFile.class)).thenReturn(projectCase);
+    }
+
+    @Before
+    public void setUp() {
+        fileSystem = Mockito.mock(AppFileSystem.class);
+        Mockito.when(fileSystem.getName()).thenReturn("fs");
+        addCase("case1");
+        addCase("case2");
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        networkCache = new NetworkCacheService();
+        ReflectionTestUtils.setField(networkCache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(networkCache, "maxSizeMb", 1024L);
+        networkCache.init();
+
+        QueryResultCache resultCache = new QueryResultCache();
+        ReflectionTestUtils.setField(resultCache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(resultCache, "maxSizeMb", 1L);
+        resultCache.init();
+
+        queryService = new NetworkQueryService();
+        ReflectionTestUtils.setField(queryService, "threads", 2);
+        ReflectionTestUtils.setField(queryService, "queueCapacity", 10);
+        ReflectionTestUtils.setField(queryService, "maxTimeoutMs", 60000L);
+        ReflectionTestUtils.setField(queryService, "retryAfterSeconds", 5L);
+        ReflectionTestUtils.setField(queryService, "batchParallelism", 2);
+        ReflectionTestUtils.setField(queryService, "scriptCacheSize", 10);
+        queryService.init();
+
+        admission = Mockito.mock(AdmissionController.class);
+
+        multiCaseQueryService = new MultiCaseQueryService();
+        ReflectionTestUtils.setField(multiCaseQueryService, "networkCache", networkCache);
+        ReflectionTestUtils.setField(multiCaseQueryService, "queryService", queryService);
+        ReflectionTestUtils.setField(multiCaseQueryService, "resultCache", resultCache);
+        ReflectionTestUtils.setField(multiCaseQueryService, "caseVersions", new CaseVersions());
+        ReflectionTestUtils.setField(multiCaseQueryService, "admission", admission);
+        ReflectionTestUtils.setField(multiCaseQueryService, "parallelism", 2);
+        multiCaseQueryService.init();
+    }
+
+    @After
+    public void tearDown() {
+        multiCaseQueryService.close();
+        queryService.close();
+    }
+
+    private Map<String, String> queryAll(MultiCaseQuery query) throws IOException {
+        Map<String, String> results = new HashMap<>();
+        multiCaseQueryService.queryAll(fileSystem, query.getNodeIds(), query, (nodeId, resultJson, error) -> {
+            assertNull(error);
+            results.put(nodeId, resultJson);
+        });
+        return results;
+    }
+
+    @Test
+    public void queryAllTest() throws Exception {
+        MultiCaseQuery query = new MultiCaseQuery(Arrays.asList("case1", "case2"), null, ScriptType.GROOVY, "network.id");
+        Map<String, String> expected = new HashMap<>();
+        expected.put("case1", "\"case1\"");
+        expected.put("case2", "\"case2\"");
+        assertEquals(expected, queryAll(query));
+
+        // each case is admitted as a batch request, and its network is not kept in the cache
+        Mockito.verify(admission, Mockito.times(1)).admitBatchLoad(new CaseKey("fs", "case1"));
+        Mockito.verify(admission, Mockito.times(1)).admitBatchLoad(new CaseKey("fs", "case2"));
+        assertFalse(networkCache.isCached(new CaseKey("fs", "case1")));
+        assertFalse(networkCache.isCached(new CaseKey("fs", "case2")));
+
+        // results already known are answered without admission
+        assertEquals(expected, queryAll(query));
+        Mockito.verifyNoMoreInteractions(admission);
+    }
+
+    @Test
+    public void cancelTest() throws Exception {
+        // case1 waits for admission until interrupted
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Mockito.when(admission.admitBatchLoad(new CaseKey("fs", "case1"))).thenAnswer(invocation -> {
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return null;
+        });
+
+        CountDownLatch case2Done = new CountDownLatch(1);
+        MultiCaseQuery query = new MultiCaseQuery(Arrays.asList("case1", "case2"), null, ScriptType.GROOVY, "network.id");
+        Future<?> job = multiCaseQueryService.start(fileSystem, query.getNodeIds(), query, (nodeId, resultJson, error) -> {
+            if ("case2".equals(nodeId)) {
+                case2Done.countDown();
+            }
+        }, error -> { });
+        assertTrue(case2Done.await(10, TimeUnit.SECONDS));
+
+        // cancelling the job cancels the case still waiting
+        job.cancel(true);
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+    }
+}
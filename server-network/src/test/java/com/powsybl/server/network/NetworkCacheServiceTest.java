@@ -0,0 +1,242 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import com.powsybl.afs.ext.base.ImportedCase;
+import com.powsybl.iidm.network.Network;
+import com.powsybl.iidm.network.NetworkFactory;
+import com.powsybl.iidm.network.TopologyKind;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class NetworkCacheServiceTest {
+
+    private static final long HALF_MB = 512 * 1024L;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private NetworkCacheService networkCache;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        networkCache = new NetworkCacheService();
+        ReflectionTestUtils.setField(networkCache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(networkCache, "maxSizeMb", 1L);
+        networkCache.init();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Create a network with an estimated size of half a megabyte.
+     */
+    private static Network createNetwork(String id) {
+        Network network = NetworkFactory.create(id, "test");
+        for (int i = 0; i < 64; i++) {
+            network.newSubstation()
+                    .setId("S" + i)
+                    .add()
+                    .newVoltageLevel()
+                    .setId("VL" + i)
+                    .setNominalV(400)
+                    .setTopologyKind(TopologyKind.BUS_BREAKER)
+                    .add();
+        }
+        return network;
+    }
+
+    private static ImportedCase createCase(String id) {
+        ImportedCase projectCase = Mockito.mock(ImportedCase.class);
+        Mockito.when(projectCase.getNetwork()).thenReturn(createNetwork(id));
+        return projectCase;
+    }
+
+    private double getCount(String name) {
+        return meterRegistry.get(name).counter().count();
+    }
+
+    @Test
+    public void singleFlightTest() throws Exception {
+        CaseKey key = new CaseKey("fs", "case");
+        Network network = createNetwork("case");
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch loaded = new CountDownLatch(1);
+        ImportedCase projectCase = Mockito.mock(ImportedCase.class);
+        Mockito.when(projectCase.getNetwork()).thenAnswer(invocation -> {
+            loading.countDown();
+            loaded.await();
+            return network;
+        });
+
+        Callable<Network> request = () -> {
+            try (NetworkCacheService.Lease lease = networkCache.acquire(key, projectCase)) {
+                return lease.getNetwork();
+            }
+        };
+        Future<Network> first = executor.submit(request);
+        assertTrue(loading.await(10, TimeUnit.SECONDS));
+        Future<Network> second = executor.submit(request);
+        // wait for the second request to join the load in progress
+        long deadline = System.currentTimeMillis() + 10000;
+        while (getCount("network.cache.loads.coalesced") < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, getCount("network.cache.loads.coalesced"), 0);
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+
+        loaded.countDown();
+        assertSame(network, first.get(10, TimeUnit.SECONDS));
+        assertSame(network, second.get(10, TimeUnit.SECONDS));
+        Mockito.verify(projectCase, Mockito.times(1)).getNetwork();
+        assertTrue(networkCache.isCached(key));
+        assertEquals(1, getCount("network.cache.loads.coalesced"), 0);
+    }
+
+    @Test
+    public void invalidationDuringLoadTest() throws Exception {
+        CaseKey key = new CaseKey("fs", "case");
+        Network oldNetwork = createNetwork("old");
+        Network newNetwork = createNetwork("new");
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch loaded = new CountDownLatch(1);
+        ImportedCase projectCase = Mockito.mock(ImportedCase.class);
+        Mockito.when(projectCase.getNetwork()).thenAnswer(invocation -> {
+            loading.countDown();
+            loaded.await();
+            return oldNetwork;
+        }).thenReturn(newNetwork);
+
+        Future<String> request = executor.submit(() -> {
+            try (NetworkCacheService.Lease lease = networkCache.acquire(key, projectCase)) {
+                return lease.getNetwork().getId();
+            }
+        });
+        assertTrue(loading.await(10, TimeUnit.SECONDS));
+        // invalidated by a node event while loading
+        networkCache.invalidate(key);
+        loaded.countDown();
+
+        // the network loaded before the invalidation is neither used nor kept by the project case
+        assertEquals("new", request.get(10, TimeUnit.SECONDS));
+        Mockito.verify(projectCase, Mockito.times(2)).getNetwork();
+        Mockito.verify(projectCase, Mockito.times(1)).invalidateNetworkCache();
+        assertTrue(networkCache.isCached(key));
+        assertEquals(HALF_MB, networkCache.getResidentBytes());
+        try (NetworkCacheService.Lease lease = networkCache.acquire(key, projectCase)) {
+            assertSame(newNetwork, lease.getNetwork());
+        }
+    }
+
+    @Test
+    public void loadFailureTest() {
+        CaseKey key = new CaseKey("fs", "case");
+        ImportedCase projectCase = Mockito.mock(ImportedCase.class);
+        Mockito.when(projectCase.getNetwork())
+                .thenThrow(new IllegalStateException("import failure"))
+                .thenReturn(createNetwork("case"));
+
+        try {
+            networkCache.acquire(key, projectCase);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("import failure", e.getMessage());
+        }
+        assertFalse(networkCache.isCached(key));
+        assertFalse(networkCache.getKnownSize(key).isPresent());
+
+        // a failed load is not remembered
+        try (NetworkCacheService.Lease lease = networkCache.acquire(key, projectCase)) {
+            assertEquals("case", lease.getNetwork().getId());
+        }
+        assertTrue(networkCache.isCached(key));
+    }
+
+    @Test
+    public void evictionTest() {
+        assertEquals(HALF_MB, NetworkCacheService.estimateSize(createNetwork("test")));
+
+        CaseKey key1 = new CaseKey("fs", "case1");
+        CaseKey key2 = new CaseKey("fs", "case2");
+        CaseKey key3 = new CaseKey("fs", "case3");
+        ImportedCase case1 = createCase("case1");
+        ImportedCase case2 = createCase("case2");
+        ImportedCase case3 = createCase("case3");
+
+        networkCache.acquire(key1, case1).close();
+        networkCache.acquire(key2, case2).close();
+        assertEquals(2, networkCache.getSize());
+        assertEquals(2 * HALF_MB, networkCache.getResidentBytes());
+
+        // case2 becomes the least recently used network and is evicted to make room for case3
+        networkCache.acquire(key1, case1).close();
+        networkCache.acquire(key3, case3).close();
+        assertTrue(networkCache.isCached(key1));
+        assertFalse(networkCache.isCached(key2));
+        assertTrue(networkCache.isCached(key3));
+        assertEquals(2 * HALF_MB, networkCache.getResidentBytes());
+        assertEquals(1, getCount("network.cache.evictions"), 0);
+        Mockito.verify(case2, Mockito.times(1)).invalidateNetworkCache();
+        Mockito.verify(case1, Mockito.never()).invalidateNetworkCache();
+
+        // the size of an evicted network is still known
+        assertEquals(HALF_MB, networkCache.getKnownSize(key2).getAsLong());
+    }
+
+    @Test
+    public void pinnedEvictionTest() {
+        CaseKey key1 = new CaseKey("fs", "case1");
+        CaseKey key2 = new CaseKey("fs", "case2");
+        CaseKey key3 = new CaseKey("fs", "case3");
+        ImportedCase case1 = createCase("case1");
+        ImportedCase case2 = createCase("case2");
+        ImportedCase case3 = createCase("case3");
+
+        try (NetworkCacheService.Lease lease1 = networkCache.acquire(key1, case1);
+             NetworkCacheService.Lease lease2 = networkCache.acquire(key2, case2)) {
+            try (NetworkCacheService.Lease lease3 = networkCache.acquire(key3, case3)) {
+                // over budget, but all the networks are in use
+                assertEquals(3, networkCache.getSize());
+                assertEquals(3 * HALF_MB, networkCache.getResidentBytes());
+            }
+            // case1 and case2 are still pinned, so the only network which can be evicted is case3
+            assertTrue(networkCache.isCached(key1));
+            assertFalse(networkCache.isCached(key3));
+            Mockito.verify(case3, Mockito.times(1)).invalidateNetworkCache();
+        }
+        assertEquals(2, networkCache.getSize());
+    }
+
+    @Test
+    public void evictIfUnusedTest() {
+        CaseKey key = new CaseKey("fs", "case");
+        ImportedCase projectCase = createCase("case");
+        try (NetworkCacheService.Lease lease = networkCache.acquire(key, projectCase)) {
+            networkCache.evictIfUnused(key);
+            assertTrue(networkCache.isCached(key));
+        }
+        networkCache.evictIfUnused(key);
+        assertFalse(networkCache.isCached(key));
+        assertEquals(0, networkCache.getResidentBytes());
+        Mockito.verify(projectCase, Mockito.times(1)).invalidateNetworkCache();
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import com.powsybl.afs.ext.base.ImportedCase;
+import com.powsybl.iidm.network.NetworkFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class NetworkExportCacheTest {
+
+    private static final CaseKey KEY = new CaseKey("fs", "case");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private NetworkExportCache createCache(Path directory) throws IOException {
+        NetworkExportCache cache = new NetworkExportCache();
+        ReflectionTestUtils.setField(cache, "directory", directory.toString());
+        cache.init();
+        return cache;
+    }
+
+    private static Path getCacheDir(NetworkExportCache cache) {
+        return (Path) ReflectionTestUtils.getField(cache, "cacheDir");
+    }
+
+    @Test
+    public void sharedDirectoryTest() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        NetworkExportCache cache1 = createCache(directory);
+        Path export = Files.createFile(getCacheDir(cache1).resolve("export.xml.gz"));
+
+        // another replica sharing the directory neither deletes the exports of the first one at startup nor at shutdown
+        NetworkExportCache cache2 = createCache(directory);
+        assertNotEquals(getCacheDir(cache1), getCacheDir(cache2));
+        cache2.close();
+        assertTrue(Files.exists(export));
+        assertFalse(Files.exists(getCacheDir(cache2)));
+
+        cache1.close();
+        assertFalse(Files.exists(getCacheDir(cache1)));
+    }
+
+    @Test
+    public void invalidatedExportTest() throws IOException {
+        NetworkCacheService networkCache = new NetworkCacheService();
+        ReflectionTestUtils.setField(networkCache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(networkCache, "maxSizeMb", 1024L);
+        networkCache.init();
+        NetworkExportCache cache = createCache(folder.getRoot().toPath());
+        ReflectionTestUtils.setField(cache, "networkCache", networkCache);
+        ReflectionTestUtils.setField(cache, "diskBudgetMb", 1024L);
+
+        // the case is invalidated while its network is loaded for the export
+        ImportedCase projectCase = Mockito.mock(ImportedCase.class);
+        Mockito.when(projectCase.getNetwork()).thenAnswer(invocation -> {
+            cache.invalidate(KEY);
+            return NetworkFactory.create("case", "test");
+        }).thenReturn(NetworkFactory.create("case", "test"));
+        cache.prepare(KEY, "v1", projectCase);
+
+        // exported but not cached, and deleted once read
+        assertFalse(cache.isCached(KEY, "v1"));
+        assertEquals(0, cache.getDiskBytes());
+        try (Stream<Path> files = Files.list(getCacheDir(cache))) {
+            assertEquals(0, files.count());
+        }
+        assertTrue(((Map<?, ?>) ReflectionTestUtils.getField(cache, "exportLocks")).isEmpty());
+
+        networkCache.invalidate(KEY);
+        cache.prepare(KEY, "v1", projectCase);
+        assertTrue(cache.isCached(KEY, "v1"));
+        cache.close();
+    }
+}
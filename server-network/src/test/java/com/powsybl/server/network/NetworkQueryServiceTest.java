@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import com.powsybl.afs.ext.base.ScriptType;
+import com.powsybl.iidm.network.Country;
+import com.powsybl.iidm.network.Network;
+import com.powsybl.iidm.network.NetworkFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class NetworkQueryServiceTest {
+
+    private NetworkQueryService queryService;
+
+    private Network network;
+
+    @Before
+    public void setUp() {
+        queryService = new NetworkQueryService();
+        ReflectionTestUtils.setField(queryService, "threads", 2);
+        ReflectionTestUtils.setField(queryService, "queueCapacity", 1);
+        ReflectionTestUtils.setField(queryService, "maxTimeoutMs", 60000L);
+        ReflectionTestUtils.setField(queryService, "retryAfterSeconds", 5L);
+        ReflectionTestUtils.setField(queryService, "batchParallelism", 2);
+        ReflectionTestUtils.setField(queryService, "scriptCacheSize", 10);
+        queryService.init();
+
+        network = NetworkFactory.create("test", "test");
+        network.newSubstation()
+                .setId("S1")
+                .setCountry(Country.FR)
+                .add();
+    }
+
+    @After
+    public void tearDown() {
+        queryService.close();
+    }
+
+    @Test
+    public void queryTest() {
+        // the network API is imported and the result, GStrings included, serialized as by ProjectCase.queryNetwork
+        String script = "[id: \"${network.id}\", french: network.substations.collect { it.country.orElse(null) == Country.FR }]";
+        assertEquals("{\"id\":\"test\",\"french\":[true]}", queryService.query(network, ScriptType.GROOVY, script));
+        // same result from the compiled script cache
+        assertEquals("{\"id\":\"test\",\"french\":[true]}", queryService.query(network, ScriptType.GROOVY, script));
+        assertEquals("null", queryService.query(network, ScriptType.GROOVY, "null"));
+    }
+
+    private static void assertTimedOut(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof QueryTimeoutException);
+        }
+    }
+
+    @Test
+    public void timeoutTest() throws Exception {
+        // both threads busy with endless scripts
+        CountDownLatch ended = new CountDownLatch(2);
+        List<CompletableFuture<String>> endlessQueries = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            endlessQueries.add(queryService.submit(() -> queryService.query(network, ScriptType.GROOVY, "while (true) { }"), 500L, ended::countDown));
+        }
+
+        // timed out while waiting for a thread, never run
+        AtomicBoolean run = new AtomicBoolean(false);
+        CountDownLatch queuedEnded = new CountDownLatch(1);
+        CompletableFuture<String> queued = queryService.submit(() -> {
+            run.set(true);
+            return "";
+        }, 50L, queuedEnded::countDown);
+        assertTimedOut(queued);
+        assertTrue(queuedEnded.await(10, TimeUnit.SECONDS));
+
+        // the endless scripts are interrupted and free their threads
+        for (CompletableFuture<String> endlessQuery : endlessQueries) {
+            assertTimedOut(endlessQuery);
+        }
+        assertTrue(ended.await(10, TimeUnit.SECONDS));
+        CompletableFuture<String> query = queryService.submit(() -> queryService.query(network, ScriptType.GROOVY, "network.id"), null, () -> { });
+        assertEquals("\"test\"", query.get(10, TimeUnit.SECONDS));
+        assertFalse(run.get());
+    }
+
+    @Test
+    public void batchTest() throws Exception {
+        List<Callable<String>> queries = Arrays.asList(
+            () -> queryService.query(network, ScriptType.GROOVY, "network.id"),
+            () -> queryService.query(network, ScriptType.GROOVY, "while (true) { }"),
+            () -> {
+                throw new IllegalStateException("query failure");
+            });
+        Map<Integer, String> results = new HashMap<>();
+        Map<Integer, Exception> errors = new HashMap<>();
+        queryService.queryAll(queries, 500L, (index, resultJson, error) -> {
+            if (error != null) {
+                errors.put(index, error);
+            } else {
+                results.put(index, resultJson);
+            }
+        });
+
+        // each query reported once, the endless one when the time budget of the batch is exhausted
+        assertEquals(Collections.singletonMap(0, "\"test\""), results);
+        assertEquals(2, errors.size());
+        assertTrue(errors.get(1) instanceof QueryTimeoutException);
+        assertTrue(errors.get(2) instanceof IllegalStateException);
+
+        // the interrupted query frees its thread for the next batch
+        results.clear();
+        queryService.queryAll(Arrays.asList(() -> "1", () -> "2"), null, (index, resultJson, error) -> results.put(index, resultJson));
+        assertEquals(2, results.size());
+    }
+}
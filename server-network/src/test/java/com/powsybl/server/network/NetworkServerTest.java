@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import com.powsybl.afs.AppFileSystem;
+import com.powsybl.afs.ProjectFile;
+import com.powsybl.afs.ext.base.ImportedCase;
+import com.powsybl.client.commons.BinaryNetworkFormat;
+import com.powsybl.client.storage.StorageService;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import static org.junit.Assert.*;
+
+public class NetworkServerTest {
+
+    private static final CaseKey KEY = new CaseKey("fs", "case");
+
+    private ImportedCase projectCase;
+
+    private NetworkServer server;
+
+    private AdmissionController admission;
+
+    @Before
+    public void setUp() {
+        projectCase = Mockito.mock(ImportedCase.class);
+        Mockito.when(projectCase.getModificationDate()).thenReturn(ZonedDateTime.of(2019, 3, 1, 0, 0, 0, 0, ZoneOffset.UTC));
+        AppFileSystem fileSystem = Mockito.mock(AppFileSystem.class);
+        Mockito.when(fileSystem.findProjectFile("case", ProjectFile.class)).thenReturn(projectCase);
+        StorageService service = Mockito.mock(StorageService.class);
+        Mockito.when(service.getFileSystem("fs")).thenReturn(fileSystem);
+        admission = Mockito.mock(AdmissionController.class);
+
+        server = new NetworkServer();
+        ReflectionTestUtils.setField(server, "service", service);
+        ReflectionTestUtils.setField(server, "invalidationService", Mockito.mock(CaseInvalidationService.class));
+        ReflectionTestUtils.setField(server, "requestStats", Mockito.mock(CaseRequestStats.class));
+        ReflectionTestUtils.setField(server, "exportCache", Mockito.mock(NetworkExportCache.class));
+        ReflectionTestUtils.setField(server, "caseVersions", new CaseVersions());
+        ReflectionTestUtils.setField(server, "admission", admission);
+    }
+
+    private ResponseEntity<StreamingResponseBody> getNetwork(String accept, String ifNoneMatch, MockHttpServletResponse response) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/rest/network/fileSystems/fs/nodes/case");
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        return server.getNetwork("fs", "case", accept, null, new ServletWebRequest(request, response));
+    }
+
+    @Test
+    public void notModifiedTest() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ResponseEntity<StreamingResponseBody> entity = getNetwork(null, null, response);
+        assertEquals(HttpStatus.OK, entity.getStatusCode());
+        String eTag = response.getHeader(HttpHeaders.ETAG);
+        assertNotNull(eTag);
+        assertNotNull(response.getHeader(HttpHeaders.LAST_MODIFIED));
+        Mockito.verify(admission, Mockito.times(1)).admitExport(Mockito.eq(KEY), Mockito.anyString());
+
+        // the client has the current version, answered without being admitted nor exported
+        response = new MockHttpServletResponse();
+        assertNull(getNetwork(null, eTag, response));
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), response.getStatus());
+        assertEquals(eTag, response.getHeader(HttpHeaders.ETAG));
+        Mockito.verify(admission, Mockito.times(1)).admitExport(Mockito.eq(KEY), Mockito.anyString());
+
+        // the binary reduced view has its own entity tag
+        response = new MockHttpServletResponse();
+        entity = getNetwork(BinaryNetworkFormat.MEDIA_TYPE_VALUE, eTag, response);
+        assertEquals(HttpStatus.OK, entity.getStatusCode());
+        assertNotEquals(eTag, response.getHeader(HttpHeaders.ETAG));
+
+        // the entity tag being derived from persisted state only, it is still current after a restart
+        ReflectionTestUtils.setField(server, "caseVersions", new CaseVersions());
+        response = new MockHttpServletResponse();
+        assertNull(getNetwork(null, eTag, response));
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), response.getStatus());
+
+        // a modified case is sent again
+        Mockito.when(projectCase.getModificationDate()).thenReturn(ZonedDateTime.of(2019, 3, 2, 0, 0, 0, 0, ZoneOffset.UTC));
+        response = new MockHttpServletResponse();
+        entity = getNetwork(null, eTag, response);
+        assertEquals(HttpStatus.OK, entity.getStatusCode());
+        assertNotEquals(eTag, response.getHeader(HttpHeaders.ETAG));
+        Mockito.verify(admission, Mockito.times(2)).admitExport(Mockito.eq(KEY), Mockito.anyString());
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import com.powsybl.afs.AppFileSystem;
+import com.powsybl.afs.ProjectFile;
+import com.powsybl.afs.ext.base.ImportedCase;
+import com.powsybl.client.storage.StorageService;
+import com.powsybl.iidm.network.NetworkFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class NetworkWarmUpTest {
+
+    private static final CaseKey CASE1 = new CaseKey("fs", "case1");
+
+    private static final CaseKey CASE2 = new CaseKey("fs", "case2");
+
+    private static final CaseKey CASE3 = new CaseKey("fs", "case3");
+
+    private AppFileSystem fileSystem;
+
+    private CaseRequestStats requestStats;
+
+    private CaseAffinityRouter affinityRouter;
+
+    private NetworkCacheService networkCache;
+
+    private NetworkExportCache exportCache;
+
+    private NetworkWarmUp warmUp;
+
+    @Before
+    public void setUp() {
+        fileSystem = Mockito.mock(AppFileSystem.class);
+        Mockito.when(fileSystem.getName()).thenReturn("fs");
+        ImportedCase projectCase = Mockito.mock(ImportedCase.class);
+        Mockito.when(projectCase.getModificationDate()).thenReturn(ZonedDateTime.of(2019, 3, 1, 0, 0, 0, 0, ZoneOffset.UTC));
+        Mockito.when(projectCase.getNetwork()).thenReturn(NetworkFactory.create("case1", "test"));
+        Mockito.when(fileSystem.findProjectFile("case1", ProjectFile.class)).thenReturn(projectCase);
+        Mockito.when(fileSystem.findProjectFile("case2", ProjectFile.class)).thenThrow(new IllegalArgumentException("case2 not found"));
+        StorageService storageService = Mockito.mock(StorageService.class);
+        Mockito.when(storageService.getFileSystem("fs")).thenReturn(fileSystem);
+
+        requestStats = Mockito.mock(CaseRequestStats.class);
+        affinityRouter = Mockito.mock(CaseAffinityRouter.class);
+        Mockito.when(affinityRouter.isLocalOwner(Mockito.any())).thenReturn(true);
+
+        networkCache = new NetworkCacheService();
+        ReflectionTestUtils.setField(networkCache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(networkCache, "maxSizeMb", 1024L);
+        networkCache.init();
+        exportCache = Mockito.mock(NetworkExportCache.class);
+
+        warmUp = new NetworkWarmUp();
+        ReflectionTestUtils.setField(warmUp, "storageService", storageService);
+        ReflectionTestUtils.setField(warmUp, "caseVersions", new CaseVersions());
+        ReflectionTestUtils.setField(warmUp, "invalidationService", Mockito.mock(CaseInvalidationService.class));
+        ReflectionTestUtils.setField(warmUp, "networkCache", networkCache);
+        ReflectionTestUtils.setField(warmUp, "exportCache", exportCache);
+        ReflectionTestUtils.setField(warmUp, "requestStats", requestStats);
+        ReflectionTestUtils.setField(warmUp, "affinityRouter", affinityRouter);
+        ReflectionTestUtils.setField(warmUp, "enabled", true);
+        ReflectionTestUtils.setField(warmUp, "cases", new String[] {"fs/case1", "invalid"});
+        ReflectionTestUtils.setField(warmUp, "mostRequested", 10);
+        ReflectionTestUtils.setField(warmUp, "parallelism", 2);
+    }
+
+    private Health awaitWarmUp() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        Health health = warmUp.health();
+        while (health.getStatus() != Status.UP && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            health = warmUp.health();
+        }
+        assertEquals(Status.UP, health.getStatus());
+        return health;
+    }
+
+    @Test
+    public void test() throws Exception {
+        // case1 configured, case2 and case3 most requested by the previous run, case3 owned by another replica
+        Mockito.when(requestStats.getPreviousMostRequested(10)).thenReturn(Arrays.asList(CASE1, CASE2, CASE3));
+        Mockito.when(affinityRouter.isLocalOwner(CASE3)).thenReturn(false);
+        assertEquals(Status.OUT_OF_SERVICE, warmUp.health().getStatus());
+
+        warmUp.run(null);
+        Health health = awaitWarmUp();
+        assertEquals(1, health.getDetails().get("warmedUp"));
+        assertEquals(1, health.getDetails().get("failed"));
+
+        // the network of case1 is cached and its export prepared
+        assertTrue(networkCache.isCached(CASE1));
+        Mockito.verify(exportCache).prepare(Mockito.eq(CASE1), Mockito.anyString(), Mockito.any());
+        Mockito.verify(fileSystem, Mockito.never()).findProjectFile("case3", ProjectFile.class);
+    }
+
+    @Test
+    public void noCaseTest() {
+        ReflectionTestUtils.setField(warmUp, "cases", new String[0]);
+        Mockito.when(requestStats.getPreviousMostRequested(10)).thenReturn(Collections.emptyList());
+
+        // up at once
+        warmUp.run(null);
+        assertEquals(Status.UP, warmUp.health().getStatus());
+        assertEquals(0, networkCache.getSize());
+    }
+}
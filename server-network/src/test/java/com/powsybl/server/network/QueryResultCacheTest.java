@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import com.google.common.base.Strings;
+import com.powsybl.afs.ProjectDependency;
+import com.powsybl.afs.ProjectFile;
+import com.powsybl.afs.ProjectNode;
+import com.powsybl.afs.ext.base.ImportedCase;
+import com.powsybl.afs.ext.base.ScriptType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class QueryResultCacheTest {
+
+    private static final CaseKey CASE1 = new CaseKey("fs", "case1");
+
+    private static final CaseKey CASE2 = new CaseKey("fs", "case2");
+
+    private QueryResultCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new QueryResultCache();
+        ReflectionTestUtils.setField(cache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "maxSizeMb", 1L);
+        cache.init();
+    }
+
+    private static QueryResultCache.Key key(CaseKey caseKey, String version, String script) {
+        return new QueryResultCache.Key(caseKey, version, ScriptType.GROOVY, script);
+    }
+
+    @Test
+    public void test() {
+        assertFalse(cache.get(key(CASE1, "v1", "network.id")).isPresent());
+        cache.put(key(CASE1, "v1", "network.id"), "\"case1\"");
+        assertEquals(Optional.of("\"case1\""), cache.get(key(CASE1, "v1", "network.id")));
+
+        // keyed by case, version and script
+        assertFalse(cache.get(key(CASE2, "v1", "network.id")).isPresent());
+        assertFalse(cache.get(key(CASE1, "v2", "network.id")).isPresent());
+        assertFalse(cache.get(key(CASE1, "v1", "network.substationCount")).isPresent());
+
+        // replacing a result does not count it twice
+        long size = cache.getSize();
+        cache.put(key(CASE1, "v1", "network.id"), "\"CASE1\"");
+        assertEquals(size, cache.getSize());
+        assertEquals(Optional.of("\"CASE1\""), cache.get(key(CASE1, "v1", "network.id")));
+    }
+
+    @Test
+    public void evictionTest() {
+        // about 400 KB each
+        String result = Strings.repeat("x", 200000);
+        cache.put(key(CASE1, "v1", "script1"), result);
+        cache.put(key(CASE1, "v1", "script2"), result);
+        assertTrue(cache.get(key(CASE1, "v1", "script1")).isPresent());
+
+        // script2 is the least recently used result
+        cache.put(key(CASE1, "v1", "script3"), result);
+        assertTrue(cache.get(key(CASE1, "v1", "script1")).isPresent());
+        assertFalse(cache.get(key(CASE1, "v1", "script2")).isPresent());
+        assertTrue(cache.get(key(CASE1, "v1", "script3")).isPresent());
+        assertTrue(cache.getSize() <= 1024 * 1024);
+
+        // results larger than the cache are not cached, and do not evict the other ones
+        cache.put(key(CASE1, "v1", "script4"), Strings.repeat("x", 600000));
+        assertFalse(cache.get(key(CASE1, "v1", "script4")).isPresent());
+        assertTrue(cache.get(key(CASE1, "v1", "script1")).isPresent());
+    }
+
+    @Test
+    public void invalidateTest() {
+        cache.put(key(CASE1, "v1", "network.id"), "\"case1\"");
+        cache.put(key(CASE1, "v2", "network.id"), "\"case1\"");
+        cache.put(key(CASE2, "v1", "network.id"), "\"case2\"");
+
+        // all the versions of the case are removed
+        cache.invalidate(CASE1);
+        assertFalse(cache.get(key(CASE1, "v1", "network.id")).isPresent());
+        assertFalse(cache.get(key(CASE1, "v2", "network.id")).isPresent());
+        assertTrue(cache.get(key(CASE2, "v1", "network.id")).isPresent());
+
+        cache.invalidate(CASE2);
+        assertEquals(0, cache.getSize());
+
+        // a result possibly computed from a network being invalidated is not cached
+        long invalidationCount = cache.getInvalidationCount();
+        cache.invalidate(CASE1);
+        cache.put(key(CASE1, "v2", "network.id"), "\"case1\"", invalidationCount);
+        assertFalse(cache.get(key(CASE1, "v2", "network.id")).isPresent());
+        cache.put(key(CASE1, "v2", "network.id"), "\"case1\"", cache.getInvalidationCount());
+        assertTrue(cache.get(key(CASE1, "v2", "network.id")).isPresent());
+    }
+
+    private static ZonedDateTime date(long modificationTime) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(modificationTime), ZoneOffset.UTC);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void versionTest() {
+        // case2 is derived from case1
+        ImportedCase case1 = Mockito.mock(ImportedCase.class);
+        Mockito.when(case1.getId()).thenReturn("case1");
+        Mockito.when(case1.getModificationDate()).thenReturn(date(1000));
+        ProjectDependency<ProjectNode> dependency = Mockito.mock(ProjectDependency.class);
+        Mockito.when(dependency.getProjectNode()).thenReturn(case1);
+        ProjectFile case2 = Mockito.mock(ProjectFile.class);
+        Mockito.when(case2.getModificationDate()).thenReturn(date(1000));
+        Mockito.when(case2.getDependencies()).thenReturn(Collections.singletonList(dependency));
+
+        CaseVersions caseVersions = new CaseVersions();
+        assertFalse(caseVersions.isKnown(CASE2));
+        String version = caseVersions.getVersion(CASE2, case2);
+        assertTrue(caseVersions.isKnown(CASE2));
+        assertTrue(caseVersions.hasKnownCases("fs"));
+        assertFalse(caseVersions.hasKnownCases("other"));
+        assertEquals(version, caseVersions.getVersion(CASE2, case2));
+        assertNotEquals(version, caseVersions.getVersion(CASE1, case1));
+
+        // derived from persisted state only, the version is the same after a restart
+        assertEquals(version, new CaseVersions().getVersion(CASE2, case2));
+
+        // a modification of the case changes the version
+        Mockito.when(case2.getModificationDate()).thenReturn(date(2000));
+        String modifiedVersion = caseVersions.getVersion(CASE2, case2);
+        assertNotEquals(version, modifiedVersion);
+
+        // a modification of a dependency changes the version once the case is invalidated, its dependencies being kept until then
+        Mockito.when(case1.getModificationDate()).thenReturn(date(3000));
+        assertEquals(modifiedVersion, caseVersions.getVersion(CASE2, case2));
+        caseVersions.invalidate(CASE2);
+        assertFalse(caseVersions.isKnown(CASE2));
+        assertNotEquals(modifiedVersion, caseVersions.getVersion(CASE2, case2));
+        assertNotEquals(modifiedVersion, new CaseVersions().getVersion(CASE2, case2));
+    }
+}
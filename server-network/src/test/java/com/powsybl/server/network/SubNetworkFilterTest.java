@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.network;
+
+import com.google.common.collect.ImmutableSet;
+import com.powsybl.iidm.network.*;
+import com.powsybl.iidm.reducer.NetworkPredicate;
+import com.powsybl.iidm.reducer.NetworkReducer;
+import com.powsybl.iidm.xml.NetworkXml;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class SubNetworkFilterTest {
+
+    private Network network;
+
+    private static VoltageLevel createVoltageLevel(Substation substation, String id, double nominalV) {
+        VoltageLevel voltageLevel = substation.newVoltageLevel()
+                .setId(id)
+                .setNominalV(nominalV)
+                .setTopologyKind(TopologyKind.BUS_BREAKER)
+                .add();
+        voltageLevel.getBusBreakerView().newBus().setId(id + "_B").add();
+        return voltageLevel;
+    }
+
+    private void createLine(String voltageLevelId1, String voltageLevelId2) {
+        network.newLine()
+                .setId(voltageLevelId1 + "_" + voltageLevelId2)
+                .setVoltageLevel1(voltageLevelId1)
+                .setBus1(voltageLevelId1 + "_B")
+                .setConnectableBus1(voltageLevelId1 + "_B")
+                .setVoltageLevel2(voltageLevelId2)
+                .setBus2(voltageLevelId2 + "_B")
+                .setConnectableBus2(voltageLevelId2 + "_B")
+                .setR(1)
+                .setX(10)
+                .setG1(0)
+                .setB1(0)
+                .setG2(0)
+                .setB2(0)
+                .add();
+    }
+
+    /**
+     * VL1 (S1, FR) - VL2 (S2, FR) - VL3 (S3, BE) - VL4 (S4, DE) at 400 kV, with VL2_225 connected to VL2 by a
+     * transformer of S2.
+     */
+    @Before
+    public void setUp() {
+        network = NetworkFactory.create("test", "test");
+        createVoltageLevel(network.newSubstation().setId("S1").setCountry(Country.FR).add(), "VL1", 400);
+        Substation s2 = network.newSubstation().setId("S2").setCountry(Country.FR).add();
+        createVoltageLevel(s2, "VL2", 400);
+        createVoltageLevel(s2, "VL2_225", 225);
+        createVoltageLevel(network.newSubstation().setId("S3").setCountry(Country.BE).add(), "VL3", 400);
+        createVoltageLevel(network.newSubstation().setId("S4").setCountry(Country.DE).add(), "VL4", 400);
+        s2.newTwoWindingsTransformer()
+                .setId("TR")
+                .setVoltageLevel1("VL2")
+                .setBus1("VL2_B")
+                .setConnectableBus1("VL2_B")
+                .setVoltageLevel2("VL2_225")
+                .setBus2("VL2_225_B")
+                .setConnectableBus2("VL2_225_B")
+                .setR(0.1)
+                .setX(10)
+                .setG(0)
+                .setB(0)
+                .setRatedU1(400)
+                .setRatedU2(225)
+                .add();
+        createLine("VL1", "VL2");
+        createLine("VL2", "VL3");
+        createLine("VL3", "VL4");
+    }
+
+    private Set<String> select(SubNetworkFilter filter) {
+        return filter.selectVoltageLevels(network);
+    }
+
+    @Test
+    public void criteriaTest() {
+        assertEquals(ImmutableSet.of("VL1", "VL2", "VL2_225", "VL3", "VL4"), select(new SubNetworkFilter(null, null, null, null, null, 0)));
+        assertEquals(ImmutableSet.of("VL1"), select(new SubNetworkFilter(null, Collections.singleton("VL1"), null, null, null, 0)));
+        assertEquals(ImmutableSet.of("VL2", "VL2_225"), select(new SubNetworkFilter(Collections.singleton("S2"), null, null, null, null, 0)));
+        assertEquals(ImmutableSet.of("VL3", "VL4"), select(new SubNetworkFilter(null, null, ImmutableSet.of(Country.BE, Country.DE), null, null, 0)));
+
+        // location criteria are combined with a union, then restricted to the nominal voltage range
+        assertEquals(ImmutableSet.of("VL1", "VL2", "VL3"), select(new SubNetworkFilter(null, Collections.singleton("VL1"), ImmutableSet.of(Country.FR, Country.BE), 300.0, null, 0)));
+        assertEquals(ImmutableSet.of("VL2_225"), select(new SubNetworkFilter(null, null, null, null, 300.0, 0)));
+        assertTrue(select(new SubNetworkFilter(null, Collections.singleton("VL2_225"), null, 300.0, null, 2)).isEmpty());
+    }
+
+    @Test
+    public void depthTest() {
+        assertEquals(ImmutableSet.of("VL1", "VL2"), select(new SubNetworkFilter(null, Collections.singleton("VL1"), null, null, null, 1)));
+        // transformers are followed as well as lines
+        assertEquals(ImmutableSet.of("VL1", "VL2", "VL2_225", "VL3"), select(new SubNetworkFilter(null, Collections.singleton("VL1"), null, null, null, 2)));
+        assertEquals(ImmutableSet.of("VL1", "VL2", "VL2_225", "VL3", "VL4"), select(new SubNetworkFilter(null, Collections.singleton("VL1"), null, null, null, 10)));
+
+        // neighbours are selected whatever their nominal voltage
+        assertEquals(ImmutableSet.of("VL1", "VL2", "VL2_225", "VL3"), select(new SubNetworkFilter(Collections.singleton("S2"), null, null, 300.0, null, 1)));
+    }
+
+    @Test
+    public void predicateTest() {
+        NetworkPredicate predicate = new SubNetworkFilter(null, Collections.singleton("VL1"), null, null, null, 1).toPredicate(network);
+        assertTrue(predicate.test(network.getVoltageLevel("VL2")));
+        assertFalse(predicate.test(network.getVoltageLevel("VL2_225")));
+        // a substation is kept as soon as one of its voltage levels is
+        assertTrue(predicate.test(network.getSubstation("S2")));
+        assertFalse(predicate.test(network.getSubstation("S3")));
+    }
+
+    @Test
+    public void requiredVoltageLevelsTest() {
+        // neighbours are required to replace the branches to them
+        assertEquals(ImmutableSet.of("VL1", "VL2"), SubNetworkFilter.getRequiredVoltageLevels(network, Collections.singleton("VL1")));
+        assertEquals(ImmutableSet.of("VL1", "VL2", "VL2_225", "VL3"), SubNetworkFilter.getRequiredVoltageLevels(network, ImmutableSet.of("VL1", "VL2")));
+
+        // so are the voltage levels of the regulated equipments
+        network.getVoltageLevel("VL1").newGenerator()
+                .setId("G")
+                .setBus("VL1_B")
+                .setConnectableBus("VL1_B")
+                .setMinP(0)
+                .setMaxP(100)
+                .setTargetP(50)
+                .setTargetV(400)
+                .setVoltageRegulatorOn(true)
+                .setRegulatingTerminal(network.getLine("VL3_VL4").getTerminal1())
+                .add();
+        assertEquals(ImmutableSet.of("VL1", "VL2", "VL3", "VL4"), SubNetworkFilter.getRequiredVoltageLevels(network, Collections.singleton("VL1")));
+    }
+
+    private static Set<String> getIds(Stream<? extends Identifiable<?>> identifiables) {
+        return identifiables.map(Identifiable::getId).collect(Collectors.toSet());
+    }
+
+    @Test
+    public void readTest() throws Exception {
+        ByteArrayOutputStream export = new ByteArrayOutputStream();
+        NetworkXml.write(network, export);
+        Set<String> selected = new SubNetworkFilter(null, Collections.singleton("VL1"), null, null, null, 0).selectVoltageLevels(network);
+
+        // only the required part of the export is read
+        ByteArrayOutputStream filtered = new ByteArrayOutputStream();
+        SubNetworkXmlFilter.filter(new ByteArrayInputStream(export.toByteArray()), filtered, ImmutableSet.of("S1", "S2"),
+                SubNetworkFilter.getRequiredVoltageLevels(network, selected));
+        Network subNetwork = NetworkXml.read(new ByteArrayInputStream(filtered.toByteArray()));
+        assertEquals(ImmutableSet.of("VL1", "VL2"), getIds(subNetwork.getVoltageLevelStream()));
+        assertEquals(ImmutableSet.of("VL1_VL2"), getIds(subNetwork.getLineStream()));
+        assertEquals(0, subNetwork.getTwoWindingsTransformerCount());
+
+        // reduced to the same sub-network as the whole network
+        NetworkReducer.builder().withNetworkPredicate(SubNetworkFilter.toPredicate(selected)).build().reduce(subNetwork);
+        NetworkReducer.builder().withNetworkPredicate(SubNetworkFilter.toPredicate(selected)).build().reduce(network);
+        assertEquals(getIds(network.getVoltageLevelStream()), getIds(subNetwork.getVoltageLevelStream()));
+        assertEquals(getIds(network.getLineStream()), getIds(subNetwork.getLineStream()));
+        assertEquals(getIds(network.getLoadStream()), getIds(subNetwork.getLoadStream()));
+        assertEquals(getIds(network.getDanglingLineStream()), getIds(subNetwork.getDanglingLineStream()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidDepthTest() {
+        new SubNetworkFilter(null, null, null, null, null, -1);
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Objects;
+
+/**
+ * A double time series reduced to a number of points, either aggregated by buckets of consecutive points or
+ * selected by the largest triangle three buckets algorithm.
+ * <p>
+ * Aggregated buckets have a minimum, maximum, mean, first and last value, computed over their non NaN points,
+ * and are NaN when the bucket has no such point. Selected points only have a value. Indexes and times are those
+ * of the first point of each bucket, or of each selected point.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class DownsampledTimeSeries {
+
+    @JsonProperty("firstIndex")
+    private final int firstIndex;
+
+    @JsonProperty("lastIndex")
+    private final int lastIndex;
+
+    @JsonProperty("bucketSize")
+    private final Integer bucketSize;
+
+    @JsonProperty("indexes")
+    private final int[] indexes;
+
+    @JsonProperty("times")
+    private final long[] times;
+
+    @JsonProperty("count")
+    private final int[] count;
+
+    @JsonProperty("min")
+    private final double[] min;
+
+    @JsonProperty("max")
+    private final double[] max;
+
+    @JsonProperty("mean")
+    private final double[] mean;
+
+    @JsonProperty("first")
+    private final double[] first;
+
+    @JsonProperty("last")
+    private final double[] last;
+
+    @JsonProperty("values")
+    private final double[] values;
+
+    private DownsampledTimeSeries(int firstIndex, int lastIndex, Integer bucketSize, int[] indexes, long[] times,
+                                  int[] count, double[] min, double[] max, double[] mean, double[] first, double[] last,
+                                  double[] values) {
+        this.firstIndex = firstIndex;
+        this.lastIndex = lastIndex;
+        this.bucketSize = bucketSize;
+        this.indexes = Objects.requireNonNull(indexes);
+        this.times = Objects.requireNonNull(times);
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+        this.first = first;
+        this.last = last;
+        this.values = values;
+    }
+
+    static DownsampledTimeSeries createBuckets(int firstIndex, int lastIndex, int bucketSize, int[] indexes, long[] times,
+                                               int[] count, double[] min, double[] max, double[] mean, double[] first, double[] last) {
+        return new DownsampledTimeSeries(firstIndex, lastIndex, bucketSize, indexes, times, Objects.requireNonNull(count),
+                                         Objects.requireNonNull(min), Objects.requireNonNull(max), Objects.requireNonNull(mean),
+                                         Objects.requireNonNull(first), Objects.requireNonNull(last), null);
+    }
+
+    static DownsampledTimeSeries createPoints(int firstIndex, int lastIndex, int[] indexes, long[] times, double[] values) {
+        return new DownsampledTimeSeries(firstIndex, lastIndex, null, indexes, times, null, null, null, null, null, null,
+                                         Objects.requireNonNull(values));
+    }
+
+    public int getFirstIndex() {
+        return firstIndex;
+    }
+
+    public int getLastIndex() {
+        return lastIndex;
+    }
+
+    public Integer getBucketSize() {
+        return bucketSize;
+    }
+
+    public int[] getIndexes() {
+        return indexes;
+    }
+
+    public long[] getTimes() {
+        return times;
+    }
+
+    public int[] getCount() {
+        return count;
+    }
+
+    public double[] getMin() {
+        return min;
+    }
+
+    public double[] getMax() {
+        return max;
+    }
+
+    public double[] getMean() {
+        return mean;
+    }
+
+    public double[] getFirst() {
+        return first;
+    }
+
+    public double[] getLast() {
+        return last;
+    }
+
+    public double[] getValues() {
+        return values;
+    }
+}
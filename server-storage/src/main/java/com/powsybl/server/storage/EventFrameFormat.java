@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+/**
+ * Encoding of event frames sent on node and task event websockets, negotiated with the client through the
+ * websocket sub-protocol.
+ */
+public enum EventFrameFormat {
+    /**
+     * JSON encoded text frames, used when the client does not request any sub-protocol.
+     */
+    JSON("afs-json"),
+
+    /**
+     * Jackson Smile encoded binary frames.
+     */
+    SMILE("afs-smile");
+
+    private final String subProtocol;
+
+    EventFrameFormat(String subProtocol) {
+        this.subProtocol = subProtocol;
+    }
+
+    public String getSubProtocol() {
+        return subProtocol;
+    }
+
+    public static EventFrameFormat fromSubProtocol(String subProtocol) {
+        for (EventFrameFormat format : values()) {
+            if (format.subProtocol.equals(subProtocol)) {
+                return format;
+            }
+        }
+        return JSON;
+    }
+}
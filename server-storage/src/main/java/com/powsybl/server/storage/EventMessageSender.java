@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.powsybl.commons.json.JsonUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.standard.StandardWebSocketSession;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Encodes events and sends them asynchronously to a websocket session, as JSON text frames or as Smile binary
+ * frames depending on the sub-protocol accepted during the handshake.
+ */
+class EventMessageSender {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventMessageSender.class);
+
+    private static final long SEND_TIMEOUT = 1000;
+
+    private static final SendHandler SEND_HANDLER = result -> {
+        if (!result.isOK()) {
+            LOGGER.error(result.getException().toString(), result.getException());
+        }
+    };
+
+    private final ObjectMapper jsonMapper = JsonUtil.createObjectMapper();
+
+    private final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+
+    private final boolean binaryFramesEnabled;
+
+    EventMessageSender(boolean binaryFramesEnabled) {
+        this.binaryFramesEnabled = binaryFramesEnabled;
+    }
+
+    List<String> getSubProtocols() {
+        if (binaryFramesEnabled) {
+            return Arrays.asList(EventFrameFormat.SMILE.getSubProtocol(), EventFrameFormat.JSON.getSubProtocol());
+        }
+        return Collections.singletonList(EventFrameFormat.JSON.getSubProtocol());
+    }
+
+    void send(WebSocketSession session, Object event) {
+        RemoteEndpoint.Async remote = ((StandardWebSocketSession) session).getNativeSession().getAsyncRemote();
+        remote.setSendTimeout(SEND_TIMEOUT);
+        try {
+            if (EventFrameFormat.fromSubProtocol(session.getAcceptedProtocol()) == EventFrameFormat.SMILE) {
+                remote.sendBinary(ByteBuffer.wrap(smileMapper.writeValueAsBytes(event)), SEND_HANDLER);
+            } else {
+                remote.sendText(jsonMapper.writeValueAsString(event), SEND_HANDLER);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
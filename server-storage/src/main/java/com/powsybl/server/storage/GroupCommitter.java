@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import com.powsybl.afs.storage.AppStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares the commits of the underlying storages between concurrent flush requests.
+ * <p>
+ * A flush request applies its changes and then joins the commit being collected for its file system, or starts a
+ * new one. If no commit of the file system is running, the storage is flushed right away. Otherwise the first request
+ * of the new commit waits for {@code storage.flush.group-commit.max-delay-ms}, or until
+ * {@code storage.flush.group-commit.max-changes} changes have joined, and for the running commit to be done, and then
+ * flushes the storage once for all the requests, which are acknowledged together. As a commit only starts after the
+ * changes of all its requests have been applied, a request is still only acknowledged once its changes are committed.
+ * If the flush fails, whatever the error, all the requests of the commit fail with it.
+ */
+@Component
+public class GroupCommitter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GroupCommitter.class);
+
+    @Value("${storage.flush.group-commit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${storage.flush.group-commit.max-delay-ms:5}")
+    private long maxDelayMs;
+
+    @Value("${storage.flush.group-commit.max-changes:10000}")
+    private int maxChanges;
+
+    private static final class Commit {
+
+        private final long deadline;
+
+        private long changes = 0;
+
+        private int requests = 0;
+
+        private boolean done = false;
+
+        private Throwable failure;
+
+        private Commit(long deadline) {
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Commits of a file system, at most one being collected and one being run at a time.
+     */
+    private static final class Group {
+
+        // guarded by this
+        private Commit collecting;
+
+        private boolean committing = false;
+    }
+
+    private final Map<String, Group> groups = new ConcurrentHashMap<>();
+
+    /**
+     * Flush a storage once the given number of changes have been applied, sharing the flush with the concurrent
+     * requests of the same file system.
+     *
+     * @throws RuntimeException the exception the shared flush failed with
+     * @throws Error the error the shared flush failed with
+     */
+    public void commit(String fileSystemName, AppStorage storage, int changeCount) {
+        Objects.requireNonNull(fileSystemName);
+        Objects.requireNonNull(storage);
+        if (!enabled) {
+            storage.flush();
+            return;
+        }
+
+        Group group = groups.computeIfAbsent(fileSystemName, name -> new Group());
+        Commit commit;
+        boolean interrupted = false;
+        synchronized (group) {
+            commit = group.collecting;
+            boolean leader = commit == null;
+            if (leader) {
+                commit = new Commit(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMs));
+                group.collecting = commit;
+            }
+            commit.changes += changeCount;
+            commit.requests++;
+            if (commit.changes >= maxChanges) {
+                group.notifyAll();
+            }
+
+            if (!leader) {
+                while (!commit.done) {
+                    interrupted |= await(group, 0);
+                }
+                restoreInterrupt(interrupted);
+                propagate(commit.failure);
+                return;
+            }
+
+            // the commit is shared by the requests joining until it starts, the previous commit being done, and
+            // started right away if no commit is running
+            if (group.committing) {
+                long remaining = commit.deadline - System.nanoTime();
+                while (commit.changes < maxChanges && remaining > 0) {
+                    interrupted |= await(group, remaining);
+                    remaining = commit.deadline - System.nanoTime();
+                }
+            }
+            while (group.committing) {
+                interrupted |= await(group, 0);
+            }
+            group.collecting = null;
+            group.committing = true;
+        }
+
+        Throwable failure = null;
+        try {
+            storage.flush();
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            synchronized (group) {
+                LOGGER.debug("Commit of {} shared by {} requests, {} changes", fileSystemName, commit.requests, commit.changes);
+                commit.done = true;
+                commit.failure = failure;
+                group.committing = false;
+                group.notifyAll();
+            }
+        }
+        restoreInterrupt(interrupted);
+        propagate(failure);
+    }
+
+    /**
+     * Get the number of requests which have joined the commit being collected for a file system.
+     */
+    int getCollectingRequests(String fileSystemName) {
+        Group group = groups.get(fileSystemName);
+        if (group == null) {
+            return 0;
+        }
+        synchronized (group) {
+            return group.collecting != null ? group.collecting.requests : 0;
+        }
+    }
+
+    private static void propagate(Throwable failure) {
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new IllegalStateException(failure);
+        }
+    }
+
+    /**
+     * Wait on a group, without giving up: requests of a commit cannot leave before it is done.
+     *
+     * @return {@code true} if interrupted
+     */
+    private static boolean await(Group group, long timeoutNanos) {
+        try {
+            if (timeoutNanos > 0) {
+                TimeUnit.NANOSECONDS.timedWait(group, timeoutNanos);
+            } else {
+                group.wait();
+            }
+            return false;
+        } catch (InterruptedException e) {
+            return true;
+        }
+    }
+
+    private static void restoreInterrupt(boolean interrupted) {
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
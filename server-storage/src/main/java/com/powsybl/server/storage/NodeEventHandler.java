@@ -6,77 +6,68 @@
  */
 package com.powsybl.server.storage;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.powsybl.afs.storage.ListenableAppStorage;
 import com.powsybl.afs.storage.events.AppStorageListener;
 import com.powsybl.server.commons.AppDataBean;
-import com.powsybl.commons.json.JsonUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.adapter.standard.StandardWebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
-import javax.websocket.RemoteEndpoint;
-import javax.websocket.Session;
-import java.io.IOException;
-import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Objects;
 
-public class NodeEventHandler extends TextWebSocketHandler {
+public class NodeEventHandler extends TextWebSocketHandler implements SubProtocolCapable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(WebSocketServer.class);
 
     private final AppDataBean appDataBean;
     private final WebSocketContext webSocketContext;
 
-    private final ObjectMapper objectMapper = JsonUtil.createObjectMapper();
+    private final EventMessageSender sender;
 
-    public NodeEventHandler(AppDataBean appDataBean, WebSocketContext webSocketContext) {
-        this.appDataBean = appDataBean;
-        this.webSocketContext = webSocketContext;
+    public NodeEventHandler(AppDataBean appDataBean, WebSocketContext webSocketContext, boolean binaryFramesEnabled) {
+        this.appDataBean = Objects.requireNonNull(appDataBean);
+        this.webSocketContext = Objects.requireNonNull(webSocketContext);
+        this.sender = new EventMessageSender(binaryFramesEnabled);
+    }
+
+    @Override
+    public List<String> getSubProtocols() {
+        return sender.getSubProtocols();
     }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) {
         String fileSystemName = session.getAttributes().get("fileSystemName").toString();
-        LOGGER.debug("WebSocket session '{}' opened for file system '{}'", session.getId(), fileSystemName);
+        LOGGER.debug("WebSocket session '{}' opened for file system '{}' (sub-protocol '{}')", session.getId(), fileSystemName,
+                session.getAcceptedProtocol());
 
         ListenableAppStorage storage = appDataBean.getStorage(fileSystemName);
 
         AppStorageListener listener = eventList -> {
             if (session.isOpen()) {
-                RemoteEndpoint.Async remote = ((StandardWebSocketSession) session).getNativeSession().getAsyncRemote();
-                remote.setSendTimeout(1000);
-                try {
-                    String eventListEncode = objectMapper.writeValueAsString(eventList);
-                    remote.sendText(eventListEncode, result -> {
-                        if (!result.isOK()) {
-                            LOGGER.error(result.getException().toString(), result.getException());
-                        }
-                    });
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
-                }
+                sender.send(session, eventList);
             } else {
                 webSocketContext.removeSession(((StandardWebSocketSession) session).getNativeSession());
             }
         };
         storage.addListener(listener);
-        ((StandardWebSocketSession) session).getNativeSession().getUserProperties().put("listener", listener);
-        webSocketContext.addSession(((StandardWebSocketSession) session).getNativeSession());
+        webSocketContext.addSession(fileSystemName, ((StandardWebSocketSession) session).getNativeSession(),
+            () -> storage.removeListener(listener));
     }
 
     @Override
-    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
-        String fileSystemName = (String) session.getAttributes().get("fileSystemName");
-        removeSession(fileSystemName, ((StandardWebSocketSession) session).getNativeSession());
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) {
+        webSocketContext.touch(((StandardWebSocketSession) session).getNativeSession());
     }
 
-    private void removeSession(String fileSystemName, Session session) {
-        ListenableAppStorage storage = appDataBean.getStorage(fileSystemName);
-        AppStorageListener listener = (AppStorageListener) session.getUserProperties().get("listener");
-        storage.removeListener(listener);
-        webSocketContext.removeSession(session);
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        webSocketContext.removeSession(((StandardWebSocketSession) session).getNativeSession());
     }
 }
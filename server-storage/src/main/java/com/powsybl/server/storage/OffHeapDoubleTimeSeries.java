@@ -0,0 +1,263 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.powsybl.timeseries.CompressedDoubleDataChunk;
+import com.powsybl.timeseries.DoubleDataChunk;
+import com.powsybl.timeseries.UncompressedDoubleDataChunk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The chunks of a double time series stored out of the heap, in columns: the values of uncompressed chunks and the
+ * step values of compressed chunks in one direct double buffer, the step lengths in one direct int buffer. Only the
+ * layout of the chunks is kept on the heap.
+ * <p>
+ * Instances are immutable and can be read concurrently. They are serialized in the JSON format of the chunks,
+ * straight from the buffers and trimmed to a window of points, without creating chunk or point objects.
+ */
+final class OffHeapDoubleTimeSeries {
+
+    private final int[] offsets;
+
+    private final int[] lengths;
+
+    // greatest last point of the chunks up to each one, see TimeSeriesChunkIndex
+    private final int[] ends;
+
+    private final int[] valueStarts;
+
+    // number of steps of each chunk, -1 for uncompressed chunks
+    private final int[] stepCounts;
+
+    private final int[] stepStarts;
+
+    private final DoubleBuffer values;
+
+    private final IntBuffer stepLengths;
+
+    private OffHeapDoubleTimeSeries(int[] offsets, int[] lengths, int[] ends, int[] valueStarts, int[] stepCounts,
+                                    int[] stepStarts, DoubleBuffer values, IntBuffer stepLengths) {
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.ends = ends;
+        this.valueStarts = valueStarts;
+        this.stepCounts = stepCounts;
+        this.stepStarts = stepStarts;
+        this.values = values;
+        this.stepLengths = stepLengths;
+    }
+
+    static OffHeapDoubleTimeSeries create(List<DoubleDataChunk> chunks) {
+        List<DoubleDataChunk> sortedChunks = TimeSeriesChunkIndex.sortChunks(chunks);
+        int chunkCount = sortedChunks.size();
+        int valueCount = 0;
+        int stepCount = 0;
+        for (DoubleDataChunk chunk : sortedChunks) {
+            if (chunk instanceof CompressedDoubleDataChunk) {
+                valueCount += ((CompressedDoubleDataChunk) chunk).getStepValues().length;
+                stepCount += ((CompressedDoubleDataChunk) chunk).getStepLengths().length;
+            } else if (chunk instanceof UncompressedDoubleDataChunk) {
+                valueCount += chunk.getLength();
+            } else {
+                throw new IllegalArgumentException("Unsupported chunk type " + chunk.getClass().getName());
+            }
+        }
+
+        int[] offsets = new int[chunkCount];
+        int[] lengths = new int[chunkCount];
+        int[] valueStarts = new int[chunkCount];
+        int[] stepCounts = new int[chunkCount];
+        int[] stepStarts = new int[chunkCount];
+        DoubleBuffer values = ByteBuffer.allocateDirect(valueCount * Double.BYTES).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        IntBuffer stepLengths = ByteBuffer.allocateDirect(stepCount * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+        for (int i = 0; i < chunkCount; i++) {
+            DoubleDataChunk chunk = sortedChunks.get(i);
+            offsets[i] = chunk.getOffset();
+            lengths[i] = chunk.getLength();
+            valueStarts[i] = values.position();
+            stepStarts[i] = stepLengths.position();
+            if (chunk instanceof CompressedDoubleDataChunk) {
+                CompressedDoubleDataChunk compressedChunk = (CompressedDoubleDataChunk) chunk;
+                stepCounts[i] = compressedChunk.getStepValues().length;
+                values.put(compressedChunk.getStepValues());
+                stepLengths.put(compressedChunk.getStepLengths());
+            } else {
+                stepCounts[i] = -1;
+                values.put(((UncompressedDoubleDataChunk) chunk).getValues());
+            }
+        }
+        return new OffHeapDoubleTimeSeries(offsets, lengths, TimeSeriesChunkIndex.getEnds(offsets, lengths), valueStarts, stepCounts, stepStarts, values, stepLengths);
+    }
+
+    /**
+     * Size of the buffers out of the heap.
+     */
+    long getOffHeapBytes() {
+        return (long) values.capacity() * Double.BYTES + (long) stepLengths.capacity() * Integer.BYTES;
+    }
+
+    private int getFirstChunk(int first) {
+        return TimeSeriesChunkIndex.getFirstOverlapping(ends, first);
+    }
+
+    /**
+     * Write the chunks overlapping a window of points, trimmed to it, as a JSON array.
+     */
+    void writeJson(JsonGenerator generator, int first, int last) throws IOException {
+        generator.writeStartArray();
+        for (int i = getFirstChunk(first); i < offsets.length && offsets[i] <= last; i++) {
+            int start = Math.max(offsets[i], first);
+            int stop = Math.min(offsets[i] + lengths[i] - 1, last);
+            if (start > stop) {
+                continue;
+            }
+            generator.writeStartObject();
+            generator.writeNumberField("offset", start);
+            if (stepCounts[i] < 0) {
+                generator.writeFieldName("values");
+                generator.writeStartArray();
+                for (int v = valueStarts[i] + start - offsets[i]; v <= valueStarts[i] + stop - offsets[i]; v++) {
+                    generator.writeNumber(values.get(v));
+                }
+                generator.writeEndArray();
+            } else {
+                writeSteps(generator, i, start, stop);
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    /**
+     * Chunks overlapping a window of points, trimmed to it, copied back to the heap.
+     */
+    List<DoubleDataChunk> getChunks(int first, int last) {
+        List<DoubleDataChunk> chunks = new ArrayList<>();
+        for (int i = getFirstChunk(first); i < offsets.length && offsets[i] <= last; i++) {
+            int start = Math.max(offsets[i], first);
+            int stop = Math.min(offsets[i] + lengths[i] - 1, last);
+            if (start > stop) {
+                continue;
+            }
+            if (stepCounts[i] < 0) {
+                double[] chunkValues = new double[stop - start + 1];
+                for (int v = 0; v < chunkValues.length; v++) {
+                    chunkValues[v] = values.get(valueStarts[i] + start - offsets[i] + v);
+                }
+                chunks.add(new UncompressedDoubleDataChunk(start, chunkValues));
+            } else {
+                chunks.add(getSteps(i, start, stop));
+            }
+        }
+        return chunks;
+    }
+
+    private int getStepLength(int chunk, int step) {
+        return stepLengths.get(stepStarts[chunk] + step);
+    }
+
+    private CompressedDoubleDataChunk getSteps(int chunk, int start, int stop) {
+        // steps overlapping the window
+        int firstStep = 0;
+        int firstStepStart = offsets[chunk];
+        while (firstStepStart + getStepLength(chunk, firstStep) <= start) {
+            firstStepStart += getStepLength(chunk, firstStep);
+            firstStep++;
+        }
+        int lastStep = firstStep;
+        int lastStepStart = firstStepStart;
+        while (lastStepStart + getStepLength(chunk, lastStep) <= stop) {
+            lastStepStart += getStepLength(chunk, lastStep);
+            lastStep++;
+        }
+
+        double[] chunkStepValues = new double[lastStep - firstStep + 1];
+        int[] chunkStepLengths = new int[chunkStepValues.length];
+        int stepStart = firstStepStart;
+        for (int step = firstStep; step <= lastStep; step++) {
+            int length = getStepLength(chunk, step);
+            chunkStepValues[step - firstStep] = values.get(valueStarts[chunk] + step);
+            chunkStepLengths[step - firstStep] = Math.min(stepStart + length - 1, stop) - Math.max(stepStart, start) + 1;
+            stepStart += length;
+        }
+        return new CompressedDoubleDataChunk(start, stop - start + 1, chunkStepValues, chunkStepLengths);
+    }
+
+    private void writeSteps(JsonGenerator generator, int chunk, int start, int stop) throws IOException {
+        // steps overlapping the window, and the first point of the first one
+        int firstStep = 0;
+        int firstStepStart = offsets[chunk];
+        while (firstStepStart + getStepLength(chunk, firstStep) <= start) {
+            firstStepStart += getStepLength(chunk, firstStep);
+            firstStep++;
+        }
+        int lastStep = firstStep;
+        int lastStepStart = firstStepStart;
+        while (lastStepStart + getStepLength(chunk, lastStep) <= stop) {
+            lastStepStart += getStepLength(chunk, lastStep);
+            lastStep++;
+        }
+
+        generator.writeNumberField("uncompressedLength", stop - start + 1);
+        generator.writeFieldName("stepValues");
+        generator.writeStartArray();
+        for (int step = firstStep; step <= lastStep; step++) {
+            generator.writeNumber(values.get(valueStarts[chunk] + step));
+        }
+        generator.writeEndArray();
+        generator.writeFieldName("stepLengths");
+        generator.writeStartArray();
+        int stepStart = firstStepStart;
+        for (int step = firstStep; step <= lastStep; step++) {
+            int length = getStepLength(chunk, step);
+            generator.writeNumber(Math.min(stepStart + length - 1, stop) - Math.max(stepStart, start) + 1);
+            stepStart += length;
+        }
+        generator.writeEndArray();
+    }
+
+    /**
+     * A window of a time series, serialized as its array of chunks.
+     */
+    static final class Window extends JsonSerializable.Base {
+
+        private final OffHeapDoubleTimeSeries timeSeries;
+
+        private final int first;
+
+        private final int last;
+
+        Window(OffHeapDoubleTimeSeries timeSeries, int first, int last) {
+            this.timeSeries = Objects.requireNonNull(timeSeries);
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        public void serialize(JsonGenerator generator, SerializerProvider provider) throws IOException {
+            timeSeries.writeJson(generator, first, last);
+        }
+
+        @Override
+        public void serializeWithType(JsonGenerator generator, SerializerProvider provider,
+                                      TypeSerializer typeSerializer) throws IOException {
+            serialize(generator, provider);
+        }
+    }
+}
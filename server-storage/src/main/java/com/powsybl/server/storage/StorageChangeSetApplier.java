@@ -0,0 +1,537 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.powsybl.afs.storage.AppStorage;
+import com.powsybl.afs.storage.buffer.*;
+import com.powsybl.afs.storage.json.AppStorageJsonModule;
+import com.powsybl.client.commons.BinaryTimeSeriesFormat;
+import com.powsybl.client.commons.BinaryTimeSeriesReader;
+import com.powsybl.commons.json.JsonUtil;
+import com.powsybl.timeseries.DataChunk;
+import com.powsybl.timeseries.DoubleDataChunk;
+import com.powsybl.timeseries.StringDataChunk;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies the changes of a flushed {@link StorageChangeSet} to a storage.
+ * <p>
+ * Changes are grouped by node and then by time series. For a given time series, changes keep their order, so that
+ * the metadata is created before the data, and consecutive additions of chunks of the same version are merged into a
+ * single addition. The changes of a change set are written by a single thread, as storages are not required to support
+ * concurrent writes.
+ * <p>
+ * Change sets can also be read from a stream, as a JSON or Smile array of changes or in the
+ * {@link BinaryTimeSeriesFormat}, and applied by windows of at most {@code storage.flush.stream.window-size}
+ * changes or {@code storage.flush.stream.window-bytes} bytes, so that the memory used by a flush does not depend
+ * on the size of the change set. Windows of JSON and Smile streams are bounded by the number of bytes read, which
+ * is close to the memory of the decoded changes. Windows of binary streams are bounded by the estimated memory of
+ * the decoded changes, the binary format being much more compact, and a single binary change may not decode to more
+ * than {@code storage.flush.stream.max-change-bytes} bytes. While a window is written, the next one is decoded: the
+ * windows are written one after the other, in order, on a pool of {@code storage.flush.parallelism} threads shared
+ * by all the streams, so that at most two windows of a stream are in memory.
+ * <p>
+ * As the windows of a stream are applied as soon as they are read, a truncated or invalid stream would leave its first
+ * windows applied although the flush fails, and a retry of the flush would apply them twice. Streams are therefore
+ * {@link #spool spooled} to a file of {@code storage.flush.stream.spool-directory} and fully read once before being
+ * applied, at the cost of reading them twice. A storage failure while the windows are written may still leave the
+ * first windows applied, as a failure of a non-streamed flush does.
+ */
+@Component
+public class StorageChangeSetApplier {
+
+    public static final String SMILE_VALUE = "application/x-jackson-smile";
+
+    private static final MediaType SMILE_MEDIA_TYPE = MediaType.parseMediaType(SMILE_VALUE);
+
+    private static final MediaType BINARY_MEDIA_TYPE = MediaType.parseMediaType(BinaryTimeSeriesFormat.MEDIA_TYPE_VALUE);
+
+    @Value("${storage.flush.parallelism:0}")
+    private int parallelism;
+
+    @Value("${storage.flush.stream.window-size:1000}")
+    private int windowSize;
+
+    @Value("${storage.flush.stream.window-bytes:4194304}")
+    private long windowBytes;
+
+    @Value("${storage.flush.stream.max-change-bytes:268435456}")
+    private long maxChangeBytes;
+
+    @Value("${storage.flush.stream.spool-directory:}")
+    private String spoolDirectory;
+
+    private final ObjectReader jsonReader = JsonUtil.createObjectMapper()
+            .registerModule(new AppStorageJsonModule())
+            .readerFor(StorageChange.class);
+
+    private final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory())
+            .registerModule(new AppStorageJsonModule());
+
+    private final ObjectReader smileReader = smileMapper.readerFor(StorageChange.class);
+
+    private final ObjectWriter smileWriter = smileMapper.writerFor(StorageChange.class)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    private ExecutorService executor;
+
+    /**
+     * Chunks added to a time series, merged from consecutive additions.
+     */
+    private static final class ChunksAddition {
+
+        private final StorageChangeType type;
+
+        private final int version;
+
+        private final List<DoubleDataChunk> doubleChunks = new ArrayList<>();
+
+        private final List<StringDataChunk> stringChunks = new ArrayList<>();
+
+        private ChunksAddition(StorageChangeType type, int version) {
+            this.type = type;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Changes of a time series, either {@link TimeSeriesCreation} or {@link ChunksAddition}, in order.
+     */
+    private static final class TimeSeriesChanges {
+
+        private final String timeSeriesName;
+
+        private final List<Object> changes = new ArrayList<>();
+
+        private TimeSeriesChanges(String timeSeriesName) {
+            this.timeSeriesName = timeSeriesName;
+        }
+
+        private ChunksAddition getAddition(StorageChangeType type, int version) {
+            Object last = changes.isEmpty() ? null : changes.get(changes.size() - 1);
+            if (last instanceof ChunksAddition && ((ChunksAddition) last).type == type && ((ChunksAddition) last).version == version) {
+                return (ChunksAddition) last;
+            }
+            ChunksAddition addition = new ChunksAddition(type, version);
+            changes.add(addition);
+            return addition;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(),
+            r -> new Thread(r, "storage-flush-" + threadCount.incrementAndGet()));
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Group changes by node and time series, merging consecutive chunk additions.
+     */
+    private static Map<String, Map<String, TimeSeriesChanges>> group(List<StorageChange> changes) {
+        Map<String, Map<String, TimeSeriesChanges>> changesByNode = new LinkedHashMap<>();
+        for (StorageChange change : changes) {
+            Map<String, TimeSeriesChanges> nodeChanges = changesByNode.computeIfAbsent(change.getNodeId(), id -> new LinkedHashMap<>());
+            switch (change.getType()) {
+                case TIME_SERIES_CREATION:
+                    TimeSeriesCreation creation = (TimeSeriesCreation) change;
+                    String name = creation.getMetadata().getName();
+                    nodeChanges.computeIfAbsent(name, TimeSeriesChanges::new).changes.add(creation);
+                    break;
+                case DOUBLE_TIME_SERIES_CHUNKS_ADDITION:
+                    DoubleTimeSeriesChunksAddition doubleAddition = (DoubleTimeSeriesChunksAddition) change;
+                    nodeChanges.computeIfAbsent(doubleAddition.getTimeSeriesName(), TimeSeriesChanges::new)
+                            .getAddition(change.getType(), doubleAddition.getVersion())
+                            .doubleChunks.addAll(doubleAddition.getChunks());
+                    break;
+                case STRING_TIME_SERIES_CHUNKS_ADDITION:
+                    StringTimeSeriesChunksAddition stringAddition = (StringTimeSeriesChunksAddition) change;
+                    nodeChanges.computeIfAbsent(stringAddition.getTimeSeriesName(), TimeSeriesChanges::new)
+                            .getAddition(change.getType(), stringAddition.getVersion())
+                            .stringChunks.addAll(stringAddition.getChunks());
+                    break;
+                default:
+                    throw new AssertionError("Unknown change type " + change.getType());
+            }
+        }
+        return changesByNode;
+    }
+
+    /**
+     * Chunks not stored yet, chunks being compared by offset and length.
+     */
+    private static <C extends DataChunk<?, ?>> List<C> getMissingChunks(List<C> chunks, List<C> storedChunks) {
+        if (storedChunks == null || storedChunks.isEmpty()) {
+            return chunks;
+        }
+        Set<Long> stored = new HashSet<>();
+        for (C chunk : storedChunks) {
+            stored.add(getChunkKey(chunk));
+        }
+        List<C> missingChunks = new ArrayList<>();
+        for (C chunk : chunks) {
+            if (!stored.contains(getChunkKey(chunk))) {
+                missingChunks.add(chunk);
+            }
+        }
+        return missingChunks;
+    }
+
+    private static long getChunkKey(DataChunk<?, ?> chunk) {
+        return ((long) chunk.getOffset() << 32) | (chunk.getLength() & 0xFFFFFFFFL);
+    }
+
+    private static void apply(AppStorage storage, String nodeId, Collection<TimeSeriesChanges> nodeChanges, boolean replay) {
+        for (TimeSeriesChanges timeSeriesChanges : nodeChanges) {
+            String name = timeSeriesChanges.timeSeriesName;
+            for (Object change : timeSeriesChanges.changes) {
+                if (change instanceof TimeSeriesCreation) {
+                    if (!replay || !storage.timeSeriesExists(nodeId, name)) {
+                        storage.createTimeSeries(nodeId, ((TimeSeriesCreation) change).getMetadata());
+                    }
+                } else {
+                    ChunksAddition addition = (ChunksAddition) change;
+                    if (addition.type == StorageChangeType.DOUBLE_TIME_SERIES_CHUNKS_ADDITION) {
+                        List<DoubleDataChunk> chunks = addition.doubleChunks;
+                        if (replay) {
+                            chunks = getMissingChunks(chunks, storage.getDoubleTimeSeriesData(nodeId, Collections.singleton(name), addition.version).get(name));
+                        }
+                        if (!chunks.isEmpty()) {
+                            storage.addDoubleTimeSeriesData(nodeId, addition.version, name, chunks);
+                        }
+                    } else {
+                        List<StringDataChunk> chunks = addition.stringChunks;
+                        if (replay) {
+                            chunks = getMissingChunks(chunks, storage.getStringTimeSeriesData(nodeId, Collections.singleton(name), addition.version).get(name));
+                        }
+                        if (!chunks.isEmpty()) {
+                            storage.addStringTimeSeriesData(nodeId, addition.version, name, chunks);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Apply changes to a storage, without flushing it. If changes of some nodes fail, the changes of the other nodes
+     * are still applied, and the first failure is thrown once all nodes are done.
+     */
+    public void apply(AppStorage storage, List<StorageChange> changes) {
+        apply(storage, changes, false);
+    }
+
+    /**
+     * Apply changes which may already have been applied, fully or partially, to a storage, without flushing it: time
+     * series which already exist are not created again, and chunks already stored with the same offset and length
+     * are not added again. Slower than {@link #apply(AppStorage, List)}, as the stored chunks are read first.
+     */
+    public void reapply(AppStorage storage, List<StorageChange> changes) {
+        apply(storage, changes, true);
+    }
+
+    private void apply(AppStorage storage, List<StorageChange> changes, boolean replay) {
+        Objects.requireNonNull(storage);
+        Objects.requireNonNull(changes);
+
+        RuntimeException failure = null;
+        for (Map.Entry<String, Map<String, TimeSeriesChanges>> e : group(changes).entrySet()) {
+            try {
+                apply(storage, e.getKey(), e.getValue().values(), replay);
+            } catch (RuntimeException ex) {
+                if (failure == null) {
+                    failure = ex;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Receives the windows of changes read from a stream.
+     */
+    public interface WindowHandler {
+
+        void onWindow(List<StorageChange> window) throws IOException;
+    }
+
+    /**
+     * Read an array of changes from a stream and apply them by windows, without flushing the storage.
+     *
+     * @param smile {@code true} if the stream is Smile encoded, {@code false} if it is JSON
+     * @return the number of applied changes
+     */
+    public int apply(AppStorage storage, InputStream is, boolean smile) throws IOException {
+        return apply(storage, handler -> read(is, smile, handler));
+    }
+
+    /**
+     * Read changes from a stream and apply them by windows, without flushing the storage.
+     *
+     * @param mediaType JSON, Smile or the binary time series format
+     * @return the number of applied changes
+     */
+    public int apply(AppStorage storage, InputStream is, MediaType mediaType) throws IOException {
+        return apply(storage, handler -> read(is, mediaType, handler));
+    }
+
+    /**
+     * Reads the windows of a stream.
+     */
+    private interface WindowReader {
+
+        int read(WindowHandler handler) throws IOException;
+    }
+
+    /**
+     * Writes the windows of a stream one after the other, each one while the next one is decoded.
+     */
+    private final class WindowWriter implements WindowHandler {
+
+        private final AppStorage storage;
+
+        private Future<?> pending;
+
+        private WindowWriter(AppStorage storage) {
+            this.storage = Objects.requireNonNull(storage);
+        }
+
+        @Override
+        public void onWindow(List<StorageChange> window) {
+            await();
+            pending = executor.submit(() -> apply(storage, window));
+        }
+
+        /**
+         * Wait for the window being written, even if interrupted, not to leave writes running behind the response.
+         */
+        private void await() {
+            if (pending == null) {
+                return;
+            }
+            Future<?> future = pending;
+            pending = null;
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        future.get();
+                        return;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof RuntimeException) {
+                            throw (RuntimeException) cause;
+                        } else if (cause instanceof Error) {
+                            throw (Error) cause;
+                        }
+                        throw new IllegalStateException(cause);
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private int apply(AppStorage storage, WindowReader reader) throws IOException {
+        WindowWriter writer = new WindowWriter(storage);
+        int count;
+        try {
+            count = reader.read(writer);
+        } catch (IOException | RuntimeException e) {
+            try {
+                writer.await();
+            } catch (RuntimeException writeFailure) {
+                e.addSuppressed(writeFailure);
+            }
+            throw e;
+        }
+        writer.await();
+        return count;
+    }
+
+    /**
+     * Read changes from a stream, by windows.
+     *
+     * @param mediaType JSON, Smile or the binary time series format
+     * @return the number of read changes
+     */
+    public int read(InputStream is, MediaType mediaType, WindowHandler handler) throws IOException {
+        Objects.requireNonNull(mediaType);
+        if (mediaType.isCompatibleWith(BINARY_MEDIA_TYPE)) {
+            return readBinary(is, handler);
+        }
+        return read(is, mediaType.isCompatibleWith(SMILE_MEDIA_TYPE), handler);
+    }
+
+    /**
+     * Copy a stream of changes to a temporary file and read it fully, so that only complete and valid streams are
+     * applied. The file is to be deleted by the caller once applied, and is deleted here if the stream is invalid.
+     *
+     * @param mediaType JSON, Smile or the binary time series format
+     * @return the spooled stream
+     */
+    public Path spool(InputStream is, MediaType mediaType) throws IOException {
+        Objects.requireNonNull(is);
+        Objects.requireNonNull(mediaType);
+        Path file = spoolDirectory == null || spoolDirectory.isEmpty() ? Files.createTempFile("flush-", ".spool")
+                                                                      : Files.createTempFile(Paths.get(spoolDirectory), "flush-", ".spool");
+        try {
+            Files.copy(is, file, StandardCopyOption.REPLACE_EXISTING);
+            try (InputStream spooled = new BufferedInputStream(Files.newInputStream(file))) {
+                read(spooled, mediaType, window -> { });
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return file;
+    }
+
+    /**
+     * Cuts a stream of changes into windows.
+     */
+    private final class Windows {
+
+        private final WindowHandler handler;
+
+        private List<StorageChange> window = new ArrayList<>();
+
+        private long windowStart = 0;
+
+        private int count = 0;
+
+        private Windows(WindowHandler handler) {
+            this.handler = Objects.requireNonNull(handler);
+        }
+
+        /**
+         * @param offset position in the stream after the change, or decoded size so far for binary streams
+         */
+        private void add(StorageChange change, long offset) throws IOException {
+            window.add(change);
+            if (window.size() >= windowSize || offset - windowStart >= windowBytes) {
+                handler.onWindow(window);
+                count += window.size();
+                window = new ArrayList<>();
+                windowStart = offset;
+            }
+        }
+
+        private int finish() throws IOException {
+            if (!window.isEmpty()) {
+                handler.onWindow(window);
+                count += window.size();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Read an array of changes from a stream, by windows.
+     *
+     * @param smile {@code true} if the stream is Smile encoded, {@code false} if it is JSON
+     * @return the number of read changes
+     */
+    public int read(InputStream is, boolean smile, WindowHandler handler) throws IOException {
+        Objects.requireNonNull(is);
+        Windows windows = new Windows(handler);
+
+        ObjectReader reader = smile ? smileReader : jsonReader;
+        try (JsonParser parser = reader.getFactory().createParser(is)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Array of changes expected");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                StorageChange change = reader.readValue(parser);
+                windows.add(change, parser.getCurrentLocation().getByteOffset());
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new JsonParseException(parser, "Change expected");
+            }
+        }
+        return windows.finish();
+    }
+
+    /**
+     * Read a sequence of changes in the binary time series format from a stream, by windows.
+     *
+     * @return the number of read changes
+     */
+    public int readBinary(InputStream is, WindowHandler handler) throws IOException {
+        Objects.requireNonNull(is);
+        Windows windows = new Windows(handler);
+
+        BinaryTimeSeriesReader reader = new BinaryTimeSeriesReader(is, maxChangeBytes);
+        StorageChange change = reader.readChange();
+        while (change != null) {
+            windows.add(change, reader.getDecodedSize());
+            change = reader.readChange();
+        }
+        return windows.finish();
+    }
+
+    /**
+     * Decode a Smile array of changes.
+     */
+    public List<StorageChange> decode(byte[] smile) throws IOException {
+        List<StorageChange> changes = new ArrayList<>();
+        read(new ByteArrayInputStream(smile), true, changes::addAll);
+        return changes;
+    }
+
+    /**
+     * Encode changes as a Smile array.
+     */
+    public byte[] encode(List<StorageChange> changes) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (JsonGenerator generator = smileWriter.getFactory().createGenerator(os)) {
+            generator.writeStartArray();
+            for (StorageChange change : changes) {
+                smileWriter.writeValue(generator, change);
+            }
+            generator.writeEndArray();
+        }
+        return os.toByteArray();
+    }
+}
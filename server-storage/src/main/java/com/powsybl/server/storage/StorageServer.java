@@ -6,6 +6,8 @@
  */
 package com.powsybl.server.storage;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.common.io.ByteStreams;
 import com.powsybl.afs.AfsException;
 import com.powsybl.afs.AppFileSystem;
@@ -16,9 +18,14 @@ import com.powsybl.afs.storage.NodeDependency;
 import com.powsybl.afs.storage.NodeGenericMetadata;
 import com.powsybl.afs.storage.NodeInfo;
 import com.powsybl.afs.storage.buffer.*;
+import com.powsybl.client.commons.BinaryTimeSeriesFormat;
+import com.powsybl.client.commons.BinaryTimeSeriesWriter;
+import com.powsybl.client.commons.TaskMonitorChanges;
 import com.powsybl.server.commons.AppDataBean;
+import com.powsybl.timeseries.DataChunk;
 import com.powsybl.timeseries.DoubleDataChunk;
 import com.powsybl.timeseries.StringDataChunk;
+import com.powsybl.timeseries.TimeSeriesIndex;
 import com.powsybl.timeseries.TimeSeriesMetadata;
 import io.swagger.annotations.*;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -28,11 +35,16 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedInputStream;
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 
 @RestController
@@ -43,9 +55,40 @@ public class StorageServer {
 
     public static final String API_VERSION = "v1";
 
+    private static final MediaType BINARY_MEDIA_TYPE = MediaType.parseMediaType(BinaryTimeSeriesFormat.MEDIA_TYPE_VALUE);
+
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+
+    private static final MediaType NDJSON_MEDIA_TYPE = MediaType.parseMediaType(NDJSON_VALUE);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
     @Autowired
     private AppDataBean appDataBean;
 
+    @Autowired
+    private TaskChangeLogService taskChangeLogService;
+
+    @Autowired
+    private StorageChangeSetApplier changeSetApplier;
+
+    @Autowired
+    private GroupCommitter groupCommitter;
+
+    @Autowired
+    private WriteAheadLog writeAheadLog;
+
+    @Autowired
+    private TimeSeriesCache timeSeriesCache;
+
+    /**
+     * Get the storage of a node, once the changes logged for it by the write-ahead log have been applied.
+     */
+    private AppStorage getStorage(String fileSystemName, String nodeId) {
+        writeAheadLog.awaitApplied(fileSystemName, nodeId);
+        return appDataBean.getStorage(fileSystemName);
+    }
+
     @RequestMapping(method = RequestMethod.GET, value = "fileSystems")
     @ApiOperation (value = "Get file system list", response = List.class)
     @ApiResponses (value = {@ApiResponse(code = 200, message = "The list of available file systems"), @ApiResponse(code = 404, message = "There is no file system available.")})
@@ -68,32 +111,46 @@ public class StorageServer {
     @ApiOperation (value = "")
     @ApiResponses (value = {@ApiResponse(code = 200, message = ""), @ApiResponse(code = 500, message = "Error")})
     public ResponseEntity<String> flush(@ApiParam(value = "File system name") @PathVariable("fileSystemName") String fileSystemName,
-                    @ApiParam(value = "Storage Change Set") @RequestBody StorageChangeSet changeSet) {
+                    @ApiParam(value = "Storage Change Set") @RequestBody StorageChangeSet changeSet) throws IOException {
+        if (writeAheadLog.isEnabled()) {
+            // acknowledged once logged, applied asynchronously
+            writeAheadLog.append(fileSystemName, changeSet.getChanges());
+            writeAheadLog.sync();
+            return ResponseEntity.ok().build();
+        }
+
         AppStorage storage = appDataBean.getStorage(fileSystemName);
 
-        for (StorageChange change : changeSet.getChanges()) {
-            switch (change.getType()) {
-                case TIME_SERIES_CREATION:
-                    TimeSeriesCreation creation = (TimeSeriesCreation) change;
-                    storage.createTimeSeries(creation.getNodeId(), creation.getMetadata());
-                    break;
-                case DOUBLE_TIME_SERIES_CHUNKS_ADDITION:
-                    DoubleTimeSeriesChunksAddition doubleAddition = (DoubleTimeSeriesChunksAddition) change;
-                    storage.addDoubleTimeSeriesData(doubleAddition.getNodeId(), doubleAddition.getVersion(),
-                                                    doubleAddition.getTimeSeriesName(), doubleAddition.getChunks());
-                    break;
-                case STRING_TIME_SERIES_CHUNKS_ADDITION:
-                    StringTimeSeriesChunksAddition stringAddition = (StringTimeSeriesChunksAddition) change;
-                    storage.addStringTimeSeriesData(stringAddition.getNodeId(), stringAddition.getVersion(),
-                                                    stringAddition.getTimeSeriesName(), stringAddition.getChunks());
-                    break;
-                default:
-                    throw new AssertionError("Unknown change type " + change.getType());
+        changeSetApplier.apply(storage, changeSet.getChanges());
+        // propagate flush to underlying storage, shared with concurrent flushes
+        groupCommitter.commit(fileSystemName, storage, changeSet.getChanges().size());
+        return ResponseEntity.ok().build();
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "fileSystems/{fileSystemName}/flush/stream", consumes = {MediaType.APPLICATION_JSON_VALUE, StorageChangeSetApplier.SMILE_VALUE, BinaryTimeSeriesFormat.MEDIA_TYPE_VALUE})
+    @ApiOperation (value = "Apply a JSON, Smile or binary stream of changes, by windows once fully received")
+    @ApiResponses (value = {@ApiResponse(code = 200, message = ""), @ApiResponse(code = 500, message = "Error")})
+    public ResponseEntity<String> flushStream(@ApiParam(value = "File system name") @PathVariable("fileSystemName") String fileSystemName,
+                    @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                    @ApiParam(value = "Storage changes") InputStream is) throws IOException {
+        MediaType mediaType = MediaType.parseMediaType(contentType);
+        // fully read before anything is logged or applied, so that a failed flush can be retried
+        Path spooled = changeSetApplier.spool(is, mediaType);
+        try (InputStream spooledIs = new BufferedInputStream(Files.newInputStream(spooled))) {
+            if (writeAheadLog.isEnabled()) {
+                changeSetApplier.read(spooledIs, mediaType, window -> writeAheadLog.append(fileSystemName, window));
+                writeAheadLog.sync();
+                return ResponseEntity.ok().build();
             }
+
+            AppStorage storage = appDataBean.getStorage(fileSystemName);
+            int changeCount = changeSetApplier.apply(storage, spooledIs, mediaType);
+            // propagate flush to underlying storage, shared with concurrent flushes
+            groupCommitter.commit(fileSystemName, storage, changeCount);
+            return ResponseEntity.ok().build();
+        } finally {
+            Files.deleteIfExists(spooled);
         }
-        // propagate flush to underlying storage
-        storage.flush();
-        return ResponseEntity.ok().build();
     }
 
     @RequestMapping(method = RequestMethod.GET, value = "fileSystems/{fileSystemName}/nodes/{nodeId}/writable", produces = MediaType.TEXT_PLAIN_VALUE)
@@ -292,8 +349,9 @@ public class StorageServer {
     @ApiResponses (value = {@ApiResponse(code = 200, message = ""), @ApiResponse(code = 500, message = "Error")})
     public ResponseEntity<String> deleteNode(@ApiParam(value = "File system name") @PathVariable("fileSystemName") String fileSystemName,
                                 @ApiParam(value = "Node ID") @PathVariable("nodeId") String nodeId) {
-        AppStorage storage = appDataBean.getStorage(fileSystemName);
+        AppStorage storage = getStorage(fileSystemName, nodeId);
         String parentNodeId = storage.deleteNode(nodeId);
+        timeSeriesCache.invalidate(fileSystemName, nodeId, null);
         return ResponseEntity.ok().body(parentNodeId);
     }
 
@@ -340,7 +398,7 @@ public class StorageServer {
             @ApiParam(value = "Node ID") @PathVariable("nodeId") String nodeId,
             @ApiParam(value = "Time Series Meta Data") TimeSeriesMetadata metadata) {
 
-        AppStorage storage = appDataBean.getStorage(fileSystemName);
+        AppStorage storage = getStorage(fileSystemName, nodeId);
         storage.createTimeSeries(nodeId, metadata);
         return ResponseEntity.ok().build();
     }
@@ -350,7 +408,7 @@ public class StorageServer {
     @ApiResponses (value = {@ApiResponse(code = 200, message = ""), @ApiResponse(code = 404, message = ""), @ApiResponse(code = 500, message = "Error")})
     public ResponseEntity<Set<String>> getTimeSeriesNames(@ApiParam(value = "File system name") @PathVariable("fileSystemName") String fileSystemName,
             @ApiParam(value = "Node ID") @PathVariable("nodeId") String nodeId) {
-        AppStorage storage = appDataBean.getStorage(fileSystemName);
+        AppStorage storage = getStorage(fileSystemName, nodeId);
         Set<String> timeSeriesNames = storage.getTimeSeriesNames(nodeId);
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_ENCODING, "gzip")
@@ -363,7 +421,7 @@ public class StorageServer {
     public ResponseEntity<String> timeSeriesExists(@ApiParam(value = "File system name") @PathVariable("fileSystemName") String fileSystemName,
                                     @ApiParam(value = "Node ID") @PathVariable("nodeId") String nodeId,
                                     @ApiParam(value = "Time series name") @PathVariable("timeSeriesName") String timeSeriesName) {
-        AppStorage storage = appDataBean.getStorage(fileSystemName);
+        AppStorage storage = getStorage(fileSystemName, nodeId);
         boolean exists = storage.timeSeriesExists(nodeId, timeSeriesName);
         return  ResponseEntity.ok().body(Boolean.toString(exists));
     }
@@ -374,7 +432,7 @@ public class StorageServer {
     public ResponseEntity<List<TimeSeriesMetadata>> getTimeSeriesMetadata(@ApiParam(value = "File system name") @PathVariable("fileSystemName") String fileSystemName,
                                             @ApiParam(value = "Node ID") @PathVariable("nodeId") String nodeId,
                                             @ApiParam(value = "Time series names") @RequestBody Set<String> timeSeriesNames) {
-        AppStorage storage = appDataBean.getStorage(fileSystemName);
+        AppStorage storage = getStorage(fileSystemName, nodeId);
         List<TimeSeriesMetadata> metadataList = storage.getTimeSeriesMetadata(nodeId, timeSeriesNames);
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_ENCODING, "gzip")
@@ -384,7 +442,7 @@ public class StorageServer {
     @RequestMapping(method = RequestMethod.GET, value = "fileSystems/{fileSystemName}/nodes/{nodeId}/timeSeries/versions", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<Set<Integer>> getTimeSeriesDataVersions(@PathVariable("fileSystemName") String fileSystemName,
                                               @PathVariable("nodeId") String nodeId) {
-        AppStorage storage = appDataBean.getStorage(fileSystemName);
+        AppStorage storage = getStorage(fileSystemName, nodeId);
         Set<Integer> versions = storage.getTimeSeriesDataVersions(nodeId);
         return ResponseEntity.ok().body(versions);
     }
@@ -395,46 +453,358 @@ public class StorageServer {
     public ResponseEntity<Set<Integer>> getTimeSeriesDataVersions(@ApiParam(value = "File system name") @PathVariable("fileSystemName") String fileSystemName,
                                             @ApiParam(value = "Node ID") @PathVariable("nodeId") String nodeId,
                                             @ApiParam(value = "Time series name") @PathVariable("timeSeriesName") String timeSeriesName) {
-        AppStorage storage = appDataBean.getStorage(fileSystemName);
+        AppStorage storage = getStorage(fileSystemName, nodeId);
         Set<Integer> versions = storage.getTimeSeriesDataVersions(nodeId, timeSeriesName);
         return ResponseEntity.ok().body(versions);
     }
 
+    private interface ChunkTrimmer<C> {
+
+        List<C> trim(List<C> chunks, int first, int last);
+    }
+
+    /**
+     * Indexes of the time series, only needed to resolve the times of a window.
+     */
+    private static Map<String, TimeSeriesIndex> getIndexes(AppStorage storage, String nodeId, TimeSeriesWindow window, Set<String> timeSeriesNames) {
+        Map<String, TimeSeriesIndex> indexes = new HashMap<>();
+        if (window.hasTimes()) {
+            for (TimeSeriesMetadata metadata : storage.getTimeSeriesMetadata(nodeId, timeSeriesNames)) {
+                indexes.put(metadata.getName(), metadata.getIndex());
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Keep the chunks overlapping a window, trimmed to it.
+     */
+    private static <C> Map<String, List<C>> getWindow(AppStorage storage, String nodeId, TimeSeriesWindow window,
+                                                      Map<String, List<C>> timeSeriesData, ChunkTrimmer<C> trimmer) {
+        return getWindow(getIndexes(storage, nodeId, window, timeSeriesData.keySet()), window, timeSeriesData, trimmer);
+    }
+
+    private static <C> Map<String, List<C>> getWindow(Map<String, TimeSeriesIndex> indexes, TimeSeriesWindow window,
+                                                      Map<String, List<C>> timeSeriesData, ChunkTrimmer<C> trimmer) {
+        Map<String, List<C>> windowData = new HashMap<>(timeSeriesData.size());
+        timeSeriesData.forEach((name, chunks) -> {
+            TimeSeriesIndex index = indexes.get(name);
+            windowData.put(name, trimmer.trim(chunks, window.getFirstPoint(index), window.getLastPoint(index)));
+        });
+        return windowData;
+    }
+
+    /**
+     * Windows of the cached double time series, serialized straight from the cache.
+     */
+    private Map<String, OffHeapDoubleTimeSeries.Window> getCachedDoubleTimeSeriesData(AppStorage storage, String fileSystemName, String nodeId,
+                                                                                      int version, TimeSeriesWindow window, Set<String> timeSeriesNames) {
+        Map<String, TimeSeriesIndex> indexes = getIndexes(storage, nodeId, window, timeSeriesNames);
+        Map<String, OffHeapDoubleTimeSeries> cachedData = timeSeriesCache.getDoubleTimeSeriesData(fileSystemName, nodeId, timeSeriesNames, version);
+        Map<String, OffHeapDoubleTimeSeries.Window> windowData = new HashMap<>(cachedData.size());
+        cachedData.forEach((name, timeSeries) -> {
+            TimeSeriesIndex index = indexes.get(name);
+            windowData.put(name, new OffHeapDoubleTimeSeries.Window(timeSeries, window.getFirstPoint(index), window.getLastPoint(index)));
+        });
+        return windowData;
+    }
+
     @RequestMapping(method = RequestMethod.POST, value = "fileSystems/{fileSystemName}/nodes/{nodeId}/timeSeries/double/{version}", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
     @ApiOperation (value = "", response = List.class)
     @ApiResponses (value = {@ApiResponse(code = 200, message = ""), @ApiResponse(code = 404, message = ""), @ApiResponse(code = 500, message = "Error")})
-    public ResponseEntity<Map<String, List<DoubleDataChunk>>> getDoubleTimeSeriesData(@PathVariable("fileSystemName") String fileSystemName,
+    public ResponseEntity<Map<String, ?>> getDoubleTimeSeriesData(@PathVariable("fileSystemName") String fileSystemName,
                                             @PathVariable("nodeId") String nodeId,
                                             @PathVariable("version") int version,
+                                            @ApiParam(value = "First point index") @RequestParam(value = "firstIndex", required = false) Integer firstIndex,
+                                            @ApiParam(value = "Last point index") @RequestParam(value = "lastIndex", required = false) Integer lastIndex,
+                                            @ApiParam(value = "Start time, ISO-8601") @RequestParam(value = "startTime", required = false) String startTime,
+                                            @ApiParam(value = "End time, ISO-8601") @RequestParam(value = "endTime", required = false) String endTime,
                                             @RequestBody Set<String> timeSeriesNames) {
-        AppStorage storage = appDataBean.getStorage(fileSystemName);
+        TimeSeriesWindow window = TimeSeriesWindow.parse(firstIndex, lastIndex, startTime, endTime);
+        AppStorage storage = getStorage(fileSystemName, nodeId);
+        if (timeSeriesCache.isEnabled()) {
+            // serialized straight from the cached buffers
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .body(getCachedDoubleTimeSeriesData(storage, fileSystemName, nodeId, version, window, timeSeriesNames));
+        }
         Map<String, List<DoubleDataChunk>> timeSeriesData = storage.getDoubleTimeSeriesData(nodeId, timeSeriesNames, version);
+        if (!window.isAll()) {
+            timeSeriesData = getWindow(storage, nodeId, window, timeSeriesData, TimeSeriesChunkIndex::getDoubleChunks);
+        }
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_ENCODING, "gzip")
                 .body(timeSeriesData);
     }
 
+    @RequestMapping(method = RequestMethod.POST, value = "fileSystems/{fileSystemName}/nodes/{nodeId}/timeSeries/double/{version}", produces = BinaryTimeSeriesFormat.MEDIA_TYPE_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation (value = "Get double time series data in the compact binary format", response = StreamingResponseBody.class)
+    @ApiResponses (value = {@ApiResponse(code = 200, message = ""), @ApiResponse(code = 404, message = ""), @ApiResponse(code = 500, message = "Error")})
+    public ResponseEntity<StreamingResponseBody> getBinaryDoubleTimeSeriesData(@ApiParam(value = "File system name") @PathVariable("fileSystemName") String fileSystemName,
+                                            @ApiParam(value = "Node ID") @PathVariable("nodeId") String nodeId,
+                                            @ApiParam(value = "Version") @PathVariable("version") int version,
+                                            @ApiParam(value = "First point index") @RequestParam(value = "firstIndex", required = false) Integer firstIndex,
+                                            @ApiParam(value = "Last point index") @RequestParam(value = "lastIndex", required = false) Integer lastIndex,
+                                            @ApiParam(value = "Start time, ISO-8601") @RequestParam(value = "startTime", required = false) String startTime,
+                                            @ApiParam(value = "End time, ISO-8601") @RequestParam(value = "endTime", required = false) String endTime,
+                                            @ApiParam(value = "Time series names") @RequestBody Set<String> timeSeriesNames) {
+        TimeSeriesWindow window = TimeSeriesWindow.parse(firstIndex, lastIndex, startTime, endTime);
+        AppStorage storage = getStorage(fileSystemName, nodeId);
+        // not cached, the chunks would have to be copied back to the heap to be encoded
+        Map<String, List<DoubleDataChunk>> storedData = storage.getDoubleTimeSeriesData(nodeId, timeSeriesNames, version);
+        Map<String, List<DoubleDataChunk>> timeSeriesData = window.isAll() ? storedData
+                : getWindow(storage, nodeId, window, storedData, TimeSeriesChunkIndex::getDoubleChunks);
+        StreamingResponseBody streamingOutput = output -> {
+            BinaryTimeSeriesWriter writer = new BinaryTimeSeriesWriter(output);
+            writer.writeDoubleTimeSeriesData(timeSeriesData);
+            writer.flush();
+        };
+        // already compact, not gzipped
+        return ResponseEntity.ok()
+                .contentType(BINARY_MEDIA_TYPE)
+                .body(streamingOutput);
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "fileSystems/{fileSystemName}/nodes/{nodeId}/timeSeries/double/{version}/downsampled", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation (value = "Get double time series data reduced to a number of points", response = Map.class)
+    @ApiResponses (value = {@ApiResponse(code = 200, message = ""), @ApiResponse(code = 404, message = ""), @ApiResponse(code = 500, message = "Error")})
+    public ResponseEntity<Map<String, DownsampledTimeSeries>> getDownsampledDoubleTimeSeriesData(@ApiParam(value = "File system name") @PathVariable("fileSystemName") String fileSystemName,
+                                            @ApiParam(value = "Node ID") @PathVariable("nodeId") String nodeId,
+                                            @ApiParam(value = "Version") @PathVariable("version") int version,
+                                            @ApiParam(value = "First point index") @RequestParam(value = "firstIndex", required = false) Integer firstIndex,
+                                            @ApiParam(value = "Last point index") @RequestParam(value = "lastIndex", required = false) Integer lastIndex,
+                                            @ApiParam(value = "Start time, ISO-8601") @RequestParam(value = "startTime", required = false) String startTime,
+                                            @ApiParam(value = "End time, ISO-8601") @RequestParam(value = "endTime", required = false) String endTime,
+                                            @ApiParam(value = "Target number of points") @RequestParam(value = "points", required = false) Integer points,
+                                            @ApiParam(value = "Number of points per bucket") @RequestParam(value = "bucketSize", required = false) Integer bucketSize,
+                                            @ApiParam(value = "Aggregation by buckets or LTTB selection") @RequestParam(value = "method", defaultValue = "BUCKETS") TimeSeriesDownsampler.Method method,
+                                            @ApiParam(value = "Time series names") @RequestBody Set<String> timeSeriesNames) {
+        TimeSeriesDownsampler downsampler = new TimeSeriesDownsampler(TimeSeriesWindow.parse(firstIndex, lastIndex, startTime, endTime),
+                                                                      points, bucketSize, method);
+        AppStorage storage = getStorage(fileSystemName, nodeId);
+        Map<String, List<DoubleDataChunk>> timeSeriesData = storage.getDoubleTimeSeriesData(nodeId, timeSeriesNames, version);
+        Map<String, DownsampledTimeSeries> downsampledData = new HashMap<>();
+        for (TimeSeriesMetadata metadata : storage.getTimeSeriesMetadata(nodeId, timeSeriesNames)) {
+            List<DoubleDataChunk> chunks = timeSeriesData.get(metadata.getName());
+            if (chunks != null) {
+                downsampledData.put(metadata.getName(), downsampler.downsample(metadata.getIndex(), chunks));
+            }
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .body(downsampledData);
+    }
+
     @RequestMapping(method = RequestMethod.POST, value = "fileSystems/{fileSystemName}/nodes/{nodeId}/timeSeries/string/{version}", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
     @ApiOperation (value = "", response = List.class)
     @ApiResponses (value = {@ApiResponse(code = 200, message = ""), @ApiResponse(code = 404, message = ""), @ApiResponse(code = 500, message = "Error")})
     public ResponseEntity<Map<String, List<StringDataChunk>>> getStringTimeSeriesData(@PathVariable("fileSystemName") String fileSystemName,
                                             @PathVariable("nodeId") String nodeId,
                                             @PathVariable("version") int version,
+                                            @ApiParam(value = "First point index") @RequestParam(value = "firstIndex", required = false) Integer firstIndex,
+                                            @ApiParam(value = "Last point index") @RequestParam(value = "lastIndex", required = false) Integer lastIndex,
+                                            @ApiParam(value = "Start time, ISO-8601") @RequestParam(value = "startTime", required = false) String startTime,
+                                            @ApiParam(value = "End time, ISO-8601") @RequestParam(value = "endTime", required = false) String endTime,
                                             @RequestBody Set<String> timeSeriesNames) {
-        AppStorage storage = appDataBean.getStorage(fileSystemName);
+        TimeSeriesWindow window = TimeSeriesWindow.parse(firstIndex, lastIndex, startTime, endTime);
+        AppStorage storage = getStorage(fileSystemName, nodeId);
         Map<String, List<StringDataChunk>> timeSeriesData = storage.getStringTimeSeriesData(nodeId, timeSeriesNames, version);
+        if (!window.isAll()) {
+            timeSeriesData = getWindow(storage, nodeId, window, timeSeriesData, TimeSeriesChunkIndex::getStringChunks);
+        }
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_ENCODING, "gzip")
                 .body(timeSeriesData);
     }
 
+    @RequestMapping(method = RequestMethod.POST, value = "fileSystems/{fileSystemName}/nodes/{nodeId}/timeSeries/string/{version}", produces = BinaryTimeSeriesFormat.MEDIA_TYPE_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation (value = "Get string time series data in the compact binary format", response = StreamingResponseBody.class)
+    @ApiResponses (value = {@ApiResponse(code = 200, message = ""), @ApiResponse(code = 404, message = ""), @ApiResponse(code = 500, message = "Error")})
+    public ResponseEntity<StreamingResponseBody> getBinaryStringTimeSeriesData(@ApiParam(value = "File system name") @PathVariable("fileSystemName") String fileSystemName,
+                                            @ApiParam(value = "Node ID") @PathVariable("nodeId") String nodeId,
+                                            @ApiParam(value = "Version") @PathVariable("version") int version,
+                                            @ApiParam(value = "First point index") @RequestParam(value = "firstIndex", required = false) Integer firstIndex,
+                                            @ApiParam(value = "Last point index") @RequestParam(value = "lastIndex", required = false) Integer lastIndex,
+                                            @ApiParam(value = "Start time, ISO-8601") @RequestParam(value = "startTime", required = false) String startTime,
+                                            @ApiParam(value = "End time, ISO-8601") @RequestParam(value = "endTime", required = false) String endTime,
+                                            @ApiParam(value = "Time series names") @RequestBody Set<String> timeSeriesNames) {
+        TimeSeriesWindow window = TimeSeriesWindow.parse(firstIndex, lastIndex, startTime, endTime);
+        AppStorage storage = getStorage(fileSystemName, nodeId);
+        Map<String, List<StringDataChunk>> storedData = storage.getStringTimeSeriesData(nodeId, timeSeriesNames, version);
+        Map<String, List<StringDataChunk>> timeSeriesData = window.isAll() ? storedData
+                : getWindow(storage, nodeId, window, storedData, TimeSeriesChunkIndex::getStringChunks);
+        StreamingResponseBody streamingOutput = output -> {
+            BinaryTimeSeriesWriter writer = new BinaryTimeSeriesWriter(output);
+            writer.writeStringTimeSeriesData(timeSeriesData);
+            writer.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(BINARY_MEDIA_TYPE)
+                .body(streamingOutput);
+    }
+
+    private interface VersionReader<C> {
+
+        Map<String, List<C>> read(int version);
+    }
+
+    private interface TimeSeriesRecordWriter<C> {
+
+        void write(int version, String timeSeriesName, List<C> chunks) throws IOException;
+    }
+
+    /**
+     * Read the versions one after the other, all the time series of a version being written and flushed as soon as
+     * the version has been read, so that only one version at a time is held in memory.
+     */
+    private static <C> void writeVersions(Set<Integer> versions, VersionReader<C> reader, TimeSeriesRecordWriter<C> recordWriter,
+                                          Flushable flushable) throws IOException {
+        for (int version : new TreeSet<>(versions)) {
+            for (Map.Entry<String, List<C>> e : new TreeMap<>(reader.read(version)).entrySet()) {
+                recordWriter.write(version, e.getKey(), e.getValue());
+            }
+            flushable.flush();
+        }
+    }
+
+    /**
+     * Stream the time series as JSON lines, one per version and time series.
+     */
+    private static <C extends DataChunk<?, ?>> StreamingResponseBody streamJsonLines(Set<Integer> versions, VersionReader<C> reader) {
+        return output -> {
+            JsonGenerator generator = JSON_FACTORY.createGenerator(output);
+            writeVersions(versions, reader, (version, timeSeriesName, chunks) -> {
+                generator.writeStartObject();
+                generator.writeNumberField("version", version);
+                generator.writeStringField("timeSeriesName", timeSeriesName);
+                generator.writeArrayFieldStart("chunks");
+                for (C chunk : chunks) {
+                    chunk.writeJson(generator);
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+            }, generator);
+            generator.flush();
+        };
+    }
+
+    /**
+     * Double time series data of a version. Not cached, as versions are read once each and would evict the series
+     * read interactively. The indexes are shared by all the versions.
+     */
+    private static Map<String, List<DoubleDataChunk>> readDoubleTimeSeriesData(AppStorage storage, String nodeId, int version,
+                                                                              TimeSeriesWindow window, Map<String, TimeSeriesIndex> indexes,
+                                                                              Set<String> timeSeriesNames) {
+        Map<String, List<DoubleDataChunk>> timeSeriesData = storage.getDoubleTimeSeriesData(nodeId, timeSeriesNames, version);
+        return window.isAll() ? timeSeriesData : getWindow(indexes, window, timeSeriesData, TimeSeriesChunkIndex::getDoubleChunks);
+    }
+
+    private static Map<String, List<StringDataChunk>> readStringTimeSeriesData(AppStorage storage, String nodeId, int version,
+                                                                              TimeSeriesWindow window, Map<String, TimeSeriesIndex> indexes,
+                                                                              Set<String> timeSeriesNames) {
+        Map<String, List<StringDataChunk>> timeSeriesData = storage.getStringTimeSeriesData(nodeId, timeSeriesNames, version);
+        return window.isAll() ? timeSeriesData : getWindow(indexes, window, timeSeriesData, TimeSeriesChunkIndex::getStringChunks);
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "fileSystems/{fileSystemName}/nodes/{nodeId}/timeSeries/double/versions", produces = NDJSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation (value = "Get double time series data of several versions", response = StreamingResponseBody.class)
+    @ApiResponses (value = {@ApiResponse(code = 200, message = "One JSON line per version and time series, by version"), @ApiResponse(code = 404, message = ""), @ApiResponse(code = 500, message = "Error")})
+    public ResponseEntity<StreamingResponseBody> getDoubleTimeSeriesDataVersions(@ApiParam(value = "File system name") @PathVariable("fileSystemName") String fileSystemName,
+                                            @ApiParam(value = "Node ID") @PathVariable("nodeId") String nodeId,
+                                            @ApiParam(value = "Versions") @RequestParam("versions") Set<Integer> versions,
+                                            @ApiParam(value = "First point index") @RequestParam(value = "firstIndex", required = false) Integer firstIndex,
+                                            @ApiParam(value = "Last point index") @RequestParam(value = "lastIndex", required = false) Integer lastIndex,
+                                            @ApiParam(value = "Start time, ISO-8601") @RequestParam(value = "startTime", required = false) String startTime,
+                                            @ApiParam(value = "End time, ISO-8601") @RequestParam(value = "endTime", required = false) String endTime,
+                                            @ApiParam(value = "Time series names") @RequestBody Set<String> timeSeriesNames) {
+        TimeSeriesWindow window = TimeSeriesWindow.parse(firstIndex, lastIndex, startTime, endTime);
+        AppStorage storage = getStorage(fileSystemName, nodeId);
+        Map<String, TimeSeriesIndex> indexes = getIndexes(storage, nodeId, window, timeSeriesNames);
+        return ResponseEntity.ok()
+                .contentType(NDJSON_MEDIA_TYPE)
+                .body(streamJsonLines(versions, version -> readDoubleTimeSeriesData(storage, nodeId, version, window, indexes, timeSeriesNames)));
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "fileSystems/{fileSystemName}/nodes/{nodeId}/timeSeries/double/versions", produces = BinaryTimeSeriesFormat.MEDIA_TYPE_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation (value = "Get double time series data of several versions in the compact binary format", response = StreamingResponseBody.class)
+    @ApiResponses (value = {@ApiResponse(code = 200, message = "One record per version and time series, by version"), @ApiResponse(code = 404, message = ""), @ApiResponse(code = 500, message = "Error")})
+    public ResponseEntity<StreamingResponseBody> getBinaryDoubleTimeSeriesDataVersions(@ApiParam(value = "File system name") @PathVariable("fileSystemName") String fileSystemName,
+                                            @ApiParam(value = "Node ID") @PathVariable("nodeId") String nodeId,
+                                            @ApiParam(value = "Versions") @RequestParam("versions") Set<Integer> versions,
+                                            @ApiParam(value = "First point index") @RequestParam(value = "firstIndex", required = false) Integer firstIndex,
+                                            @ApiParam(value = "Last point index") @RequestParam(value = "lastIndex", required = false) Integer lastIndex,
+                                            @ApiParam(value = "Start time, ISO-8601") @RequestParam(value = "startTime", required = false) String startTime,
+                                            @ApiParam(value = "End time, ISO-8601") @RequestParam(value = "endTime", required = false) String endTime,
+                                            @ApiParam(value = "Time series names") @RequestBody Set<String> timeSeriesNames) {
+        TimeSeriesWindow window = TimeSeriesWindow.parse(firstIndex, lastIndex, startTime, endTime);
+        AppStorage storage = getStorage(fileSystemName, nodeId);
+        Map<String, TimeSeriesIndex> indexes = getIndexes(storage, nodeId, window, timeSeriesNames);
+        StreamingResponseBody streamingOutput = output -> {
+            BinaryTimeSeriesWriter writer = new BinaryTimeSeriesWriter(output);
+            writeVersions(versions, version -> readDoubleTimeSeriesData(storage, nodeId, version, window, indexes, timeSeriesNames),
+                          writer::writeDoubleTimeSeries, writer::flush);
+            writer.writeEnd();
+            writer.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(BINARY_MEDIA_TYPE)
+                .body(streamingOutput);
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "fileSystems/{fileSystemName}/nodes/{nodeId}/timeSeries/string/versions", produces = NDJSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation (value = "Get string time series data of several versions", response = StreamingResponseBody.class)
+    @ApiResponses (value = {@ApiResponse(code = 200, message = "One JSON line per version and time series, by version"), @ApiResponse(code = 404, message = ""), @ApiResponse(code = 500, message = "Error")})
+    public ResponseEntity<StreamingResponseBody> getStringTimeSeriesDataVersions(@ApiParam(value = "File system name") @PathVariable("fileSystemName") String fileSystemName,
+                                            @ApiParam(value = "Node ID") @PathVariable("nodeId") String nodeId,
+                                            @ApiParam(value = "Versions") @RequestParam("versions") Set<Integer> versions,
+                                            @ApiParam(value = "First point index") @RequestParam(value = "firstIndex", required = false) Integer firstIndex,
+                                            @ApiParam(value = "Last point index") @RequestParam(value = "lastIndex", required = false) Integer lastIndex,
+                                            @ApiParam(value = "Start time, ISO-8601") @RequestParam(value = "startTime", required = false) String startTime,
+                                            @ApiParam(value = "End time, ISO-8601") @RequestParam(value = "endTime", required = false) String endTime,
+                                            @ApiParam(value = "Time series names") @RequestBody Set<String> timeSeriesNames) {
+        TimeSeriesWindow window = TimeSeriesWindow.parse(firstIndex, lastIndex, startTime, endTime);
+        AppStorage storage = getStorage(fileSystemName, nodeId);
+        Map<String, TimeSeriesIndex> indexes = getIndexes(storage, nodeId, window, timeSeriesNames);
+        return ResponseEntity.ok()
+                .contentType(NDJSON_MEDIA_TYPE)
+                .body(streamJsonLines(versions, version -> readStringTimeSeriesData(storage, nodeId, version, window, indexes, timeSeriesNames)));
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "fileSystems/{fileSystemName}/nodes/{nodeId}/timeSeries/string/versions", produces = BinaryTimeSeriesFormat.MEDIA_TYPE_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation (value = "Get string time series data of several versions in the compact binary format", response = StreamingResponseBody.class)
+    @ApiResponses (value = {@ApiResponse(code = 200, message = "One record per version and time series, by version"), @ApiResponse(code = 404, message = ""), @ApiResponse(code = 500, message = "Error")})
+    public ResponseEntity<StreamingResponseBody> getBinaryStringTimeSeriesDataVersions(@ApiParam(value = "File system name") @PathVariable("fileSystemName") String fileSystemName,
+                                            @ApiParam(value = "Node ID") @PathVariable("nodeId") String nodeId,
+                                            @ApiParam(value = "Versions") @RequestParam("versions") Set<Integer> versions,
+                                            @ApiParam(value = "First point index") @RequestParam(value = "firstIndex", required = false) Integer firstIndex,
+                                            @ApiParam(value = "Last point index") @RequestParam(value = "lastIndex", required = false) Integer lastIndex,
+                                            @ApiParam(value = "Start time, ISO-8601") @RequestParam(value = "startTime", required = false) String startTime,
+                                            @ApiParam(value = "End time, ISO-8601") @RequestParam(value = "endTime", required = false) String endTime,
+                                            @ApiParam(value = "Time series names") @RequestBody Set<String> timeSeriesNames) {
+        TimeSeriesWindow window = TimeSeriesWindow.parse(firstIndex, lastIndex, startTime, endTime);
+        AppStorage storage = getStorage(fileSystemName, nodeId);
+        Map<String, TimeSeriesIndex> indexes = getIndexes(storage, nodeId, window, timeSeriesNames);
+        StreamingResponseBody streamingOutput = output -> {
+            BinaryTimeSeriesWriter writer = new BinaryTimeSeriesWriter(output);
+            writeVersions(versions, version -> readStringTimeSeriesData(storage, nodeId, version, window, indexes, timeSeriesNames),
+                          writer::writeStringTimeSeries, writer::flush);
+            writer.writeEnd();
+            writer.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(BINARY_MEDIA_TYPE)
+                .body(streamingOutput);
+    }
+
     @RequestMapping(method = RequestMethod.DELETE, value = "fileSystems/{fileSystemName}/nodes/{nodeId}/timeSeries")
     @ApiOperation (value = "")
     @ApiResponses (value = {@ApiResponse(code = 200, message = ""), @ApiResponse(code = 500, message = "Error")})
     public ResponseEntity<String> clearTimeSeries(@PathVariable("fileSystemName") String fileSystemName,
                                     @PathVariable("nodeId") String nodeId) {
-        AppStorage storage = appDataBean.getStorage(fileSystemName);
+        AppStorage storage = getStorage(fileSystemName, nodeId);
         storage.clearTimeSeries(nodeId);
+        timeSeriesCache.invalidate(fileSystemName, nodeId, null);
         return ResponseEntity.ok().build();
     }
 
@@ -452,11 +822,23 @@ public class StorageServer {
     @RequestMapping(method = RequestMethod.GET, value = "fileSystems/{fileSystemName}/tasks", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<TaskMonitor.Snapshot> takeSnapshot(@PathVariable("fileSystemName") String fileSystemName,
             @RequestParam("projectId") String projectId) {
-        AppFileSystem fileSystem = appDataBean.getFileSystem(fileSystemName);
-        TaskMonitor.Snapshot snapshot = fileSystem.getTaskMonitor().takeSnapshot(projectId);
+        TaskMonitor.Snapshot snapshot = taskChangeLogService.takeSnapshot(fileSystemName, projectId);
         return ResponseEntity.ok().body(snapshot);
     }
 
+    @RequestMapping(method = RequestMethod.GET, value = "fileSystems/{fileSystemName}/tasks/changes", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation (value = "Get tasks changed since a revision", response = TaskMonitorChanges.class)
+    @ApiResponses (value = {@ApiResponse(code = 200, message = "The tasks changed since the revision"), @ApiResponse(code = 204, message = "Changes are not known since the revision, a snapshot has to be taken"), @ApiResponse(code = 500, message = "Error")})
+    public ResponseEntity<TaskMonitorChanges> getTaskChanges(@ApiParam(value = "File system name") @PathVariable("fileSystemName") String fileSystemName,
+            @ApiParam(value = "Project ID") @RequestParam("projectId") String projectId,
+            @ApiParam(value = "Revision known by the client") @RequestParam("revision") long revision) {
+        Optional<TaskMonitorChanges> changes = taskChangeLogService.getChanges(fileSystemName, projectId, revision);
+        if (changes.isPresent()) {
+            return ResponseEntity.ok().body(changes.get());
+        }
+        return ResponseEntity.noContent().build();
+    }
+
     @RequestMapping(method = RequestMethod.PUT, value = "fileSystems/{fileSystemName}/tasks", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<TaskMonitor.Task> startTask(@PathVariable("fileSystemName") String fileSystemName,
             @RequestParam("projectFileId") String projectFileId) {
@@ -494,8 +876,9 @@ public class StorageServer {
                                             @ApiParam(value = "Version") @PathVariable("version") int version,
                                             @ApiParam(value = "Time series name") @PathVariable("timeSeriesName") String timeSeriesName,
                                             @ApiParam(value = "List double array chunk") @RequestBody List<DoubleDataChunk> chunks) {
-        AppStorage storage = appDataBean.getStorage(fileSystemName);
+        AppStorage storage = getStorage(fileSystemName, nodeId);
         storage.addDoubleTimeSeriesData(nodeId, version, timeSeriesName, chunks);
+        timeSeriesCache.invalidate(fileSystemName, nodeId, timeSeriesName);
         return ResponseEntity.ok().build();
     }
 
@@ -507,7 +890,7 @@ public class StorageServer {
                                             @ApiParam(value = "Version") @PathVariable("version") int version,
                                             @ApiParam(value = "Time Series Name") @PathVariable("timeSeriesName") String timeSeriesName,
                                             @ApiParam(value = "List string array chunkFile system name") @RequestBody List<StringDataChunk> chunks) {
-        AppStorage storage = appDataBean.getStorage(fileSystemName);
+        AppStorage storage = getStorage(fileSystemName, nodeId);
         storage.addStringTimeSeriesData(nodeId, version, timeSeriesName, chunks);
         return ResponseEntity.ok().build();
     }
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import com.powsybl.afs.StopTaskEvent;
+import com.powsybl.afs.TaskEvent;
+
+import java.util.*;
+
+/**
+ * Bounded in-memory log of the task events of one project.
+ * <p>
+ * The log is able to tell which tasks changed after a given revision as long as this revision is not older than
+ * its horizon, i.e. the revision of the oldest event it may have missed, either because it was not yet tracking the
+ * project or because the event has been evicted to respect the capacity.
+ */
+public class TaskChangeLog {
+
+    private static final class Entry {
+
+        private final long revision;
+
+        private final UUID taskId;
+
+        private final boolean stopped;
+
+        private Entry(long revision, UUID taskId, boolean stopped) {
+            this.revision = revision;
+            this.taskId = taskId;
+            this.stopped = stopped;
+        }
+    }
+
+    /**
+     * Ids of tasks changed within a revision range.
+     */
+    public static final class ChangedTasks {
+
+        private final Set<UUID> updatedTaskIds;
+
+        private final Set<UUID> stoppedTaskIds;
+
+        private ChangedTasks(Set<UUID> updatedTaskIds, Set<UUID> stoppedTaskIds) {
+            this.updatedTaskIds = updatedTaskIds;
+            this.stoppedTaskIds = stoppedTaskIds;
+        }
+
+        /**
+         * Tasks started or whose message has been updated, and still running at the end of the range.
+         */
+        public Set<UUID> getUpdatedTaskIds() {
+            return updatedTaskIds;
+        }
+
+        public Set<UUID> getStoppedTaskIds() {
+            return stoppedTaskIds;
+        }
+    }
+
+    private final int capacity;
+
+    private final Deque<Entry> entries = new ArrayDeque<>();
+
+    private long horizon;
+
+    public TaskChangeLog(int capacity, long horizon) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        this.capacity = capacity;
+        this.horizon = horizon;
+    }
+
+    public synchronized long getHorizon() {
+        return horizon;
+    }
+
+    public synchronized void setHorizon(long horizon) {
+        this.horizon = horizon;
+    }
+
+    public synchronized void record(TaskEvent event) {
+        Objects.requireNonNull(event);
+        entries.addLast(new Entry(event.getRevision(), event.getTaskId(), event instanceof StopTaskEvent));
+        while (entries.size() > capacity) {
+            horizon = Math.max(horizon, entries.removeFirst().revision);
+        }
+    }
+
+    /**
+     * Get the tasks changed by events whose revision is greater than {@code fromRevision} and lower or equal to
+     * {@code toRevision}, or an empty optional if the log does not go back as far as {@code fromRevision}, or if
+     * {@code fromRevision} is ahead of {@code toRevision}, which happens when revisions restarted from 0 with the
+     * server.
+     */
+    public synchronized Optional<ChangedTasks> getChangedTasks(long fromRevision, long toRevision) {
+        if (fromRevision < horizon || fromRevision > toRevision) {
+            return Optional.empty();
+        }
+        Set<UUID> updated = new LinkedHashSet<>();
+        Set<UUID> stopped = new LinkedHashSet<>();
+        for (Entry entry : entries) {
+            if (entry.revision > fromRevision && entry.revision <= toRevision) {
+                if (entry.stopped) {
+                    updated.remove(entry.taskId);
+                    stopped.add(entry.taskId);
+                } else {
+                    updated.add(entry.taskId);
+                }
+            }
+        }
+        return Optional.of(new ChangedTasks(updated, stopped));
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import com.powsybl.afs.AppFileSystem;
+import com.powsybl.afs.TaskEvent;
+import com.powsybl.afs.TaskListener;
+import com.powsybl.afs.TaskMonitor;
+import com.powsybl.client.commons.TaskMonitorChanges;
+import com.powsybl.server.commons.AppDataBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a {@link TaskChangeLog} for each project whose tasks have been requested, so that clients can poll the
+ * tasks changed since the revision they already know instead of a full snapshot.
+ * <p>
+ * Projects whose tasks have not been requested for {@code storage.tasks.idle-timeout-ms} are no more tracked, their
+ * log being dropped and their listener removed. Clients polling them again get a full snapshot first.
+ */
+@Component
+public class TaskChangeLogService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TaskChangeLogService.class);
+
+    @Autowired
+    private AppDataBean appDataBean;
+
+    @Value("${storage.tasks.change-log-capacity:1000}")
+    private int capacity;
+
+    @Value("${storage.tasks.idle-timeout-ms:600000}")
+    private long idleTimeoutMs;
+
+    private ScheduledExecutorService evictionExecutor;
+
+    private final class TrackedProject implements TaskListener {
+
+        private final String projectId;
+
+        private final TaskMonitor taskMonitor;
+
+        private final TaskChangeLog log;
+
+        private volatile long lastAccess = System.nanoTime();
+
+        private TrackedProject(String projectId, TaskMonitor taskMonitor) {
+            this.projectId = projectId;
+            this.taskMonitor = taskMonitor;
+            // nothing can be answered from the log until the horizon is known
+            this.log = new TaskChangeLog(capacity, Long.MAX_VALUE);
+        }
+
+        @Override
+        public String getProjectId() {
+            return projectId;
+        }
+
+        @Override
+        public void onEvent(TaskEvent event) {
+            log.record(event);
+        }
+    }
+
+    private final Map<String, TrackedProject> projects = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        if (idleTimeoutMs > 0) {
+            evictionExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "task-change-log-eviction");
+                thread.setDaemon(true);
+                return thread;
+            });
+            evictionExecutor.scheduleWithFixedDelay(this::evictIdleProjects, idleTimeoutMs, idleTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private TrackedProject track(String fileSystemName, String projectId) {
+        // atomic with the eviction, so that a project is not evicted right after being requested
+        return projects.compute(fileSystemName + "/" + projectId, (key, tracked) -> {
+            TrackedProject project = tracked;
+            if (project == null) {
+                AppFileSystem fileSystem = appDataBean.getFileSystem(fileSystemName);
+                project = new TrackedProject(projectId, fileSystem.getTaskMonitor());
+                // listen before reading the current revision so that no event newer than the horizon is missed
+                project.taskMonitor.addListener(project);
+                project.log.setHorizon(project.taskMonitor.takeSnapshot(projectId).getRevision());
+            }
+            project.lastAccess = System.nanoTime();
+            return project;
+        });
+    }
+
+    /**
+     * Stop tracking the projects not requested for {@code storage.tasks.idle-timeout-ms}.
+     */
+    void evictIdleProjects() {
+        long idleSince = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        List<TrackedProject> evicted = new ArrayList<>();
+        for (String key : projects.keySet()) {
+            projects.computeIfPresent(key, (k, project) -> {
+                if (project.lastAccess - idleSince < 0) {
+                    evicted.add(project);
+                    return null;
+                }
+                return project;
+            });
+        }
+        for (TrackedProject project : evicted) {
+            try {
+                project.taskMonitor.removeListener(project);
+            } catch (Exception e) {
+                LOGGER.error(e.toString(), e);
+            }
+        }
+        if (!evicted.isEmpty()) {
+            LOGGER.debug("{} idle projects no more tracked", evicted.size());
+        }
+    }
+
+    /**
+     * Take a full snapshot of the tasks of a project, and start tracking its changes.
+     */
+    public TaskMonitor.Snapshot takeSnapshot(String fileSystemName, String projectId) {
+        return track(fileSystemName, projectId).taskMonitor.takeSnapshot(projectId);
+    }
+
+    /**
+     * Get the tasks of a project changed since a revision, or an empty optional if the changes are not known that
+     * far back, or if the revision is unknown because the server has been restarted since, and a full snapshot has
+     * to be taken.
+     */
+    public Optional<TaskMonitorChanges> getChanges(String fileSystemName, String projectId, long revision) {
+        TrackedProject project = track(fileSystemName, projectId);
+        // task monitor notifies listeners synchronously, so every change included in the snapshot is already logged
+        TaskMonitor.Snapshot snapshot = project.taskMonitor.takeSnapshot(projectId);
+        return project.log.getChangedTasks(revision, snapshot.getRevision())
+                .map(changedTasks -> {
+                    List<TaskMonitor.Task> tasks = snapshot.getTasks().stream()
+                            .filter(task -> changedTasks.getUpdatedTaskIds().contains(task.getId()))
+                            .collect(Collectors.toList());
+                    Set<UUID> runningTaskIds = snapshot.getTasks().stream()
+                            .map(TaskMonitor.Task::getId)
+                            .collect(Collectors.toSet());
+                    Set<UUID> stoppedTaskIds = new HashSet<>(changedTasks.getStoppedTaskIds());
+                    changedTasks.getUpdatedTaskIds().stream()
+                            .filter(id -> !runningTaskIds.contains(id))
+                            .forEach(stoppedTaskIds::add);
+                    return new TaskMonitorChanges(snapshot.getRevision(), tasks, stoppedTaskIds);
+                });
+    }
+
+    @PreDestroy
+    public void close() {
+        if (evictionExecutor != null) {
+            evictionExecutor.shutdownNow();
+        }
+        projects.values().forEach(project -> project.taskMonitor.removeListener(project));
+        projects.clear();
+    }
+}
@@ -6,36 +6,40 @@
  */
 package com.powsybl.server.storage;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.powsybl.afs.AppFileSystem;
 import com.powsybl.afs.TaskEvent;
 import com.powsybl.afs.TaskListener;
 import com.powsybl.server.commons.AppDataBean;
-import com.powsybl.commons.json.JsonUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.adapter.standard.StandardWebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
-import javax.websocket.RemoteEndpoint;
-import javax.websocket.Session;
-import java.io.IOException;
-import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Objects;
 
-public class TaskEventHandler extends TextWebSocketHandler {
+public class TaskEventHandler extends TextWebSocketHandler implements SubProtocolCapable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TaskEventHandler.class);
 
     private final AppDataBean appDataBean;
     private final WebSocketContext webSocketContext;
 
-    private final ObjectMapper objectMapper = JsonUtil.createObjectMapper();
+    private final EventMessageSender sender;
 
-    public TaskEventHandler(AppDataBean appDataBean, WebSocketContext webSocketContext) {
-        this.appDataBean = appDataBean;
-        this.webSocketContext = webSocketContext;
+    public TaskEventHandler(AppDataBean appDataBean, WebSocketContext webSocketContext, boolean binaryFramesEnabled) {
+        this.appDataBean = Objects.requireNonNull(appDataBean);
+        this.webSocketContext = Objects.requireNonNull(webSocketContext);
+        this.sender = new EventMessageSender(binaryFramesEnabled);
+    }
+
+    @Override
+    public List<String> getSubProtocols() {
+        return sender.getSubProtocols();
     }
 
     @Override
@@ -45,7 +49,8 @@ public class TaskEventHandler extends TextWebSocketHandler {
         AppFileSystem fileSystem = appDataBean.getFileSystem(fileSystemName);
         String projectId = session.getAttributes().get("projectId").toString();
 
-        LOGGER.debug("WebSocket session '{}' opened for file system '{}'", session.getId(), fileSystemName);
+        LOGGER.debug("WebSocket session '{}' opened for file system '{}' (sub-protocol '{}')", session.getId(), fileSystemName,
+                session.getAcceptedProtocol());
 
         TaskListener listener = new TaskListener() {
 
@@ -57,40 +62,25 @@ public class TaskEventHandler extends TextWebSocketHandler {
             @Override
             public void onEvent(TaskEvent event) {
                 if (session.isOpen()) {
-                    RemoteEndpoint.Async remote = ((StandardWebSocketSession) session).getNativeSession().getAsyncRemote();
-                    remote.setSendTimeout(1000);
-                    try {
-                        String taskEventEncode = objectMapper.writeValueAsString(event);
-                        remote.sendText(taskEventEncode, result -> {
-                            if (!result.isOK()) {
-                                LOGGER.error(result.getException().toString(), result.getException());
-                            }
-                        });
-                    } catch (IOException e) {
-                        throw new UncheckedIOException(e);
-                    }
+                    sender.send(session, event);
                 } else {
                     webSocketContext.removeSession(((StandardWebSocketSession) session).getNativeSession());
                 }
             }
         };
-        ((StandardWebSocketSession) session).getNativeSession().getUserProperties().put("listener", listener);
         fileSystem.getTaskMonitor().addListener(listener);
 
-        webSocketContext.addSession(((StandardWebSocketSession) session).getNativeSession());
+        webSocketContext.addSession(fileSystemName, ((StandardWebSocketSession) session).getNativeSession(),
+            () -> fileSystem.getTaskMonitor().removeListener(listener));
     }
 
     @Override
-    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
-        String fileSystemName = (String) session.getAttributes().get("fileSystemName");
-        removeSession(fileSystemName, ((StandardWebSocketSession) session).getNativeSession());
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) {
+        webSocketContext.touch(((StandardWebSocketSession) session).getNativeSession());
     }
 
-    private void removeSession(String fileSystemName, Session session) {
-        AppFileSystem fileSystem = appDataBean.getFileSystem(fileSystemName);
-
-        TaskListener listener = (TaskListener) session.getUserProperties().get("listener");
-        fileSystem.getTaskMonitor().removeListener(listener);
-        webSocketContext.removeSession(session);
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        webSocketContext.removeSession(((StandardWebSocketSession) session).getNativeSession());
     }
 }
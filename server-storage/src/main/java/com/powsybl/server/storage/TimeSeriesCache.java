@@ -0,0 +1,294 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import com.powsybl.afs.storage.ListenableAppStorage;
+import com.powsybl.afs.storage.events.AppStorageListener;
+import com.powsybl.afs.storage.events.NodeEvent;
+import com.powsybl.afs.storage.events.NodeEventList;
+import com.powsybl.afs.storage.events.TimeSeriesDataUpdated;
+import com.powsybl.server.commons.AppDataBean;
+import com.powsybl.timeseries.DoubleDataChunk;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-through cache of double time series data, stored out of the heap and bounded by
+ * {@code storage.time-series-cache.max-size-mb} with least recently used eviction. Disabled by default, as the
+ * maximum direct memory of the JVM has to be sized for it.
+ * <p>
+ * Only the JSON reads of a single version go through the cache, their windows being serialized straight from the
+ * cached buffers. Binary reads would have to copy the chunks back to the heap, and reads of several versions would
+ * evict the series read interactively with versions read once.
+ * <p>
+ * Cached series are invalidated by the time series data updated, time series cleared and node removed events of
+ * their storage. A series read while one of these events is received for its node is not cached, as it could be
+ * stale. The memory of evicted series is released when they are garbage collected, so the maximum direct memory of
+ * the JVM must be greater than the cache size.
+ */
+@Component
+public class TimeSeriesCache {
+
+    private static final long MB = 1024L * 1024L;
+
+    @Autowired
+    private AppDataBean appDataBean;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${storage.time-series-cache.enabled:false}")
+    private boolean enabled;
+
+    @Value("${storage.time-series-cache.max-size-mb:256}")
+    private long maxSizeMb;
+
+    private static final class Key {
+
+        private final String fileSystemName;
+
+        private final String nodeId;
+
+        private final int version;
+
+        private final String timeSeriesName;
+
+        private Key(String fileSystemName, String nodeId, int version, String timeSeriesName) {
+            this.fileSystemName = fileSystemName;
+            this.nodeId = nodeId;
+            this.version = version;
+            this.timeSeriesName = timeSeriesName;
+        }
+
+        private String getNodeKey() {
+            return TimeSeriesCache.getNodeKey(fileSystemName, nodeId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fileSystemName, nodeId, version, timeSeriesName);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof Key) {
+                Key other = (Key) obj;
+                return fileSystemName.equals(other.fileSystemName) && nodeId.equals(other.nodeId)
+                        && version == other.version && timeSeriesName.equals(other.timeSeriesName);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A read of a node from the storage, which is stale if the node is invalidated meanwhile.
+     */
+    private static final class Load {
+
+        private final String fileSystemName;
+
+        private final String nodeId;
+
+        private boolean stale = false;
+
+        private Load(String fileSystemName, String nodeId) {
+            this.fileSystemName = fileSystemName;
+            this.nodeId = nodeId;
+        }
+    }
+
+    // guarded by this
+    private final LinkedHashMap<Key, OffHeapDoubleTimeSeries> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // guarded by this
+    private final Set<Load> loads = new HashSet<>();
+
+    // cached keys of each node, guarded by this
+    private final Map<String, Set<Key>> nodeKeys = new HashMap<>();
+
+    private long residentBytes = 0;
+
+    // listeners are kept here as storages only keep weak references to them
+    private final Map<String, AppStorageListener> listeners = new ConcurrentHashMap<>();
+
+    private Counter hits;
+
+    private Counter misses;
+
+    private Counter evictions;
+
+    private Counter invalidations;
+
+    @PostConstruct
+    public void init() {
+        hits = Counter.builder("storage.time-series-cache.requests").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("storage.time-series-cache.requests").tag("result", "miss").register(meterRegistry);
+        evictions = Counter.builder("storage.time-series-cache.evictions").register(meterRegistry);
+        invalidations = Counter.builder("storage.time-series-cache.invalidations").register(meterRegistry);
+        Gauge.builder("storage.time-series-cache.resident.bytes", this, TimeSeriesCache::getResidentBytes)
+                .description("Size of the cached time series, out of the heap")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("storage.time-series-cache.size", this, TimeSeriesCache::getSize)
+                .description("Number of cached time series")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    private void listen(String fileSystemName) {
+        listeners.computeIfAbsent(fileSystemName, name -> {
+            ListenableAppStorage storage = appDataBean.getStorage(name);
+            AppStorageListener listener = eventList -> onEvents(name, eventList);
+            storage.addListener(listener);
+            return listener;
+        });
+    }
+
+    private void onEvents(String fileSystemName, NodeEventList eventList) {
+        for (NodeEvent event : eventList.getEvents()) {
+            switch (event.getType()) {
+                case TIME_SERIES_DATA_UPDATED:
+                    invalidate(fileSystemName, event.getId(), ((TimeSeriesDataUpdated) event).getTimeSeriesName());
+                    break;
+                case TIME_SERIES_CLEARED:
+                case NODE_REMOVED:
+                    invalidate(fileSystemName, event.getId(), null);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static String getNodeKey(String fileSystemName, String nodeId) {
+        return fileSystemName + "/" + nodeId;
+    }
+
+    private void removed(Key key, OffHeapDoubleTimeSeries timeSeries) {
+        residentBytes -= timeSeries.getOffHeapBytes();
+        Set<Key> keys = nodeKeys.get(key.getNodeKey());
+        keys.remove(key);
+        if (keys.isEmpty()) {
+            nodeKeys.remove(key.getNodeKey());
+        }
+    }
+
+    /**
+     * Remove the cached series of a node, or only one of them if a name is given, from all versions.
+     */
+    public synchronized void invalidate(String fileSystemName, String nodeId, String timeSeriesName) {
+        for (Load load : loads) {
+            if (load.fileSystemName.equals(fileSystemName) && load.nodeId.equals(nodeId)) {
+                load.stale = true;
+            }
+        }
+        Set<Key> keys = nodeKeys.get(getNodeKey(fileSystemName, nodeId));
+        if (keys == null) {
+            return;
+        }
+        for (Key key : new ArrayList<>(keys)) {
+            if (timeSeriesName == null || key.timeSeriesName.equals(timeSeriesName)) {
+                removed(key, entries.remove(key));
+                invalidations.increment();
+            }
+        }
+    }
+
+    private void put(Key key, OffHeapDoubleTimeSeries timeSeries) {
+        long size = timeSeries.getOffHeapBytes();
+        if (size > maxSizeMb * MB) {
+            return;
+        }
+        OffHeapDoubleTimeSeries previous = entries.put(key, timeSeries);
+        if (previous != null) {
+            residentBytes -= previous.getOffHeapBytes();
+        } else {
+            nodeKeys.computeIfAbsent(key.getNodeKey(), k -> new HashSet<>()).add(key);
+        }
+        residentBytes += size;
+        Iterator<Map.Entry<Key, OffHeapDoubleTimeSeries>> it = entries.entrySet().iterator();
+        while (residentBytes > maxSizeMb * MB && it.hasNext()) {
+            Map.Entry<Key, OffHeapDoubleTimeSeries> eldest = it.next();
+            if (eldest.getValue() != timeSeries) {
+                it.remove();
+                removed(eldest.getKey(), eldest.getValue());
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Get double time series data, reading from the storage and caching the series which are not cached yet.
+     * Series which do not exist are missing from the result.
+     */
+    public Map<String, OffHeapDoubleTimeSeries> getDoubleTimeSeriesData(String fileSystemName, String nodeId,
+                                                                        Set<String> timeSeriesNames, int version) {
+        Objects.requireNonNull(fileSystemName);
+        Objects.requireNonNull(nodeId);
+        Objects.requireNonNull(timeSeriesNames);
+
+        // invalidations have to be received from now on
+        listen(fileSystemName);
+
+        Map<String, OffHeapDoubleTimeSeries> data = new HashMap<>();
+        Set<String> missingNames = new HashSet<>();
+        Load load = new Load(fileSystemName, nodeId);
+        synchronized (this) {
+            for (String timeSeriesName : timeSeriesNames) {
+                OffHeapDoubleTimeSeries timeSeries = entries.get(new Key(fileSystemName, nodeId, version, timeSeriesName));
+                if (timeSeries != null) {
+                    hits.increment();
+                    data.put(timeSeriesName, timeSeries);
+                } else {
+                    misses.increment();
+                    missingNames.add(timeSeriesName);
+                }
+            }
+            if (missingNames.isEmpty()) {
+                return data;
+            }
+            loads.add(load);
+        }
+
+        try {
+            Map<String, List<DoubleDataChunk>> storageData = appDataBean.getStorage(fileSystemName)
+                    .getDoubleTimeSeriesData(nodeId, missingNames, version);
+            Map<String, OffHeapDoubleTimeSeries> loadedData = new HashMap<>();
+            storageData.forEach((timeSeriesName, chunks) -> loadedData.put(timeSeriesName, OffHeapDoubleTimeSeries.create(chunks)));
+            data.putAll(loadedData);
+            synchronized (this) {
+                if (!load.stale) {
+                    loadedData.forEach((timeSeriesName, timeSeries) -> put(new Key(fileSystemName, nodeId, version, timeSeriesName), timeSeries));
+                }
+            }
+        } finally {
+            synchronized (this) {
+                loads.remove(load);
+            }
+        }
+        return data;
+    }
+}
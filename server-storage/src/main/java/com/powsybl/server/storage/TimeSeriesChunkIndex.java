@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import com.powsybl.timeseries.*;
+
+import java.util.*;
+
+/**
+ * Finds the chunks of a time series overlapping a window of points.
+ * <p>
+ * Chunks read from the storage for a single request are scanned, in linear time. The chunks of the series of the
+ * time series cache, when it is enabled, are sorted once when loaded, in {@link OffHeapDoubleTimeSeries}, along with
+ * the greatest last point up to each chunk, see {@link #getEnds(int[], int[])}, so that the chunks overlapping a
+ * window are found by binary search.
+ */
+public final class TimeSeriesChunkIndex {
+
+    private static final Comparator<DataChunk<?, ?>> OFFSET_ORDER = Comparator.comparingInt(DataChunk::getOffset);
+
+    private TimeSeriesChunkIndex() {
+    }
+
+    /**
+     * Chunks in offset order.
+     */
+    static <C extends DataChunk<?, ?>> List<C> sortChunks(List<C> chunks) {
+        List<C> sortedChunks = new ArrayList<>(chunks);
+        sortedChunks.sort(OFFSET_ORDER);
+        return sortedChunks;
+    }
+
+    /**
+     * Greatest last point of the chunks up to each one, increasing even when chunks overlap.
+     *
+     * @param offsets offsets of chunks in offset order
+     * @param lengths lengths of the same chunks
+     */
+    static int[] getEnds(int[] offsets, int[] lengths) {
+        int[] ends = new int[offsets.length];
+        int end = -1;
+        for (int i = 0; i < ends.length; i++) {
+            end = Math.max(end, offsets[i] + lengths[i] - 1);
+            ends[i] = end;
+        }
+        return ends;
+    }
+
+    /**
+     * Index of the first chunk ending at or after a point, by binary search: chunks before it do not overlap any
+     * window starting at this point.
+     *
+     * @param ends greatest last points of chunks in offset order, see {@link #getEnds(int[], int[])}
+     */
+    static int getFirstOverlapping(int[] ends, int first) {
+        int low = 0;
+        int high = ends.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ends[middle] < first) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static boolean isOverlapping(DataChunk<?, ?> chunk, int first, int last) {
+        return chunk.getOffset() <= last && chunk.getOffset() + chunk.getLength() > first;
+    }
+
+    /**
+     * Chunks overlapping a window of points, in offset order, found by a scan.
+     */
+    public static <C extends DataChunk<?, ?>> List<C> scanChunks(List<C> chunks, int first, int last) {
+        List<C> overlapping = new ArrayList<>();
+        for (C chunk : chunks) {
+            if (isOverlapping(chunk, first, last)) {
+                overlapping.add(chunk);
+            }
+        }
+        overlapping.sort(OFFSET_ORDER);
+        return overlapping;
+    }
+
+    /**
+     * Chunks overlapping a window of points, trimmed to the window.
+     */
+    public static List<DoubleDataChunk> getDoubleChunks(List<DoubleDataChunk> chunks, int first, int last) {
+        List<DoubleDataChunk> trimmedChunks = new ArrayList<>();
+        for (DoubleDataChunk chunk : scanChunks(chunks, first, last)) {
+            trimmedChunks.add(trim(chunk, first, last));
+        }
+        return trimmedChunks;
+    }
+
+    /**
+     * Chunks overlapping a window of points, trimmed to the window.
+     */
+    public static List<StringDataChunk> getStringChunks(List<StringDataChunk> chunks, int first, int last) {
+        List<StringDataChunk> trimmedChunks = new ArrayList<>();
+        for (StringDataChunk chunk : scanChunks(chunks, first, last)) {
+            trimmedChunks.add(trim(chunk, first, last));
+        }
+        return trimmedChunks;
+    }
+
+    private static boolean isInside(DataChunk<?, ?> chunk, int first, int last) {
+        return chunk.getOffset() >= first && chunk.getOffset() + chunk.getLength() - 1 <= last;
+    }
+
+    /**
+     * Lengths of the steps of a compressed chunk within a window, 0 for the steps outside of it.
+     */
+    private static int[] getTrimmedStepLengths(int offset, int[] stepLengths, int first, int last) {
+        int[] trimmedLengths = new int[stepLengths.length];
+        int index = offset;
+        for (int i = 0; i < stepLengths.length; i++) {
+            int start = Math.max(index, first);
+            int end = Math.min(index + stepLengths[i] - 1, last);
+            trimmedLengths[i] = Math.max(0, end - start + 1);
+            index += stepLengths[i];
+        }
+        return trimmedLengths;
+    }
+
+    private static DoubleDataChunk trim(DoubleDataChunk chunk, int first, int last) {
+        if (isInside(chunk, first, last)) {
+            return chunk;
+        }
+        int offset = Math.max(chunk.getOffset(), first);
+        if (chunk instanceof CompressedDoubleDataChunk) {
+            CompressedDoubleDataChunk compressedChunk = (CompressedDoubleDataChunk) chunk;
+            int[] trimmedLengths = getTrimmedStepLengths(chunk.getOffset(), compressedChunk.getStepLengths(), first, last);
+            int stepCount = (int) Arrays.stream(trimmedLengths).filter(length -> length > 0).count();
+            double[] stepValues = new double[stepCount];
+            int[] stepLengths = new int[stepCount];
+            int step = 0;
+            for (int i = 0; i < trimmedLengths.length; i++) {
+                if (trimmedLengths[i] > 0) {
+                    stepValues[step] = compressedChunk.getStepValues()[i];
+                    stepLengths[step++] = trimmedLengths[i];
+                }
+            }
+            return new CompressedDoubleDataChunk(offset, Arrays.stream(stepLengths).sum(), stepValues, stepLengths);
+        } else if (chunk instanceof UncompressedDoubleDataChunk) {
+            double[] values = ((UncompressedDoubleDataChunk) chunk).getValues();
+            int end = Math.min(chunk.getOffset() + chunk.getLength() - 1, last);
+            return new UncompressedDoubleDataChunk(offset, Arrays.copyOfRange(values, offset - chunk.getOffset(), end - chunk.getOffset() + 1));
+        }
+        throw new IllegalArgumentException("Unsupported chunk type " + chunk.getClass().getName());
+    }
+
+    private static StringDataChunk trim(StringDataChunk chunk, int first, int last) {
+        if (isInside(chunk, first, last)) {
+            return chunk;
+        }
+        int offset = Math.max(chunk.getOffset(), first);
+        if (chunk instanceof CompressedStringDataChunk) {
+            CompressedStringDataChunk compressedChunk = (CompressedStringDataChunk) chunk;
+            int[] trimmedLengths = getTrimmedStepLengths(chunk.getOffset(), compressedChunk.getStepLengths(), first, last);
+            int stepCount = (int) Arrays.stream(trimmedLengths).filter(length -> length > 0).count();
+            String[] stepValues = new String[stepCount];
+            int[] stepLengths = new int[stepCount];
+            int step = 0;
+            for (int i = 0; i < trimmedLengths.length; i++) {
+                if (trimmedLengths[i] > 0) {
+                    stepValues[step] = compressedChunk.getStepValues()[i];
+                    stepLengths[step++] = trimmedLengths[i];
+                }
+            }
+            return new CompressedStringDataChunk(offset, Arrays.stream(stepLengths).sum(), stepValues, stepLengths);
+        } else if (chunk instanceof UncompressedStringDataChunk) {
+            String[] values = ((UncompressedStringDataChunk) chunk).getValues();
+            int end = Math.min(chunk.getOffset() + chunk.getLength() - 1, last);
+            return new UncompressedStringDataChunk(offset, Arrays.copyOfRange(values, offset - chunk.getOffset(), end - chunk.getOffset() + 1));
+        }
+        throw new IllegalArgumentException("Unsupported chunk type " + chunk.getClass().getName());
+    }
+}
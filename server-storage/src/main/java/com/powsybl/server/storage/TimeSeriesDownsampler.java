@@ -0,0 +1,295 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import com.powsybl.timeseries.CompressedDoubleDataChunk;
+import com.powsybl.timeseries.DoubleDataChunk;
+import com.powsybl.timeseries.TimeSeriesIndex;
+import com.powsybl.timeseries.UncompressedDoubleDataChunk;
+
+import java.util.*;
+
+/**
+ * Reduces a double time series to a number of points, over a window of its points.
+ * <p>
+ * The size of the buckets is either given or computed from a target number of points. Chunks are read as runs of
+ * equal values: a compressed chunk is never expanded, each of its steps being aggregated at once, and only the
+ * bounds of a step within a bucket are candidates for the largest triangle three buckets selection, as the area
+ * of the triangle is linear in the index of the candidate point.
+ */
+public class TimeSeriesDownsampler {
+
+    public enum Method {
+        BUCKETS,
+        LTTB
+    }
+
+    private final TimeSeriesWindow window;
+
+    private final Integer points;
+
+    private final Integer bucketSize;
+
+    private final Method method;
+
+    public TimeSeriesDownsampler(TimeSeriesWindow window, Integer points, Integer bucketSize, Method method) {
+        this.window = Objects.requireNonNull(window);
+        if ((points == null) == (bucketSize == null)) {
+            throw new IllegalArgumentException("Either a number of points or a bucket size is expected");
+        }
+        if ((points != null && points < 1) || (bucketSize != null && bucketSize < 1)) {
+            throw new IllegalArgumentException("Invalid number of points or bucket size " + (points != null ? points : bucketSize));
+        }
+        this.method = Objects.requireNonNull(method);
+        if (method == Method.LTTB && bucketSize != null) {
+            throw new IllegalArgumentException("A number of points is expected for " + method);
+        }
+        this.points = points;
+        this.bucketSize = bucketSize;
+    }
+
+    /**
+     * Receives runs of equal non NaN values, in increasing index order.
+     */
+    private interface RunHandler {
+
+        void onRun(int index, int length, double value);
+    }
+
+    /**
+     * Runs of a time series, stored for a second pass.
+     */
+    private static final class Runs implements RunHandler {
+
+        private int size = 0;
+
+        private int[] indexes = new int[16];
+
+        private int[] lengths = new int[16];
+
+        private double[] values = new double[16];
+
+        @Override
+        public void onRun(int index, int length, double value) {
+            if (size == indexes.length) {
+                indexes = Arrays.copyOf(indexes, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            indexes[size] = index;
+            lengths[size] = length;
+            values[size] = value;
+            size++;
+        }
+
+        private int end(int run) {
+            return indexes[run] + lengths[run] - 1;
+        }
+    }
+
+    private static void readRun(int index, int length, double value, int first, int last, RunHandler handler) {
+        int start = Math.max(index, first);
+        int end = Math.min(index + length - 1, last);
+        if (start <= end && !Double.isNaN(value)) {
+            handler.onRun(start, end - start + 1, value);
+        }
+    }
+
+    private static void readRuns(List<DoubleDataChunk> chunks, int first, int last, RunHandler handler) {
+        for (DoubleDataChunk chunk : TimeSeriesChunkIndex.scanChunks(chunks, first, last)) {
+            if (chunk instanceof CompressedDoubleDataChunk) {
+                CompressedDoubleDataChunk compressedChunk = (CompressedDoubleDataChunk) chunk;
+                int index = chunk.getOffset();
+                for (int i = 0; i < compressedChunk.getStepValues().length && index <= last; i++) {
+                    int length = compressedChunk.getStepLengths()[i];
+                    readRun(index, length, compressedChunk.getStepValues()[i], first, last, handler);
+                    index += length;
+                }
+            } else if (chunk instanceof UncompressedDoubleDataChunk) {
+                double[] values = ((UncompressedDoubleDataChunk) chunk).getValues();
+                for (int i = Math.max(0, first - chunk.getOffset()); i < values.length && chunk.getOffset() + i <= last; i++) {
+                    readRun(chunk.getOffset() + i, 1, values[i], first, last, handler);
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported chunk type " + chunk.getClass().getName());
+            }
+        }
+    }
+
+    private static long[] getTimes(TimeSeriesIndex index, int[] indexes) {
+        long[] times = new long[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            times[i] = index.getTimeAt(indexes[i]);
+        }
+        return times;
+    }
+
+    public DownsampledTimeSeries downsample(TimeSeriesIndex index, List<DoubleDataChunk> chunks) {
+        Objects.requireNonNull(index);
+        Objects.requireNonNull(chunks);
+
+        int first = window.getFirstPoint(index);
+        int last = window.getLastPoint(index);
+        if (first > last) {
+            return DownsampledTimeSeries.createPoints(first, last, new int[0], new long[0], new double[0]);
+        }
+        return method == Method.LTTB ? selectPoints(index, chunks, first, last) : aggregate(index, chunks, first, last);
+    }
+
+    private DownsampledTimeSeries aggregate(TimeSeriesIndex index, List<DoubleDataChunk> chunks, int first, int last) {
+        int pointCount = last - first + 1;
+        int size = bucketSize != null ? bucketSize : (pointCount + points - 1) / points;
+        int bucketCount = (pointCount + size - 1) / size;
+
+        int[] indexes = new int[bucketCount];
+        int[] count = new int[bucketCount];
+        double[] min = new double[bucketCount];
+        double[] max = new double[bucketCount];
+        double[] sum = new double[bucketCount];
+        double[] firstValues = new double[bucketCount];
+        double[] lastValues = new double[bucketCount];
+        for (int b = 0; b < bucketCount; b++) {
+            indexes[b] = first + b * size;
+        }
+        Arrays.fill(min, Double.NaN);
+        Arrays.fill(max, Double.NaN);
+        Arrays.fill(firstValues, Double.NaN);
+        Arrays.fill(lastValues, Double.NaN);
+
+        readRuns(chunks, first, last, (runIndex, runLength, value) -> {
+            int i = runIndex;
+            int remaining = runLength;
+            while (remaining > 0) {
+                int b = (i - first) / size;
+                int n = Math.min(remaining, indexes[b] + size - i);
+                if (count[b] == 0) {
+                    min[b] = value;
+                    max[b] = value;
+                    firstValues[b] = value;
+                } else {
+                    min[b] = Math.min(min[b], value);
+                    max[b] = Math.max(max[b], value);
+                }
+                lastValues[b] = value;
+                sum[b] += value * n;
+                count[b] += n;
+                i += n;
+                remaining -= n;
+            }
+        });
+
+        double[] mean = new double[bucketCount];
+        for (int b = 0; b < bucketCount; b++) {
+            mean[b] = count[b] > 0 ? sum[b] / count[b] : Double.NaN;
+        }
+        return DownsampledTimeSeries.createBuckets(first, last, size, indexes, getTimes(index, indexes), count, min, max,
+                                                   mean, firstValues, lastValues);
+    }
+
+    private DownsampledTimeSeries selectPoints(TimeSeriesIndex index, List<DoubleDataChunk> chunks, int first, int last) {
+        Runs runs = new Runs();
+        readRuns(chunks, first, last, runs);
+
+        int[] selectedIndexes = new int[points];
+        double[] selectedValues = new double[points];
+        int selected = 0;
+        if (runs.size > 0) {
+            // first and last points are always selected, the points in between are split into buckets
+            int firstPoint = runs.indexes[0];
+            int lastPoint = runs.end(runs.size - 1);
+            selectedIndexes[selected] = firstPoint;
+            selectedValues[selected++] = runs.values[0];
+            if (points > 2 && lastPoint - firstPoint > 1) {
+                selected = selectPoints(runs, firstPoint + 1, lastPoint - 1, points - 2, selectedIndexes, selectedValues, selected);
+            }
+            if (points > 1 && lastPoint > firstPoint) {
+                selectedIndexes[selected] = lastPoint;
+                selectedValues[selected++] = runs.values[runs.size - 1];
+            }
+        }
+        int[] indexes = Arrays.copyOf(selectedIndexes, selected);
+        return DownsampledTimeSeries.createPoints(first, last, indexes, getTimes(index, indexes), Arrays.copyOf(selectedValues, selected));
+    }
+
+    /**
+     * Twice the area of a triangle.
+     */
+    private static double getArea(double x1, double y1, double x2, double y2, double x3, double y3) {
+        return Math.abs((x1 - x3) * (y2 - y1) - (x1 - x2) * (y3 - y1));
+    }
+
+    private static int getBucketStart(int first, int last, int bucketCount, int bucket) {
+        return first + (int) ((long) bucket * (last - first + 1) / bucketCount);
+    }
+
+    private static int selectPoints(Runs runs, int first, int last, int bucketCount, int[] selectedIndexes, double[] selectedValues,
+                                    int selected) {
+        int count = selected;
+        // first run ending in the current bucket
+        int run = 0;
+        for (int b = 0; b < bucketCount; b++) {
+            int start = getBucketStart(first, last, bucketCount, b);
+            int end = getBucketStart(first, last, bucketCount, b + 1) - 1;
+            while (run < runs.size && runs.end(run) < start) {
+                run++;
+            }
+
+            // average point of the next bucket, or the last point for the last bucket
+            double nextX;
+            double nextY;
+            if (b + 1 < bucketCount) {
+                int nextStart = end + 1;
+                int nextEnd = getBucketStart(first, last, bucketCount, b + 2) - 1;
+                double sumX = 0;
+                double sumY = 0;
+                long n = 0;
+                for (int r = run; r < runs.size && runs.indexes[r] <= nextEnd; r++) {
+                    int s = Math.max(runs.indexes[r], nextStart);
+                    int e = Math.min(runs.end(r), nextEnd);
+                    if (s <= e) {
+                        sumX += (s + (double) e) * (e - s + 1) / 2;
+                        sumY += runs.values[r] * (e - s + 1);
+                        n += e - s + 1;
+                    }
+                }
+                if (n > 0) {
+                    nextX = sumX / n;
+                    nextY = sumY / n;
+                } else {
+                    nextX = runs.end(runs.size - 1);
+                    nextY = runs.values[runs.size - 1];
+                }
+            } else {
+                nextX = runs.end(runs.size - 1);
+                nextY = runs.values[runs.size - 1];
+            }
+
+            // point of the bucket making the largest triangle with the previous selected point and the next average
+            double previousX = selectedIndexes[count - 1];
+            double previousY = selectedValues[count - 1];
+            double maxArea = -1;
+            for (int r = run; r < runs.size && runs.indexes[r] <= end; r++) {
+                int s = Math.max(runs.indexes[r], start);
+                int e = Math.min(runs.end(r), end);
+                double y = runs.values[r];
+                if (s <= e) {
+                    double startArea = getArea(previousX, previousY, s, y, nextX, nextY);
+                    double endArea = getArea(previousX, previousY, e, y, nextX, nextY);
+                    if (Math.max(startArea, endArea) > maxArea) {
+                        maxArea = Math.max(startArea, endArea);
+                        selectedIndexes[count] = startArea >= endArea ? s : e;
+                        selectedValues[count] = y;
+                    }
+                }
+            }
+            if (maxArea >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import com.powsybl.timeseries.TimeSeriesIndex;
+
+import java.time.Instant;
+
+/**
+ * A window of the points of a time series, given by point indexes and/or times, all bounds being inclusive and
+ * optional. When both are given, the window is the intersection of the index and time ranges.
+ */
+public class TimeSeriesWindow {
+
+    public static final TimeSeriesWindow ALL = new TimeSeriesWindow(null, null, null, null);
+
+    private final Integer firstIndex;
+
+    private final Integer lastIndex;
+
+    private final Instant startTime;
+
+    private final Instant endTime;
+
+    public TimeSeriesWindow(Integer firstIndex, Integer lastIndex, Instant startTime, Instant endTime) {
+        if ((firstIndex != null && firstIndex < 0) || (lastIndex != null && lastIndex < 0)) {
+            throw new IllegalArgumentException("Invalid index window " + firstIndex + ", " + lastIndex);
+        }
+        this.firstIndex = firstIndex;
+        this.lastIndex = lastIndex;
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    public static TimeSeriesWindow parse(Integer firstIndex, Integer lastIndex, String startTime, String endTime) {
+        return new TimeSeriesWindow(firstIndex, lastIndex,
+                                    startTime != null ? Instant.parse(startTime) : null,
+                                    endTime != null ? Instant.parse(endTime) : null);
+    }
+
+    public boolean isAll() {
+        return firstIndex == null && lastIndex == null && startTime == null && endTime == null;
+    }
+
+    public boolean hasTimes() {
+        return startTime != null || endTime != null;
+    }
+
+    /**
+     * First point of the index at or after a time.
+     */
+    private static int getPointAtOrAfter(TimeSeriesIndex index, long time) {
+        int low = 0;
+        int high = index.getPointCount();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (index.getTimeAt(middle) < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * First point of the window, times being resolved with the index of the time series, which may be {@code null}
+     * when the window has no times.
+     */
+    public int getFirstPoint(TimeSeriesIndex index) {
+        int first = firstIndex != null ? firstIndex : 0;
+        if (startTime != null) {
+            first = Math.max(first, getPointAtOrAfter(index, startTime.toEpochMilli()));
+        }
+        return first;
+    }
+
+    /**
+     * Last point of the window, bounded by the size of the index if given.
+     */
+    public int getLastPoint(TimeSeriesIndex index) {
+        int last = lastIndex != null ? lastIndex : Integer.MAX_VALUE;
+        if (index != null) {
+            last = Math.min(last, index.getPointCount() - 1);
+        }
+        if (endTime != null) {
+            last = Math.min(last, getPointAtOrAfter(index, endTime.toEpochMilli() + 1) - 1);
+        }
+        return last;
+    }
+}
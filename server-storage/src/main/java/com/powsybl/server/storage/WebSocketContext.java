@@ -6,18 +6,36 @@
  */
 package com.powsybl.server.storage;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.websocket.CloseReason;
 import javax.websocket.CloseReason.CloseCodes;
 import javax.websocket.Session;
-import java.util.HashSet;
-import java.util.Set;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Registry of the open event websocket sessions.
+ * <p>
+ * Each session is pinged every {@code storage.websocket.heartbeat.interval-ms} milliseconds. Sessions which have
+ * not answered with a pong within {@code storage.websocket.heartbeat.timeout-ms} milliseconds are considered dead
+ * (typically half-open connections of crashed clients): they are closed and their cleanup action, which removes the
+ * listeners registered for the session, is run.
+ *
  * @author Geoffroy Jamgotchian <geoffroy.jamgotchian at rte-france.com>
  */
 @Component
@@ -25,26 +43,129 @@ public class WebSocketContext {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(WebSocketContext.class);
 
-    private final Set<Session> sessions = new HashSet<>();
+    private static final ByteBuffer PING_PAYLOAD = ByteBuffer.wrap(new byte[0]);
 
-    public synchronized void addSession(Session session) {
-        sessions.add(session);
+    private static final class SessionEntry {
+
+        private final String fileSystemName;
+
+        private final Session session;
+
+        private final Runnable cleanup;
+
+        private volatile long lastSeen;
+
+        private SessionEntry(String fileSystemName, Session session, Runnable cleanup, long lastSeen) {
+            this.fileSystemName = fileSystemName;
+            this.session = session;
+            this.cleanup = cleanup;
+            this.lastSeen = lastSeen;
+        }
     }
 
-    public synchronized void removeSession(Session session) {
-        sessions.remove(session);
+    private final Map<String, SessionEntry> sessions = new ConcurrentHashMap<>();
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${storage.websocket.heartbeat.interval-ms:30000}")
+    private long heartbeatInterval;
+
+    @Value("${storage.websocket.heartbeat.timeout-ms:90000}")
+    private long heartbeatTimeout;
+
+    private ScheduledExecutorService heartbeatExecutor;
+
+    // replaced by tests to drive the heartbeat timeout
+    private Clock clock = Clock.systemUTC();
+
+    @PostConstruct
+    public void startHeartbeat() {
+        if (heartbeatInterval > 0) {
+            heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "websocket-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            });
+            heartbeatExecutor.scheduleWithFixedDelay(this::heartbeat, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+        }
     }
 
-    @PreDestroy
-    public synchronized void closeAndRemoveAllSessions() {
-        for (Session session : sessions) {
+    public void addSession(String fileSystemName, Session session, Runnable cleanup) {
+        Objects.requireNonNull(fileSystemName);
+        Objects.requireNonNull(cleanup);
+        sessions.put(session.getId(), new SessionEntry(fileSystemName, session, cleanup, clock.millis()));
+        Gauge.builder("afs.websocket.sessions", this, context -> context.getSessionCount(fileSystemName))
+                .description("Number of open event websocket sessions")
+                .tag("fileSystem", fileSystemName)
+                .register(meterRegistry);
+    }
+
+    public void removeSession(Session session) {
+        SessionEntry entry = sessions.remove(session.getId());
+        if (entry != null) {
             try {
-                session.close(new CloseReason(CloseCodes.UNEXPECTED_CONDITION, ""));
+                entry.cleanup.run();
             } catch (Exception e) {
                 LOGGER.error(e.toString(), e);
             }
         }
-        sessions.clear();
+    }
+
+    /**
+     * Record that the client of the session is still alive, typically because a pong has been received.
+     */
+    public void touch(Session session) {
+        SessionEntry entry = sessions.get(session.getId());
+        if (entry != null) {
+            entry.lastSeen = clock.millis();
+        }
+    }
+
+    public int getSessionCount(String fileSystemName) {
+        return (int) sessions.values().stream()
+                .filter(entry -> entry.fileSystemName.equals(fileSystemName))
+                .count();
+    }
+
+    void heartbeat() {
+        long now = clock.millis();
+        for (SessionEntry entry : sessions.values()) {
+            Session session = entry.session;
+            if (!session.isOpen()) {
+                removeSession(session);
+            } else if (now - entry.lastSeen > heartbeatTimeout) {
+                LOGGER.warn("WebSocket session '{}' of file system '{}' did not answer pings for {} ms, closing it",
+                        session.getId(), entry.fileSystemName, now - entry.lastSeen);
+                close(session, new CloseReason(CloseCodes.GOING_AWAY, "Heartbeat timeout"));
+                removeSession(session);
+            } else {
+                try {
+                    session.getAsyncRemote().sendPing(PING_PAYLOAD.duplicate());
+                } catch (Exception e) {
+                    LOGGER.debug("Ping of WebSocket session '{}' failed: {}", session.getId(), e.toString());
+                }
+            }
+        }
+    }
+
+    private static void close(Session session, CloseReason reason) {
+        try {
+            session.close(reason);
+        } catch (Exception e) {
+            LOGGER.error(e.toString(), e);
+        }
+    }
+
+    @PreDestroy
+    public void closeAndRemoveAllSessions() {
+        if (heartbeatExecutor != null) {
+            heartbeatExecutor.shutdownNow();
+        }
+        for (SessionEntry entry : sessions.values()) {
+            close(entry.session, new CloseReason(CloseCodes.UNEXPECTED_CONDITION, ""));
+            removeSession(entry.session);
+        }
     }
 
 }
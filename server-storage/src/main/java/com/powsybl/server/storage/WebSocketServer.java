@@ -10,6 +10,7 @@ import com.powsybl.server.commons.AppDataBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
@@ -36,11 +37,14 @@ public class WebSocketServer implements WebSocketConfigurer {
     @Autowired
     private WebSocketContext webSocketContext;
 
+    @Value("${storage.websocket.binary-frames:true}")
+    private boolean binaryFramesEnabled;
+
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry
-            .addHandler(new NodeEventHandler(appDataBean, webSocketContext),  "/messages/afs/" + StorageServer.API_VERSION + "/node_events/{fileSystemName}")
-            .addHandler(new TaskEventHandler(appDataBean, webSocketContext), "/messages/afs/" + StorageServer.API_VERSION + "/task_events/{fileSystemName}/{projectId}")
+            .addHandler(new NodeEventHandler(appDataBean, webSocketContext, binaryFramesEnabled),  "/messages/afs/" + StorageServer.API_VERSION + "/node_events/{fileSystemName}")
+            .addHandler(new TaskEventHandler(appDataBean, webSocketContext, binaryFramesEnabled), "/messages/afs/" + StorageServer.API_VERSION + "/task_events/{fileSystemName}/{projectId}")
             .setAllowedOrigins("*")
             .addInterceptors(new UriTemplateHandshakeInterceptor());
     }
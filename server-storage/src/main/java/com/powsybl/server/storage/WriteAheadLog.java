@@ -0,0 +1,473 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import com.powsybl.afs.storage.AppStorage;
+import com.powsybl.afs.storage.buffer.StorageChange;
+import com.powsybl.commons.exceptions.UncheckedInterruptedException;
+import com.powsybl.server.commons.AppDataBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Optional write-ahead log of the flushed changes, enabled by {@code storage.wal.enabled}.
+ * <p>
+ * Flushed changes are appended to memory-mapped segments of {@code storage.wal.segment-size-mb} in
+ * {@code storage.wal.directory}, which is required and has to be on a persistent disk, and the flush is acknowledged once the log is forced to disk. A background thread
+ * then applies the logged changes to the storages and flushes them, after which fully applied segments are deleted
+ * and the sequence of the last applied record is saved in a checkpoint file. On startup, the records newer than the
+ * checkpoint are applied again. As a crash between the flush of a storage and the checkpoint can leave some of these
+ * records already applied, replayed records are applied idempotently, see
+ * {@link StorageChangeSetApplier#reapply(AppStorage, List)}: existing time series are not created again, and chunks
+ * already stored are not added again.
+ * <p>
+ * Requests on the time series of a node wait for the changes already logged for this node to be applied. Appends
+ * wait when more than {@code storage.wal.max-pending-mb} of changes are not applied yet.
+ * <p>
+ * If applying a batch of records or flushing a storage fails, the batch is applied again, idempotently, up to
+ * {@code storage.wal.apply.max-attempts} times. The checkpoint and the segments are left untouched until the batch
+ * is applied. Once the attempts are exhausted the applier stops, the log is reported down by the health endpoint,
+ * and appends and requests waiting for these records fail. The records are replayed on restart.
+ * <p>
+ * A record is made of its length, its sequence number, the file system name and the changes encoded as a Smile
+ * array, followed by a CRC32 of all of these. A zero length ends a segment.
+ */
+@Component
+public class WriteAheadLog implements HealthIndicator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    private static final long MB = 1024L * 1024L;
+
+    private static final String SEGMENT_SUFFIX = ".wal";
+
+    private static final String CHECKPOINT = "checkpoint";
+
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES + Short.BYTES;
+
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    @Autowired
+    private AppDataBean appDataBean;
+
+    @Autowired
+    private StorageChangeSetApplier changeSetApplier;
+
+    @Value("${storage.wal.enabled:false}")
+    private boolean enabled;
+
+    @Value("${storage.wal.directory:}")
+    private String directory;
+
+    @Value("${storage.wal.segment-size-mb:64}")
+    private long segmentSizeMb;
+
+    @Value("${storage.wal.max-pending-mb:256}")
+    private long maxPendingMb;
+
+    @Value("${storage.wal.apply.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${storage.wal.apply.retry-delay-ms:1000}")
+    private long retryDelayMs;
+
+    private static final class Segment {
+
+        private final Path file;
+
+        private final MappedByteBuffer buffer;
+
+        private long lastSequence = 0;
+
+        private Segment(Path file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Record {
+
+        private final long sequence;
+
+        private final String fileSystemName;
+
+        private final byte[] changes;
+
+        // may already have been applied, fully or partially
+        private final boolean replay;
+
+        private Record(long sequence, String fileSystemName, byte[] changes, boolean replay) {
+            this.sequence = sequence;
+            this.fileSystemName = fileSystemName;
+            this.changes = changes;
+            this.replay = replay;
+        }
+    }
+
+    private Path walDir;
+
+    // guarded by this
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    private long nextSequence = 1;
+
+    private long appliedSequence = 0;
+
+    private long pendingBytes = 0;
+
+    // last logged sequence of each node having changes not applied yet
+    private final Map<String, Long> pendingNodes = new HashMap<>();
+
+    // failure which stopped the applier
+    private Throwable failure;
+
+    private final BlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+
+    private Thread applier;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        // the temporary directory may be in memory or cleaned on reboot, which would lose acknowledged changes
+        if (directory.trim().isEmpty()) {
+            throw new IllegalStateException("storage.wal.directory is required when the write-ahead log is enabled");
+        }
+        walDir = Paths.get(directory);
+        Files.createDirectories(walDir);
+        Path checkpoint = walDir.resolve(CHECKPOINT);
+        if (Files.exists(checkpoint)) {
+            appliedSequence = Long.parseLong(new String(Files.readAllBytes(checkpoint), StandardCharsets.UTF_8).trim());
+        }
+        nextSequence = appliedSequence + 1;
+        recover();
+
+        applier = new Thread(this::applyLoop, "storage-wal-applier");
+        applier.setDaemon(true);
+        applier.start();
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (applier != null) {
+            // records not applied yet are replayed on restart
+            applier.interrupt();
+            applier.join(10000);
+        }
+    }
+
+    private static String getNodeKey(String fileSystemName, String nodeId) {
+        return fileSystemName + "/" + nodeId;
+    }
+
+    private static MappedByteBuffer map(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the mapping stays valid once the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(walDir)) {
+            files = stream.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                          .sorted()
+                          .collect(Collectors.toList());
+        }
+        int replayed = 0;
+        for (Path file : files) {
+            Segment segment = new Segment(file, map(file, 0));
+            replayed += scan(segment);
+            segments.add(segment);
+        }
+        if (replayed > 0) {
+            LOGGER.info("Replaying {} records of the write-ahead log", replayed);
+        }
+    }
+
+    /**
+     * Read the records of a segment, queue the ones not applied yet, and position the segment after its last valid
+     * record, discarding a partially written one.
+     */
+    private int scan(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int replayed = 0;
+        long tornSize = 0;
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            if (length < HEADER_SIZE || length > buffer.capacity() - start - Integer.BYTES) {
+                tornSize = length != 0 ? buffer.capacity() - start : 0;
+                buffer.position(start);
+                break;
+            }
+            byte[] bytes = new byte[length - Integer.BYTES];
+            buffer.get(bytes);
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            if (buffer.getInt() != (int) crc.getValue()) {
+                tornSize = Integer.BYTES + (long) length;
+                buffer.position(start);
+                break;
+            }
+            ByteBuffer record = ByteBuffer.wrap(bytes);
+            long sequence = record.getLong();
+            byte[] name = new byte[record.getShort()];
+            record.get(name);
+            byte[] changes = new byte[record.remaining()];
+            record.get(changes);
+            segment.lastSequence = sequence;
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            if (sequence > appliedSequence) {
+                enqueue(new Record(sequence, new String(name, StandardCharsets.UTF_8), changes, true), decodeNodeIds(changes));
+                replayed++;
+            }
+        }
+        // zero a partially written record, so that it is not mistaken for a record later
+        for (int i = buffer.position(); i < Math.min(buffer.capacity(), buffer.position() + tornSize); i++) {
+            buffer.put(i, (byte) 0);
+        }
+        return replayed;
+    }
+
+    private Set<String> decodeNodeIds(byte[] changes) {
+        try {
+            return changeSetApplier.decode(changes).stream().map(StorageChange::getNodeId).collect(Collectors.toSet());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void enqueue(Record record, Set<String> nodeIds) {
+        pendingBytes += record.changes.length;
+        for (String nodeId : nodeIds) {
+            pendingNodes.put(getNodeKey(record.fileSystemName, nodeId), record.sequence);
+        }
+        queue.add(record);
+    }
+
+    private Segment getSegment(int recordSize) throws IOException {
+        Segment current = segments.peekLast();
+        // room is left for the zero length ending the segment
+        if (current == null || current.buffer.remaining() < recordSize + Integer.BYTES) {
+            if (current != null) {
+                current.buffer.force();
+            }
+            Path file = walDir.resolve(String.format("%020d%s", nextSequence, SEGMENT_SUFFIX));
+            current = new Segment(file, map(file, Math.max(segmentSizeMb * MB, recordSize + Integer.BYTES)));
+            segments.add(current);
+        }
+        return current;
+    }
+
+    /**
+     * Append changes to the log, to be applied asynchronously. The log has to be synced before acknowledging them.
+     */
+    public void append(String fileSystemName, List<StorageChange> changes) throws IOException {
+        Objects.requireNonNull(fileSystemName);
+        Objects.requireNonNull(changes);
+        if (changes.isEmpty()) {
+            return;
+        }
+        byte[] encoded = changeSetApplier.encode(changes);
+        byte[] name = fileSystemName.getBytes(StandardCharsets.UTF_8);
+        Set<String> nodeIds = changes.stream().map(StorageChange::getNodeId).collect(Collectors.toSet());
+        int length = HEADER_SIZE + name.length + encoded.length;
+
+        synchronized (this) {
+            checkNotFailed();
+            while (pendingBytes > 0 && pendingBytes + encoded.length > maxPendingMb * MB) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UncheckedInterruptedException(e);
+                }
+                checkNotFailed();
+            }
+            long sequence = nextSequence++;
+            MappedByteBuffer buffer = getSegment(length + Integer.BYTES).buffer;
+            ByteBuffer record = ByteBuffer.allocate(length - Integer.BYTES);
+            record.putLong(sequence).putShort((short) name.length).put(name).put(encoded);
+            CRC32 crc = new CRC32();
+            crc.update(record.array());
+            buffer.putInt(length).put(record.array()).putInt((int) crc.getValue());
+            segments.peekLast().lastSequence = sequence;
+            enqueue(new Record(sequence, fileSystemName, encoded, false), nodeIds);
+        }
+    }
+
+    /**
+     * Force the appended records to disk.
+     */
+    public synchronized void sync() {
+        Segment current = segments.peekLast();
+        if (current != null) {
+            current.buffer.force();
+        }
+    }
+
+    /**
+     * Wait for the logged changes of a node to be applied.
+     *
+     * @throws IllegalStateException if the applier stopped on a failure before applying them
+     */
+    public void awaitApplied(String fileSystemName, String nodeId) {
+        if (!enabled) {
+            return;
+        }
+        String key = getNodeKey(fileSystemName, nodeId);
+        synchronized (this) {
+            Long sequence = pendingNodes.get(key);
+            while (sequence != null && appliedSequence < sequence) {
+                checkNotFailed();
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UncheckedInterruptedException(e);
+                }
+            }
+        }
+    }
+
+    private void applyLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Record> batch = new ArrayList<>();
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                if (!applyWithRetries(batch)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Apply a batch, again as long as it fails and the attempts are not exhausted. Once exhausted, the applier stops:
+     * the records stay in the log to be replayed on restart, and the log is reported down.
+     *
+     * @return {@code true} if the batch has been applied
+     */
+    private boolean applyWithRetries(List<Record> batch) throws InterruptedException {
+        long delayMs = retryDelayMs;
+        int attempt = 1;
+        while (true) {
+            try {
+                // a failed attempt may have applied some records
+                apply(batch, attempt > 1);
+                return true;
+            } catch (Exception | Error e) {
+                if (attempt >= maxAttempts) {
+                    LOGGER.error("Cannot apply records {} to {} of the write-ahead log, stopping", batch.get(0).sequence,
+                            batch.get(batch.size() - 1).sequence, e);
+                    synchronized (this) {
+                        failure = e;
+                        notifyAll();
+                    }
+                    return false;
+                }
+                LOGGER.warn("Cannot apply records {} to {} of the write-ahead log, attempt {} of {}: {}", batch.get(0).sequence,
+                        batch.get(batch.size() - 1).sequence, attempt, maxAttempts, e.toString());
+                Thread.sleep(delayMs);
+                delayMs *= 2;
+                attempt++;
+            }
+        }
+    }
+
+    /**
+     * Apply a batch, flush the storages and then checkpoint. Any failure is thrown before the checkpoint, so that the
+     * records are neither considered applied nor deleted.
+     */
+    private void apply(List<Record> batch, boolean retry) throws IOException {
+        Map<String, AppStorage> storages = new LinkedHashMap<>();
+        for (Record record : batch) {
+            AppStorage storage = storages.computeIfAbsent(record.fileSystemName, appDataBean::getStorage);
+            List<StorageChange> changes = changeSetApplier.decode(record.changes);
+            if (record.replay || retry) {
+                changeSetApplier.reapply(storage, changes);
+            } else {
+                changeSetApplier.apply(storage, changes);
+            }
+        }
+        for (AppStorage storage : storages.values()) {
+            storage.flush();
+        }
+
+        long last = batch.get(batch.size() - 1).sequence;
+        Path tmp = walDir.resolve(CHECKPOINT + ".tmp");
+        Files.write(tmp, Long.toString(last).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, walDir.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        List<Path> applied = new ArrayList<>();
+        synchronized (this) {
+            appliedSequence = last;
+            pendingBytes -= batch.stream().mapToLong(record -> record.changes.length).sum();
+            pendingNodes.values().removeIf(sequence -> sequence <= last);
+            while (segments.size() > 1 && segments.peekFirst().lastSequence <= last) {
+                applied.add(segments.pollFirst().file);
+            }
+            notifyAll();
+        }
+        for (Path file : applied) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOGGER.error("Cannot delete {}", file, e);
+            }
+        }
+    }
+
+    private void checkNotFailed() {
+        if (failure != null) {
+            throw new IllegalStateException("The write-ahead log stopped applying changes", failure);
+        }
+    }
+
+    @Override
+    public Health health() {
+        if (!enabled) {
+            return Health.up().build();
+        }
+        synchronized (this) {
+            Health.Builder builder = failure == null ? Health.up() : Health.down().withDetail("error", failure.toString());
+            return builder.withDetail("appliedSequence", appliedSequence)
+                          .withDetail("pendingBytes", pendingBytes)
+                          .build();
+        }
+    }
+}
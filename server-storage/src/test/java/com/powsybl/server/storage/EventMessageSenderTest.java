@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.powsybl.afs.storage.events.NodeEventList;
+import com.powsybl.afs.storage.events.TimeSeriesDataUpdated;
+import com.powsybl.commons.json.JsonUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.web.socket.adapter.standard.StandardWebSocketSession;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.Session;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class EventMessageSenderTest {
+
+    private final ObjectMapper jsonMapper = JsonUtil.createObjectMapper();
+
+    private final NodeEventList event = new NodeEventList(new TimeSeriesDataUpdated("node", "ts1"));
+
+    private RemoteEndpoint.Async remote;
+
+    private StandardWebSocketSession session;
+
+    @Before
+    public void setUp() {
+        remote = Mockito.mock(RemoteEndpoint.Async.class);
+        Session nativeSession = Mockito.mock(Session.class);
+        Mockito.when(nativeSession.getAsyncRemote()).thenReturn(remote);
+        session = Mockito.mock(StandardWebSocketSession.class);
+        Mockito.when(session.getNativeSession()).thenReturn(nativeSession);
+    }
+
+    @Test
+    public void subProtocolTest() {
+        assertEquals(Arrays.asList("afs-smile", "afs-json"), new EventMessageSender(true).getSubProtocols());
+        assertEquals(Collections.singletonList("afs-json"), new EventMessageSender(false).getSubProtocols());
+        assertSame(EventFrameFormat.SMILE, EventFrameFormat.fromSubProtocol("afs-smile"));
+        // no or unknown sub-protocol, old clients
+        assertSame(EventFrameFormat.JSON, EventFrameFormat.fromSubProtocol(null));
+        assertSame(EventFrameFormat.JSON, EventFrameFormat.fromSubProtocol("v10.stomp"));
+    }
+
+    @Test
+    public void jsonTest() throws Exception {
+        new EventMessageSender(true).send(session, event);
+        ArgumentCaptor<String> text = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(remote).sendText(text.capture(), Mockito.any(SendHandler.class));
+        assertEquals(jsonMapper.readTree(jsonMapper.writeValueAsString(event)), jsonMapper.readTree(text.getValue()));
+        Mockito.verify(remote, Mockito.never()).sendBinary(Mockito.any(ByteBuffer.class), Mockito.any(SendHandler.class));
+    }
+
+    @Test
+    public void smileTest() throws Exception {
+        Mockito.when(session.getAcceptedProtocol()).thenReturn("afs-smile");
+        new EventMessageSender(true).send(session, event);
+        ArgumentCaptor<ByteBuffer> buffer = ArgumentCaptor.forClass(ByteBuffer.class);
+        Mockito.verify(remote).sendBinary(buffer.capture(), Mockito.any(SendHandler.class));
+
+        // same content as the JSON frame
+        byte[] bytes = new byte[buffer.getValue().remaining()];
+        buffer.getValue().get(bytes);
+        assertEquals(jsonMapper.readTree(jsonMapper.writeValueAsString(event)), new ObjectMapper(new SmileFactory()).readTree(bytes));
+        Mockito.verify(remote, Mockito.never()).sendText(Mockito.anyString(), Mockito.any(SendHandler.class));
+    }
+}
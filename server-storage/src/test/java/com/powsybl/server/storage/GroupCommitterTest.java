@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import com.powsybl.afs.storage.AppStorage;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class GroupCommitterTest {
+
+    private GroupCommitter committer;
+
+    @Before
+    public void setUp() {
+        committer = new GroupCommitter();
+        ReflectionTestUtils.setField(committer, "enabled", true);
+        ReflectionTestUtils.setField(committer, "maxDelayMs", 200L);
+        ReflectionTestUtils.setField(committer, "maxChanges", 1000);
+    }
+
+    private static List<Future<?>> commitConcurrently(GroupCommitter committer, AppStorage storage, int requests) {
+        ExecutorService executor = Executors.newFixedThreadPool(requests);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    committer.commit("fs", storage, 1);
+                    return null;
+                }));
+            }
+            start.countDown();
+            return futures;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void awaitCollectingRequests(int requests) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (committer.getCollectingRequests("fs") < requests) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.yield();
+        }
+    }
+
+    @Test
+    public void test() throws Exception {
+        // the next commit starts as soon as the 9 requests arriving while the first commit runs have joined it
+        ReflectionTestUtils.setField(committer, "maxDelayMs", 60000L);
+        ReflectionTestUtils.setField(committer, "maxChanges", 9);
+        AppStorage storage = Mockito.mock(AppStorage.class);
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            flushing.countDown();
+            release.await();
+            return null;
+        }).when(storage).flush();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> first = executor.submit(() -> committer.commit("fs", storage, 1));
+            assertTrue(flushing.await(10, TimeUnit.SECONDS));
+            List<Future<?>> futures = commitConcurrently(committer, storage, 9);
+            awaitCollectingRequests(9);
+            release.countDown();
+            first.get(10, TimeUnit.SECONDS);
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // requests arriving while the first commit runs share the next one
+        Mockito.verify(storage, Mockito.times(2)).flush();
+        assertEquals(0, committer.getCollectingRequests("fs"));
+    }
+
+    @Test
+    public void idleTest() {
+        // no commit is running, so the storage is flushed without waiting for other requests
+        ReflectionTestUtils.setField(committer, "maxDelayMs", 60000L);
+        AppStorage storage = Mockito.mock(AppStorage.class);
+        long start = System.currentTimeMillis();
+        committer.commit("fs", storage, 1);
+        assertTrue(System.currentTimeMillis() - start < 30000);
+        Mockito.verify(storage).flush();
+    }
+
+    @Test
+    public void maxChangesTest() throws Exception {
+        ReflectionTestUtils.setField(committer, "maxDelayMs", 60000L);
+        AppStorage storage = Mockito.mock(AppStorage.class);
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            flushing.countDown();
+            release.await();
+            return null;
+        }).when(storage).flush();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> running = executor.submit(() -> committer.commit("fs", storage, 1));
+            assertTrue(flushing.await(10, TimeUnit.SECONDS));
+
+            // a commit is started as soon as enough changes have joined and the running one is done
+            long start = System.currentTimeMillis();
+            Future<?> next = executor.submit(() -> committer.commit("fs", storage, 1000));
+            release.countDown();
+            running.get(10, TimeUnit.SECONDS);
+            next.get(30, TimeUnit.SECONDS);
+            assertTrue(System.currentTimeMillis() - start < 30000);
+            Mockito.verify(storage, Mockito.times(2)).flush();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failureTest() throws Exception {
+        AppStorage storage = Mockito.mock(AppStorage.class);
+        Mockito.doThrow(new IllegalStateException("commit failed")).when(storage).flush();
+        for (Future<?> future : commitConcurrently(committer, storage, 3)) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+    }
+
+    @Test
+    public void errorTest() throws Exception {
+        // errors fail all the requests of the commit too, instead of acknowledging them
+        AppStorage storage = Mockito.mock(AppStorage.class);
+        Mockito.doThrow(new AssertionError("commit failed")).when(storage).flush();
+        for (Future<?> future : commitConcurrently(committer, storage, 3)) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof AssertionError);
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.powsybl.afs.storage.AppStorage;
+import com.powsybl.afs.storage.buffer.DoubleTimeSeriesChunksAddition;
+import com.powsybl.afs.storage.buffer.StorageChange;
+import com.powsybl.afs.storage.buffer.TimeSeriesCreation;
+import com.powsybl.afs.storage.json.AppStorageJsonModule;
+import com.powsybl.client.commons.BinaryTimeSeriesFormat;
+import com.powsybl.client.commons.BinaryTimeSeriesWriter;
+import com.powsybl.commons.json.JsonUtil;
+import com.powsybl.timeseries.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.threeten.extra.Interval;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StorageChangeSetApplierTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StorageChangeSetApplier applier;
+
+    @Before
+    public void setUp() {
+        applier = new StorageChangeSetApplier();
+        ReflectionTestUtils.setField(applier, "windowSize", 1000);
+        ReflectionTestUtils.setField(applier, "windowBytes", 4L * 1024 * 1024);
+        ReflectionTestUtils.setField(applier, "maxChangeBytes", 256L * 1024 * 1024);
+        applier.init();
+    }
+
+    @After
+    public void tearDown() {
+        applier.close();
+    }
+
+    private static List<StorageChange> createChanges(TimeSeriesMetadata metadata) {
+        DoubleDataChunk chunk1 = new UncompressedDoubleDataChunk(0, new double[] {1d, 2d});
+        DoubleDataChunk chunk2 = new UncompressedDoubleDataChunk(2, new double[] {3d, 4d});
+        DoubleDataChunk chunk3 = new UncompressedDoubleDataChunk(4, new double[] {5d});
+        return Arrays.asList(
+                new TimeSeriesCreation("node1", metadata),
+                new DoubleTimeSeriesChunksAddition("node1", 1, "ts1", Collections.singletonList(chunk1)),
+                new TimeSeriesCreation("node2", metadata),
+                new DoubleTimeSeriesChunksAddition("node1", 1, "ts1", Collections.singletonList(chunk2)),
+                new DoubleTimeSeriesChunksAddition("node2", 1, "ts1", Collections.singletonList(chunk3)),
+                new DoubleTimeSeriesChunksAddition("node1", 2, "ts1", Collections.singletonList(chunk3)));
+    }
+
+    private static TimeSeriesMetadata createMetadata() {
+        TimeSeriesIndex index = RegularTimeSeriesIndex.create(Interval.parse("2015-01-01T00:00:00Z/2015-01-01T01:45:00Z"),
+                                                              Duration.ofMinutes(15));
+        return new TimeSeriesMetadata("ts1", TimeSeriesDataType.DOUBLE, index);
+    }
+
+    @Test
+    public void test() {
+        TimeSeriesMetadata metadata = createMetadata();
+        List<StorageChange> changes = createChanges(metadata);
+        DoubleDataChunk chunk1 = ((DoubleTimeSeriesChunksAddition) changes.get(1)).getChunks().get(0);
+        DoubleDataChunk chunk2 = ((DoubleTimeSeriesChunksAddition) changes.get(3)).getChunks().get(0);
+        DoubleDataChunk chunk3 = ((DoubleTimeSeriesChunksAddition) changes.get(4)).getChunks().get(0);
+
+        AppStorage storage = Mockito.mock(AppStorage.class);
+        applier.apply(storage, changes);
+
+        // consecutive additions of the same version are merged, after the creation of the time series
+        InOrder node1 = Mockito.inOrder(storage);
+        node1.verify(storage).createTimeSeries("node1", metadata);
+        node1.verify(storage).addDoubleTimeSeriesData("node1", 1, "ts1", Arrays.asList(chunk1, chunk2));
+        node1.verify(storage).addDoubleTimeSeriesData("node1", 2, "ts1", Collections.singletonList(chunk3));
+
+        InOrder node2 = Mockito.inOrder(storage);
+        node2.verify(storage).createTimeSeries("node2", metadata);
+        node2.verify(storage).addDoubleTimeSeriesData("node2", 1, "ts1", Collections.singletonList(chunk3));
+
+        Mockito.verifyNoMoreInteractions(storage);
+    }
+
+    @Test
+    public void streamTest() throws IOException {
+        ReflectionTestUtils.setField(applier, "windowSize", 2);
+        ReflectionTestUtils.setField(applier, "windowBytes", Long.MAX_VALUE);
+
+        TimeSeriesMetadata metadata = createMetadata();
+        byte[] json = createJson(createChanges(metadata));
+
+        AppStorage storage = Mockito.mock(AppStorage.class);
+        assertEquals(6, applier.apply(storage, new ByteArrayInputStream(json), false));
+
+        // applied by windows of 2 changes, so additions of different windows are not merged
+        InOrder node1 = Mockito.inOrder(storage);
+        node1.verify(storage).createTimeSeries(Mockito.eq("node1"), Mockito.any());
+        node1.verify(storage, Mockito.times(2)).addDoubleTimeSeriesData(Mockito.eq("node1"), Mockito.eq(1), Mockito.eq("ts1"), Mockito.anyList());
+        node1.verify(storage).addDoubleTimeSeriesData(Mockito.eq("node1"), Mockito.eq(2), Mockito.eq("ts1"), Mockito.anyList());
+        InOrder node2 = Mockito.inOrder(storage);
+        node2.verify(storage).createTimeSeries(Mockito.eq("node2"), Mockito.any());
+        node2.verify(storage).addDoubleTimeSeriesData(Mockito.eq("node2"), Mockito.eq(1), Mockito.eq("ts1"), Mockito.anyList());
+        Mockito.verifyNoMoreInteractions(storage);
+    }
+
+    private static byte[] createJson(List<StorageChange> changes) throws IOException {
+        return JsonUtil.createObjectMapper()
+                .registerModule(new AppStorageJsonModule())
+                .writerFor(new TypeReference<List<StorageChange>>() { })
+                .writeValueAsBytes(changes);
+    }
+
+    @Test
+    public void streamSingleWriterTest() throws IOException {
+        ReflectionTestUtils.setField(applier, "windowSize", 1);
+
+        // windows are decoded while the previous one is written, but never written concurrently
+        AtomicInteger writers = new AtomicInteger();
+        AtomicInteger maxWriters = new AtomicInteger();
+        AppStorage storage = Mockito.mock(AppStorage.class, invocation -> {
+            maxWriters.accumulateAndGet(writers.incrementAndGet(), Math::max);
+            Thread.sleep(10);
+            writers.decrementAndGet();
+            return null;
+        });
+        assertEquals(6, applier.apply(storage, new ByteArrayInputStream(createJson(createChanges(createMetadata()))), false));
+        assertEquals(1, maxWriters.get());
+    }
+
+    @Test
+    public void streamWriteFailureTest() throws IOException {
+        ReflectionTestUtils.setField(applier, "windowSize", 2);
+
+        AppStorage storage = Mockito.mock(AppStorage.class);
+        Mockito.doThrow(new IllegalStateException("node2 failure")).when(storage).createTimeSeries(Mockito.eq("node2"), Mockito.any());
+        try {
+            applier.apply(storage, new ByteArrayInputStream(createJson(createChanges(createMetadata()))), false);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("node2 failure", e.getMessage());
+        }
+
+        // the other node of the failed window is still written, the next windows are not
+        Mockito.verify(storage).createTimeSeries(Mockito.eq("node1"), Mockito.any());
+        Mockito.verify(storage, Mockito.times(2)).addDoubleTimeSeriesData(Mockito.eq("node1"), Mockito.eq(1), Mockito.eq("ts1"), Mockito.anyList());
+        Mockito.verify(storage).createTimeSeries(Mockito.eq("node2"), Mockito.any());
+        Mockito.verifyNoMoreInteractions(storage);
+    }
+
+    @Test
+    public void binaryStreamTest() throws IOException {
+        List<StorageChange> changes = createChanges(createMetadata());
+        DoubleDataChunk chunk1 = ((DoubleTimeSeriesChunksAddition) changes.get(1)).getChunks().get(0);
+        DoubleDataChunk chunk2 = ((DoubleTimeSeriesChunksAddition) changes.get(3)).getChunks().get(0);
+        DoubleDataChunk chunk3 = ((DoubleTimeSeriesChunksAddition) changes.get(4)).getChunks().get(0);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BinaryTimeSeriesWriter.writeChanges(changes, os);
+
+        AppStorage storage = Mockito.mock(AppStorage.class);
+        assertEquals(6, applier.apply(storage, new ByteArrayInputStream(os.toByteArray()),
+                                      MediaType.parseMediaType(BinaryTimeSeriesFormat.MEDIA_TYPE_VALUE)));
+
+        InOrder node1 = Mockito.inOrder(storage);
+        node1.verify(storage).createTimeSeries(Mockito.eq("node1"), Mockito.any());
+        node1.verify(storage).addDoubleTimeSeriesData("node1", 1, "ts1", Arrays.asList(chunk1, chunk2));
+        node1.verify(storage).addDoubleTimeSeriesData("node1", 2, "ts1", Collections.singletonList(chunk3));
+        InOrder node2 = Mockito.inOrder(storage);
+        node2.verify(storage).createTimeSeries(Mockito.eq("node2"), Mockito.any());
+        node2.verify(storage).addDoubleTimeSeriesData("node2", 1, "ts1", Collections.singletonList(chunk3));
+        Mockito.verifyNoMoreInteractions(storage);
+    }
+
+    private static byte[] createLargeBinaryChanges(TimeSeriesMetadata metadata) throws IOException {
+        // constant values, a few bytes once encoded, 80 KB once decoded
+        double[] values = new double[10000];
+        Arrays.fill(values, 1d);
+        List<StorageChange> changes = Arrays.asList(
+                new TimeSeriesCreation("node1", metadata),
+                new DoubleTimeSeriesChunksAddition("node1", 1, "ts1", Collections.singletonList(new UncompressedDoubleDataChunk(0, values))),
+                new DoubleTimeSeriesChunksAddition("node1", 1, "ts1", Collections.singletonList(new UncompressedDoubleDataChunk(10000, values))),
+                new DoubleTimeSeriesChunksAddition("node1", 1, "ts1", Collections.singletonList(new UncompressedDoubleDataChunk(20000, values))));
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BinaryTimeSeriesWriter.writeChanges(changes, os);
+        return os.toByteArray();
+    }
+
+    @Test
+    public void binaryStreamWindowTest() throws IOException {
+        ReflectionTestUtils.setField(applier, "windowBytes", 50000L);
+        byte[] binary = createLargeBinaryChanges(createMetadata());
+        assertTrue(binary.length < 50000);
+
+        // windows are bounded by the decoded size, so the additions are applied one by one
+        AppStorage storage = Mockito.mock(AppStorage.class);
+        assertEquals(4, applier.apply(storage, new ByteArrayInputStream(binary), MediaType.parseMediaType(BinaryTimeSeriesFormat.MEDIA_TYPE_VALUE)));
+        Mockito.verify(storage).createTimeSeries(Mockito.eq("node1"), Mockito.any());
+        Mockito.verify(storage, Mockito.times(3)).addDoubleTimeSeriesData(Mockito.eq("node1"), Mockito.eq(1), Mockito.eq("ts1"), Mockito.anyList());
+        Mockito.verifyNoMoreInteractions(storage);
+    }
+
+    @Test(expected = IOException.class)
+    public void binaryStreamMaxChangeSizeTest() throws IOException {
+        ReflectionTestUtils.setField(applier, "maxChangeBytes", 50000L);
+        applier.apply(Mockito.mock(AppStorage.class), new ByteArrayInputStream(createLargeBinaryChanges(createMetadata())),
+                      MediaType.parseMediaType(BinaryTimeSeriesFormat.MEDIA_TYPE_VALUE));
+    }
+
+    @Test
+    public void spoolTest() throws IOException {
+        ReflectionTestUtils.setField(applier, "spoolDirectory", temporaryFolder.getRoot().toString());
+        MediaType binaryMediaType = MediaType.parseMediaType(BinaryTimeSeriesFormat.MEDIA_TYPE_VALUE);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BinaryTimeSeriesWriter.writeChanges(createChanges(createMetadata()), os);
+        byte[] binary = os.toByteArray();
+
+        Path spooled = applier.spool(new ByteArrayInputStream(binary), binaryMediaType);
+        assertArrayEquals(binary, Files.readAllBytes(spooled));
+
+        // a truncated stream is rejected before anything is applied, and its file deleted
+        Files.delete(spooled);
+        try {
+            applier.spool(new ByteArrayInputStream(Arrays.copyOf(binary, binary.length - 4)), binaryMediaType);
+            fail();
+        } catch (IOException ignored) {
+            // expected
+        }
+        assertEquals(0, temporaryFolder.getRoot().list().length);
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidStreamTest() throws IOException {
+        applier.apply(Mockito.mock(AppStorage.class), new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8)), false);
+    }
+}
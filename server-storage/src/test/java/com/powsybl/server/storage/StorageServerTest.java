@@ -9,8 +9,12 @@ package com.powsybl.server.storage;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import javax.servlet.ServletContext;
 
@@ -21,11 +25,15 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.threeten.extra.Interval;
 import com.powsybl.afs.storage.AbstractAppStorageTest;
 import com.powsybl.afs.storage.ListenableAppStorage;
+import com.powsybl.afs.storage.NodeGenericMetadata;
+import com.powsybl.afs.storage.NodeInfo;
 import com.powsybl.client.storage.RemoteStorage;
 import com.powsybl.client.storage.RemoteListenableStorage;
 import com.powsybl.commons.exceptions.UncheckedUriSyntaxException;
+import com.powsybl.timeseries.*;
 
 import static org.junit.Assert.*;
 
@@ -61,4 +69,35 @@ public class StorageServerTest extends AbstractAppStorageTest  {
         List<String> fileSystemNames = RemoteStorage.getFileSystemNames(getRestUri(), "");
         assertEquals(Collections.singletonList(AppDataBeanTest.TEST_FS_NAME), fileSystemNames);
     }
+
+    @Test
+    public void getTimeSeriesDataVersionsTest() {
+        RemoteStorage storage = new RemoteStorage(AppDataBeanTest.TEST_FS_NAME, getRestUri(), "");
+        NodeInfo rootNodeInfo = storage.createRootNodeIfNotExists("root", "folder");
+        NodeInfo nodeInfo = storage.createNode(rootNodeInfo.getId(), "versions", "data", "", 0, new NodeGenericMetadata());
+        TimeSeriesIndex index = RegularTimeSeriesIndex.create(Interval.parse("2015-01-01T00:00:00Z/2015-01-01T00:45:00Z"),
+                                                              Duration.ofMinutes(15));
+        storage.createTimeSeries(nodeInfo.getId(), new TimeSeriesMetadata("ts1", TimeSeriesDataType.DOUBLE, index));
+        storage.createTimeSeries(nodeInfo.getId(), new TimeSeriesMetadata("ts2", TimeSeriesDataType.STRING, index));
+        List<DoubleDataChunk> chunks1 = Collections.singletonList(new UncompressedDoubleDataChunk(0, new double[] {1d, 2d, 3d, 4d}));
+        List<DoubleDataChunk> chunks2 = Collections.singletonList(new CompressedDoubleDataChunk(0, 4, new double[] {5d}, new int[] {4}));
+        List<StringDataChunk> stringChunks = Collections.singletonList(new UncompressedStringDataChunk(0, new String[] {"a", "a", "b", "c"}));
+        storage.addDoubleTimeSeriesData(nodeInfo.getId(), 1, "ts1", chunks1);
+        storage.addDoubleTimeSeriesData(nodeInfo.getId(), 2, "ts1", chunks2);
+        storage.addStringTimeSeriesData(nodeInfo.getId(), 3, "ts2", stringChunks);
+        storage.flush();
+
+        Map<Integer, Map<String, List<DoubleDataChunk>>> doubleData
+                = storage.getDoubleTimeSeriesData(nodeInfo.getId(), Collections.singleton("ts1"), new HashSet<>(Arrays.asList(1, 2, 3)));
+        assertEquals(chunks1, doubleData.get(1).get("ts1"));
+        assertEquals(chunks2, doubleData.get(2).get("ts1"));
+        assertFalse(doubleData.containsKey(3) && doubleData.get(3).containsKey("ts1"));
+
+        Map<Integer, Map<String, List<StringDataChunk>>> stringData
+                = storage.getStringTimeSeriesData(nodeInfo.getId(), Collections.singleton("ts2"), Collections.singleton(3));
+        assertEquals(Collections.singleton(3), stringData.keySet());
+        assertEquals(stringChunks, stringData.get(3).get("ts2"));
+
+        assertTrue(storage.getDoubleTimeSeriesData(nodeInfo.getId(), Collections.singleton("ts1"), Collections.emptySet()).isEmpty());
+    }
 }
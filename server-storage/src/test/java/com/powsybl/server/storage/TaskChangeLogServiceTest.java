@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import com.powsybl.afs.AppFileSystem;
+import com.powsybl.afs.TaskListener;
+import com.powsybl.afs.TaskMonitor;
+import com.powsybl.server.commons.AppDataBean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class TaskChangeLogServiceTest {
+
+    private TaskMonitor taskMonitor;
+
+    private TaskChangeLogService service;
+
+    @Before
+    public void setUp() {
+        taskMonitor = Mockito.mock(TaskMonitor.class);
+        Mockito.when(taskMonitor.takeSnapshot("project")).thenReturn(new TaskMonitor.Snapshot(Collections.emptyList(), 0L));
+        AppFileSystem fileSystem = Mockito.mock(AppFileSystem.class);
+        Mockito.when(fileSystem.getTaskMonitor()).thenReturn(taskMonitor);
+        AppDataBean appDataBean = Mockito.mock(AppDataBean.class);
+        Mockito.when(appDataBean.getFileSystem("fs")).thenReturn(fileSystem);
+
+        service = new TaskChangeLogService();
+        ReflectionTestUtils.setField(service, "appDataBean", appDataBean);
+        ReflectionTestUtils.setField(service, "capacity", 10);
+    }
+
+    @After
+    public void tearDown() {
+        service.close();
+    }
+
+    @Test
+    public void evictionTest() throws InterruptedException {
+        ReflectionTestUtils.setField(service, "idleTimeoutMs", 60000L);
+        service.takeSnapshot("fs", "project");
+        service.getChanges("fs", "project", 0L);
+        Mockito.verify(taskMonitor, Mockito.times(1)).addListener(Mockito.any(TaskListener.class));
+
+        // recently requested, still tracked
+        service.evictIdleProjects();
+        Mockito.verify(taskMonitor, Mockito.never()).removeListener(Mockito.any(TaskListener.class));
+
+        // idle, no more tracked until requested again
+        ReflectionTestUtils.setField(service, "idleTimeoutMs", 1L);
+        Thread.sleep(10);
+        service.evictIdleProjects();
+        Mockito.verify(taskMonitor, Mockito.times(1)).removeListener(Mockito.any(TaskListener.class));
+        service.getChanges("fs", "project", 0L);
+        Mockito.verify(taskMonitor, Mockito.times(2)).addListener(Mockito.any(TaskListener.class));
+    }
+
+    @Test
+    public void restartTest() {
+        // a client synchronized with a previous run of the server has to take a full snapshot
+        assertFalse(service.getChanges("fs", "project", 5L).isPresent());
+        assertTrue(service.getChanges("fs", "project", 0L).isPresent());
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import com.powsybl.afs.StartTaskEvent;
+import com.powsybl.afs.StopTaskEvent;
+import com.powsybl.afs.UpdateTaskMessageEvent;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class TaskChangeLogTest {
+
+    @Test
+    public void test() {
+        UUID task1 = UUID.randomUUID();
+        UUID task2 = UUID.randomUUID();
+
+        TaskChangeLog log = new TaskChangeLog(3, 0);
+        log.record(new StartTaskEvent(task1, 1, "task1"));
+        log.record(new StartTaskEvent(task2, 2, "task2"));
+        log.record(new UpdateTaskMessageEvent(task1, 3, "hello"));
+
+        TaskChangeLog.ChangedTasks changes = log.getChangedTasks(1, 3).orElseThrow(AssertionError::new);
+        assertTrue(changes.getStoppedTaskIds().isEmpty());
+        assertEquals(2, changes.getUpdatedTaskIds().size());
+        assertTrue(changes.getUpdatedTaskIds().contains(task1));
+        assertTrue(changes.getUpdatedTaskIds().contains(task2));
+
+        // a stopped task is no more reported as updated
+        log.record(new StopTaskEvent(task1, 4));
+        changes = log.getChangedTasks(2, 4).orElseThrow(AssertionError::new);
+        assertTrue(changes.getUpdatedTaskIds().isEmpty());
+        assertEquals(Collections.singleton(task1), changes.getStoppedTaskIds());
+
+        // first event has been evicted, changes since revision 0 are unknown
+        assertEquals(1, log.getHorizon());
+        assertFalse(log.getChangedTasks(0, 4).isPresent());
+        assertTrue(log.getChangedTasks(1, 4).isPresent());
+    }
+
+    @Test
+    public void restartTest() {
+        TaskChangeLog log = new TaskChangeLog(3, 0);
+        log.record(new StartTaskEvent(UUID.randomUUID(), 1, "task1"));
+
+        // revision of a client synchronized before a restart, ahead of the revisions of the server
+        assertFalse(log.getChangedTasks(5, 1).isPresent());
+        assertTrue(log.getChangedTasks(1, 1).orElseThrow(AssertionError::new).getUpdatedTaskIds().isEmpty());
+    }
+}
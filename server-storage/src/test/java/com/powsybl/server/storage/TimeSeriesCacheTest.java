@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.powsybl.afs.storage.ListenableAppStorage;
+import com.powsybl.afs.storage.events.AppStorageListener;
+import com.powsybl.afs.storage.events.NodeEventList;
+import com.powsybl.afs.storage.events.TimeSeriesDataUpdated;
+import com.powsybl.commons.json.JsonUtil;
+import com.powsybl.server.commons.AppDataBean;
+import com.powsybl.timeseries.CompressedDoubleDataChunk;
+import com.powsybl.timeseries.DoubleDataChunk;
+import com.powsybl.timeseries.UncompressedDoubleDataChunk;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TimeSeriesCacheTest {
+
+    private final ObjectMapper mapper = JsonUtil.createObjectMapper();
+
+    private ListenableAppStorage storage;
+
+    private TimeSeriesCache cache;
+
+    @Before
+    public void setUp() {
+        storage = Mockito.mock(ListenableAppStorage.class);
+        AppDataBean appDataBean = Mockito.mock(AppDataBean.class);
+        Mockito.when(appDataBean.getStorage("fs")).thenReturn(storage);
+
+        cache = new TimeSeriesCache();
+        ReflectionTestUtils.setField(cache, "appDataBean", appDataBean);
+        ReflectionTestUtils.setField(cache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxSizeMb", 1L);
+        cache.init();
+    }
+
+    private static List<DoubleDataChunk> createChunks() {
+        return Arrays.asList(new CompressedDoubleDataChunk(3, 5, new double[] {4d, 5d}, new int[] {3, 2}),
+                             new UncompressedDoubleDataChunk(0, new double[] {1d, 2d, 3d}),
+                             new UncompressedDoubleDataChunk(10, new double[] {6d, 7d}));
+    }
+
+    private String writeJson(List<DoubleDataChunk> chunks) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(writer)) {
+            generator.writeStartArray();
+            for (DoubleDataChunk chunk : chunks) {
+                chunk.writeJson(generator);
+            }
+            generator.writeEndArray();
+        }
+        return writer.toString();
+    }
+
+    private void assertJsonEquals(List<DoubleDataChunk> expected, OffHeapDoubleTimeSeries timeSeries, int first, int last) throws IOException {
+        String json = mapper.writeValueAsString(new OffHeapDoubleTimeSeries.Window(timeSeries, first, last));
+        assertEquals(mapper.readTree(writeJson(expected)), mapper.readTree(json));
+    }
+
+    @Test
+    public void serializationTest() throws IOException {
+        List<DoubleDataChunk> chunks = createChunks();
+        OffHeapDoubleTimeSeries timeSeries = OffHeapDoubleTimeSeries.create(chunks);
+        assertEquals(7 * Double.BYTES + 2 * Integer.BYTES, timeSeries.getOffHeapBytes());
+
+        // same JSON as the chunks, trimmed like them
+        assertJsonEquals(TimeSeriesChunkIndex.getDoubleChunks(chunks, 0, Integer.MAX_VALUE), timeSeries, 0, Integer.MAX_VALUE);
+        assertJsonEquals(TimeSeriesChunkIndex.getDoubleChunks(chunks, 2, 6), timeSeries, 2, 6);
+        assertJsonEquals(TimeSeriesChunkIndex.getDoubleChunks(chunks, 4, 4), timeSeries, 4, 4);
+        assertJsonEquals(TimeSeriesChunkIndex.getDoubleChunks(chunks, 8, 9), timeSeries, 8, 9);
+
+        // copied back to the heap for the binary format
+        assertEquals(TimeSeriesChunkIndex.getDoubleChunks(chunks, 2, 6), timeSeries.getChunks(2, 6));
+        assertEquals(TimeSeriesChunkIndex.getDoubleChunks(chunks, 0, Integer.MAX_VALUE), timeSeries.getChunks(0, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void test() {
+        Mockito.when(storage.getDoubleTimeSeriesData("node", Collections.singleton("ts1"), 1))
+                .thenReturn(Collections.singletonMap("ts1", createChunks()));
+
+        OffHeapDoubleTimeSeries timeSeries = cache.getDoubleTimeSeriesData("fs", "node", Collections.singleton("ts1"), 1).get("ts1");
+        assertNotNull(timeSeries);
+        assertSame(timeSeries, cache.getDoubleTimeSeriesData("fs", "node", Collections.singleton("ts1"), 1).get("ts1"));
+        Mockito.verify(storage, Mockito.times(1)).getDoubleTimeSeriesData("node", Collections.singleton("ts1"), 1);
+        assertEquals(1, cache.getSize());
+        assertEquals(timeSeries.getOffHeapBytes(), cache.getResidentBytes());
+
+        // invalidated by the events of the storage
+        ArgumentCaptor<AppStorageListener> listener = ArgumentCaptor.forClass(AppStorageListener.class);
+        Mockito.verify(storage).addListener(listener.capture());
+        listener.getValue().onEvents(new NodeEventList(new TimeSeriesDataUpdated("node", "ts2")));
+        assertEquals(1, cache.getSize());
+        listener.getValue().onEvents(new NodeEventList(new TimeSeriesDataUpdated("node", "ts1")));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getResidentBytes());
+
+        assertNotSame(timeSeries, cache.getDoubleTimeSeriesData("fs", "node", Collections.singleton("ts1"), 1).get("ts1"));
+        Mockito.verify(storage, Mockito.times(2)).getDoubleTimeSeriesData("node", Collections.singleton("ts1"), 1);
+    }
+
+    @Test
+    public void evictionTest() {
+        // 2 series of 600 KB do not fit in 1 MB
+        List<DoubleDataChunk> chunks = Collections.singletonList(new UncompressedDoubleDataChunk(0, new double[75000]));
+        Mockito.when(storage.getDoubleTimeSeriesData(Mockito.eq("node"), Mockito.anySet(), Mockito.eq(1)))
+                .thenAnswer(invocation -> {
+                    Map<String, List<DoubleDataChunk>> data = new HashMap<>();
+                    for (String name : invocation.<Set<String>>getArgument(1)) {
+                        data.put(name, chunks);
+                    }
+                    return data;
+                });
+        cache.getDoubleTimeSeriesData("fs", "node", Collections.singleton("ts1"), 1);
+        cache.getDoubleTimeSeriesData("fs", "node", Collections.singleton("ts2"), 1);
+        assertEquals(1, cache.getSize());
+
+        // ts1 has been evicted
+        cache.getDoubleTimeSeriesData("fs", "node", Collections.singleton("ts1"), 1);
+        Mockito.verify(storage, Mockito.times(2)).getDoubleTimeSeriesData("node", Collections.singleton("ts1"), 1);
+        Mockito.verify(storage, Mockito.times(1)).getDoubleTimeSeriesData("node", Collections.singleton("ts2"), 1);
+    }
+}
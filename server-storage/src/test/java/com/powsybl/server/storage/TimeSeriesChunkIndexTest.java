@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import com.powsybl.timeseries.*;
+import org.junit.Test;
+import org.threeten.extra.Interval;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TimeSeriesChunkIndexTest {
+
+    @Test
+    public void doubleTest() {
+        DoubleDataChunk chunk1 = new UncompressedDoubleDataChunk(0, new double[] {1d, 2d, 3d});
+        DoubleDataChunk chunk2 = new CompressedDoubleDataChunk(3, 5, new double[] {4d, 5d}, new int[] {3, 2});
+        DoubleDataChunk chunk3 = new UncompressedDoubleDataChunk(10, new double[] {6d, 7d});
+        List<DoubleDataChunk> chunks = Arrays.asList(chunk3, chunk1, chunk2);
+
+        assertEquals(Arrays.asList(chunk1, chunk2, chunk3), TimeSeriesChunkIndex.sortChunks(chunks));
+        assertEquals(Arrays.asList(chunk1, chunk2, chunk3), TimeSeriesChunkIndex.scanChunks(chunks, 0, 100));
+        assertEquals(Collections.singletonList(chunk2), TimeSeriesChunkIndex.scanChunks(chunks, 3, 7));
+        assertEquals(Arrays.asList(chunk2, chunk3), TimeSeriesChunkIndex.scanChunks(chunks, 7, 10));
+        assertTrue(TimeSeriesChunkIndex.scanChunks(chunks, 8, 9).isEmpty());
+
+        // chunks within the window are kept as is, boundary chunks are trimmed
+        List<DoubleDataChunk> trimmedChunks = TimeSeriesChunkIndex.getDoubleChunks(chunks, 2, 6);
+        assertEquals(2, trimmedChunks.size());
+        assertEquals(new UncompressedDoubleDataChunk(2, new double[] {3d}), trimmedChunks.get(0));
+        assertEquals(new CompressedDoubleDataChunk(3, 4, new double[] {4d, 5d}, new int[] {3, 1}), trimmedChunks.get(1));
+
+        assertEquals(Collections.singletonList(new CompressedDoubleDataChunk(6, 1, new double[] {5d}, new int[] {1})),
+                     TimeSeriesChunkIndex.getDoubleChunks(chunks, 6, 6));
+        assertSame(chunk3, TimeSeriesChunkIndex.getDoubleChunks(chunks, 9, 20).get(0));
+    }
+
+    @Test
+    public void endsTest() {
+        // the second chunk overlaps the first one and ends before it
+        int[] ends = TimeSeriesChunkIndex.getEnds(new int[] {0, 2, 10}, new int[] {8, 3, 2});
+        assertArrayEquals(new int[] {7, 7, 11}, ends);
+        assertEquals(0, TimeSeriesChunkIndex.getFirstOverlapping(ends, 0));
+        assertEquals(0, TimeSeriesChunkIndex.getFirstOverlapping(ends, 7));
+        assertEquals(2, TimeSeriesChunkIndex.getFirstOverlapping(ends, 8));
+        assertEquals(3, TimeSeriesChunkIndex.getFirstOverlapping(ends, 12));
+        assertEquals(0, TimeSeriesChunkIndex.getFirstOverlapping(new int[0], 0));
+    }
+
+    @Test
+    public void stringTest() {
+        StringDataChunk chunk1 = new UncompressedStringDataChunk(0, new String[] {"a", "b", "c"});
+        StringDataChunk chunk2 = new CompressedStringDataChunk(3, 4, new String[] {"d", "e"}, new int[] {1, 3});
+        List<StringDataChunk> trimmedChunks = TimeSeriesChunkIndex.getStringChunks(Arrays.asList(chunk1, chunk2), 1, 4);
+        assertEquals(Arrays.asList(new UncompressedStringDataChunk(1, new String[] {"b", "c"}),
+                                   new CompressedStringDataChunk(3, 2, new String[] {"d", "e"}, new int[] {1, 1})),
+                     trimmedChunks);
+    }
+
+    @Test
+    public void windowTest() {
+        TimeSeriesIndex index = RegularTimeSeriesIndex.create(Interval.parse("2015-01-01T00:00:00Z/2015-01-01T01:45:00Z"),
+                                                              Duration.ofMinutes(15));
+        TimeSeriesWindow window = new TimeSeriesWindow(3, null, Instant.parse("2015-01-01T00:20:00Z"), Instant.parse("2015-01-01T01:15:00Z"));
+        assertEquals(3, window.getFirstPoint(index));
+        assertEquals(5, window.getLastPoint(index));
+        assertEquals(7, TimeSeriesWindow.ALL.getLastPoint(index));
+        assertEquals(Integer.MAX_VALUE, TimeSeriesWindow.ALL.getLastPoint(null));
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import com.powsybl.timeseries.*;
+import org.junit.Test;
+import org.threeten.extra.Interval;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TimeSeriesDownsamplerTest {
+
+    private static final TimeSeriesIndex INDEX = RegularTimeSeriesIndex.create(Interval.parse("2015-01-01T00:00:00Z/2015-01-01T01:45:00Z"),
+                                                                              Duration.ofMinutes(15));
+
+    private static List<DoubleDataChunk> createChunks() {
+        // 1, 5, 3, 2, 2, 2, 4, 4, the compressed chunk first
+        return Arrays.asList(new CompressedDoubleDataChunk(3, 5, new double[] {2d, 4d}, new int[] {3, 2}),
+                             new UncompressedDoubleDataChunk(0, new double[] {1d, 5d, 3d}));
+    }
+
+    @Test
+    public void bucketsTest() {
+        DownsampledTimeSeries result = new TimeSeriesDownsampler(TimeSeriesWindow.ALL, 3, null, TimeSeriesDownsampler.Method.BUCKETS)
+                .downsample(INDEX, createChunks());
+        assertEquals(0, result.getFirstIndex());
+        assertEquals(7, result.getLastIndex());
+        assertEquals(Integer.valueOf(3), result.getBucketSize());
+        assertArrayEquals(new int[] {0, 3, 6}, result.getIndexes());
+        assertArrayEquals(new long[] {INDEX.getTimeAt(0), INDEX.getTimeAt(3), INDEX.getTimeAt(6)}, result.getTimes());
+        assertArrayEquals(new int[] {3, 3, 2}, result.getCount());
+        assertArrayEquals(new double[] {1d, 2d, 4d}, result.getMin(), 0d);
+        assertArrayEquals(new double[] {5d, 2d, 4d}, result.getMax(), 0d);
+        assertArrayEquals(new double[] {3d, 2d, 4d}, result.getMean(), 0d);
+        assertArrayEquals(new double[] {1d, 2d, 4d}, result.getFirst(), 0d);
+        assertArrayEquals(new double[] {3d, 2d, 4d}, result.getLast(), 0d);
+        assertNull(result.getValues());
+
+        // index window, splitting the steps of the compressed chunk
+        result = new TimeSeriesDownsampler(new TimeSeriesWindow(1, null, null, null), null, 2, TimeSeriesDownsampler.Method.BUCKETS)
+                .downsample(INDEX, createChunks());
+        assertArrayEquals(new int[] {1, 3, 5, 7}, result.getIndexes());
+        assertArrayEquals(new int[] {2, 2, 2, 1}, result.getCount());
+        assertArrayEquals(new double[] {4d, 2d, 3d, 4d}, result.getMean(), 0d);
+        assertArrayEquals(new double[] {5d, 2d, 2d, 4d}, result.getFirst(), 0d);
+        assertArrayEquals(new double[] {3d, 2d, 4d, 4d}, result.getLast(), 0d);
+    }
+
+    @Test
+    public void timeWindowTest() {
+        DownsampledTimeSeries result = new TimeSeriesDownsampler(new TimeSeriesWindow(null, null, Instant.parse("2015-01-01T00:30:00Z"), Instant.parse("2015-01-01T01:00:00Z")),
+                                                                 null, 10, TimeSeriesDownsampler.Method.BUCKETS)
+                .downsample(INDEX, createChunks());
+        assertEquals(2, result.getFirstIndex());
+        assertEquals(4, result.getLastIndex());
+        assertArrayEquals(new int[] {3}, result.getCount());
+        assertArrayEquals(new double[] {2d}, result.getMin(), 0d);
+        assertArrayEquals(new double[] {3d}, result.getMax(), 0d);
+        assertArrayEquals(new double[] {7d / 3}, result.getMean(), 1e-12);
+    }
+
+    @Test
+    public void lttbTest() {
+        DownsampledTimeSeries result = new TimeSeriesDownsampler(TimeSeriesWindow.ALL, 4, null, TimeSeriesDownsampler.Method.LTTB)
+                .downsample(INDEX, createChunks());
+        assertNull(result.getBucketSize());
+        assertArrayEquals(new int[] {0, 1, 4, 7}, result.getIndexes());
+        assertArrayEquals(new double[] {1d, 5d, 2d, 4d}, result.getValues(), 0d);
+        assertNull(result.getMean());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidTest() {
+        new TimeSeriesDownsampler(TimeSeriesWindow.ALL, 10, 2, TimeSeriesDownsampler.Method.BUCKETS);
+    }
+}
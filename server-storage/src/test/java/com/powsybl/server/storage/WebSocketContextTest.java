@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.websocket.CloseReason;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.Session;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class WebSocketContextTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private WebSocketContext context;
+
+    private Clock clock;
+
+    @Before
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        context = new WebSocketContext();
+        ReflectionTestUtils.setField(context, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(context, "heartbeatInterval", 0L);
+        ReflectionTestUtils.setField(context, "heartbeatTimeout", 200L);
+        clock = Clock.fixed(Instant.parse("2019-03-01T00:00:00Z"), ZoneOffset.UTC);
+        ReflectionTestUtils.setField(context, "clock", clock);
+    }
+
+    private static Session createSession(String id) {
+        Session session = Mockito.mock(Session.class);
+        Mockito.when(session.getId()).thenReturn(id);
+        Mockito.when(session.isOpen()).thenReturn(true);
+        Mockito.when(session.getAsyncRemote()).thenReturn(Mockito.mock(RemoteEndpoint.Async.class));
+        return session;
+    }
+
+    @Test
+    public void heartbeatTest() {
+        Session alive = createSession("alive");
+        Session dead = createSession("dead");
+        AtomicInteger aliveCleanups = new AtomicInteger();
+        AtomicInteger deadCleanups = new AtomicInteger();
+        context.addSession("fs", alive, aliveCleanups::incrementAndGet);
+        context.addSession("fs", dead, deadCleanups::incrementAndGet);
+        assertEquals(2, context.getSessionCount("fs"));
+        assertEquals(2, meterRegistry.get("afs.websocket.sessions").tag("fileSystem", "fs").gauge().value(), 0);
+
+        // both sessions pinged
+        context.heartbeat();
+        Mockito.verify(alive.getAsyncRemote()).sendPing(Mockito.any(ByteBuffer.class));
+        Mockito.verify(dead.getAsyncRemote()).sendPing(Mockito.any(ByteBuffer.class));
+
+        // not timed out yet
+        ReflectionTestUtils.setField(context, "clock", Clock.offset(clock, Duration.ofMillis(200)));
+        context.heartbeat();
+        Mockito.verify(dead, Mockito.never()).close(Mockito.any(CloseReason.class));
+
+        // only the alive session answers in time, the dead one is closed and its listeners removed
+        ReflectionTestUtils.setField(context, "clock", Clock.offset(clock, Duration.ofMillis(300)));
+        context.touch(alive);
+        context.heartbeat();
+        Mockito.verify(dead).close(Mockito.any(CloseReason.class));
+        assertEquals(1, deadCleanups.get());
+        Mockito.verify(alive, Mockito.never()).close(Mockito.any(CloseReason.class));
+        Mockito.verify(alive.getAsyncRemote(), Mockito.times(3)).sendPing(Mockito.any(ByteBuffer.class));
+        assertEquals(0, aliveCleanups.get());
+        assertEquals(1, context.getSessionCount("fs"));
+    }
+
+    @Test
+    public void closedSessionTest() throws Exception {
+        Session session = createSession("session");
+        AtomicInteger cleanups = new AtomicInteger();
+        context.addSession("fs", session, cleanups::incrementAndGet);
+
+        // closed without notification, removed at the next heartbeat
+        Mockito.when(session.isOpen()).thenReturn(false);
+        context.heartbeat();
+        assertEquals(1, cleanups.get());
+        assertEquals(0, context.getSessionCount("fs"));
+        Mockito.verify(session.getAsyncRemote(), Mockito.never()).sendPing(Mockito.any(ByteBuffer.class));
+
+        // cleaned up only once
+        context.removeSession(session);
+        assertEquals(1, cleanups.get());
+    }
+}
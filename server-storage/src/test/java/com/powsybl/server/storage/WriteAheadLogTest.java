@@ -0,0 +1,216 @@
+/**
+ * Copyright (c) 2019, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.server.storage;
+
+import com.powsybl.afs.mapdb.storage.MapDbAppStorage;
+import com.powsybl.afs.storage.DefaultListenableAppStorage;
+import com.powsybl.afs.storage.ListenableAppStorage;
+import com.powsybl.afs.storage.NodeGenericMetadata;
+import com.powsybl.afs.storage.NodeInfo;
+import com.powsybl.afs.storage.buffer.DoubleTimeSeriesChunksAddition;
+import com.powsybl.afs.storage.buffer.StorageChange;
+import com.powsybl.afs.storage.buffer.TimeSeriesCreation;
+import com.powsybl.server.commons.AppDataBean;
+import com.powsybl.timeseries.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.threeten.extra.Interval;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WriteAheadLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StorageChangeSetApplier applier;
+
+    private ListenableAppStorage storage;
+
+    private AppDataBean appDataBean;
+
+    @Before
+    public void setUp() {
+        applier = new StorageChangeSetApplier();
+        applier.init();
+        storage = Mockito.mock(ListenableAppStorage.class);
+        appDataBean = Mockito.mock(AppDataBean.class);
+        Mockito.when(appDataBean.getStorage("fs")).thenReturn(storage);
+    }
+
+    @After
+    public void tearDown() {
+        applier.close();
+    }
+
+    private WriteAheadLog createLog() throws Exception {
+        WriteAheadLog log = new WriteAheadLog();
+        ReflectionTestUtils.setField(log, "appDataBean", appDataBean);
+        ReflectionTestUtils.setField(log, "changeSetApplier", applier);
+        ReflectionTestUtils.setField(log, "enabled", true);
+        ReflectionTestUtils.setField(log, "directory", folder.getRoot().getAbsolutePath());
+        ReflectionTestUtils.setField(log, "segmentSizeMb", 1L);
+        ReflectionTestUtils.setField(log, "maxPendingMb", 16L);
+        ReflectionTestUtils.setField(log, "maxAttempts", 3);
+        ReflectionTestUtils.setField(log, "retryDelayMs", 1L);
+        log.init();
+        return log;
+    }
+
+    private static List<StorageChange> createChanges(String nodeId) {
+        TimeSeriesIndex index = RegularTimeSeriesIndex.create(Interval.parse("2015-01-01T00:00:00Z/2015-01-01T01:45:00Z"),
+                                                              Duration.ofMinutes(15));
+        TimeSeriesMetadata metadata = new TimeSeriesMetadata("ts1", TimeSeriesDataType.DOUBLE, index);
+        return Collections.singletonList(new TimeSeriesCreation(nodeId, metadata));
+    }
+
+    @Test
+    public void test() throws Exception {
+        WriteAheadLog log = createLog();
+        try {
+            log.append("fs", createChanges("node1"));
+            log.sync();
+            log.awaitApplied("fs", "node1");
+            Mockito.verify(storage).createTimeSeries(Mockito.eq("node1"), Mockito.any());
+            Mockito.verify(storage, Mockito.atLeastOnce()).flush();
+        } finally {
+            log.close();
+        }
+
+        // applied records are not replayed
+        Mockito.reset(storage);
+        WriteAheadLog log2 = createLog();
+        try {
+            log2.awaitApplied("fs", "node1");
+            Mockito.verify(storage, Mockito.never()).createTimeSeries(Mockito.anyString(), Mockito.any());
+        } finally {
+            log2.close();
+        }
+    }
+
+    @Test
+    public void replayTest() throws Exception {
+        // records appended once the applier is stopped are logged but not applied
+        WriteAheadLog log = createLog();
+        log.close();
+        log.append("fs", createChanges("node2"));
+        log.sync();
+
+        WriteAheadLog log2 = createLog();
+        try {
+            log2.awaitApplied("fs", "node2");
+            Mockito.verify(storage).createTimeSeries(Mockito.eq("node2"), Mockito.any());
+        } finally {
+            log2.close();
+        }
+    }
+
+    @Test
+    public void idempotentReplayTest() throws Exception {
+        ListenableAppStorage mapDbStorage = new DefaultListenableAppStorage(MapDbAppStorage.createHeap("fs"));
+        Mockito.when(appDataBean.getStorage("fs")).thenReturn(mapDbStorage);
+        NodeInfo rootNodeInfo = mapDbStorage.createRootNodeIfNotExists("root", "folder");
+        String nodeId = mapDbStorage.createNode(rootNodeInfo.getId(), "node", "data", "", 0, new NodeGenericMetadata()).getId();
+        mapDbStorage.flush();
+
+        List<DoubleDataChunk> chunks = Collections.singletonList(new UncompressedDoubleDataChunk(0, new double[] {1d, 2d}));
+        List<StorageChange> changes = new ArrayList<>(createChanges(nodeId));
+        changes.add(new DoubleTimeSeriesChunksAddition(nodeId, 1, "ts1", chunks));
+        WriteAheadLog log = createLog();
+        try {
+            log.append("fs", changes);
+            log.sync();
+            log.awaitApplied("fs", nodeId);
+        } finally {
+            log.close();
+        }
+
+        // crash between the flush of the storage and the checkpoint: the applied record is replayed
+        Files.delete(folder.getRoot().toPath().resolve("checkpoint"));
+        WriteAheadLog log2 = createLog();
+        try {
+            log2.awaitApplied("fs", nodeId);
+        } finally {
+            log2.close();
+        }
+        assertEquals(1, mapDbStorage.getTimeSeriesMetadata(nodeId, Collections.singleton("ts1")).size());
+        assertEquals(chunks, mapDbStorage.getDoubleTimeSeriesData(nodeId, Collections.singleton("ts1"), 1).get("ts1"));
+    }
+
+    @Test
+    public void retryTest() throws Exception {
+        Mockito.doThrow(new IllegalStateException("Flush failed")).doNothing().when(storage).flush();
+        WriteAheadLog log = createLog();
+        try {
+            log.append("fs", createChanges("node3"));
+            log.sync();
+            log.awaitApplied("fs", "node3");
+            Mockito.verify(storage, Mockito.times(2)).flush();
+            assertEquals(Status.UP, log.health().getStatus());
+        } finally {
+            log.close();
+        }
+        assertEquals("1", new String(Files.readAllBytes(folder.getRoot().toPath().resolve("checkpoint")), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void failureTest() throws Exception {
+        Mockito.doThrow(new IllegalStateException("Flush failed")).when(storage).flush();
+        WriteAheadLog log = createLog();
+        try {
+            log.append("fs", createChanges("node4"));
+            log.sync();
+            try {
+                log.awaitApplied("fs", "node4");
+                fail();
+            } catch (IllegalStateException ignored) {
+                // the applier stopped
+            }
+            assertEquals(Status.DOWN, log.health().getStatus());
+            try {
+                log.append("fs", createChanges("node5"));
+                fail();
+            } catch (IllegalStateException ignored) {
+                // appends are refused once stopped
+            }
+        } finally {
+            log.close();
+        }
+        // not checkpointed, so replayed on restart
+        assertFalse(Files.exists(folder.getRoot().toPath().resolve("checkpoint")));
+
+        Mockito.reset(storage);
+        WriteAheadLog log2 = createLog();
+        try {
+            log2.awaitApplied("fs", "node4");
+            Mockito.verify(storage).createTimeSeries(Mockito.eq("node4"), Mockito.any());
+        } finally {
+            log2.close();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void missingDirectoryTest() throws Exception {
+        WriteAheadLog log = new WriteAheadLog();
+        ReflectionTestUtils.setField(log, "enabled", true);
+        ReflectionTestUtils.setField(log, "directory", "");
+        log.init();
+    }
+}